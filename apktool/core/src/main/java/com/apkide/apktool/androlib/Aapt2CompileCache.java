@@ -0,0 +1,351 @@
+/*
+ *  Copyright (C) 2010 Ryszard Wiśniewski <brut.alll@gmail.com>
+ *  Copyright (C) 2010 Connor Tumbleson <connor.tumbleson@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.apkide.apktool.androlib;
+
+import com.apkide.apktool.androlib.exceptions.AndrolibException;
+import com.apkide.apktool.common.BrutException;
+import com.apkide.apktool.util.OS;
+import com.apkide.common.logger.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persistent per-file cache of aapt2 compiled resources (.flat files) under build/flat.
+ * <p>
+ * Every file of the res directory is keyed by the SHA-256 of its content. Only added or changed
+ * files are handed to "aapt2 compile", batched over several processes, and the .flat files of
+ * resources that disappeared are deleted, so a single edit no longer recompiles the whole res
+ * directory before linking.
+ */
+public class Aapt2CompileCache {
+    private final static Logger LOGGER = Logger.getLogger(Aapt2CompileCache.class.getName());
+
+    public final static String CACHE_DIRNAME = "flat";
+    public final static String INDEX_FILENAME = "index";
+    private final static String LIST_FILENAME = "flat.list";
+    private final static String INDEX_VERSION = "1";
+    private final static int MAX_BATCH_SIZE = 256;
+
+    private final Config mConfig;
+    private final File mResDir;
+    private final File mCacheDir;
+
+    public Aapt2CompileCache(Config config, File resDir) {
+        mConfig = config;
+        mResDir = resDir;
+        mCacheDir = new File(new File(resDir.getParent(), "build"), CACHE_DIRNAME);
+    }
+
+    public static File getIndexFile(File buildDir) {
+        return new File(new File(buildDir, CACHE_DIRNAME), INDEX_FILENAME);
+    }
+
+    /**
+     * Brings the .flat cache up to date with the res directory.
+     *
+     * @param aaptCommand aapt2 executable (and any leading arguments)
+     * @return File listing every cached .flat file, suitable for "aapt2 link @file"
+     * @throws AndrolibException aapt2 failed or the cache could not be written
+     */
+    public File update(List<String> aaptCommand) throws AndrolibException {
+        List<String> options = getCompileOptions();
+        String optionsKey = INDEX_VERSION + " " + String.join(" ", options);
+
+        if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs()) {
+            throw new AndrolibException("Could not create directory: " + mCacheDir);
+        }
+
+        Map<String, Entry> index = loadIndex(optionsKey);
+        Map<String, Entry> current = new LinkedHashMap<>();
+        List<File> changed = new ArrayList<>();
+
+        try {
+            for (File typeDir : listSorted(mResDir)) {
+                if (!typeDir.isDirectory() || typeDir.getName().startsWith(".")) {
+                    continue;
+                }
+                for (File file : listSorted(typeDir)) {
+                    if (!file.isFile() || file.getName().startsWith(".")) {
+                        continue;
+                    }
+                    String path = typeDir.getName() + "/" + file.getName();
+                    Entry cached = index.remove(path);
+                    Entry entry = new Entry(path, file.length(), file.lastModified(),
+                        cached != null && cached.size == file.length() && cached.modified == file.lastModified()
+                            ? cached.hash : sha256(file), getFlatName(typeDir.getName(), file.getName()));
+
+                    if (cached == null || !cached.hash.equals(entry.hash)
+                        || !new File(mCacheDir, entry.flatName).isFile()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        new File(mCacheDir, entry.flatName).delete();
+                        changed.add(file);
+                    }
+                    current.put(path, entry);
+                }
+            }
+        } catch (IOException ex) {
+            throw new AndrolibException(ex);
+        }
+
+        // whatever is left in the old index no longer exists in res
+        for (Entry stale : index.values()) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(mCacheDir, stale.flatName).delete();
+        }
+
+        LOGGER.info("aapt2: compiling " + changed.size() + " of " + current.size()
+            + " resource files, " + index.size() + " removed");
+        compile(aaptCommand, options, changed);
+
+        for (Entry entry : current.values()) {
+            if (!new File(mCacheDir, entry.flatName).isFile()) {
+                throw new AndrolibException("aapt2 did not produce " + entry.flatName + " for " + entry.path);
+            }
+        }
+
+        saveIndex(optionsKey, current);
+        return writeFlatList(current);
+    }
+
+    private List<String> getCompileOptions() {
+        List<String> options = new ArrayList<>();
+        // Treats error that used to be valid in aapt1 as warnings in aapt2
+        options.add("--legacy");
+        if (mConfig.noCrunch) {
+            options.add("--no-crunch");
+        }
+        return options;
+    }
+
+    private void compile(List<String> aaptCommand, List<String> options, List<File> files)
+        throws AndrolibException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        int jobs = Math.max(1, mConfig.jobs);
+        int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, (files.size() + jobs - 1) / jobs));
+        List<String[]> commands = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += batchSize) {
+            List<String> cmd = new ArrayList<>(aaptCommand);
+            cmd.add("compile");
+            cmd.addAll(options);
+            if (mConfig.verbose) {
+                cmd.add("-v");
+            }
+            cmd.add("-o");
+            cmd.add(mCacheDir.getAbsolutePath());
+            for (File file : files.subList(i, Math.min(files.size(), i + batchSize))) {
+                cmd.add(file.getAbsolutePath());
+            }
+            commands.add(cmd.toArray(new String[0]));
+        }
+
+        if (commands.size() == 1) {
+            exec(commands.get(0));
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, commands.size()));
+        try {
+            List<Future<?>> tasks = new ArrayList<>(commands.size());
+            for (String[] cmd : commands) {
+                tasks.add(executor.submit(() -> {
+                    exec(cmd);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof AndrolibException) {
+                        throw (AndrolibException) ex.getCause();
+                    }
+                    throw new AndrolibException(ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AndrolibException(ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void exec(String[] cmd) throws AndrolibException {
+        try {
+            OS.exec(cmd);
+            LOGGER.verbose("aapt2 compile command ran: ");
+            LOGGER.verbose(Arrays.toString(cmd));
+        } catch (BrutException ex) {
+            throw new AndrolibException(ex);
+        }
+    }
+
+    /**
+     * Mirrors aapt2's intermediate file naming: "{dir}_{name}.{ext}.flat", where files of
+     * values directories are compiled to tables and always get the "arsc" extension.
+     */
+    static String getFlatName(String dirName, String fileName) {
+        int dot = fileName.indexOf('.');
+        String name = dot == -1 ? fileName : fileName.substring(0, dot);
+        String ext = dot == -1 ? "" : fileName.substring(dot + 1);
+        if (dirName.equals("values") || dirName.startsWith("values-")) {
+            ext = "arsc";
+        }
+        return dirName + "_" + name + (ext.isEmpty() ? "" : "." + ext) + ".flat";
+    }
+
+    private Map<String, Entry> loadIndex(String optionsKey) {
+        Map<String, Entry> index = new HashMap<>();
+        File file = new File(mCacheDir, INDEX_FILENAME);
+        if (!file.isFile()) {
+            return index;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!optionsKey.equals(reader.readLine())) {
+                LOGGER.info("aapt2: compile options changed, discarding cached resources");
+                clearCache();
+                return index;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length != 5) {
+                    continue;
+                }
+                Entry entry = new Entry(parts[4], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    parts[0], parts[3]);
+                index.put(entry.path, entry);
+            }
+        } catch (IOException | NumberFormatException ex) {
+            LOGGER.warning("aapt2: could not read resource cache index, rebuilding: " + ex.getMessage());
+            index.clear();
+            clearCache();
+        }
+        return index;
+    }
+
+    private void saveIndex(String optionsKey, Map<String, Entry> entries) throws AndrolibException {
+        File file = new File(mCacheDir, INDEX_FILENAME);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(optionsKey);
+            writer.newLine();
+            for (Entry entry : entries.values()) {
+                writer.write(entry.hash + "\t" + entry.size + "\t" + entry.modified + "\t"
+                    + entry.flatName + "\t" + entry.path);
+                writer.newLine();
+            }
+        } catch (IOException ex) {
+            throw new AndrolibException("Could not write " + file, ex);
+        }
+    }
+
+    private File writeFlatList(Map<String, Entry> entries) throws AndrolibException {
+        File file = new File(mCacheDir, LIST_FILENAME);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(new File(mCacheDir, entry.flatName).getAbsolutePath());
+                writer.newLine();
+            }
+        } catch (IOException ex) {
+            throw new AndrolibException("Could not write " + file, ex);
+        }
+        return file;
+    }
+
+    private void clearCache() {
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static File[] listSorted(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final String hash;
+        final String flatName;
+
+        Entry(String path, long size, long modified, String hash, String flatName) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.flatName = flatName;
+        }
+    }
+}
@@ -86,13 +86,17 @@ public class AaptInvoker {
 
         List<String> compileCommand = new ArrayList<>(cmd);
         File resourcesZip = null;
+        File flatList = null;
 
-        if (resDir != null) {
+        if (resDir != null && mConfig.incrementalAapt2) {
+            // only recompile what changed since the last build, link everything from the cache
+            flatList = new Aapt2CompileCache(mConfig, resDir).update(compileCommand);
+        } else if (resDir != null) {
             File buildDir = new File(resDir.getParent(), "build");
             resourcesZip = new File(buildDir, "resources.zip");
         }
 
-        if (resDir != null && !resourcesZip.exists()) {
+        if (resDir != null && flatList == null && !resourcesZip.exists()) {
 
             // Compile the files into flat arsc files
             cmd.add("compile");
@@ -233,7 +237,9 @@ public class AaptInvoker {
             cmd.add("-v");
         }
 
-        if (resourcesZip != null) {
+        if (flatList != null) {
+            cmd.add("@" + flatList.getAbsolutePath());
+        } else if (resourcesZip != null) {
             cmd.add(resourcesZip.getAbsolutePath());
         }
 
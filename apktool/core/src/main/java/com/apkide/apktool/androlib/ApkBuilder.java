@@ -22,6 +22,7 @@ import com.apkide.apktool.androlib.exceptions.AndrolibException;
 import com.apkide.apktool.androlib.res.Framework;
 import com.apkide.apktool.androlib.res.data.ResConfigFlags;
 import com.apkide.apktool.androlib.res.xml.ResXmlPatcher;
+import com.apkide.apktool.androlib.res.xml.ResXmlStreamPatcher;
 import com.apkide.apktool.androlib.src.SmaliBuilder;
 import com.apkide.apktool.common.BrutException;
 import com.apkide.apktool.common.InvalidUnknownFileException;
@@ -100,6 +101,16 @@ public class ApkBuilder {
             outFile = new File(mApkDir, "dist" + File.separator + (outFileName == null ? "out.apk" : outFileName));
         }
 
+        // a lazily decoded project may still have files left in the apk, all of them go in the build
+        try (LazyApkProject project = LazyApkProject.open(mConfig, mApkDir)) {
+            if (project != null) {
+                LOGGER.info("Decoding " + project.getPendingCount() + " files left by the lazy decode...");
+                project.materializeAll();
+            }
+        } catch (IOException ex) {
+            throw new AndrolibException(ex);
+        }
+
         //noinspection ResultOfMethodCallIgnored
         new File(mApkDir, APK_DIRNAME).mkdirs();
         File manifest = new File(mApkDir, "AndroidManifest.xml");
@@ -145,7 +156,6 @@ public class ApkBuilder {
                     manifestOriginal.delete();
                 }
                 FileSystem.copy(manifest,manifestOriginal);
-                ResXmlPatcher.fixingPublicAttrsInProviderAttributes(manifest);
             } catch (IOException ex) {
                 throw new AndrolibException(ex.getMessage());
             }
@@ -267,18 +277,24 @@ public class ApkBuilder {
                 LOGGER.info("Checking whether resources has changed...");
             }
             File apkDir = new File(appDir, APK_DIRNAME);
-            File resourceFile = new File(apkDir.getParent(), "resources.zip");
+            File resourceFile = mConfig.incrementalAapt2
+                    ? Aapt2CompileCache.getIndexFile(apkDir.getParentFile())
+                    : new File(apkDir.getParent(), "resources.zip");
 
             if (mConfig.forceBuildAll || isModified(newFiles(APP_RESOURCES_FILENAMES, appDir),
                     newFiles(APK_RESOURCES_FILENAMES, apkDir)) || (mConfig.isAapt2() && !isFile(resourceFile))) {
                 LOGGER.info("Building resources...");
 
+                // the provider fix goes in the same pass as the other manifest edits, the manifest only
+                // matters to aapt when it builds the resources
+                ResXmlStreamPatcher manifestPatcher = new ResXmlStreamPatcher();
+                ResXmlPatcher.fixingPublicAttrsInProviderAttributes(manifestPatcher, appDir);
                 if (mConfig.debugMode) {
                     if (mConfig.isAapt2()) {
                         LOGGER.info("Using aapt2 - setting 'debuggable' attribute to 'true' in AndroidManifest.xml");
-                        ResXmlPatcher.setApplicationDebugTagTrue(new File(appDir, "AndroidManifest.xml"));
+                        ResXmlPatcher.setApplicationDebugTagTrue(manifestPatcher);
                     } else {
-                        ResXmlPatcher.removeApplicationDebugTag(new File(appDir, "AndroidManifest.xml"));
+                        ResXmlPatcher.removeApplicationDebugTag(manifestPatcher);
                     }
                 }
 
@@ -296,15 +312,18 @@ public class ApkBuilder {
                         netSecConfOrig.delete();
                     }
                     ResXmlPatcher.modNetworkSecurityConfig(netSecConfOrig);
-                    ResXmlPatcher.setNetworkSecurityConfig(new File(appDir, "AndroidManifest.xml"));
+                    ResXmlPatcher.setNetworkSecurityConfig(manifestPatcher);
                     LOGGER.info("Added permissive network security config in manifest");
                 }
+                ResXmlPatcher.patchManifest(new File(appDir, "AndroidManifest.xml"), manifestPatcher);
 
                 File apkFile = File.createTempFile("APKTOOL", null);
                 //noinspection ResultOfMethodCallIgnored
                 apkFile.delete();
-                //noinspection ResultOfMethodCallIgnored
-                resourceFile.delete();
+                if (!mConfig.incrementalAapt2) {
+                    //noinspection ResultOfMethodCallIgnored
+                    resourceFile.delete();
+                }
 
                 File ninePatch = new File(appDir, "9patch");
                 if (!ninePatch.exists()) {
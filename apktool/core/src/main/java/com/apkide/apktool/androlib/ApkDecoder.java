@@ -27,18 +27,22 @@ import com.apkide.apktool.common.BrutException;
 import com.apkide.apktool.directory.Directory;
 import com.apkide.apktool.directory.DirectoryException;
 import com.apkide.apktool.directory.ExtFile;
+import com.apkide.apktool.directory.ZipExtractor;
 import com.apkide.apktool.util.OS;
 import com.apkide.common.io.FileUtils;
 import com.apkide.common.logger.Logger;
+import com.apkide.smali.dexlib2.dexbacked.DexBackedDexFile;
 import com.apkide.smali.dexlib2.iface.DexFile;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
 
 public class ApkDecoder {
     private final static Logger LOGGER = Logger.getLogger(ApkDecoder.class.getName());
@@ -76,6 +80,32 @@ public class ApkDecoder {
     }
 
     public void decode(File outDir) throws AndrolibException, IOException, DirectoryException {
+        decode(outDir, null);
+    }
+
+    /**
+     * Decodes only the project skeleton: manifest, values XMLs, apktool.yml, original and unknown
+     * files. Smali classes, file-resources and assets are indexed in build/lazy.index, the returned
+     * project decodes them on first read through FileSystem once attached. It has to be closed in
+     * any case, the process reading the files can reopen it with LazyApkProject.open instead.
+     */
+    public LazyApkProject decodeLazily(File outDir) throws AndrolibException, IOException, DirectoryException {
+        LazyApkProject project = new LazyApkProject(mConfig, mApkFile, outDir);
+        boolean started = false;
+        try {
+            decode(outDir, project);
+            project.start();
+            started = true;
+            return project;
+        } finally {
+            if (!started) {
+                project.close();
+            }
+        }
+    }
+
+    private void decode(File outDir, LazyApkProject project)
+        throws AndrolibException, IOException, DirectoryException {
         try {
             if (!mConfig.forceDelete && outDir.exists()) {
                 throw new OutDirExistsException();
@@ -96,7 +126,11 @@ public class ApkDecoder {
 
             ResourcesDecoder resourcesDecoder = new ResourcesDecoder(mConfig, mApkFile);
             resourcesDecoder.decodeManifest(outDir);
-            resourcesDecoder.decodeResources(outDir);
+            if (project != null) {
+                project.addResources(resourcesDecoder, resourcesDecoder.decodeResourcesLazily(outDir));
+            } else {
+                resourcesDecoder.decodeResources(outDir);
+            }
 
             if (hasSources()) {
                 switch (mConfig.decodeSources) {
@@ -105,7 +139,7 @@ public class ApkDecoder {
                         break;
                     case Config.DECODE_SOURCES_SMALI:
                     case Config.DECODE_SOURCES_SMALI_ONLY_MAIN_CLASSES:
-                        decodeSourcesSmali(outDir, "classes.dex");
+                        decodeSourcesSmali(outDir, "classes.dex", project);
                         break;
                 }
             }
@@ -121,11 +155,11 @@ public class ApkDecoder {
                                     copySourcesRaw(outDir, file);
                                     break;
                                 case Config.DECODE_SOURCES_SMALI:
-                                    decodeSourcesSmali(outDir, file);
+                                    decodeSourcesSmali(outDir, file, project);
                                     break;
                                 case Config.DECODE_SOURCES_SMALI_ONLY_MAIN_CLASSES:
                                     if (file.startsWith("classes") && file.endsWith(".dex")) {
-                                        decodeSourcesSmali(outDir, file);
+                                        decodeSourcesSmali(outDir, file, project);
                                     } else {
                                         copySourcesRaw(outDir, file);
                                     }
@@ -142,16 +176,27 @@ public class ApkDecoder {
                 apkInfo.setSdkInfoField("minSdkVersion", Integer.toString(mMinSdkVersion));
             }
 
-            copyRawFiles(outDir);
-            copyUnknownFiles(apkInfo, outDir);
-            Collection<String> mUncompressedFiles = new ArrayList<>();
-            recordUncompressedFiles(apkInfo, resourcesDecoder.getResFileMapping(), mUncompressedFiles);
-            copyOriginalFiles(outDir);
+            // every entry below is copied out of the apk in one parallel pass, with the method
+            // and size of each entry taken from a single read of the central directory
+            try (ZipExtractor extractor = new ZipExtractor(mApkFile)) {
+                Map<File, ZipExtractor.Entry> extractions = new LinkedHashMap<>();
+                copyRawFiles(outDir, extractor, extractions, project);
+                copyUnknownFiles(apkInfo, outDir, extractor, extractions);
+                Collection<String> mUncompressedFiles = new ArrayList<>();
+                recordUncompressedFiles(apkInfo, extractor, resourcesDecoder.getResFileMapping(), mUncompressedFiles);
+                copyOriginalFiles(outDir, extractor, extractions);
+
+                LOGGER.info("Extracting " + extractions.size() + " files...");
+                extractor.extract(extractions, mConfig.jobs);
+            }
             writeApkInfo(apkInfo, outDir);
         } finally {
-            try {
-                mApkFile.close();
-            } catch (IOException ignored) {}
+            // a lazy project reads from the apk until it is closed
+            if (project == null) {
+                try {
+                    mApkFile.close();
+                } catch (IOException ignored) {}
+            }
         }
     }
 
@@ -198,7 +243,7 @@ public class ApkDecoder {
         }
     }
 
-    private void decodeSourcesSmali(File outDir, String filename)
+    private void decodeSourcesSmali(File outDir, String filename, LazyApkProject project)
         throws AndrolibException {
         try {
             File smaliDir;
@@ -210,9 +255,17 @@ public class ApkDecoder {
             OS.rmdir(smaliDir);
             //noinspection ResultOfMethodCallIgnored
             smaliDir.mkdirs();
-            LOGGER.info("Baksmaling " + filename + "...");
-            DexFile dexFile = SmaliDecoder.decode(mApkFile, smaliDir, filename,
-                mConfig.baksmaliDebugMode, mConfig.apiLevel);
+            DexFile dexFile;
+            if (project != null) {
+                LOGGER.info("Indexing " + filename + "...");
+                DexBackedDexFile dexBackedFile = SmaliDecoder.loadDexFile(mApkFile, filename, mConfig.apiLevel);
+                project.addDexFile(filename, dexBackedFile, smaliDir);
+                dexFile = dexBackedFile;
+            } else {
+                LOGGER.info("Baksmaling " + filename + "...");
+                dexFile = SmaliDecoder.decode(mApkFile, smaliDir, filename,
+                    mConfig.baksmaliDebugMode, mConfig.apiLevel);
+            }
             int minSdkVersion = dexFile.getOpcodes().api;
             if (mMinSdkVersion == 0 || mMinSdkVersion > minSdkVersion) {
                 mMinSdkVersion = minSdkVersion;
@@ -222,28 +275,23 @@ public class ApkDecoder {
         }
     }
 
-    private void copyRawFiles(File outDir)
-        throws AndrolibException {
-        LOGGER.info("Copying assets and libs...");
-        try {
-            Directory in = mApkFile.getDirectory();
-
-            if (mConfig.decodeAssets == Config.DECODE_ASSETS_FULL) {
-                if (in.containsDir("assets")) {
-                    in.copyToDir(outDir, "assets");
+    private void copyRawFiles(File outDir, ZipExtractor extractor, Map<File, ZipExtractor.Entry> extractions,
+                              LazyApkProject project) throws AndrolibException {
+        LOGGER.info(project != null ? "Indexing assets and libs..." : "Copying assets and libs...");
+        for (ZipExtractor.Entry entry : extractor.getEntries().values()) {
+            String name = entry.name;
+            if ((mConfig.decodeAssets == Config.DECODE_ASSETS_FULL && name.startsWith("assets/"))
+                || name.startsWith("lib/") || name.startsWith("libs/") || name.startsWith("kotlin/")) {
+                File outFile = ZipExtractor.getOutFile(outDir, entry);
+                if (outFile == null) {
+                    continue;
+                }
+                if (project != null) {
+                    project.addRawFile(name);
+                } else {
+                    extractions.put(outFile, entry);
                 }
             }
-            if (in.containsDir("lib")) {
-                in.copyToDir(outDir, "lib");
-            }
-            if (in.containsDir("libs")) {
-                in.copyToDir(outDir, "libs");
-            }
-            if (in.containsDir("kotlin")) {
-                in.copyToDir(outDir, "kotlin");
-            }
-        } catch (DirectoryException ex) {
-            throw new AndrolibException(ex);
         }
     }
 
@@ -256,34 +304,33 @@ public class ApkDecoder {
         return false;
     }
 
-    private void copyUnknownFiles(ApkInfo apkInfo, File outDir)
-        throws AndrolibException {
+    private void copyUnknownFiles(ApkInfo apkInfo, File outDir, ZipExtractor extractor,
+                                  Map<File, ZipExtractor.Entry> extractions) {
         LOGGER.info("Copying unknown files...");
         File unknownOut = new File(outDir, UNK_DIRNAME);
-        try {
-            Directory unk = mApkFile.getDirectory();
 
-            // loop all items in container recursively, ignoring any that are pre-defined by aapt
-            Set<String> files = unk.getFiles(true);
-            for (String file : files) {
-                if (!isAPKFileNames(file) && !file.endsWith(".dex")) {
-
-                    // copy file out of archive into special "unknown" folder
-                    unk.copyToDir(unknownOut, file);
-                    // let's record the name of the file, and its compression type
-                    // so that we may re-include it the same way
-                    mResUnknownFiles.addUnknownFileInfo(file, String.valueOf(unk.getCompressionLevel(file)));
+        // loop all items in container recursively, ignoring any that are pre-defined by aapt
+        for (ZipExtractor.Entry entry : extractor.getEntries().values()) {
+            String file = entry.name;
+            if (!isAPKFileNames(file) && !file.endsWith(".dex")) {
+                File outFile = ZipExtractor.getOutFile(unknownOut, entry);
+                if (outFile == null) {
+                    continue;
                 }
+
+                // copy file out of archive into special "unknown" folder
+                extractions.put(outFile, entry);
+                // let's record the name of the file, and its compression type
+                // so that we may re-include it the same way
+                mResUnknownFiles.addUnknownFileInfo(file, String.valueOf(entry.method));
             }
-            // update apk info
-            apkInfo.unknownFiles = mResUnknownFiles.getUnknownFiles();
-        } catch (DirectoryException ex) {
-            throw new AndrolibException(ex);
         }
+        // update apk info
+        apkInfo.unknownFiles = mResUnknownFiles.getUnknownFiles();
     }
 
-    private void copyOriginalFiles(File outDir)
-        throws AndrolibException {
+    private void copyOriginalFiles(File outDir, ZipExtractor extractor,
+                                   Map<File, ZipExtractor.Entry> extractions) {
         LOGGER.info("Copying original files...");
         File originalDir = new File(outDir, "original");
         if (!originalDir.exists()) {
@@ -291,63 +338,59 @@ public class ApkDecoder {
             originalDir.mkdirs();
         }
 
-        try {
-            Directory in = mApkFile.getDirectory();
-            if (in.containsFile("AndroidManifest.xml")) {
-                in.copyToDir(originalDir, "AndroidManifest.xml");
-            }
-            if (in.containsFile("stamp-cert-sha256")) {
-                in.copyToDir(originalDir, "stamp-cert-sha256");
+        boolean hasServices = false;
+        for (ZipExtractor.Entry entry : extractor.getEntries().values()) {
+            String file = entry.name;
+            if (file.equals("AndroidManifest.xml") || file.equals("stamp-cert-sha256")
+                || file.startsWith("META-INF/")) {
+                File outFile = ZipExtractor.getOutFile(originalDir, entry);
+                if (outFile != null) {
+                    extractions.put(outFile, entry);
+                }
             }
-            if (in.containsDir("META-INF")) {
-                in.copyToDir(originalDir, "META-INF");
-
-                if (in.containsDir("META-INF/services")) {
-                    // If the original APK contains the folder META-INF/services folder
-                    // that is used for service locators (like coroutines on android),
-                    // copy it to the destination folder, so it does not get dropped.
+            if (file.startsWith("META-INF/services/")) {
+                File outFile = ZipExtractor.getOutFile(outDir, entry);
+                if (outFile == null) {
+                    continue;
+                }
+                // If the original APK contains the folder META-INF/services folder
+                // that is used for service locators (like coroutines on android),
+                // copy it to the destination folder, so it does not get dropped.
+                if (!hasServices) {
                     LOGGER.info("Copying META-INF/services directory");
-                    in.copyToDir(outDir, "META-INF/services");
+                    hasServices = true;
                 }
+                extractions.put(outFile, entry);
             }
-        } catch (DirectoryException ex) {
-            throw new AndrolibException(ex);
         }
     }
 
     private void recordUncompressedFiles(ApkInfo apkInfo,
+                                         ZipExtractor extractor,
                                          Map<String, String> resFileMapping,
-                                         Collection<String> uncompressedFilesOrExts)
-        throws AndrolibException {
-        try {
-            Directory unk = mApkFile.getDirectory();
-            Set<String> files = unk.getFiles(true);
-
-            for (String file : files) {
-                if (isAPKFileNames(file) && unk.getCompressionLevel(file) == 0) {
-                    String extOrFile = "";
-                    if (unk.getSize(file) != 0) {
-                        extOrFile = FileUtils.getExtension(file);
-                    }
+                                         Collection<String> uncompressedFilesOrExts) {
+        for (ZipExtractor.Entry entry : extractor.getEntries().values()) {
+            String file = entry.name;
+            if (isAPKFileNames(file) && entry.method == ZipEntry.STORED) {
+                String extOrFile = "";
+                if (entry.size != 0) {
+                    extOrFile = FileUtils.getExtension(file);
+                }
 
-                    if (extOrFile.isEmpty() || !NO_COMPRESS_PATTERN.matcher(extOrFile).find()) {
-                        extOrFile = file;
-                        if (resFileMapping.containsKey(extOrFile)) {
-                            extOrFile = resFileMapping.get(extOrFile);
-                        }
-                    }
-                    if (!uncompressedFilesOrExts.contains(extOrFile)) {
-                        uncompressedFilesOrExts.add(extOrFile);
+                if (extOrFile.isEmpty() || !NO_COMPRESS_PATTERN.matcher(extOrFile).find()) {
+                    extOrFile = file;
+                    if (resFileMapping.containsKey(extOrFile)) {
+                        extOrFile = resFileMapping.get(extOrFile);
                     }
                 }
+                if (!uncompressedFilesOrExts.contains(extOrFile)) {
+                    uncompressedFilesOrExts.add(extOrFile);
+                }
             }
-            // update apk info
-            if (!uncompressedFilesOrExts.isEmpty()) {
-                apkInfo.doNotCompress = uncompressedFilesOrExts;
-            }
-
-        } catch (DirectoryException ex) {
-            throw new AndrolibException(ex);
+        }
+        // update apk info
+        if (!uncompressedFilesOrExts.isEmpty()) {
+            apkInfo.doNotCompress = uncompressedFilesOrExts;
         }
     }
 }
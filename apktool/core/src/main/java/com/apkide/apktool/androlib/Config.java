@@ -48,6 +48,7 @@ public class Config {
     public boolean updateFiles = false;
     public boolean useAapt2 = true;//没有适配aapt v1 二进制文件
     public boolean noCrunch = false;
+    public boolean incrementalAapt2 = true;
     public int forceApi = 0;
 
     // Decode options
@@ -60,12 +61,15 @@ public class Config {
     public boolean forceDelete = true;
     public boolean keepBrokenResources = false;
     public boolean baksmaliDebugMode = true;
+    // leaves smali classes, file-resources and assets in the apk until they are read
+    public boolean decodeLazily = true;
 
     // Common options
     public String frameworkDirectory = null;
     public String frameworkTag = null;
     public String aaptPath = "";//不需要外部的 aapt
     public int aaptVersion = 2; // default to v2, 没有适配aapt v1 二进制文件
+    public int jobs = Runtime.getRuntime().availableProcessors();
 
     // Utility functions
     public boolean isAapt2() {
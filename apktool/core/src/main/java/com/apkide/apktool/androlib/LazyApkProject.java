@@ -0,0 +1,765 @@
+/*
+ *  Copyright (C) 2010 Ryszard Wiśniewski <brut.alll@gmail.com>
+ *  Copyright (C) 2010 Connor Tumbleson <connor.tumbleson@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.apkide.apktool.androlib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.apktool.androlib.exceptions.AndrolibException;
+import com.apkide.apktool.androlib.res.ResourcesDecoder;
+import com.apkide.apktool.androlib.res.data.ResPackage;
+import com.apkide.apktool.androlib.res.data.ResResource;
+import com.apkide.apktool.androlib.res.decoder.ResFileDecoder;
+import com.apkide.apktool.androlib.src.SmaliDecoder;
+import com.apkide.apktool.common.BrutException;
+import com.apkide.apktool.directory.DirectoryException;
+import com.apkide.apktool.directory.ExtFile;
+import com.apkide.apktool.util.OS;
+import com.apkide.common.FileSystem;
+import com.apkide.common.logger.Logger;
+import com.apkide.smali.baksmali.Baksmali;
+import com.apkide.smali.baksmali.BaksmaliOptions;
+import com.apkide.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.apkide.smali.dexlib2.iface.ClassDef;
+import com.apkide.smali.util.ClassFileNameHandler;
+import com.google.common.collect.Ordering;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Project decoded by ApkDecoder.decodeLazily. The manifest, values XMLs and apktool.yml are on
+ * disk, while smali classes, file-resources and assets are only listed in build/lazy.index and
+ * written the first time they are read through FileSystem, or by the background warm-up thread.
+ * <p>
+ * The project hooks into FileSystem of the process that attaches it, which has to be the one
+ * reading the files. Any process can reopen it from its index with open(), and the index is
+ * rewritten with the files still pending when the project is closed.
+ * <p>
+ * Every file is written to build/lazy.tmp first and then moved in place, so two processes
+ * decoding the same file never leave a half-written one behind.
+ */
+public class LazyApkProject implements FileSystem.FileMaterializer, Closeable {
+    private final static Logger LOGGER = Logger.getLogger(LazyApkProject.class.getName());
+
+    public final static String INDEX_FILENAME = "lazy.index";
+    private final static String TMP_DIRNAME = "lazy.tmp";
+
+    private final Config mConfig;
+    private final ExtFile mApkFile;
+    private final File mOutDir;
+    private final String mOutPath;
+    private final int mApiLevel;
+    private final boolean mBaksmaliDebugMode;
+    private final Object mLock = new Object();
+
+    // guarded by mLock, every name of a pending file maps to its entry while only the name it is
+    // listed under is in mPendingDirs
+    private final Map<String, Entry> mPending = new LinkedHashMap<>();
+    private final Map<String, Set<String>> mPendingDirs = new LinkedHashMap<>();
+
+    // guarded by mDecoderLock, filled on the first file that needs them
+    private final Object mDecoderLock = new Object();
+    private ResourcesDecoder mResourcesDecoder;
+    private Map<String, ResResource> mResources;
+    private final Map<String, DexClasses> mDexFiles = new HashMap<>();
+
+    // guarded by mLock, the entries of the apk give the size and time of the files not written yet
+    private ZipFile mZipFile;
+    private Thread mWarmUpThread;
+    private volatile boolean mClosed;
+
+    LazyApkProject(Config config, ExtFile apkFile, File outDir) {
+        this(config, apkFile, outDir, config.apiLevel, config.baksmaliDebugMode);
+    }
+
+    private LazyApkProject(Config config, ExtFile apkFile, File outDir, int apiLevel, boolean baksmaliDebugMode) {
+        mConfig = config;
+        mApkFile = apkFile;
+        mOutDir = outDir.getAbsoluteFile();
+        mOutPath = mOutDir.getPath() + File.separator;
+        mApiLevel = apiLevel;
+        mBaksmaliDebugMode = baksmaliDebugMode;
+    }
+
+    /**
+     * Reopens a project decoded lazily, with every file listed in its index that is not on disk
+     * yet pending again.
+     *
+     * @return The project, not attached yet, or null if the project has no files pending
+     */
+    @Nullable
+    public static LazyApkProject open(Config config, File outDir) throws AndrolibException {
+        File index = getIndexFile(outDir);
+        if (!index.isFile()) {
+            return null;
+        }
+
+        LazyApkProject project = null;
+        try (BufferedReader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            String[] fields = header == null ? new String[0] : header.split("\t", -1);
+            if (fields.length != 4 || !fields[0].equals("apk")) {
+                throw new AndrolibException("Invalid header in " + index + ": " + header);
+            }
+            ExtFile apkFile = new ExtFile(fields[1]);
+            if (!apkFile.isFile()) {
+                throw new AndrolibException("Apk of the lazily decoded project is gone: " + apkFile);
+            }
+            project = new LazyApkProject(config, apkFile, outDir,
+                Integer.parseInt(fields[2]), Boolean.parseBoolean(fields[3]));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    project.add(line, true);
+                }
+            }
+        } catch (IOException | NumberFormatException ex) {
+            throw new AndrolibException("Could not read " + index, ex);
+        }
+
+        if (project.getPendingCount() == 0) {
+            //noinspection ResultOfMethodCallIgnored
+            index.delete();
+            try {
+                project.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+        LOGGER.info("Lazy decode: " + project.getPendingCount() + " files left to decode on demand");
+        return project;
+    }
+
+    public File getOutDir() {
+        return mOutDir;
+    }
+
+    void addResources(ResourcesDecoder resourcesDecoder, Map<String, ResResource> files)
+            throws AndrolibException {
+        synchronized (mDecoderLock) {
+            mResourcesDecoder = resourcesDecoder;
+        }
+        for (Map.Entry<String, ResResource> entry : files.entrySet()) {
+            ResResource res = entry.getValue();
+            String fallback = ResFileDecoder.getFallbackOutFilePath(res);
+            add("res\t" + entry.getKey() + "\t" + res.getValue().toString()
+                + "\t" + (fallback == null ? "" : fallback), false);
+        }
+    }
+
+    void addDexFile(String dexName, DexBackedDexFile dexFile, File smaliDir) throws AndrolibException {
+        DexClasses dexClasses = new DexClasses(dexFile, mBaksmaliDebugMode);
+        synchronized (mDecoderLock) {
+            mDexFiles.put(dexName, dexClasses);
+        }
+
+        // same order and collision handling as Baksmali.disassembleDexFile, so a lazily decoded
+        // class ends up in the same file as an eagerly decoded one
+        List<? extends ClassDef> classDefs = Ordering.natural().sortedCopy(dexFile.getClasses());
+        ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(smaliDir, ".smali");
+        List<File> placeholders = new ArrayList<>(classDefs.size());
+        try {
+            String smaliPath = getRelativePath(smaliDir);
+            String smaliRoot = smaliDir.getCanonicalPath() + File.separator;
+            for (ClassDef classDef : classDefs) {
+                String type = classDef.getType();
+                if (type.charAt(0) != 'L' || type.charAt(type.length() - 1) != ';') {
+                    LOGGER.warning("Unrecognized class descriptor - " + type + " - skipping class");
+                    continue;
+                }
+                // the handler creates an empty file to detect collisions on case-insensitive
+                // file systems, it is removed again once the whole dex is indexed
+                File smaliFile = fileNameHandler.getUniqueFilenameForClass(type);
+                placeholders.add(smaliFile);
+                String path = smaliPath + "/" + smaliFile.getPath().substring(smaliRoot.length())
+                    .replace(File.separatorChar, '/');
+                add("smali\t" + path + "\t" + dexName + "\t" + type, false);
+            }
+        } catch (IOException | RuntimeException ex) {
+            throw new AndrolibException(ex);
+        } finally {
+            for (File placeholder : placeholders) {
+                if (placeholder.length() == 0) {
+                    //noinspection ResultOfMethodCallIgnored
+                    placeholder.delete();
+                }
+            }
+        }
+    }
+
+    void addRawFile(String path) throws AndrolibException {
+        add("raw\t" + path, false);
+    }
+
+    /**
+     * Adds the file of an index line, unless the line is reopened and the file is on disk already.
+     */
+    private void add(String line, boolean reopened) throws AndrolibException {
+        Entry entry = new Entry(line);
+        if (reopened && isOnDisk(entry)) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mPending.containsKey(entry.path)) {
+                return;
+            }
+            mPending.put(entry.path, entry);
+            if (entry.fallbackPath != null) {
+                mPending.put(entry.fallbackPath, entry);
+            }
+            mPendingDirs.computeIfAbsent(getParentPath(entry.path), key -> new LinkedHashSet<>())
+                .add(entry.path);
+        }
+    }
+
+    private boolean isOnDisk(Entry entry) {
+        return new File(mOutDir, entry.path).exists()
+            || (entry.fallbackPath != null && new File(mOutDir, entry.fallbackPath).exists());
+    }
+
+    private static String getParentPath(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash == -1 ? "" : path.substring(0, slash);
+    }
+
+    /**
+     * Creates the directory skeleton and writes the index.
+     */
+    void start() throws AndrolibException {
+        synchronized (mLock) {
+            for (String dir : mPendingDirs.keySet()) {
+                File file = new File(mOutDir, dir);
+                if (!file.isDirectory() && !file.mkdirs()) {
+                    throw new AndrolibException("Could not create directory: " + file);
+                }
+            }
+        }
+        writeIndex();
+        LOGGER.info("Lazy decode: " + getPendingCount() + " files left to decode on demand");
+    }
+
+    /**
+     * Hooks the project into FileSystem of this process and starts warming up the pending files
+     * in the background.
+     */
+    public void attach() {
+        synchronized (mLock) {
+            if (mClosed || mWarmUpThread != null) {
+                return;
+            }
+            mWarmUpThread = new Thread(this::warmUp, "LazyApkProject-WarmUp");
+        }
+        FileSystem.addMaterializer(this);
+
+        mWarmUpThread.setDaemon(true);
+        mWarmUpThread.setPriority(Thread.MIN_PRIORITY);
+        mWarmUpThread.start();
+    }
+
+    private void writeIndex() throws AndrolibException {
+        File index = getIndexFile(mOutDir);
+        List<String> lines = new ArrayList<>();
+        synchronized (mLock) {
+            for (Map.Entry<String, Entry> entry : mPending.entrySet()) {
+                // an entry is in the map once for each of its names
+                if (entry.getKey().equals(entry.getValue().path)) {
+                    lines.add(entry.getValue().line);
+                }
+            }
+        }
+        if (lines.isEmpty()) {
+            //noinspection ResultOfMethodCallIgnored
+            index.delete();
+            return;
+        }
+
+        try {
+            File tmp = createTmpFile();
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write("apk\t" + mApkFile.getAbsolutePath() + "\t" + mApiLevel + "\t" + mBaksmaliDebugMode);
+                writer.newLine();
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new AndrolibException("Could not write " + index, ex);
+        }
+    }
+
+    public static File getIndexFile(File outDir) {
+        return new File(new File(outDir, "build"), INDEX_FILENAME);
+    }
+
+    private File getTmpDir() throws IOException {
+        File dir = new File(new File(mOutDir, "build"), TMP_DIRNAME);
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+        return dir;
+    }
+
+    private File createTmpFile() throws IOException {
+        return File.createTempFile("lazy", null, getTmpDir());
+    }
+
+    private void warmUp() {
+        List<String> paths;
+        synchronized (mLock) {
+            paths = new ArrayList<>(mPending.keySet());
+        }
+        for (String path : paths) {
+            if (mClosed || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                materializeRelative(path);
+            } catch (AndrolibException ex) {
+                LOGGER.warning("Lazy decode: could not decode " + path + ": " + ex.getMessage());
+            }
+        }
+        if (getPendingCount() == 0) {
+            LOGGER.info("Lazy decode: finished");
+            //noinspection ResultOfMethodCallIgnored
+            getIndexFile(mOutDir).delete();
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (mLock) {
+            return mPendingDirs.values().stream().mapToInt(Set::size).sum();
+        }
+    }
+
+    /**
+     * Decodes every file that is still pending, ie before building the project.
+     */
+    public void materializeAll() throws AndrolibException {
+        List<String> paths;
+        synchronized (mLock) {
+            paths = new ArrayList<>(mPending.keySet());
+        }
+        for (String path : paths) {
+            materializeRelative(path);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        getIndexFile(mOutDir).delete();
+    }
+
+    private void materializeRelative(String path) throws AndrolibException {
+        // the entry is claimed while it is decoded, so the other threads asking for it wait for it
+        // instead of decoding it twice, and it only stops being pending once it is on disk
+        Entry entry;
+        synchronized (mLock) {
+            while (true) {
+                entry = mPending.get(path);
+                if (entry == null) {
+                    return;
+                }
+                if (!entry.claimed) {
+                    entry.claimed = true;
+                    break;
+                }
+                try {
+                    mLock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AndrolibException("Interrupted while waiting for " + path);
+                }
+            }
+        }
+
+        boolean done = false;
+        try {
+            if (isOnDisk(entry)) {
+                // written by the user, or another process, in the meantime, never overwrite it
+                done = true;
+                return;
+            }
+            LOGGER.verbose("Lazy decode: " + entry.path);
+            materialize(entry);
+            done = true;
+        } finally {
+            synchronized (mLock) {
+                entry.claimed = false;
+                if (done) {
+                    mPending.remove(entry.path);
+                    if (entry.fallbackPath != null) {
+                        mPending.remove(entry.fallbackPath);
+                    }
+                    Set<String> siblings = mPendingDirs.get(getParentPath(entry.path));
+                    if (siblings != null) {
+                        siblings.remove(entry.path);
+                    }
+                }
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void materialize(Entry entry) throws AndrolibException {
+        switch (entry.kind) {
+            case "smali":
+                decodeClass(entry.path, entry.source, entry.type);
+                break;
+            case "res":
+                decodeResource(entry.path, entry.fallbackPath, entry.source);
+                break;
+            case "raw":
+                copyRawFile(entry.path);
+                break;
+        }
+
+        // the file keeps the time it had while pending, so it doesn't look changed once written
+        ZipEntry zipEntry = getZipEntry(entry);
+        if (zipEntry != null && zipEntry.getTime() > 0) {
+            File file = new File(mOutDir, entry.path);
+            if (!file.exists() && entry.fallbackPath != null) {
+                file = new File(mOutDir, entry.fallbackPath);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(zipEntry.getTime());
+        }
+    }
+
+    /**
+     * @return the entry of the apk the file is decoded from, the dex file for a class
+     */
+    @Nullable
+    private ZipEntry getZipEntry(Entry entry) {
+        String name = entry.kind.equals("raw") ? entry.path : entry.source;
+        synchronized (mLock) {
+            if (mClosed) {
+                return null;
+            }
+            try {
+                if (mZipFile == null) {
+                    mZipFile = new ZipFile(mApkFile);
+                }
+            } catch (IOException ex) {
+                LOGGER.warning("Could not open " + mApkFile + ": " + ex.getMessage());
+                return null;
+            }
+            return mZipFile.getEntry(name);
+        }
+    }
+
+    private void decodeClass(String path, String dexName, String type) throws AndrolibException {
+        DexClasses dexClasses;
+        synchronized (mDecoderLock) {
+            dexClasses = mDexFiles.get(dexName);
+            if (dexClasses == null) {
+                dexClasses = new DexClasses(SmaliDecoder.loadDexFile(mApkFile, dexName, mApiLevel),
+                    mBaksmaliDebugMode);
+                mDexFiles.put(dexName, dexClasses);
+            }
+        }
+        ClassDef classDef = dexClasses.classDefs.get(type);
+        if (classDef == null) {
+            throw new AndrolibException("Could not find class " + type + " in " + dexName);
+        }
+
+        BaksmaliOptions options = dexClasses.options;
+        try {
+            File tmp = createTmpFile();
+            if (!Baksmali.disassembleClass(classDef, tmp, options)) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                throw new AndrolibException("Could not disassemble class " + type);
+            }
+            moveInPlace(tmp, path);
+        } catch (IOException ex) {
+            throw new AndrolibException(ex);
+        }
+    }
+
+    private void decodeResource(String path, String fallbackPath, String inFilePath) throws AndrolibException {
+        ResourcesDecoder resourcesDecoder;
+        ResResource res;
+        synchronized (mDecoderLock) {
+            if (mResourcesDecoder == null) {
+                mResourcesDecoder = new ResourcesDecoder(mConfig, mApkFile);
+            }
+            resourcesDecoder = mResourcesDecoder;
+            if (mResources == null) {
+                mResources = new HashMap<>();
+                for (ResPackage pkg : resourcesDecoder.getResTable().listMainPackages()) {
+                    for (ResResource file : pkg.listFiles()) {
+                        mResources.put(file.getValue().toString(), file);
+                    }
+                }
+            }
+            res = mResources.get(inFilePath);
+        }
+        if (res == null) {
+            throw new AndrolibException("Could not find resource " + inFilePath);
+        }
+
+        // the decoder only tells which name it picked by the file it writes
+        File tmpDir = null;
+        try {
+            tmpDir = Files.createTempDirectory(getTmpDir().toPath(), "res").toFile();
+            resourcesDecoder.decodeFileResource(res, tmpDir);
+            File file = new File(tmpDir, path);
+            if (file.exists()) {
+                moveInPlace(file, path);
+            } else if (fallbackPath != null && new File(tmpDir, fallbackPath).exists()) {
+                moveInPlace(new File(tmpDir, fallbackPath), fallbackPath);
+            } else {
+                throw new AndrolibException("Could not decode resource " + inFilePath);
+            }
+        } catch (IOException ex) {
+            throw new AndrolibException(ex);
+        } finally {
+            if (tmpDir != null) {
+                try {
+                    OS.rmdir(tmpDir);
+                } catch (BrutException ignored) {
+                }
+            }
+        }
+    }
+
+    private void copyRawFile(String path) throws AndrolibException {
+        try {
+            File tmp = createTmpFile();
+            try (InputStream in = mApkFile.getDirectory().getFileInput(path)) {
+                Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moveInPlace(tmp, path);
+        } catch (DirectoryException | IOException ex) {
+            throw new AndrolibException(ex);
+        }
+    }
+
+    private void moveInPlace(File tmp, String path) throws IOException {
+        File file = new File(mOutDir, path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create directory: " + parent);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String getRelativePath(File file) {
+        String path = file.getAbsolutePath();
+        if (!path.startsWith(mOutPath)) {
+            return null;
+        }
+        return path.substring(mOutPath.length()).replace(File.separatorChar, '/');
+    }
+
+    private String getRelativePath(String filePath) {
+        return getRelativePath(new File(filePath));
+    }
+
+    @Override
+    public boolean isPendingFile(@NonNull String filePath) {
+        String path = getRelativePath(filePath);
+        if (path == null) {
+            return false;
+        }
+        synchronized (mLock) {
+            return mPending.containsKey(path);
+        }
+    }
+
+    @Override
+    public void materialize(@NonNull String filePath) throws IOException {
+        String path = getRelativePath(filePath);
+        if (path == null) {
+            return;
+        }
+        try {
+            materializeRelative(path);
+        } catch (AndrolibException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public long getPendingLength(@NonNull String filePath) {
+        Entry entry = getPendingEntry(filePath);
+        if (entry == null) {
+            return -1;
+        }
+        if (entry.kind.equals("smali")) {
+            // a class has no entry of its own in the apk, its size is only known once it is written
+            try {
+                materialize(filePath);
+            } catch (IOException ex) {
+                LOGGER.warning("Could not decode " + filePath + ": " + ex.getMessage());
+                return -1;
+            }
+            File file = new File(filePath);
+            return file.exists() ? file.length() : -1;
+        }
+        ZipEntry zipEntry = getZipEntry(entry);
+        return zipEntry != null ? zipEntry.getSize() : -1;
+    }
+
+    @Override
+    public long getPendingLastModified(@NonNull String filePath) {
+        Entry entry = getPendingEntry(filePath);
+        ZipEntry zipEntry = entry != null ? getZipEntry(entry) : null;
+        return zipEntry != null ? zipEntry.getTime() : -1;
+    }
+
+    @Nullable
+    private Entry getPendingEntry(String filePath) {
+        String path = getRelativePath(filePath);
+        if (path == null) {
+            return null;
+        }
+        synchronized (mLock) {
+            return mPending.get(path);
+        }
+    }
+
+    @NonNull
+    @Override
+    public List<String> getPendingChildEntries(@NonNull String dirPath) {
+        String dir = new File(dirPath).getAbsolutePath().equals(mOutDir.getPath())
+            ? "" : getRelativePath(dirPath);
+        if (dir == null) {
+            return Collections.emptyList();
+        }
+        List<String> children = new ArrayList<>();
+        synchronized (mLock) {
+            Set<String> paths = mPendingDirs.get(dir);
+            if (paths != null) {
+                for (String path : paths) {
+                    children.add(new File(mOutDir, path).getPath());
+                }
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Thread warmUpThread;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            warmUpThread = mWarmUpThread;
+        }
+        if (warmUpThread != null) {
+            FileSystem.removeMaterializer(this);
+            warmUpThread.interrupt();
+            try {
+                warmUpThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            // files deleted by the user since they were decoded must not come back on reopen
+            try {
+                writeIndex();
+            } catch (AndrolibException ex) {
+                throw new IOException(ex);
+            }
+        }
+        ZipFile zipFile;
+        synchronized (mLock) {
+            zipFile = mZipFile;
+            mZipFile = null;
+        }
+        if (zipFile != null) {
+            zipFile.close();
+        }
+        mApkFile.close();
+    }
+
+    /**
+     * A file of the index, one line each: "smali path dexName type", "res path inFilePath
+     * fallbackPath" or "raw path", separated by tabs.
+     */
+    private static final class Entry {
+        final String line;
+        final String kind;
+        final String path;
+        final String source;
+        final String type;
+        final String fallbackPath;
+
+        // guarded by mLock
+        boolean claimed;
+
+        Entry(String line) throws AndrolibException {
+            this.line = line;
+            String[] fields = line.split("\t", -1);
+            kind = fields[0];
+            int count;
+            switch (kind) {
+                case "smali":
+                case "res":
+                    count = 4;
+                    break;
+                case "raw":
+                    count = 2;
+                    break;
+                default:
+                    count = -1;
+                    break;
+            }
+            if (fields.length != count || fields[1].isEmpty()) {
+                throw new AndrolibException("Invalid line in " + INDEX_FILENAME + ": " + line);
+            }
+            path = fields[1];
+            source = count > 2 ? fields[2] : null;
+            type = kind.equals("smali") ? fields[3] : null;
+            fallbackPath = kind.equals("res") && !fields[3].isEmpty() ? fields[3] : null;
+        }
+    }
+
+    private static final class DexClasses {
+        final Map<String, ClassDef> classDefs = new HashMap<>();
+        final BaksmaliOptions options;
+
+        DexClasses(DexBackedDexFile dexFile, boolean baksmaliDebugMode) {
+            for (ClassDef classDef : dexFile.getClasses()) {
+                classDefs.put(classDef.getType(), classDef);
+            }
+            options = SmaliDecoder.createOptions(dexFile, baksmaliDebugMode);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import com.apkide.apktool.androlib.res.util.ExtMXSerializer;
 import com.apkide.apktool.androlib.res.util.ExtXmlSerializer;
 import com.apkide.apktool.androlib.res.xml.ResValuesXmlSerializable;
 import com.apkide.apktool.androlib.res.xml.ResXmlPatcher;
+import com.apkide.apktool.androlib.res.xml.ResXmlStreamPatcher;
 import com.apkide.apktool.directory.Directory;
 import com.apkide.apktool.directory.DirectoryException;
 import com.apkide.apktool.directory.ExtFile;
@@ -45,12 +46,24 @@ import com.apkide.common.logger.Logger;
 
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ResourcesDecoder {
     private final static Logger LOGGER = Logger.getLogger(ResourcesDecoder.class.getName());
@@ -60,11 +73,13 @@ public class ResourcesDecoder {
     private final ResTable mResTable;
     private final ApkInfo mApkInfo;
     private final Map<String, String> mResFileMapping = new HashMap<>();
+    private Duo<ResFileDecoder, AXmlResourceParser> mLazyFileDecoder;
 
     private final static String[] APK_RESOURCES_FILENAMES = new String[] {
         "resources.arsc", "res", "r", "R" };
     private final static String[] APK_MANIFEST_FILENAMES = new String[] {
         "AndroidManifest.xml" };
+    private final static int VALUES_FILE_BUFFER_SIZE = 64 * 1024;
     private final static String[] IGNORED_PACKAGES = new String[] {
         "android", "com.htc", "com.lge", "com.lge.internal", "yi", "flyme", "air.com.adobe.appentry",
         "FFFFFFFFFFFFFFFFFFFFFF" };
@@ -186,17 +201,20 @@ public class ResourcesDecoder {
                 // also remove the android::versionCode / versionName from manifest for rebuild
                 // this is a required change to prevent aapt warning about conflicting versions
                 // it will be passed as a parameter to aapt like "--min-sdk-version" via apktool.yml
-                adjustPackageManifest(resTable, outDir.getAbsolutePath() + File.separator + "AndroidManifest.xml");
+                ResXmlStreamPatcher patcher = new ResXmlStreamPatcher();
+                adjustPackageManifest(resTable, patcher);
+                ResXmlPatcher.removeManifestVersions(patcher);
 
-                ResXmlPatcher.removeManifestVersions(new File(
-                    outDir.getAbsolutePath() + File.separator + "AndroidManifest.xml"));
+                // apply both edits in a single pass over the decoded manifest
+                ResXmlPatcher.patchManifest(new File(
+                    outDir.getAbsolutePath() + File.separator + "AndroidManifest.xml"), patcher);
             }
         } catch (DirectoryException ex) {
             throw new AndrolibException(ex);
         }
     }
 
-    private void adjustPackageManifest(ResTable resTable, String filePath)
+    private void adjustPackageManifest(ResTable resTable, ResXmlStreamPatcher patcher)
         throws AndrolibException {
 
         // compare resources.arsc package name to the one present in AndroidManifest
@@ -216,7 +234,7 @@ public class ResourcesDecoder {
             LOGGER.info("Regular manifest package...");
         } else {
             LOGGER.info("Renamed manifest package found! Replacing " + pkgRenamed + " with " + pkgOriginal);
-            ResXmlPatcher.renameManifestPackage(new File(filePath), pkgOriginal);
+            ResXmlPatcher.renameManifestPackage(patcher, pkgOriginal);
         }
     }
 
@@ -286,9 +304,7 @@ public class ResourcesDecoder {
             }
 
             LOGGER.info("Decoding values */* XMLs...");
-            for (ResValuesFile valuesFile : pkg.listValuesFiles()) {
-                generateValuesFile(valuesFile, out, xmlSerializer);
-            }
+            generateValuesFiles(pkg.listValuesFiles(), new File(outDir, "res"));
             generatePublicXml(pkg, out, xmlSerializer);
         }
 
@@ -298,6 +314,61 @@ public class ResourcesDecoder {
         }
     }
 
+    /**
+     * Lazy counterpart of decodeResources(File): values XMLs and public.xml are generated, but
+     * file-resources are only indexed. Each of them can be decoded later on with
+     * decodeFileResource, which keeps this decoder (and the apk) alive until then.
+     *
+     * @return File-resources keyed by their path relative to outDir, in table order
+     */
+    public Map<String, ResResource> decodeResourcesLazily(File outDir) throws AndrolibException {
+        Map<String, ResResource> files = new LinkedHashMap<>();
+        if (!hasResources() || mConfig.decodeResources != Config.DECODE_RESOURCES_FULL) {
+            decodeResources(outDir);
+            return files;
+        }
+
+        ResTable resTable = getResTable();
+        Directory out;
+        try {
+            out = new FileDirectory(outDir).createDir("res");
+        } catch (DirectoryException ex) {
+            throw new AndrolibException(ex);
+        }
+
+        ExtMXSerializer xmlSerializer = getResXmlSerializer();
+        for (ResPackage pkg : resTable.listMainPackages()) {
+            LOGGER.info("Indexing file-resources...");
+            for (ResResource res : pkg.listFiles()) {
+                ResFileDecoder.recordFileMapping(res, mResFileMapping);
+                files.put(ResFileDecoder.getOutFilePath(res), res);
+            }
+
+            LOGGER.info("Decoding values */* XMLs...");
+            generateValuesFiles(pkg.listValuesFiles(), new File(outDir, "res"));
+            generatePublicXml(pkg, out, xmlSerializer);
+        }
+        mResTable.initApkInfo(mApkInfo, outDir);
+        return files;
+    }
+
+    /**
+     * Decodes a single file-resource indexed by decodeResourcesLazily. Unlike a full decode, a
+     * resource that fails to decode is only logged, as the values XMLs are already written.
+     */
+    public synchronized void decodeFileResource(ResResource res, File outDir) throws AndrolibException {
+        if (mLazyFileDecoder == null) {
+            mLazyFileDecoder = getResFileDecoder();
+            mLazyFileDecoder.m2.getAttrDecoder().setResTable(getResTable());
+        }
+        try {
+            Directory out = new FileDirectory(new File(outDir, "res"));
+            mLazyFileDecoder.m1.decode(res, mApkFile.getDirectory(), out, new HashMap<>());
+        } catch (DirectoryException ex) {
+            throw new AndrolibException(ex);
+        }
+    }
+
     private Duo<ResFileDecoder, AXmlResourceParser> getResFileDecoder() {
         ResStreamDecoderContainer decoders = new ResStreamDecoderContainer();
         decoders.setDecoder("raw", new ResRawStreamDecoder());
@@ -310,10 +381,56 @@ public class ResourcesDecoder {
         return new Duo<>(new ResFileDecoder(decoders), axmlParser);
     }
 
-    private void generateValuesFile(ResValuesFile valuesFile, Directory out,
-                                    ExtXmlSerializer serial) throws AndrolibException {
+    private void generateValuesFiles(Collection<ResValuesFile> valuesFiles, File outDir)
+        throws AndrolibException {
+        if (valuesFiles.isEmpty()) {
+            return;
+        }
+
+        // every values file is independent, so each worker serializes into its own file with its
+        // own serializer; framework packages referenced while serializing are loaded under the
+        // ResTable lock
+        int jobs = Math.max(1, Math.min(mConfig.jobs, valuesFiles.size()));
+        ThreadLocal<ExtMXSerializer> serializers = ThreadLocal.withInitial(this::getResXmlSerializer);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        List<Future<?>> tasks = new ArrayList<>(valuesFiles.size());
         try {
-            OutputStream outStream = out.getFileOutput(valuesFile.getPath());
+            for (ResValuesFile valuesFile : valuesFiles) {
+                tasks.add(executor.submit(() -> {
+                    generateValuesFile(valuesFile, outDir, serializers.get());
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof AndrolibException) {
+                        throw (AndrolibException) ex.getCause();
+                    }
+                    throw new AndrolibException(ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AndrolibException(ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void generateValuesFile(ResValuesFile valuesFile, File outDir,
+                                    ExtXmlSerializer serial) throws AndrolibException {
+        File file = new File(outDir, valuesFile.getPath());
+        File parent = file.getParentFile();
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new AndrolibException("Could not create directory: " + parent);
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream outStream = new BufferedOutputStream(Channels.newOutputStream(channel),
+                 VALUES_FILE_BUFFER_SIZE)) {
             serial.setOutput((outStream), null);
             serial.startDocument(null, null);
             serial.startTag(null, "resources");
@@ -329,8 +446,7 @@ public class ResourcesDecoder {
             serial.newLine();
             serial.endDocument();
             serial.flush();
-            outStream.close();
-        } catch (IOException | DirectoryException ex) {
+        } catch (IOException ex) {
             throw new AndrolibException("Could not generate: " + valuesFile.getPath(), ex);
         }
     }
@@ -26,7 +26,7 @@ import com.apkide.common.logger.Logger;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -42,6 +42,7 @@ public class ResPackage {
     private final Map<ResConfigFlags, ResType> mConfigs = new LinkedHashMap<>();
     private final Map<String, ResTypeSpec> mTypes = new LinkedHashMap<>();
     private final Set<ResID> mSynthesizedRes = new HashSet<>();
+    private Collection<ResValuesFile> mValuesFiles;
 
     private ResValueFactory mValueFactory;
 
@@ -100,8 +101,11 @@ public class ResPackage {
         return ret;
     }
 
-    public Collection<ResValuesFile> listValuesFiles() {
-        Map<Duo<ResTypeSpec, ResType>, ResValuesFile> ret = new HashMap<>();
+    public synchronized Collection<ResValuesFile> listValuesFiles() {
+        if (mValuesFiles != null) {
+            return mValuesFiles;
+        }
+        Map<Duo<ResTypeSpec, ResType>, ResValuesFile> ret = new LinkedHashMap<>();
         for (ResResSpec spec : mResSpecs.values()) {
             for (ResResource res : spec.listResources()) {
                 if (res.getValue() instanceof ResValuesXmlSerializable) {
@@ -117,7 +121,12 @@ public class ResPackage {
                 }
             }
         }
-        return ret.values();
+        mValuesFiles = Collections.unmodifiableCollection(ret.values());
+        return mValuesFiles;
+    }
+
+    synchronized void invalidateValuesFiles() {
+        mValuesFiles = null;
     }
 
     public ResTable getResTable() {
@@ -138,9 +147,11 @@ public class ResPackage {
 
     public void removeResSpec(ResResSpec spec) {
         mResSpecs.remove(spec.getId());
+        invalidateValuesFiles();
     }
 
     public void addResSpec(ResResSpec spec) throws AndrolibException {
+        invalidateValuesFiles();
         if (mResSpecs.put(spec.getId(), spec) != null) {
             throw new AndrolibException("Multiple resource specs: " + spec);
         }
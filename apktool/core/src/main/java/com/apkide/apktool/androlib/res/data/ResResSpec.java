@@ -115,6 +115,7 @@ public class ResResSpec {
 
     public void addResource(ResResource res, boolean overwrite) throws AndrolibException {
         ResConfigFlags flags = res.getConfig().getFlags();
+        mPackage.invalidateValuesFiles();
         if (mResources.put(flags, res) != null && !overwrite) {
             throw new AndrolibException(String.format("Multiple resources: spec=%s, config=%s", this, flags));
         }
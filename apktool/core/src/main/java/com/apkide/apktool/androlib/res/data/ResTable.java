@@ -98,7 +98,7 @@ public class ResTable {
         return mFramePackages;
     }
 
-    public ResPackage getPackage(int id) throws AndrolibException {
+    public synchronized ResPackage getPackage(int id) throws AndrolibException {
         ResPackage pkg = mPackagesById.get(id);
         if (pkg != null) {
             return pkg;
@@ -185,7 +185,7 @@ public class ResTable {
         }
     }
 
-    public ResPackage getHighestSpecPackage() throws AndrolibException {
+    public synchronized ResPackage getHighestSpecPackage() throws AndrolibException {
         int id = 0;
         int value = 0;
         for (ResPackage resPackage : mPackagesById.values()) {
@@ -198,7 +198,7 @@ public class ResTable {
         return (id == 0) ? getPackage(1) : getPackage(id);
     }
 
-    public ResPackage getCurrentResPackage() throws AndrolibException {
+    public synchronized ResPackage getCurrentResPackage() throws AndrolibException {
         ResPackage pkg = mPackagesById.get(mPackageId);
 
         if (pkg != null) {
@@ -211,7 +211,7 @@ public class ResTable {
         }
     }
 
-    public ResPackage getPackage(String name) throws AndrolibException {
+    public synchronized ResPackage getPackage(String name) throws AndrolibException {
         ResPackage pkg = mPackagesByName.get(name);
         if (pkg == null) {
             throw new UndefinedResObjectException("package: name=" + name);
@@ -223,7 +223,7 @@ public class ResTable {
         return getPackage(package_).getType(type).getResSpec(name).getDefaultResource().getValue();
     }
 
-    public void addPackage(ResPackage pkg, boolean main) throws AndrolibException {
+    public synchronized void addPackage(ResPackage pkg, boolean main) throws AndrolibException {
         Integer id = pkg.getId();
         if (mPackagesById.containsKey(id)) {
             throw new AndrolibException("Multiple packages: id=" + id);
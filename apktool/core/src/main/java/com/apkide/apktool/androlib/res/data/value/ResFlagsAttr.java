@@ -102,7 +102,7 @@ public class ResFlagsAttr extends ResAttr {
         return ret.substring(1);
     }
 
-    private void loadFlags() {
+    private synchronized void loadFlags() {
         if (mFlags != null) {
             return;
         }
@@ -120,10 +120,11 @@ public class ResFlagsAttr extends ResAttr {
             }
         }
 
-        mZeroFlags = Arrays.copyOf(zeroFlags, zeroFlagsCount);
-        mFlags = Arrays.copyOf(flags, flagsCount);
+        flags = Arrays.copyOf(flags, flagsCount);
+        Arrays.sort(flags, (o1, o2) -> Integer.compare(Integer.bitCount(o2.flag), Integer.bitCount(o1.flag)));
 
-        Arrays.sort(mFlags, (o1, o2) -> Integer.compare(Integer.bitCount(o2.flag), Integer.bitCount(o1.flag)));
+        mZeroFlags = Arrays.copyOf(zeroFlags, zeroFlagsCount);
+        mFlags = flags;
     }
 
     private final FlagItem[] mItems;
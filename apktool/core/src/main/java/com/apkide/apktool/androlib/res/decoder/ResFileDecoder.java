@@ -62,10 +62,7 @@ public class ResFileDecoder {
             outFileName = outResName + ext;
         }
 
-        String outFilePath = "res/" + outFileName;
-        if (!inFilePath.equals(outFilePath)) {
-            resFileMapping.put(inFilePath, outFilePath);
-        }
+        String outFilePath = recordFileMapping(res, resFileMapping);
 
         LOGGER.verbose("Decoding file: " + inFilePath + " to: " + outFilePath);
 
@@ -141,6 +138,77 @@ public class ResFileDecoder {
         }
     }
 
+    /**
+     * Records where the resource file is renamed to in the decoded project, as used for the
+     * doNotCompress list of apktool.yml.
+     *
+     * @return Mapped path of the resource, relative to the decoded project
+     */
+    public static String recordFileMapping(ResResource res, Map<String, String> resFileMapping)
+            throws AndrolibException {
+        ResFileValue fileValue = (ResFileValue) res.getValue();
+        String inFilePath = fileValue.toString();
+        String inFileName = fileValue.getStrippedPath();
+
+        int extPos = inFileName.lastIndexOf(".");
+        String outFilePath = "res/" + res.getFilePath()
+                + (extPos == -1 ? "" : inFileName.substring(extPos).toLowerCase());
+        if (!inFilePath.equals(outFilePath)) {
+            resFileMapping.put(inFilePath, outFilePath);
+        }
+        return outFilePath;
+    }
+
+    /**
+     * Predicts the path, relative to the decoded project, that decode() writes the resource to.
+     * A 9-patch image without its chunk ends up at getFallbackOutFilePath instead.
+     */
+    public static String getOutFilePath(ResResource res) throws AndrolibException {
+        ResFileValue fileValue = (ResFileValue) res.getValue();
+        String inFileName = fileValue.getStrippedPath();
+        String outResName = res.getFilePath();
+        String typeName = res.getResSpec().getType().getName();
+
+        int extPos = inFileName.lastIndexOf(".");
+        if (extPos == -1) {
+            return "res/" + outResName;
+        }
+        String ext = inFileName.substring(extPos).toLowerCase();
+        if ((typeName.equals("drawable") || typeName.equals("mipmap"))
+                && inFileName.toLowerCase().endsWith(".9" + ext)) {
+            if (inFileName.toLowerCase().endsWith(".r.9" + ext)) {
+                return "res/" + outResName + ".r.9" + ext;
+            }
+            return "res/" + outResName + ".9" + ext;
+        }
+        return "res/" + outResName + ext;
+    }
+
+    /**
+     * @return Path that decode() renames a 9-patch image to when it has no 9-patch chunk, or null
+     * if the resource always ends up at getOutFilePath
+     */
+    public static String getFallbackOutFilePath(ResResource res) throws AndrolibException {
+        ResFileValue fileValue = (ResFileValue) res.getValue();
+        String inFileName = fileValue.getStrippedPath().toLowerCase();
+        String typeName = res.getResSpec().getType().getName();
+
+        int extPos = inFileName.lastIndexOf(".");
+        if (extPos == -1 || !(typeName.equals("drawable") || typeName.equals("mipmap"))) {
+            return null;
+        }
+        String ext = inFileName.substring(extPos);
+        if (!inFileName.endsWith(".9" + ext) || ext.equals(".xml")) {
+            return null;
+        }
+        for (String extension : RAW_9PATCH_IMAGE_EXTENSIONS) {
+            if (inFileName.endsWith("." + extension)) {
+                return null;
+            }
+        }
+        return "res/" + res.getFilePath() + ext;
+    }
+
     public void decode(Directory inDir, String inFileName, Directory outDir,
                        String outFileName, String decoder) throws AndrolibException {
         try (
@@ -22,14 +22,18 @@ import com.apkide.common.logger.Logger;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -39,14 +43,25 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 public final class ResXmlPatcher {
 
+    /**
+     * Applies every edit queued in patcher to file in a single read/write pass.
+     *
+     * @param file AndroidManifest file
+     * @param patcher Edits to apply
+     */
+    public static void patchManifest(File file, ResXmlStreamPatcher patcher) {
+        if (file.exists() && !patcher.isEmpty()) {
+            try {
+                patcher.patch(file);
+            } catch (IOException | XmlPullParserException ex) {
+                LOGGER.warning("Could not patch " + file.getName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Removes "debug" tag from file
      *
@@ -54,25 +69,17 @@ public final class ResXmlPatcher {
      * @throws AndrolibException Error reading Manifest file
      */
     public static void removeApplicationDebugTag(File file) throws AndrolibException {
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                Node application = doc.getElementsByTagName("application").item(0);
-
-                // load attr
-                NamedNodeMap attr = application.getAttributes();
-                Node debugAttr = attr.getNamedItem("android:debuggable");
-
-                // remove application:debuggable
-                if (debugAttr != null) {
-                    attr.removeNamedItem("android:debuggable");
-                }
-
-                saveDocument(file, doc);
+        patchManifest(file, removeApplicationDebugTag(new ResXmlStreamPatcher()));
+    }
 
-            } catch (SAXException | ParserConfigurationException | IOException | TransformerException ignored) {
-            }
-        }
+    /**
+     * Queues removal of the "debug" tag
+     *
+     * @param patcher Manifest edits
+     * @return patcher
+     */
+    public static ResXmlStreamPatcher removeApplicationDebugTag(ResXmlStreamPatcher patcher) {
+        return patcher.add(ResXmlStreamPatcher.removeAttribute(APPLICATION_PATH, "android:debuggable"));
     }
 
     /**
@@ -81,28 +88,17 @@ public final class ResXmlPatcher {
      * @param file AndroidManifest file
      */
     public static void setApplicationDebugTagTrue(File file) {
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                Node application = doc.getElementsByTagName("application").item(0);
-
-                // load attr
-                NamedNodeMap attr = application.getAttributes();
-                Node debugAttr = attr.getNamedItem("android:debuggable");
-
-                if (debugAttr == null) {
-                    debugAttr = doc.createAttribute("android:debuggable");
-                    attr.setNamedItem(debugAttr);
-                }
-
-                // set application:debuggable to 'true
-                debugAttr.setNodeValue("true");
-
-                saveDocument(file, doc);
+        patchManifest(file, setApplicationDebugTagTrue(new ResXmlStreamPatcher()));
+    }
 
-            } catch (SAXException | ParserConfigurationException | IOException | TransformerException ignored) {
-            }
-        }
+    /**
+     * Queues setting the "debug" tag to true
+     *
+     * @param patcher Manifest edits
+     * @return patcher
+     */
+    public static ResXmlStreamPatcher setApplicationDebugTagTrue(ResXmlStreamPatcher patcher) {
+        return patcher.add(ResXmlStreamPatcher.setAttribute(APPLICATION_PATH, "android:debuggable", "true"));
     }
 
     /**
@@ -111,29 +107,18 @@ public final class ResXmlPatcher {
      * @param file AndroidManifest file
      */
     public static void setNetworkSecurityConfig(File file) {
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                Node application = doc.getElementsByTagName("application").item(0);
-
-                // load attr
-                NamedNodeMap attr = application.getAttributes();
-                Node netSecConfAttr = attr.getNamedItem("android:networkSecurityConfig");
-
-                if (netSecConfAttr == null) {
-                    // there is not an already existing network security configuration
-                    netSecConfAttr = doc.createAttribute("android:networkSecurityConfig");
-                    attr.setNamedItem(netSecConfAttr);
-                }
-
-                // whether it already existed or it was created now set it to the proper value
-                netSecConfAttr.setNodeValue("@xml/network_security_config");
-
-                saveDocument(file, doc);
+        patchManifest(file, setNetworkSecurityConfig(new ResXmlStreamPatcher()));
+    }
 
-            } catch (SAXException | ParserConfigurationException | IOException | TransformerException ignored) {
-            }
-        }
+    /**
+     * Queues setting the network security config, whether or not one already exists
+     *
+     * @param patcher Manifest edits
+     * @return patcher
+     */
+    public static ResXmlStreamPatcher setNetworkSecurityConfig(ResXmlStreamPatcher patcher) {
+        return patcher.add(ResXmlStreamPatcher.setAttribute(APPLICATION_PATH,
+            "android:networkSecurityConfig", "@xml/network_security_config"));
     }
 
     /**
@@ -186,70 +171,25 @@ public final class ResXmlPatcher {
      * @param file File for AndroidManifest.xml
      */
     public static void fixingPublicAttrsInProviderAttributes(File file) {
-        boolean saved = false;
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                XPathExpression expression = xPath.compile("/manifest/application/provider");
-
-                Object result = expression.evaluate(doc, XPathConstants.NODESET);
-                NodeList nodes = (NodeList) result;
-
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    Node node = nodes.item(i);
-                    NamedNodeMap attrs = node.getAttributes();
-                    Node provider = attrs.getNamedItem("android:authorities");
-
-                    if (provider != null) {
-                        saved = isSaved(file, saved, provider);
-                    }
-                }
-
-                // android:scheme
-                xPath = XPathFactory.newInstance().newXPath();
-                expression = xPath.compile("/manifest/application/activity/intent-filter/data");
-
-                result = expression.evaluate(doc, XPathConstants.NODESET);
-                nodes = (NodeList) result;
-
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    Node node = nodes.item(i);
-                    NamedNodeMap attrs = node.getAttributes();
-                    Node provider = attrs.getNamedItem("android:scheme");
-
-                    if (provider != null) {
-                        saved = isSaved(file, saved, provider);
-                    }
-                }
-
-                if (saved) {
-                    saveDocument(file, doc);
-                }
-
-            }  catch (SAXException | ParserConfigurationException | IOException |
-                    XPathExpressionException | TransformerException ignored) {
-            }
-        }
+        patchManifest(file, fixingPublicAttrsInProviderAttributes(new ResXmlStreamPatcher(), file.getParentFile()));
     }
 
     /**
-     * Checks if the replacement was properly made to a node.
+     * Queues replacing @string references in provider authorities and activity data schemes.
+     * res/values/strings.xml is read at most once, the first time a reference is found.
      *
-     * @param file File we are searching for value
-     * @param saved boolean on whether we need to save
-     * @param provider Node we are attempting to replace
-     * @return boolean
+     * @param patcher Manifest edits
+     * @param directory Root directory of apk
+     * @return patcher
      */
-    private static boolean isSaved(File file, boolean saved, Node provider) {
-        String reference = provider.getNodeValue();
-        String replacement = pullValueFromStrings(file.getParentFile(), reference);
-
-        if (replacement != null) {
-            provider.setNodeValue(replacement);
-            saved = true;
-        }
-        return saved;
+    public static ResXmlStreamPatcher fixingPublicAttrsInProviderAttributes(ResXmlStreamPatcher patcher,
+                                                                            File directory) {
+        StringsResolver resolver = new StringsResolver(directory);
+        patcher.add(ResXmlStreamPatcher.rewriteAttribute(
+            "manifest/application/provider", "android:authorities", resolver::resolve));
+        patcher.add(ResXmlStreamPatcher.rewriteAttribute(
+            "manifest/application/activity/intent-filter/data", "android:scheme", resolver::resolve));
+        return patcher;
     }
 
     /**
@@ -264,26 +204,8 @@ public final class ResXmlPatcher {
             return null;
         }
 
-        File file = new File(directory, "/res/values/strings.xml");
-        key = key.replace("@string/", "");
-
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                XPathExpression expression = xPath.compile("/resources/string[@name=" + '"' + key + "\"]/text()");
-
-                Object result = expression.evaluate(doc, XPathConstants.STRING);
-
-                if (result != null) {
-                    return (String) result;
-                }
-
-            }  catch (SAXException | ParserConfigurationException | IOException | XPathExpressionException ignored) {
-            }
-        }
-
-        return null;
+        Map<String, String> values = pullValues(new File(directory, "/res/values/strings.xml"), "string");
+        return values == null ? null : values.getOrDefault(key.replace("@string/", ""), "");
     }
 
     /**
@@ -298,26 +220,44 @@ public final class ResXmlPatcher {
             return null;
         }
 
-        File file = new File(directory, "/res/values/integers.xml");
-        key = key.replace("@integer/", "");
+        Map<String, String> values = pullValues(new File(directory, "/res/values/integers.xml"), "integer");
+        return values == null ? null : values.getOrDefault(key.replace("@integer/", ""), "");
+    }
 
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                XPathExpression expression = xPath.compile("/resources/integer[@name=" + '"' + key + "\"]/text()");
+    /**
+     * Reads every top level resources/{tag} entry of a values file, mapping its name to the
+     * text directly preceding its first child element.
+     *
+     * @param file values XML file
+     * @param tag Element name (ie string)
+     * @return Map|null if the file is missing or unreadable
+     */
+    private static Map<String, String> pullValues(File file, String tag) {
+        if (!file.exists()) {
+            return null;
+        }
 
-                Object result = expression.evaluate(doc, XPathConstants.STRING);
+        Map<String, String> values = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            XmlPullParser parser = new MXParser();
+            parser.setInput(in, null);
 
-                if (result != null) {
-                    return (String) result;
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event != XmlPullParser.START_TAG || parser.getDepth() != 2
+                    || !tag.equals(parser.getName())) {
+                    continue;
+                }
+                String name = parser.getAttributeValue(null, "name");
+                String text = parser.next() == XmlPullParser.TEXT ? parser.getText() : "";
+                if (name != null && !values.containsKey(name)) {
+                    values.put(name, text);
                 }
-
-            }  catch (SAXException | ParserConfigurationException | IOException | XPathExpressionException ignored) {
             }
+        } catch (IOException | XmlPullParserException ex) {
+            return null;
         }
-
-        return null;
+        return values;
     }
 
     /**
@@ -326,25 +266,19 @@ public final class ResXmlPatcher {
      * @param file File representing AndroidManifest.xml
      */
     public static void removeManifestVersions(File file) {
-        if (file.exists()) {
-            try {
-                Document doc = loadDocument(file);
-                Node manifest = doc.getFirstChild();
-                NamedNodeMap attr = manifest.getAttributes();
-                Node vCode = attr.getNamedItem("android:versionCode");
-                Node vName = attr.getNamedItem("android:versionName");
-
-                if (vCode != null) {
-                    attr.removeNamedItem("android:versionCode");
-                }
-                if (vName != null) {
-                    attr.removeNamedItem("android:versionName");
-                }
-                saveDocument(file, doc);
+        patchManifest(file, removeManifestVersions(new ResXmlStreamPatcher()));
+    }
 
-            } catch (SAXException | ParserConfigurationException | IOException | TransformerException ignored) {
-            }
-        }
+    /**
+     * Queues removal of attributes like "versionCode" and "versionName".
+     *
+     * @param patcher Manifest edits
+     * @return patcher
+     */
+    public static ResXmlStreamPatcher removeManifestVersions(ResXmlStreamPatcher patcher) {
+        patcher.add(ResXmlStreamPatcher.removeAttribute(MANIFEST_PATH, "android:versionCode"));
+        patcher.add(ResXmlStreamPatcher.removeAttribute(MANIFEST_PATH, "android:versionName"));
+        return patcher;
     }
 
     /**
@@ -354,49 +288,41 @@ public final class ResXmlPatcher {
      * @param packageOriginal Package name to replace
      */
     public static void renameManifestPackage(File file, String packageOriginal) {
-        try {
-            Document doc = loadDocument(file);
-
-            // Get the manifest line
-            Node manifest = doc.getFirstChild();
-
-            // update package attribute
-            NamedNodeMap attr = manifest.getAttributes();
-            Node nodeAttr = attr.getNamedItem("package");
-            nodeAttr.setNodeValue(packageOriginal);
-            saveDocument(file, doc);
-
-        } catch (SAXException | ParserConfigurationException | IOException | TransformerException ignored) {
-        }
+        patchManifest(file, renameManifestPackage(new ResXmlStreamPatcher(), packageOriginal));
     }
 
     /**
+     * Queues replacing the package value with passed packageOriginal string
      *
-     * @param file File to load into Document
-     * @return Document
-     * @throws IOException
-     * @throws SAXException
-     * @throws ParserConfigurationException
+     * @param patcher Manifest edits
+     * @param packageOriginal Package name to replace
+     * @return patcher
      */
-    private static Document loadDocument(File file)
-            throws IOException, SAXException, ParserConfigurationException {
-
-        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-        docFactory.setFeature(FEATURE_DISABLE_DOCTYPE_DECL, true);
-        docFactory.setFeature(FEATURE_LOAD_DTD, false);
-
-        try {
-            docFactory.setAttribute(ACCESS_EXTERNAL_DTD, " ");
-            docFactory.setAttribute(ACCESS_EXTERNAL_SCHEMA, " ");
-        } catch (IllegalArgumentException ex) {
-            LOGGER.warning("JAXP 1.5 Support is required to validate XML");
+    public static ResXmlStreamPatcher renameManifestPackage(ResXmlStreamPatcher patcher, String packageOriginal) {
+        return patcher.add(ResXmlStreamPatcher.replaceAttribute(MANIFEST_PATH, "package", packageOriginal));
+    }
+
+    /**
+     * Resolves @string references against res/values/strings.xml, loading it on first use.
+     */
+    private static final class StringsResolver {
+        private final File mDirectory;
+        private Map<String, String> mStrings;
+        private boolean mLoaded;
+
+        StringsResolver(File directory) {
+            mDirectory = directory;
         }
 
-        DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-        // Not using the parse(File) method on purpose, so that we can control when
-        // to close it. Somehow parse(File) does not seem to close the file in all cases.
-        try (FileInputStream inputStream = new FileInputStream(file)) {
-            return docBuilder.parse(inputStream);
+        String resolve(String reference) {
+            if (reference == null || ! reference.contains("@")) {
+                return null;
+            }
+            if (!mLoaded) {
+                mStrings = pullValues(new File(mDirectory, "/res/values/strings.xml"), "string");
+                mLoaded = true;
+            }
+            return mStrings == null ? null : mStrings.getOrDefault(reference.replace("@string/", ""), "");
         }
     }
 
@@ -419,10 +345,8 @@ public final class ResXmlPatcher {
         transformer.transform(source, result);
     }
 
-    private static final String ACCESS_EXTERNAL_DTD = "http://javax.xml.XMLConstants/property/accessExternalDTD";
-    private static final String ACCESS_EXTERNAL_SCHEMA = "http://javax.xml.XMLConstants/property/accessExternalSchema";
-    private static final String FEATURE_LOAD_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
-    private static final String FEATURE_DISABLE_DOCTYPE_DECL = "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final String MANIFEST_PATH = "manifest";
+    private static final String APPLICATION_PATH = "manifest/application";
 
     private static final Logger LOGGER = Logger.getLogger(ResXmlPatcher.class.getName());
 }
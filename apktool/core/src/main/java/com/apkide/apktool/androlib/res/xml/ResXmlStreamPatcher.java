@@ -0,0 +1,266 @@
+/*
+ *  Copyright (C) 2010 Ryszard Wiśniewski <brut.alll@gmail.com>
+ *  Copyright (C) 2010 Connor Tumbleson <connor.tumbleson@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.apkide.apktool.androlib.res.xml;
+
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.renamed.MXSerializer;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Applies a list of attribute edits to an XML file (usually AndroidManifest.xml) in a single
+ * read/write pass over the bundled xmlpull parser and serializer.
+ * <p>
+ * Elements are matched by their slash separated path from the root (ie "manifest/application")
+ * and attributes by their qualified name as written in the file (ie "android:debuggable"), so
+ * no DOM or XPath machinery is needed. Everything that is not edited is written back as read.
+ */
+public final class ResXmlStreamPatcher {
+    private final List<Edit> mEdits = new ArrayList<>();
+
+    public ResXmlStreamPatcher add(Edit edit) {
+        mEdits.add(edit);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return mEdits.isEmpty();
+    }
+
+    /**
+     * Patches the file in place. The file is only rewritten if at least one edit changed it.
+     *
+     * @param file File to patch
+     * @return true if the file was modified
+     * @throws IOException File could not be read or written
+     * @throws XmlPullParserException File is not well-formed XML
+     */
+    public boolean patch(File file) throws IOException, XmlPullParserException {
+        if (mEdits.isEmpty() || !file.exists()) {
+            return false;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) file.length() + 256);
+        boolean modified;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            modified = patch(in, buffer);
+        }
+        if (modified) {
+            try (OutputStream out = new FileOutputStream(file)) {
+                buffer.writeTo(out);
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Copies the XML document from in to out, applying every edit to each start tag on the way.
+     *
+     * @param in UTF-8 encoded XML document
+     * @param out Stream receiving the patched document
+     * @return true if any edit changed the document
+     * @throws IOException Stream could not be read or written
+     * @throws XmlPullParserException Input is not well-formed XML
+     */
+    public boolean patch(InputStream in, OutputStream out) throws IOException, XmlPullParserException {
+        XmlPullParser parser = new MXParser();
+        parser.setInput(in, null);
+
+        XmlSerializer serializer = new MXSerializer();
+        serializer.setOutput(out, "utf-8");
+
+        List<String> paths = new ArrayList<>();
+        boolean modified = false;
+
+        int event = parser.nextToken();
+        if (parser.getProperty(PROPERTY_XMLDECL_VERSION) != null) {
+            serializer.startDocument("utf-8", (Boolean) parser.getProperty(PROPERTY_XMLDECL_STANDALONE));
+        }
+
+        while (event != XmlPullParser.END_DOCUMENT) {
+            switch (event) {
+                case XmlPullParser.START_TAG:
+                    String name = parser.getName();
+                    String path = paths.isEmpty() ? name : paths.get(paths.size() - 1) + "/" + name;
+                    paths.add(path);
+
+                    Tag tag = new Tag(path, name, parser);
+                    for (Edit edit : mEdits) {
+                        modified |= edit.apply(tag);
+                    }
+
+                    serializer.startTag(null, name);
+                    for (int i = 0; i < tag.mNames.size(); i++) {
+                        serializer.attribute(null, tag.mNames.get(i), tag.mValues.get(i));
+                    }
+                    break;
+                case XmlPullParser.END_TAG:
+                    paths.remove(paths.size() - 1);
+                    serializer.endTag(null, parser.getName());
+                    break;
+                case XmlPullParser.TEXT:
+                    serializer.text(parser.getText());
+                    break;
+                case XmlPullParser.CDSECT:
+                    serializer.cdsect(parser.getText());
+                    break;
+                case XmlPullParser.ENTITY_REF:
+                    serializer.entityRef(parser.getName());
+                    break;
+                case XmlPullParser.IGNORABLE_WHITESPACE:
+                    String whitespace = parser.getText();
+                    if (!whitespace.isEmpty()) {
+                        serializer.ignorableWhitespace(whitespace);
+                    }
+                    break;
+                case XmlPullParser.PROCESSING_INSTRUCTION:
+                    serializer.processingInstruction(parser.getText());
+                    break;
+                case XmlPullParser.COMMENT:
+                    serializer.comment(parser.getText());
+                    break;
+                case XmlPullParser.DOCDECL:
+                    serializer.docdecl(parser.getText());
+                    break;
+            }
+            event = parser.nextToken();
+        }
+
+        serializer.endDocument();
+        serializer.flush();
+        return modified;
+    }
+
+    /**
+     * Removes the attribute from every element at path.
+     */
+    public static Edit removeAttribute(String path, String name) {
+        return tag -> tag.getPath().equals(path) && tag.removeAttribute(name);
+    }
+
+    /**
+     * Sets the attribute on every element at path, adding it if it is missing.
+     */
+    public static Edit setAttribute(String path, String name, String value) {
+        return tag -> tag.getPath().equals(path) && tag.setAttribute(name, value);
+    }
+
+    /**
+     * Sets the attribute on every element at path that already declares it.
+     */
+    public static Edit replaceAttribute(String path, String name, String value) {
+        return tag -> tag.getPath().equals(path) && tag.getAttribute(name) != null
+            && tag.setAttribute(name, value);
+    }
+
+    /**
+     * Rewrites the attribute on every element at path that declares it. The attribute is left
+     * untouched when the rewriter returns null.
+     */
+    public static Edit rewriteAttribute(String path, String name, Function<String, String> rewriter) {
+        return tag -> {
+            if (!tag.getPath().equals(path)) {
+                return false;
+            }
+            String value = tag.getAttribute(name);
+            if (value == null) {
+                return false;
+            }
+            String replacement = rewriter.apply(value);
+            return replacement != null && tag.setAttribute(name, replacement);
+        };
+    }
+
+    public interface Edit {
+        /**
+         * @param tag Start tag being copied
+         * @return true if the tag was changed
+         */
+        boolean apply(Tag tag);
+    }
+
+    /**
+     * Mutable view of the start tag currently being copied.
+     */
+    public static final class Tag {
+        private final String mPath;
+        private final String mName;
+        private final List<String> mNames;
+        private final List<String> mValues;
+
+        private Tag(String path, String name, XmlPullParser parser) {
+            mPath = path;
+            mName = name;
+            int count = parser.getAttributeCount();
+            mNames = new ArrayList<>(count + 1);
+            mValues = new ArrayList<>(count + 1);
+            for (int i = 0; i < count; i++) {
+                mNames.add(parser.getAttributeName(i));
+                mValues.add(parser.getAttributeValue(i));
+            }
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public String getAttribute(String name) {
+            int index = mNames.indexOf(name);
+            return index == -1 ? null : mValues.get(index);
+        }
+
+        public boolean setAttribute(String name, String value) {
+            int index = mNames.indexOf(name);
+            if (index == -1) {
+                mNames.add(name);
+                mValues.add(value);
+                return true;
+            }
+            return !value.equals(mValues.set(index, value));
+        }
+
+        public boolean removeAttribute(String name) {
+            int index = mNames.indexOf(name);
+            if (index == -1) {
+                return false;
+            }
+            mNames.remove(index);
+            mValues.remove(index);
+            return true;
+        }
+    }
+
+    private static final String PROPERTY_XMLDECL_VERSION = "http://xmlpull.org/v1/doc/properties.html#xmldecl-version";
+    private static final String PROPERTY_XMLDECL_STANDALONE = "http://xmlpull.org/v1/doc/properties.html#xmldecl-standalone";
+}
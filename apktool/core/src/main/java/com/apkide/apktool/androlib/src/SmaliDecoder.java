@@ -46,30 +46,26 @@ public class SmaliDecoder {
     }
 
     private DexFile decode() throws AndrolibException {
-        try {
-            final BaksmaliOptions options = new BaksmaliOptions();
-
-            // options
-            options.deodex = false;
-            options.implicitReferences = false;
-            options.parameterRegisters = true;
-            options.localsDirective = true;
-            options.sequentialLabels = true;
-            options.debugInfo = mBakDeb;
-            options.codeOffsets = false;
-            options.accessorComments = false;
-            options.registerInfo = 0;
-            options.inlineResolver = null;
-
-            // set jobs automatically
-            int jobs = Runtime.getRuntime().availableProcessors();
-            if (jobs > 6) {
-                jobs = 6;
-            }
+        DexBackedDexFile dexFile = loadDexFile(mApkFile, mDexFile, mApiLevel);
+        BaksmaliOptions options = createOptions(dexFile, mBakDeb);
+
+        // set jobs automatically
+        int jobs = Runtime.getRuntime().availableProcessors();
+        if (jobs > 6) {
+            jobs = 6;
+        }
 
+        Baksmali.disassembleDexFile(dexFile, mOutDir, jobs, options);
+
+        return dexFile;
+    }
+
+    public static DexBackedDexFile loadDexFile(File apkFile, String dexName, int apiLevel)
+            throws AndrolibException {
+        try {
             // create the container
             MultiDexContainer<? extends DexBackedDexFile> container =
-                    DexFileFactory.loadDexContainer(mApkFile, mApiLevel > 0 ? Opcodes.forApi(mApiLevel) : null);
+                    DexFileFactory.loadDexContainer(apkFile, apiLevel > 0 ? Opcodes.forApi(apiLevel) : null);
             MultiDexContainer.DexEntry<? extends DexBackedDexFile> dexEntry;
             DexBackedDexFile dexFile;
 
@@ -77,7 +73,7 @@ public class SmaliDecoder {
             if (container.getDexEntryNames().size() == 1) {
                 dexEntry = container.getEntry(container.getDexEntryNames().get(0));
             } else {
-                dexEntry = container.getEntry(mDexFile);
+                dexEntry = container.getEntry(dexName);
             }
 
             // Double-check the passed param exists
@@ -91,20 +87,34 @@ public class SmaliDecoder {
             if (dexFile.supportsOptimizedOpcodes()) {
                 throw new AndrolibException("Warning: You are disassembling an odex file without deodexing it.");
             }
-
-            if (dexFile instanceof DexBackedOdexFile) {
-                options.inlineResolver =
-                        InlineMethodResolver.createInlineMethodResolver(((DexBackedOdexFile)dexFile).getOdexVersion());
-            }
-
-            Baksmali.disassembleDexFile(dexFile, mOutDir, jobs, options);
-
             return dexFile;
         } catch (IOException ex) {
             throw new AndrolibException(ex);
         }
     }
 
+    public static BaksmaliOptions createOptions(DexBackedDexFile dexFile, boolean bakDeb) {
+        final BaksmaliOptions options = new BaksmaliOptions();
+
+        // options
+        options.deodex = false;
+        options.implicitReferences = false;
+        options.parameterRegisters = true;
+        options.localsDirective = true;
+        options.sequentialLabels = true;
+        options.debugInfo = bakDeb;
+        options.codeOffsets = false;
+        options.accessorComments = false;
+        options.registerInfo = 0;
+        options.inlineResolver = null;
+
+        if (dexFile instanceof DexBackedOdexFile) {
+            options.inlineResolver =
+                    InlineMethodResolver.createInlineMethodResolver(((DexBackedOdexFile)dexFile).getOdexVersion());
+        }
+        return options;
+    }
+
     private final File mApkFile;
     private final File mOutDir;
     private final String mDexFile;
@@ -0,0 +1,380 @@
+/*
+ *  Copyright (C) 2010 Ryszard Wiśniewski <brut.alll@gmail.com>
+ *  Copyright (C) 2010 Connor Tumbleson <connor.tumbleson@gmail.com>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.apkide.apktool.directory;
+
+import com.apkide.apktool.common.BrutException;
+import com.apkide.apktool.util.BrutIO;
+import com.apkide.common.logger.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Bulk extractor reading the central directory of a zip file once.
+ * <p>
+ * STORED entries are copied with FileChannel.transferTo straight from their data offset in the
+ * archive, DEFLATED entries are inflated from positioned reads, and entries are extracted in
+ * parallel over a single shared channel. The method and sizes of every entry come from the same
+ * scan, so callers do not need a ZipFile lookup per entry.
+ */
+public class ZipExtractor implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(ZipExtractor.class.getName());
+
+    private final static int EOCD_SIGNATURE = 0x06054b50;
+    private final static int EOCD64_LOCATOR_SIGNATURE = 0x07064b50;
+    private final static int EOCD64_SIGNATURE = 0x06064b50;
+    private final static int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private final static int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private final static int EOCD_SIZE = 22;
+    private final static int LOCAL_HEADER_SIZE = 30;
+    private final static int MAX_COMMENT_SIZE = 0xffff;
+    private final static int ZIP64_EXTRA_ID = 0x0001;
+    private final static long ZIP64_MAGIC = 0xffffffffL;
+    private final static int BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel mChannel;
+    private final Map<String, Entry> mEntries;
+
+    public ZipExtractor(File zipFile) throws DirectoryException {
+        try {
+            mChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            throw new DirectoryException(ex);
+        }
+        try {
+            mEntries = Collections.unmodifiableMap(readCentralDirectory());
+        } catch (IOException ex) {
+            try {
+                mChannel.close();
+            } catch (IOException ignored) {}
+            throw new DirectoryException("Could not read zip central directory: " + zipFile, ex);
+        }
+    }
+
+    /**
+     * @return File entries (directories, encrypted entries and entries without a name are left
+     * out), in central directory order
+     */
+    public Map<String, Entry> getEntries() {
+        return mEntries;
+    }
+
+    public Entry getEntry(String name) {
+        return mEntries.get(name);
+    }
+
+    /**
+     * Resolves the name of an entry against a directory, entries that would end up outside of it
+     * are skipped.
+     *
+     * @return The file to extract the entry to, or null to skip it
+     */
+    public static File getOutFile(File dir, Entry entry) {
+        try {
+            return new File(dir, BrutIO.sanitizeUnknownFile(dir, entry.name));
+        } catch (IOException | BrutException exception) {
+            LOGGER.warning(String.format("Skipping file %s (%s)", entry.name, exception.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the entry of every target file, on at most jobs threads.
+     */
+    public void extract(Map<File, Entry> targets, int jobs) throws DirectoryException {
+        if (targets.isEmpty()) {
+            return;
+        }
+        if (jobs <= 1 || targets.size() == 1) {
+            for (Map.Entry<File, Entry> target : targets.entrySet()) {
+                extract(target.getValue(), target.getKey());
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, targets.size()));
+        try {
+            List<Future<?>> tasks = new ArrayList<>(targets.size());
+            for (Map.Entry<File, Entry> target : targets.entrySet()) {
+                tasks.add(executor.submit(() -> {
+                    extract(target.getValue(), target.getKey());
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof DirectoryException) {
+                        throw (DirectoryException) ex.getCause();
+                    }
+                    throw new DirectoryException(ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new DirectoryException(ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void extract(Entry entry, File outFile) throws DirectoryException {
+        File parent = outFile.getParentFile();
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new DirectoryException("Could not create directory: " + parent);
+        }
+
+        try (FileChannel out = FileChannel.open(outFile.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long dataOffset = getDataOffset(entry);
+            switch (entry.method) {
+                case ZipEntry.STORED:
+                    transfer(dataOffset, entry.size, out);
+                    break;
+                case ZipEntry.DEFLATED:
+                    inflate(dataOffset, entry, out);
+                    break;
+                default:
+                    throw new DirectoryException("Unsupported compression method " + entry.method
+                        + ": " + entry.name);
+            }
+        } catch (IOException | DataFormatException ex) {
+            throw new DirectoryException("Could not extract " + entry.name, ex);
+        }
+    }
+
+    private void transfer(long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            long transferred = mChannel.transferTo(position + done, count - done, out);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            done += transferred;
+        }
+    }
+
+    private void inflate(long position, Entry entry, FileChannel out)
+        throws IOException, DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            byte[] input = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, entry.compressedSize))];
+            byte[] output = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, entry.size))];
+            ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+            long remaining = entry.compressedSize;
+            long read = 0;
+            long written = 0;
+            boolean padded = false;
+
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (remaining <= 0) {
+                        // raw deflate streams may need one extra byte to finish
+                        if (padded) {
+                            throw new IOException("Truncated deflate stream");
+                        }
+                        padded = true;
+                        inflater.setInput(new byte[1]);
+                    } else {
+                        inputBuffer.clear();
+                        inputBuffer.limit((int) Math.min(input.length, remaining));
+                        int n = mChannel.read(inputBuffer, position + read);
+                        if (n <= 0) {
+                            throw new IOException("Unexpected end of archive");
+                        }
+                        read += n;
+                        remaining -= n;
+                        inflater.setInput(input, 0, n);
+                    }
+                }
+                int n = inflater.inflate(output);
+                if (n > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(output, 0, n);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    written += n;
+                } else if (inflater.needsDictionary()) {
+                    throw new DataFormatException("Deflate dictionary is not supported");
+                }
+            }
+            if (written != entry.size) {
+                throw new IOException("Size mismatch: expected " + entry.size + ", got " + written);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Bad local header for " + entry.name);
+        }
+        int nameLength = header.getShort(26) & 0xffff;
+        int extraLength = header.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        long fileSize = mChannel.size();
+        int tailSize = (int) Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = read(tailOffset, tailSize);
+
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new IOException("End of central directory not found");
+        }
+
+        long count = tail.getShort(eocd + 10) & 0xffff;
+        long cdSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long cdOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+        if ((count == 0xffff || cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) && eocd >= 20
+            && tail.getInt(eocd - 20) == EOCD64_LOCATOR_SIGNATURE) {
+            ByteBuffer eocd64 = read(tail.getLong(eocd - 20 + 8), 56);
+            if (eocd64.getInt(0) != EOCD64_SIGNATURE) {
+                throw new IOException("Bad zip64 end of central directory");
+            }
+            count = eocd64.getLong(32);
+            cdSize = eocd64.getLong(40);
+            cdOffset = eocd64.getLong(48);
+        }
+        if (cdSize > Integer.MAX_VALUE) {
+            throw new IOException("Central directory too large");
+        }
+
+        ByteBuffer cd = read(cdOffset, (int) cdSize);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Bad central directory header");
+            }
+            int flags = cd.getShort(pos + 8) & 0xffff;
+            int method = cd.getShort(pos + 10) & 0xffff;
+            long crc = cd.getInt(pos + 16) & ZIP64_MAGIC;
+            long compressedSize = cd.getInt(pos + 20) & ZIP64_MAGIC;
+            long size = cd.getInt(pos + 24) & ZIP64_MAGIC;
+            int nameLength = cd.getShort(pos + 28) & 0xffff;
+            int extraLength = cd.getShort(pos + 30) & 0xffff;
+            int commentLength = cd.getShort(pos + 32) & 0xffff;
+            long localHeaderOffset = cd.getInt(pos + 42) & ZIP64_MAGIC;
+
+            byte[] nameBytes = new byte[nameLength];
+            cd.position(pos + 46);
+            cd.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // the zip64 extra field only holds the values that overflowed, in this order
+            int extra = pos + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = cd.getShort(extra) & 0xffff;
+                int length = cd.getShort(extra + 2) & 0xffff;
+                if (id == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    if (size == ZIP64_MAGIC) {
+                        size = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC) {
+                        compressedSize = cd.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC) {
+                        localHeaderOffset = cd.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+
+            if (name.isEmpty() || name.endsWith("/")) {
+                continue;
+            }
+            if ((flags & 1) != 0) {
+                LOGGER.warning(String.format("Skipping file %s (%s)", name, "Encrypted entries are not supported"));
+                continue;
+            }
+            entries.put(name, new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+        }
+        return entries;
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    public static final class Entry {
+        public final String name;
+        public final int method;
+        public final long crc;
+        public final long compressedSize;
+        public final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long crc, long compressedSize, long size,
+                      long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
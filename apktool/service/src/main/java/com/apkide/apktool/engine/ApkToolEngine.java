@@ -112,7 +112,12 @@ public final class ApkToolEngine {
                                         File outDir = new File(myOutputPath);
                                         Throwable err = null;
                                         try {
-                                            decoder.decode(outDir);
+                                            if (myConfig.decodeLazily) {
+                                                // 剩下的文件由打开项目的进程按需解码, 这里只留下索引
+                                                decoder.decodeLazily(outDir).close();
+                                            } else {
+                                                decoder.decode(outDir);
+                                            }
                                         } catch (AndrolibException | DirectoryException |
                                                  IOException e) {
                                             AppLog.e(e);
@@ -35,6 +35,7 @@ import com.apkide.language.java.JavaLanguage;
 import com.apkide.language.smali.SmaliLanguage;
 import com.apkide.language.xml.XmlLanguage;
 import com.apkide.language.yaml.YamlLanguage;
+import com.apkide.ui.util.DexFileArchiveReader;
 import com.apkide.ui.util.JarFileArchiveReader;
 
 import java.io.File;
@@ -230,6 +231,7 @@ public class IDEApplication extends MultiDexApplication {
         
         FileSystem.setArchiveReaders(new FileSystem.FileArchiveReader[]{
                 new JarFileArchiveReader(),
+                new DexFileArchiveReader(),
                 //TODO: zip & apk support
         });
         
@@ -308,7 +310,8 @@ public class IDEApplication extends MultiDexApplication {
             public boolean isReadOnly(@NonNull String filePath) {
                 File file = new File(filePath);
                 if (!file.exists()||file.isDirectory()) {
-                    return true;
+                    // a pending file is written as an ordinary file once it is read
+                    return !FileSystem.isPendingFile(filePath);
                 }
                 return !new File(filePath).canWrite();
             }
@@ -7,7 +7,6 @@ import com.apkide.common.FileSystem;
 import com.apkide.common.io.IoUtils;
 import com.apkide.common.io.iterator.LineIterator;
 import com.apkide.common.text.TextModel;
-import com.apkide.language.FileHighlighting;
 import com.apkide.ui.services.file.FileModel;
 import com.apkide.ui.views.CodeEditTextModel;
 import com.apkide.ui.views.editor.StyleSpan;
@@ -76,6 +75,7 @@ public class IDEEditorModel extends CodeEditTextModel implements FileModel {
     public void sync() throws IOException {
         String text=IoUtils.readStringAndClose(FileSystem.readFile(myFilePath));
         setText(text);
+        clearUndoHistory();
     }
     
     @Override
@@ -84,13 +84,9 @@ public class IDEEditorModel extends CodeEditTextModel implements FileModel {
     }
     
     @Override
-    public void highlighting(@NonNull FileHighlighting highlighting) {
-        myHighlight.set(highlighting.styles,
-                highlighting.startLines,
-                highlighting.startColumns,
-                highlighting.endLines,
-                highlighting.endColumns,
-                highlighting.length);
+    public void highlighting(int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns,
+                             int length) {
+        myHighlight.set(styles, startLines, startColumns, endLines, endColumns, length);
         synchronized (myHighlightLock) {
             StyleSpan span = myHighlightGUI;
             myHighlightGUI = myHighlight;
@@ -99,13 +95,9 @@ public class IDEEditorModel extends CodeEditTextModel implements FileModel {
     }
     
     @Override
-    public void semanticHighlighting(@NonNull FileHighlighting highlighting) {
-        mySyntaxHighlight.set(highlighting.styles,
-                highlighting.startLines,
-                highlighting.startColumns,
-                highlighting.endLines,
-                highlighting.endColumns,
-                highlighting.length);
+    public void semanticHighlighting(int[] styles, int[] startLines, int[] startColumns, int[] endLines,
+                                     int[] endColumns, int length) {
+        mySyntaxHighlight.set(styles, startLines, startColumns, endLines, endColumns, length);
         synchronized (myHighlightLock) {
             StyleSpan span = mySyntaxHighlightGUI;
             mySyntaxHighlightGUI = mySyntaxHighlight;
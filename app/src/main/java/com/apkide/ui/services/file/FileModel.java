@@ -3,7 +3,6 @@ package com.apkide.ui.services.file;
 import androidx.annotation.NonNull;
 
 import com.apkide.common.io.iterator.LineIterator;
-import com.apkide.language.FileHighlighting;
 
 import java.io.IOException;
 
@@ -18,9 +17,11 @@ public interface FileModel {
 
 	void save() throws IOException;
 
-	void highlighting(@NonNull FileHighlighting highlighting);
+	void highlighting(int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns,
+					  int length);
 
-	void semanticHighlighting(@NonNull FileHighlighting highlighting);
+	void semanticHighlighting(int[] styles, int[] startLines, int[] startColumns, int[] endLines,
+							  int[] endColumns, int length);
 
 	boolean isReadOnly();
 	
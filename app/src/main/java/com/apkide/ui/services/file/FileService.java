@@ -9,7 +9,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.apkide.language.CodeEngine;
-import com.apkide.language.FileHighlighting;
 import com.apkide.ui.App;
 import com.apkide.ui.services.AppService;
 
@@ -48,36 +47,22 @@ public class FileService implements AppService {
     
     private void registerListener(){
         if (myHighlightingListener==null){
+            // the engine runs in this process, its arrays go to the models as they are
             myHighlightingListener=new CodeEngine.HighlightingListener() {
-                private final FileHighlighting myHighlighting=new FileHighlighting();
                 @Override
                 public void highlighting(String filePath, int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns, int length) {
-                    myHighlighting.filePath=filePath;
-                    myHighlighting.styles=styles;
-                    myHighlighting.startLines=startLines;
-                    myHighlighting.startColumns=startColumns;
-                    myHighlighting.endLines=endLines;
-                    myHighlighting.endColumns=endColumns;
-                    myHighlighting.length=length;
                     for (FileModel value : myOpenFileModels.values()) {
-                        if (value.getFilePath().endsWith(myHighlighting.filePath)){
-                            value.highlighting(myHighlighting);
+                        if (value.getFilePath().endsWith(filePath)) {
+                            value.highlighting(styles, startLines, startColumns, endLines, endColumns, length);
                         }
                     }
                 }
     
                 @Override
                 public void semanticHighlighting(String filePath, int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns, int length) {
-                    myHighlighting.filePath=filePath;
-                    myHighlighting.styles=styles;
-                    myHighlighting.startLines=startLines;
-                    myHighlighting.startColumns=startColumns;
-                    myHighlighting.endLines=endLines;
-                    myHighlighting.endColumns=endColumns;
-                    myHighlighting.length=length;
                     for (FileModel value : myOpenFileModels.values()) {
-                        if (value.getFilePath().endsWith(myHighlighting.filePath)){
-                            value.semanticHighlighting(myHighlighting);
+                        if (value.getFilePath().endsWith(filePath)) {
+                            value.semanticHighlighting(styles, startLines, startColumns, endLines, endColumns, length);
                         }
                     }
                 }
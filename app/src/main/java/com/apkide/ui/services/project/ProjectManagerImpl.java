@@ -7,6 +7,10 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.apkide.apktool.androlib.Config;
+import com.apkide.apktool.androlib.LazyApkProject;
+import com.apkide.apktool.androlib.exceptions.AndrolibException;
+import com.apkide.common.AppLog;
 import com.apkide.common.FileSystem;
 import com.apkide.ui.App;
 import com.apkide.ui.R;
@@ -19,6 +23,7 @@ public class ProjectManagerImpl implements ProjectManager {
 	public static final String ANDROID_MANIFEST="AndroidManifest.xml";
     private String myRootPath;
     private ConfigureFileImpl myConfigureFile;
+    private LazyApkProject myLazyProject;
     
     @NonNull
     @Override
@@ -69,13 +74,30 @@ public class ProjectManagerImpl implements ProjectManager {
         if (workspace == null) {
             throw new IOException("rootPath is null");
         }
+        // files left in the apk by a lazy decode are decoded in this process, where they are read
+        LazyApkProject lazyProject;
+        try {
+            lazyProject = LazyApkProject.open(Config.getDefaultConfig(), new File(workspace));
+        } catch (AndrolibException e) {
+            throw new IOException(e);
+        }
         myRootPath = workspace;
         myConfigureFile = new ConfigureFileImpl(myRootPath + File.separator + APKTOOL_YML);
+        myLazyProject = lazyProject;
+        if (myLazyProject != null)
+            myLazyProject.attach();
     }
     
     @Override
     public void close() {
-        
+        if (myLazyProject != null) {
+            try {
+                myLazyProject.close();
+            } catch (IOException e) {
+                AppLog.e(e);
+            }
+            myLazyProject = null;
+        }
         myRootPath = null;
         if (myConfigureFile != null)
             myConfigureFile.destroy();
@@ -0,0 +1,301 @@
+package com.apkide.ui.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.common.io.FileUtils;
+import com.apkide.common.logger.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Two level cache of decompiled sources. The first level is an in-memory LRU bounded by the size of the
+ * cached sources, the second a directory of files named by the SHA-256 of the decompiled class files and
+ * the decompiler options, so a class viewed in an earlier session is not decompiled again.
+ * <p>
+ * Memory entries remember the last modified time of the file they were read from and are dropped,
+ * together with their disk entry, once the file changes. They also remember the options they were
+ * decompiled with, an entry of other options is only dropped from memory.
+ */
+public class DecompiledSourceCache {
+    private static final Logger LOGGER = Logger.getLogger(DecompiledSourceCache.class.getName());
+
+    private static final int DEFAULT_MEMORY_LIMIT = 8 * 1024 * 1024;
+    private static final long DEFAULT_DISK_LIMIT = 64 * 1024 * 1024;
+    private static final String FILE_SUFFIX = ".java";
+
+    private final File myDir;
+    private final long myMemoryLimit;
+    private final long myDiskLimit;
+    private final Map<String, Entry> myEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long myMemorySize;
+    private long myDiskSize = -1;
+
+    public DecompiledSourceCache(@NonNull File dir) {
+        this(dir, DEFAULT_MEMORY_LIMIT, DEFAULT_DISK_LIMIT);
+    }
+
+    public DecompiledSourceCache(@NonNull File dir, long memoryLimit, long diskLimit) {
+        myDir = dir;
+        myMemoryLimit = memoryLimit;
+        myDiskLimit = diskLimit;
+    }
+
+    /**
+     * Computes the cache key of a decompilation.
+     *
+     * @param classFiles class file name to content, the class and all its inner classes
+     * @param options    decompiler options
+     */
+    @NonNull
+    public static String computeKey(@NonNull Map<String, byte[]> classFiles, @NonNull Map<String, Object> options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (Map.Entry<String, Object> option : new TreeMap<>(options).entrySet()) {
+            digest.update((option.getKey() + "=" + option.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (Map.Entry<String, byte[]> classFile : new TreeMap<>(classFiles).entrySet()) {
+            digest.update((classFile.getKey() + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(classFile.getValue());
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the key of the decompiler options alone, cheap enough for the memory level lookups.
+     */
+    @NonNull
+    public static String computeOptionsKey(@NonNull Map<String, Object> options) {
+        return new TreeMap<>(options).toString();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @param path         path of the class, used for the in-memory level
+     * @param lastModified last modified time of the file (or archive) the class is read from
+     * @param optionsKey   key computed by {@link #computeOptionsKey(Map)}
+     * @param key          key computed by {@link #computeKey(Map, Map)}, null to only check memory
+     * @return the cached source or null
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull String path, long lastModified, @NonNull String optionsKey,
+                                   @Nullable String key) {
+        Entry entry = myEntries.get(path);
+        if (entry != null) {
+            boolean sameOptions = entry.optionsKey.equals(optionsKey);
+            if (sameOptions && entry.lastModified == lastModified && (key == null || entry.key.equals(key))) {
+                return entry.contents;
+            }
+            if (sameOptions) {
+                remove(path, entry);
+            } else {
+                // still valid for its own options, only the memory slot is taken over
+                myEntries.remove(path);
+                myMemorySize -= entry.contents.length;
+            }
+        }
+
+        if (key == null) {
+            return null;
+        }
+
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] contents = FileUtils.readBytes(file);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            putInMemory(path, new Entry(lastModified, optionsKey, key, contents));
+            return contents;
+        } catch (IOException e) {
+            LOGGER.warning("Could not read cached source " + file + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    public synchronized void put(@NonNull String path, long lastModified, @NonNull String optionsKey,
+                                 @NonNull String key, @NonNull byte[] contents) {
+        putInMemory(path, new Entry(lastModified, optionsKey, key, contents));
+
+        File file = getFile(key);
+        if (file.isFile()) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            LOGGER.warning("Could not create directory " + parent);
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(contents);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Could not write cached source " + file + ": " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        if (myDiskSize < 0) {
+            myDiskSize = 0;
+            for (File cached : listCachedFiles()) {
+                myDiskSize += cached.length();
+            }
+        } else {
+            myDiskSize += contents.length;
+        }
+        if (myDiskSize > myDiskLimit) {
+            trimDisk();
+        }
+    }
+
+    /**
+     * Drops the in-memory entries of the path and of anything below it, the disk level is kept.
+     */
+    public synchronized void evict(@NonNull String path) {
+        Iterator<Map.Entry<String, Entry>> iterator = myEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            if (next.getKey().equals(path) || next.getKey().startsWith(path + File.separator)) {
+                myMemorySize -= next.getValue().contents.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the in-memory entries of the path and of anything below it whose file changed.
+     */
+    public synchronized void evictStale(@NonNull String path, long lastModified) {
+        Iterator<Map.Entry<String, Entry>> iterator = myEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> next = iterator.next();
+            Entry entry = next.getValue();
+            if (entry.lastModified != lastModified &&
+                    (next.getKey().equals(path) || next.getKey().startsWith(path + File.separator))) {
+                myMemorySize -= entry.contents.length;
+                iterator.remove();
+                //noinspection ResultOfMethodCallIgnored
+                getFile(entry.key).delete();
+            }
+        }
+    }
+
+    public synchronized void clearMemory() {
+        myEntries.clear();
+        myMemorySize = 0;
+    }
+
+    private void remove(String path, Entry entry) {
+        myEntries.remove(path);
+        myMemorySize -= entry.contents.length;
+        // the file changed, its old decompilation will not be asked for again
+        //noinspection ResultOfMethodCallIgnored
+        getFile(entry.key).delete();
+    }
+
+    private void putInMemory(String path, Entry entry) {
+        Entry old = myEntries.put(path, entry);
+        if (old != null) {
+            myMemorySize -= old.contents.length;
+        }
+        myMemorySize += entry.contents.length;
+
+        Iterator<Entry> iterator = myEntries.values().iterator();
+        while (myMemorySize > myMemoryLimit && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            if (eldest == entry) {
+                break;
+            }
+            myMemorySize -= eldest.contents.length;
+            iterator.remove();
+        }
+    }
+
+    private void trimDisk() {
+        List<File> files = listCachedFiles();
+        files.sort(Comparator.comparingLong(File::lastModified));
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        for (File file : files) {
+            if (size <= myDiskLimit * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+        myDiskSize = size;
+    }
+
+    private List<File> listCachedFiles() {
+        List<File> files = new ArrayList<>();
+        File[] dirs = myDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] cached = dir.listFiles((d, name) -> name.endsWith(FILE_SUFFIX));
+                if (cached != null) {
+                    files.addAll(Arrays.asList(cached));
+                }
+            }
+        }
+        return files;
+    }
+
+    private File getFile(String key) {
+        return new File(new File(myDir, key.substring(0, 2)), key.substring(2) + FILE_SUFFIX);
+    }
+
+    private static class Entry {
+        final long lastModified;
+        final String optionsKey;
+        final String key;
+        final byte[] contents;
+
+        Entry(long lastModified, String optionsKey, String key, byte[] contents) {
+            this.lastModified = lastModified;
+            this.optionsKey = optionsKey;
+            this.key = key;
+            this.contents = contents;
+        }
+    }
+}
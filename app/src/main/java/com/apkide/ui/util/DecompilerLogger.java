@@ -0,0 +1,40 @@
+package com.apkide.ui.util;
+
+import com.apkide.common.logger.Logger;
+import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
+
+/**
+ * Writes the messages of the decompiler to the logger given.
+ */
+class DecompilerLogger extends IFernflowerLogger {
+    private final Logger myLogger;
+
+    DecompilerLogger(Logger logger) {
+        myLogger = logger;
+    }
+
+    @Override
+    public void writeMessage(String message, Severity severity) {
+        switch (severity) {
+            case INFO:
+                myLogger.info(message);
+                break;
+            case ERROR:
+                myLogger.error(message);
+                break;
+            case WARN:
+                myLogger.warning(message);
+                break;
+            case TRACE:
+                myLogger.verbose(message);
+                break;
+        }
+    }
+
+    @Override
+    public void writeMessage(String message, Severity severity, Throwable t) {
+        writeMessage(message, severity);
+        if (t != null)
+            t.printStackTrace();
+    }
+}
@@ -0,0 +1,217 @@
+package com.apkide.ui.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.common.FileSystem;
+import com.apkide.common.logger.Logger;
+import com.apkide.dex.converter.DexClassIndex;
+import com.apkide.dex.converter.DexDecompiler;
+import com.apkide.smali.dexlib2.DexFileFactory;
+import com.apkide.ui.AppPreferences;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Shows a dex file as the java sources of its top level classes, 'a/b/C.java', decompiled when read. The
+ * classes are converted from the dex in memory, one decompiler per recently used dex file.
+ */
+public class DexFileArchiveReader implements FileSystem.FileArchiveReader {
+    private static final Logger LOGGER = Logger.getLogger(DexFileArchiveReader.class.getName());
+    private static final int MAX_OPENED_ARCHIVES = 2;
+    private static final int MAX_CACHED_SOURCES = 16;
+    // guarded by itself
+    private final Map<String, DexEntity> myCaches = new LinkedHashMap<String, DexEntity>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DexEntity> eldest) {
+            return size() > MAX_OPENED_ARCHIVES;
+        }
+    };
+    private final DecompilerLogger myLogger = new DecompilerLogger(LOGGER);
+
+    @NonNull
+    @Override
+    public String[] getSupportArchiveFilePatterns() {
+        return new String[]{"*.dex"};
+    }
+
+    @NonNull
+    @Override
+    public Reader getArchiveEntryReader(@NonNull String archivePath, @NonNull String entryName, @Nullable String encoding) throws IOException {
+        return new StringReader(readSource(archivePath, entryName));
+    }
+
+    @NonNull
+    @Override
+    public List<String> getArchiveDirectoryEntries(@NonNull String archivePath, @NonNull String entryName) throws IOException {
+        DexEntity entity = getEntity(archivePath);
+        String prefix = entryName.isEmpty() ? "" : toName(entryName) + "/";
+        List<String> entries = new ArrayList<>();
+        for (String name : entity.entries.tailSet(prefix)) {
+            if (!name.startsWith(prefix))
+                break;
+            if (name.indexOf('/', prefix.length()) == -1)
+                entries.add(archivePath + File.separator + name.replace('/', File.separatorChar));
+        }
+        for (String name : entity.directories.tailSet(prefix)) {
+            if (!name.startsWith(prefix))
+                break;
+            if (name.length() > prefix.length() && name.indexOf('/', prefix.length()) == -1)
+                entries.add(archivePath + File.separator + name.replace('/', File.separatorChar));
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean isArchiveFileEntry(@NonNull String archivePath, @NonNull String entryName) {
+        DexEntity entity = findEntity(archivePath);
+        return entity != null && entity.entries.contains(toName(entryName));
+    }
+
+    @Override
+    public boolean isArchiveDirectoryEntry(@NonNull String archivePath, @NonNull String entryName) {
+        DexEntity entity = findEntity(archivePath);
+        return entity != null && entity.directories.contains(toName(entryName));
+    }
+
+    @Override
+    public long getArchiveVersion(@NonNull String archivePath) {
+        File file = new File(archivePath);
+        return file.exists() ? file.lastModified() : -1;
+    }
+
+    @Override
+    public InputStream getStream(@NonNull String archivePath, @NonNull String entryName) throws IOException {
+        return new ByteArrayInputStream(readSource(archivePath, entryName).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public long getLastModified(@NonNull String archivePath, @NonNull String entryName) {
+        return isArchiveFileEntry(archivePath, entryName) ? getArchiveVersion(archivePath) : -1;
+    }
+
+    @Override
+    public long getSize(@NonNull String archivePath, @NonNull String entryName) {
+        // unknown until the class is decompiled
+        return -1;
+    }
+
+    @Override
+    public boolean isOpenedArchive(@NonNull String archivePath) {
+        synchronized (myCaches) {
+            DexEntity entity = myCaches.get(archivePath);
+            return entity != null && entity.lastModified == new File(archivePath).lastModified();
+        }
+    }
+
+    @Override
+    public void close(@NonNull String archivePath) {
+        synchronized (myCaches) {
+            myCaches.remove(archivePath);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (myCaches) {
+            myCaches.clear();
+        }
+    }
+
+    @NonNull
+    private String readSource(String archivePath, String entryName) throws IOException {
+        DexEntity entity = getEntity(archivePath);
+        String name = toName(entryName);
+        if (!entity.entries.contains(name))
+            throw new IOException(archivePath + ":" + entryName + " is not exists..");
+
+        synchronized (entity.sources) {
+            String source = entity.sources.get(name);
+            if (source != null)
+                return source;
+        }
+        String type = "L" + name.substring(0, name.length() - ".java".length()) + ";";
+        String source = entity.decompiler.decompile(type);
+        if (source == null)
+            throw new IOException(archivePath + ":" + entryName + " could not be decompiled.");
+        synchronized (entity.sources) {
+            entity.sources.put(name, source);
+        }
+        return source;
+    }
+
+    @Nullable
+    private DexEntity findEntity(String archivePath) {
+        try {
+            return getEntity(archivePath);
+        } catch (IOException ignored) {
+
+        }
+        return null;
+    }
+
+    /**
+     * Loads the dex file and lists its classes, again once the file changed or the decompiler options did.
+     */
+    @NonNull
+    private DexEntity getEntity(String archivePath) throws IOException {
+        Map<String, Object> options = AppPreferences.getJavaBinaryReaderDefaultOptions();
+        long lastModified = new File(archivePath).lastModified();
+        synchronized (myCaches) {
+            DexEntity entity = myCaches.get(archivePath);
+            if (entity != null && entity.lastModified == lastModified && entity.options.equals(options))
+                return entity;
+        }
+
+        DexClassIndex index = new DexClassIndex(DexFileFactory.loadDexFile(archivePath, null));
+        DexEntity entity = new DexEntity();
+        entity.lastModified = lastModified;
+        entity.options = options;
+        entity.decompiler = new DexDecompiler(index, options, myLogger);
+        for (String type : index.getTypes()) {
+            if (!type.startsWith("L") || !type.endsWith(";") || !index.getRootType(type).equals(type))
+                continue;
+            String name = type.substring(1, type.length() - 1);
+            entity.entries.add(name + ".java");
+            for (int slash = name.indexOf('/'); slash != -1; slash = name.indexOf('/', slash + 1)) {
+                entity.directories.add(name.substring(0, slash));
+            }
+        }
+        synchronized (myCaches) {
+            myCaches.put(archivePath, entity);
+        }
+        return entity;
+    }
+
+    private static String toName(String entryName) {
+        String name = entryName.replace(File.separatorChar, '/');
+        return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    private static class DexEntity {
+        public long lastModified;
+        public Map<String, Object> options;
+        public DexDecompiler decompiler;
+        // entry names of the top level classes and of their packages, separated by '/'
+        public final TreeSet<String> entries = new TreeSet<>();
+        public final TreeSet<String> directories = new TreeSet<>();
+        // guarded by itself
+        public final Map<String, String> sources = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_CACHED_SOURCES;
+            }
+        };
+    }
+}
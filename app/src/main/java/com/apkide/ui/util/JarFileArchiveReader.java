@@ -15,14 +15,25 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class JarFileArchiveReader implements FileSystem.FileArchiveReader {
-    private final Map<String, CacheEntity> myCaches = new HashMap<>();
+    private static final int MAX_OPENED_ARCHIVES = 8;
+    // guarded by itself, an archive dropped from it is only closed once no reader uses it anymore
+    private final Map<String, CacheEntity> myCaches = new LinkedHashMap<String, CacheEntity>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntity> eldest) {
+            if (size() <= MAX_OPENED_ARCHIVES)
+                return false;
+            retire(eldest.getValue());
+            return true;
+        }
+    };
     private final JavaBinaryReader myJavaBinaryReader = new JavaBinaryReader();
     
     @NonNull
@@ -45,29 +56,12 @@ public class JarFileArchiveReader implements FileSystem.FileArchiveReader {
                     new InputStreamReader(inputStream, encoding);
         } else {
             if (entryName.endsWith(".class")) {
-                openFile(archivePath);
-                ZipFile archiveFile = getZipFile(archivePath);
-                
-                if (archiveFile == null) {
-                    throw new IOException(archivePath + " is not exists..");
-                }
-                
+                release(acquire(archivePath));
                 return new InputStreamReader(
                         myJavaBinaryReader.getArchiveFileReader(archivePath, entryName));
             }
         }
-        openFile(archivePath);
-        ZipFile archiveFile = getZipFile(archivePath);
-        
-        if (archiveFile == null) {
-            throw new IOException(archivePath + " is not exists..");
-        }
-        
-        ZipEntry entry = getEntry(archivePath,entryName);
-        if (entry == null) {
-            throw new IOException(archivePath + ":" + entryName + " is not exists..");
-        }
-        byte[] bytes = IoUtils.readBytes(archiveFile.getInputStream(entry));
+        byte[] bytes = readEntry(archivePath, entryName);
         return encoding == null ?
                 new InputStreamReader(new ByteArrayInputStream(bytes)) :
                 new InputStreamReader(new ByteArrayInputStream(bytes), encoding);
@@ -77,71 +71,53 @@ public class JarFileArchiveReader implements FileSystem.FileArchiveReader {
     @NonNull
     @Override
     public List<String> getArchiveDirectoryEntries(@NonNull String archivePath, @NonNull String entryName) throws IOException {
-        openFile(archivePath);
         ArrayList<String> entities = new ArrayList<>();
-        ZipFile zipFile = getZipFile(archivePath);
-        
-        if (zipFile == null) {
-            return entities;
-        }
-        
-        Enumeration<? extends ZipEntry> entries = zipFile.entries();
-        while (entries.hasMoreElements()) {
-            ZipEntry next = entries.nextElement();
-            String name = next.getName();
-            if (name.endsWith(File.separator))
-                name = name.substring(0, name.length() - 1);
-            if (name.startsWith(entryName) && !name.equals(entryName) &&
-                    name.indexOf(File.separator, entryName.length() + 1) == -1) {
-                
-                if (name.endsWith(".class")) {
-                    if (name.lastIndexOf("$") == -1) {
+        CacheEntity entity = acquire(archivePath);
+        try {
+            Enumeration<? extends ZipEntry> entries = entity.file.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry next = entries.nextElement();
+                String name = next.getName();
+                if (name.endsWith(File.separator))
+                    name = name.substring(0, name.length() - 1);
+                if (name.startsWith(entryName) && !name.equals(entryName) &&
+                        name.indexOf(File.separator, entryName.length() + 1) == -1) {
+                    
+                    if (name.endsWith(".class")) {
+                        if (name.lastIndexOf("$") == -1) {
+                            entities.add(archivePath + File.separator + name);
+                        }
+                    } else {
+                        if (name.startsWith("src/") || name.startsWith("src\\"))
+                            name = name.substring(4);
                         entities.add(archivePath + File.separator + name);
                     }
-                } else {
-                    if (name.startsWith("src/") || name.startsWith("src\\"))
-                        name = name.substring(4);
-                    entities.add(archivePath + File.separator + name);
                 }
             }
+        } finally {
+            release(entity);
         }
         return entities;
     }
     
     @Override
     public boolean isArchiveFileEntry(@NonNull String archivePath, @NonNull String entryName) {
-        try {
-            openFile(archivePath);
-            ZipEntry entry = getEntry(archivePath, entryName);
-            if (entry != null) {
-                return !entry.isDirectory();
-            }
-        } catch (IOException ignored) {
-        
-        }
-        return false;
+        ZipEntry entry = findEntry(archivePath, entryName);
+        return entry != null && !entry.isDirectory();
     }
     
     @Override
     public boolean isArchiveDirectoryEntry(@NonNull String archivePath, @NonNull String entryName) {
-        try {
-            openFile(archivePath);
-            if (!entryName.endsWith(File.separator))
-                entryName = entryName + File.separator;
-            ZipEntry entry = getEntry(archivePath, entryName);
-            if (entry != null) {
-                return entry.isDirectory();
-            }
-        } catch (IOException ignored) {
-        
-        }
-        return false;
+        if (!entryName.endsWith(File.separator))
+            entryName = entryName + File.separator;
+        ZipEntry entry = findEntry(archivePath, entryName);
+        return entry != null && entry.isDirectory();
     }
     
     @Override
     public long getArchiveVersion(@NonNull String archivePath) {
         try {
-            openFile(archivePath);
+            release(acquire(archivePath));
             File file = new File(archivePath);
             if (file.exists()) {
                 return file.lastModified();
@@ -163,149 +139,148 @@ public class JarFileArchiveReader implements FileSystem.FileArchiveReader {
             return new FileInputStream(archivePath + File.separator + entryName);
         } else {
             if (entryName.endsWith(".class")) {
-                openFile(archivePath);
-                ZipFile archiveFile = getZipFile(archivePath);
-            
-                if (archiveFile == null) {
-                    throw new IOException(archivePath + " is not exists..");
-                }
-            
+                release(acquire(archivePath));
                 return
                         myJavaBinaryReader.getArchiveFileReader(archivePath, entryName);
             }
         }
-        openFile(archivePath);
-        ZipFile archiveFile = getZipFile(archivePath);
-    
-        if (archiveFile == null) {
-            throw new IOException(archivePath + " is not exists..");
-        }
-    
-        ZipEntry entry = getEntry(archivePath,entryName);
-        if (entry == null) {
-            throw new IOException(archivePath + ":" + entryName + " is not exists..");
-        }
-        byte[] bytes = IoUtils.readBytes(archiveFile.getInputStream(entry));
-        return new ByteArrayInputStream(bytes);
+        return new ByteArrayInputStream(readEntry(archivePath, entryName));
     }
     
     @Override
     public long getLastModified(@NonNull String archivePath, @NonNull String entryName) {
-        try {
-            openFile(archivePath);
-            ZipEntry entry = getEntry(archivePath, entryName);
-            if (entry != null)
-                return entry.getLastModifiedTime().toMillis();
-        } catch (IOException ignored) {
-        
-        }
+        ZipEntry entry = findEntry(archivePath, entryName);
+        if (entry != null)
+            return entry.getLastModifiedTime().toMillis();
         return -1;
     }
     
     @Override
     public long getSize(@NonNull String archivePath, @NonNull String entryName) {
-        try {
-            openFile(archivePath);
-            ZipEntry entry = getEntry(archivePath, entryName);
-            if (entry != null)
-                return entry.getSize();
-        } catch (IOException ignored) {
-        
-        }
+        ZipEntry entry = findEntry(archivePath, entryName);
+        if (entry != null)
+            return entry.getSize();
         return -1;
     }
     
     @Override
     public boolean isOpenedArchive(@NonNull String archivePath) {
-        if (myCaches.containsKey(archivePath)) {
+        synchronized (myCaches) {
             CacheEntity entity = myCaches.get(archivePath);
-            if (entity != null && entity.file != null) {
-                File file = new File(archivePath);
-                return entity.lastModified == file.lastModified();
-            }
+            return entity != null && entity.lastModified == new File(archivePath).lastModified();
         }
-        return false;
     }
     
     @Override
     public void close(@NonNull String archivePath) throws IOException {
-        if (myCaches.containsKey(archivePath)) {
-            CacheEntity entity = myCaches.get(archivePath);
-            if (entity != null && entity.file != null) {
-                entity.file.close();
-            }
+        synchronized (myCaches) {
+            CacheEntity entity = myCaches.remove(archivePath);
+            if (entity != null)
+                retire(entity);
         }
-        myCaches.remove(archivePath);
         myJavaBinaryReader.closeArchive(archivePath);
     }
     
+    private byte[] readEntry(String archivePath, String entryName) throws IOException {
+        CacheEntity entity = acquire(archivePath);
+        try {
+            ZipEntry entry = getEntry(entity.file, entryName);
+            if (entry == null) {
+                throw new IOException(archivePath + ":" + entryName + " is not exists..");
+            }
+            return IoUtils.readBytes(entity.file.getInputStream(entry));
+        } finally {
+            release(entity);
+        }
+    }
+    
     @Nullable
-    private ZipFile getZipFile(String archivePath) {
-        if (myCaches.containsKey(archivePath)) {
-            CacheEntity entity = myCaches.get(archivePath);
-            if (entity != null) {
-                return entity.file;
+    private ZipEntry findEntry(String archivePath, String entryName) {
+        try {
+            CacheEntity entity = acquire(archivePath);
+            try {
+                return getEntry(entity.file, entryName);
+            } finally {
+                release(entity);
             }
+        } catch (IOException ignored) {
+        
         }
         return null;
     }
     
-    
     @Nullable
-    private ZipEntry getEntry(String archivePath, String entryName) {
-        ZipFile zipFile = getZipFile(archivePath);
-        if (zipFile == null) return null;
+    private static ZipEntry getEntry(ZipFile zipFile, String entryName) {
         ZipEntry entry = zipFile.getEntry(entryName);
         if (entry == null) entry = zipFile.getEntry("src/" + entryName);
         if (entry == null) entry = zipFile.getEntry("src\\" + entryName);
         return entry;
     }
     
-    
-    private void clearCaches() throws IOException {
-        for (String filePath : myCaches.keySet()) {
-            CacheEntity entity = myCaches.get(filePath);
-            File file = new File(filePath);
-            if (entity != null && file.lastModified() != entity.lastModified) {
-                if (entity.file != null)
-                    entity.file.close();
-                myCaches.remove(filePath);
-                myJavaBinaryReader.closeArchive(filePath);
+    /**
+     * Opens the archive if needed and marks it used until {@link #release(CacheEntity)}.
+     */
+    @NonNull
+    private CacheEntity acquire(String filePath) throws IOException {
+        List<String> staleArchives = new ArrayList<>();
+        CacheEntity entity;
+        synchronized (myCaches) {
+            Iterator<Map.Entry<String, CacheEntity>> iterator = myCaches.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, CacheEntity> next = iterator.next();
+                if (new File(next.getKey()).lastModified() != next.getValue().lastModified) {
+                    retire(next.getValue());
+                    iterator.remove();
+                    staleArchives.add(next.getKey());
+                }
             }
+            
+            entity = myCaches.get(filePath);
+            if (entity == null) {
+                entity = new CacheEntity();
+                entity.file = new ZipFile(filePath);
+                entity.lastModified = new File(filePath).lastModified();
+                myCaches.put(filePath, entity);
+            }
+            entity.users++;
         }
+        for (String archivePath : staleArchives) {
+            myJavaBinaryReader.closeArchive(archivePath);
+        }
+        return entity;
     }
     
-    private void openFile(String filePath) throws IOException {
-        clearCaches();
-        if (myCaches.containsKey(filePath)) {
-            CacheEntity entity = myCaches.get(filePath);
-            if (entity != null && entity.file != null) {
-                File file = new File(filePath);
-                if (entity.lastModified == file.lastModified()) {
-                    return;
-                }
-            }
+    private void release(CacheEntity entity) {
+        synchronized (myCaches) {
+            entity.users--;
+            if (entity.retired && entity.users == 0)
+                IoUtils.safeClose(entity.file);
         }
-        ZipFile zipFile = new ZipFile(filePath);
-        CacheEntity entity = new CacheEntity();
-        entity.file = zipFile;
-        entity.lastModified = new File(filePath).lastModified();
-        myCaches.put(filePath, entity);
     }
     
+    // guarded by myCaches
+    private static void retire(CacheEntity entity) {
+        entity.retired = true;
+        if (entity.users == 0)
+            IoUtils.safeClose(entity.file);
+    }
     
     @Override
     public void close() throws IOException {
-        for (CacheEntity entity : myCaches.values()) {
-            if (entity != null && entity.file != null)
-                entity.file.close();
+        synchronized (myCaches) {
+            for (CacheEntity entity : myCaches.values()) {
+                retire(entity);
+            }
+            myCaches.clear();
         }
-        myCaches.clear();
         myJavaBinaryReader.close();
     }
     
     private static class CacheEntity {
         public ZipFile file;
         public long lastModified;
+        // guarded by myCaches
+        public int users;
+        public boolean retired;
     }
-}
\ No newline at end of file
+}
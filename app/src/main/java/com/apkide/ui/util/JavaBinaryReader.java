@@ -12,270 +12,303 @@ import com.apkide.common.logger.Logger;
 import com.apkide.ui.AppPreferences;
 
 import com.apkide.java.decompiler.main.Fernflower;
+import com.apkide.java.decompiler.main.decompiler.DecompilerSession;
+import com.apkide.java.decompiler.main.extern.IBytecodeProvider;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
+import com.apkide.java.decompiler.main.extern.IResultSaver;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class JavaBinaryReader implements Closeable {
-    private final Map<String, CacheEntity> myCaches = new HashMap<>();
     private final Logger LOGGER = Logger.getLogger(JavaBinaryReader.class.getName());
-    
+    private static final int MAX_SESSIONS = 2;
+    private DecompiledSourceCache myCache;
+    private final Map<String, SessionEntity> mySessions = new LinkedHashMap<String, SessionEntity>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SessionEntity> eldest) {
+            if (size() <= MAX_SESSIONS)
+                return false;
+            retire(eldest.getValue());
+            return true;
+        }
+    };
+
+    private final IFernflowerLogger myLogger = new DecompilerLogger(LOGGER);
+
     @NonNull
     public InputStream getFileReader(@NonNull String filePath) throws IOException {
-        byte[] cached = getContents(filePath);
+        File file = new File(filePath);
+        long lastModified = file.lastModified();
+        Map<String, Object> options = AppPreferences.getJavaBinaryReaderDefaultOptions();
+        String optionsKey = DecompiledSourceCache.computeOptionsKey(options);
+        byte[] cached = getCache().get(filePath, lastModified, optionsKey, null);
         if (cached == null) {
-            File file = new File(filePath);
             if (!file.exists() || file.isDirectory()) {
                 throw new IOException(filePath + " not exists or is a directory.");
             }
-            
+
             File parent = file.getParentFile();
             if (parent == null || !parent.exists()) {
                 throw new IOException(filePath + " not exists.");
             }
-            
+
             String className = FileSystem.getName(filePath.substring(0, filePath.indexOf(".")));
-            List<File> classFiles = new ArrayList<>();
-            classFiles.add(file);
-            
+            Map<String, File> classFiles = new LinkedHashMap<>();
+            classFiles.put(file.getName(), file);
+
             File[] files = parent.listFiles();
             if (files != null) {
                 for (File classFile : files) {
                     if (classFile.getName().endsWith(".class") && classFile.getName().startsWith(className + "$")) {
-                        classFiles.add(classFile);
+                        classFiles.put(classFile.getName(), classFile);
                     }
                 }
             }
-            
-            CacheEntity entity = new CacheEntity();
-            entity.lastModified = file.lastModified();
-            Fernflower fernflower = new Fernflower((externalPath, internalPath) -> {
-                return readBytes(new File(externalPath));
-            },
-                    (path, qualifiedName, entryName, content, mapping) ->
-                            entity.contents = content.getBytes(),
-                    AppPreferences.getJavaBinaryReaderDefaultOptions(),
-                    new IFernflowerLogger() {
-                        @Override
-                        public void writeMessage(String message, Severity severity) {
-                            switch (severity) {
-                                case INFO:
-                                    LOGGER.info(message);
-                                    break;
-                                case ERROR:
-                                    LOGGER.error(message);
-                                    break;
-                                case WARN:
-                                    LOGGER.warning(message);
-                                    break;
-                                case TRACE:
-                                    LOGGER.verbose(message);
-                                    break;
-                            }
-                        }
-                        
-                        @Override
-                        public void writeMessage(String message, Severity severity, Throwable t) {
-                            switch (severity) {
-                                case INFO:
-                                    LOGGER.info(message);
-                                    break;
-                                case ERROR:
-                                    LOGGER.error(message);
-                                    break;
-                                case WARN:
-                                    LOGGER.warning(message);
-                                    break;
-                                case TRACE:
-                                    LOGGER.verbose(message);
-                                    break;
-                            }
-                            if (t != null)
-                                t.printStackTrace();
-                        }
-                    });
-            for (File classFile : classFiles) {
-                fernflower.addSource(classFile);
+
+            Map<String, byte[]> contents = new LinkedHashMap<>();
+            for (File classFile : classFiles.values()) {
+                contents.put(classFile.getName(), readBytes(classFile));
+            }
+            String key = DecompiledSourceCache.computeKey(contents, options);
+
+            cached = getCache().get(filePath, lastModified, optionsKey, key);
+            if (cached == null) {
+                cached = decompile(classFiles.values(), options);
+                getCache().put(filePath, lastModified, optionsKey, key, cached);
             }
-            fernflower.decompileContext();
-            fernflower.clearContext();
-            myCaches.put(filePath, entity);
-            cached = entity.contents;
         }
         return new ByteArrayInputStream(cached);
     }
-    
-    
+
+
     @NonNull
     public InputStream getArchiveFileReader(@NonNull String archivePath, @NonNull String entryName) throws IOException {
-        byte[] cached = getContents(archivePath, entryName);
+        File zfile = new File(archivePath);
+        long lastModified = zfile.lastModified();
+        String path = archivePath + File.separator + entryName;
+        Map<String, Object> options = AppPreferences.getJavaBinaryReaderDefaultOptions();
+        String optionsKey = DecompiledSourceCache.computeOptionsKey(options);
+        byte[] cached = getCache().get(path, lastModified, optionsKey, null);
         if (cached == null) {
-            File zfile = new File(archivePath);
             if (!zfile.exists() || zfile.isDirectory())
                 throw new IOException(archivePath + " not exists or is a directory.");
-            
-            File temDir = new File(Application.get().getTempDir(),
-                    String.valueOf((getName(archivePath) + File.separator + getName(entryName)).hashCode()));
-            
-            if (!temDir.exists())
-                FileSystem.createDir(temDir.getAbsolutePath());
-            
-            List<ZipEntry> entities = new ArrayList<>();
+
+            Map<String, byte[]> contents = new LinkedHashMap<>();
             String className = FileSystem.getName(entryName.substring(0, entryName.indexOf(".")));
-            
-            ZipFile archiveFile = new ZipFile(archivePath);
-            
-            entities.add(archiveFile.getEntry(entryName));
-            String entryParent = entryName.substring(0, entryName.lastIndexOf(File.separator));
-            Enumeration<? extends ZipEntry> entries = archiveFile.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry next = entries.nextElement();
-                String name = next.getName();
-                if (name.endsWith(File.separator))
-                    name = name.substring(0, name.length() - 1);
-                if (name.startsWith(entryParent) && name.endsWith(".class") && name.indexOf(File.separator, entryParent.length() + 1) == -1) {
-                    if (name.startsWith(entryParent + File.separator + className + "$")) {
-                        entities.add(archiveFile.getEntry(name));
+
+            try (ZipFile archiveFile = new ZipFile(archivePath)) {
+                ZipEntry classEntry = archiveFile.getEntry(entryName);
+                if (classEntry == null)
+                    throw new IOException(archivePath + ":" + entryName + " is not exists..");
+                contents.put(getName(entryName), IoUtils.readBytesAndClose(archiveFile.getInputStream(classEntry)));
+
+                String entryParent = entryName.substring(0, entryName.lastIndexOf(File.separator));
+                Enumeration<? extends ZipEntry> entries = archiveFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry next = entries.nextElement();
+                    String name = next.getName();
+                    if (name.endsWith(File.separator))
+                        name = name.substring(0, name.length() - 1);
+                    if (name.startsWith(entryParent) && name.endsWith(".class") && name.indexOf(File.separator, entryParent.length() + 1) == -1) {
+                        if (name.startsWith(entryParent + File.separator + className + "$")) {
+                            contents.put(getName(name), IoUtils.readBytesAndClose(archiveFile.getInputStream(next)));
+                        }
                     }
                 }
             }
-            CacheEntity entity = new CacheEntity();
-            entity.lastModified = zfile.lastModified();
-            
-            for (ZipEntry entry : entities) {
-                File tempFile = new File(temDir, FileSystem.getName(entry.getName()));
-                if (!tempFile.exists())
-                    tempFile.createNewFile();
-                
-                InputStream in = archiveFile.getInputStream(entry);
-                FileOutputStream out = new FileOutputStream(tempFile);
+
+            String key = DecompiledSourceCache.computeKey(contents, options);
+            cached = getCache().get(path, lastModified, optionsKey, key);
+            if (cached == null) {
+                String qualifiedName = entryName.substring(0, entryName.length() - ".class".length())
+                        .replace(File.separatorChar, '/');
+                String source;
+                SessionEntity entity = acquireSession(archivePath, lastModified, options);
                 try {
-                    IoUtils.copy(in, out);
+                    source = entity.session.decompile(qualifiedName);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(e.getMessage());
+                } catch (CancellationException e) {
+                    throw new InterruptedIOException(archivePath + ":" + entryName + " decompiling is cancelled.");
                 } finally {
-                    IoUtils.safeClose(in, out);
+                    releaseSession(entity);
                 }
-                
-                
-            }
-            
-            Fernflower decompiler = new Fernflower((externalPath, internalPath) ->
-                    readBytes(new File(externalPath)),
-                    (path, qualifiedName, entryName1, content, mapping) ->
-                            entity.contents = content.getBytes(),
-                    AppPreferences.getJavaBinaryReaderDefaultOptions(),
-                    new IFernflowerLogger() {
-                        @Override
-                        public void writeMessage(String message, Severity severity) {
-                            switch (severity) {
-                                case INFO:
-                                    LOGGER.info(message);
-                                    break;
-                                case ERROR:
-                                    LOGGER.error(message);
-                                    break;
-                                case WARN:
-                                    LOGGER.warning(message);
-                                    break;
-                                case TRACE:
-                                    LOGGER.verbose(message);
-                                    break;
-                            }
-                        }
-                        
-                        @Override
-                        public void writeMessage(String message, Severity severity, Throwable t) {
-                            switch (severity) {
-                                case INFO:
-                                    LOGGER.info(message);
-                                    break;
-                                case ERROR:
-                                    LOGGER.error(message);
-                                    break;
-                                case WARN:
-                                    LOGGER.warning(message);
-                                    break;
-                                case TRACE:
-                                    LOGGER.verbose(message);
-                                    break;
-                            }
-                            if (t != null)
-                                t.printStackTrace();
-                        }
-                    });
-            
-            File[] files = temDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    decompiler.addSource(file);
+                if (source == null) {
+                    // not cached, the class may have failed only because its session was closed meanwhile
+                    return new ByteArrayInputStream(new byte[0]);
                 }
+                cached = source.getBytes(StandardCharsets.UTF_8);
+                getCache().put(path, lastModified, optionsKey, key, cached);
             }
-            decompiler.decompileContext();
-            decompiler.clearContext();
-            archiveFile.close();
-         //   delete(temDir.getAbsolutePath());
-            myCaches.put(archivePath + File.separator + entryName, entity);
-            cached = entity.contents;
         }
         return new ByteArrayInputStream(cached);
     }
-    
-    public void close(@NonNull String filePath) {
-        myCaches.remove(filePath);
+
+    /**
+     * One session per recently used archive, so the archive is parsed once and not for each class. The session
+     * is used until {@link #releaseSession} and not closed before, even if it is replaced or evicted meanwhile.
+     */
+    private synchronized SessionEntity acquireSession(String archivePath, long lastModified, Map<String, Object> options) {
+        SessionEntity entity = mySessions.get(archivePath);
+        if (entity == null || entity.lastModified != lastModified || !entity.options.equals(options)) {
+            if (entity != null) {
+                mySessions.remove(archivePath);
+                retire(entity);
+            }
+
+            ArchiveBytecodeProvider provider = new ArchiveBytecodeProvider(archivePath);
+            DecompilerSession session = new DecompilerSession(provider, options, myLogger);
+            session.addSource(new File(archivePath));
+
+            entity = new SessionEntity();
+            entity.session = session;
+            entity.provider = provider;
+            entity.lastModified = lastModified;
+            entity.options = options;
+            mySessions.put(archivePath, entity);
+        }
+        entity.references++;
+        return entity;
+    }
+
+    private synchronized void releaseSession(SessionEntity entity) {
+        entity.references--;
+        if (entity.retired && entity.references == 0)
+            closeSession(entity);
     }
-    
-    public void closeArchive(@NonNull String archivePath) {
-        for (String path : myCaches.keySet()) {
-            if (path.startsWith(archivePath))
-                myCaches.remove(path);
+
+    /**
+     * Closes the session once no longer used, after it was removed from the sessions.
+     */
+    private void retire(SessionEntity entity) {
+        entity.retired = true;
+        if (entity.references == 0)
+            closeSession(entity);
+    }
+
+    private void closeSession(SessionEntity entity) {
+        entity.session.close();
+        IoUtils.safeClose(entity.provider);
+    }
+
+    private byte[] decompile(Iterable<File> classFiles, Map<String, Object> options) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        Fernflower fernflower = new Fernflower((externalPath, internalPath) ->
+                readBytes(new File(externalPath)),
+                new IResultSaver() {
+                    @Override
+                    public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+                    }
+
+                    @Override
+                    public Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) {
+                        // the source is encoded while written instead of copied out of a string
+                        return new OutputStreamWriter(content, StandardCharsets.UTF_8);
+                    }
+                },
+                options, myLogger);
+        for (File classFile : classFiles) {
+            fernflower.addSource(classFile);
         }
+        fernflower.decompileContext();
+        fernflower.clearContext();
+        return content.toByteArray();
+    }
+
+    public void close(@NonNull String filePath) {
+        getCache().evict(filePath);
+    }
+
+    public synchronized void closeArchive(@NonNull String archivePath) {
+        getCache().evict(archivePath);
+        SessionEntity entity = mySessions.remove(archivePath);
+        if (entity != null)
+            retire(entity);
     }
-    
+
     @Override
-    public void close() throws IOException {
-        myCaches.clear();
+    public synchronized void close() throws IOException {
+        getCache().clearMemory();
+        for (SessionEntity entity : mySessions.values())
+            retire(entity);
+        mySessions.clear();
     }
-    
-    private byte[] getContents(String filePath) {
-        if (myCaches.containsKey(filePath)) {
-            CacheEntity entity = myCaches.get(filePath);
-            if (entity != null && entity.contents != null) {
-                File file = new File(filePath);
-                if (file.lastModified() == entity.lastModified)
-                    return entity.contents;
-            }
-        }
-        return null;
+
+    private synchronized DecompiledSourceCache getCache() {
+        if (myCache == null)
+            myCache = new DecompiledSourceCache(new File(Application.get().getCacheDir(), "decompiled"));
+        return myCache;
     }
-    
-    private byte[] getContents(String archivePath, String entryName) {
-        if (myCaches.containsKey(archivePath + File.separator + entryName)) {
-            CacheEntity entity = myCaches.get(archivePath + File.separator + entryName);
-            if (entity != null && entity.contents != null) {
-                File file = new File(archivePath);
-                if (file.lastModified() == entity.lastModified) {
-                    return entity.contents;
+
+    private static class SessionEntity {
+        public DecompilerSession session;
+        public ArchiveBytecodeProvider provider;
+        public long lastModified;
+        public Map<String, Object> options;
+        // guarded by the reader
+        public int references;
+        public boolean retired;
+    }
+
+    /**
+     * Reads the classes of the archive of a session, through one handle kept open until the session is closed.
+     */
+    private static class ArchiveBytecodeProvider implements IBytecodeProvider, Closeable {
+        private final String myArchivePath;
+        // guarded by this
+        private ZipFile myArchive;
+        private boolean myClosed;
+
+        ArchiveBytecodeProvider(String archivePath) {
+            myArchivePath = archivePath;
+        }
+
+        @Override
+        public synchronized byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+            if (internalPath == null)
+                return readBytes(new File(externalPath));
+            if (!externalPath.equals(myArchivePath)) {
+                try (ZipFile archive = new ZipFile(externalPath)) {
+                    return readEntry(archive, externalPath, internalPath);
                 }
-                
             }
+            if (myClosed)
+                throw new IOException(myArchivePath + " is closed.");
+            if (myArchive == null)
+                myArchive = new ZipFile(myArchivePath);
+            return readEntry(myArchive, externalPath, internalPath);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            myClosed = true;
+            if (myArchive != null) {
+                myArchive.close();
+                myArchive = null;
+            }
+        }
+
+        private static byte[] readEntry(ZipFile archive, String externalPath, String internalPath) throws IOException {
+            ZipEntry entry = archive.getEntry(internalPath);
+            if (entry == null)
+                throw new IOException(externalPath + ":" + internalPath + " is not exists..");
+            return IoUtils.readBytesAndClose(archive.getInputStream(entry));
         }
-        return null;
-    }
-    
-    
-    private static class CacheEntity {
-        public byte[] contents;
-        public long lastModified;
     }
 }
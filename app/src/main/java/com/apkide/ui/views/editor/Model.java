@@ -1,9 +1,9 @@
 package com.apkide.ui.views.editor;
 
 import com.apkide.common.color.Color;
-import com.apkide.common.text.TextModelImpl;
+import com.apkide.common.text.PieceTableTextModel;
 
-public class Model extends TextModelImpl {
+public class Model extends PieceTableTextModel {
     public Model() {
         super();
     }
@@ -4,206 +4,310 @@ import androidx.annotation.NonNull;
 
 import java.util.Arrays;
 
+/**
+ * Styles of the chars of a text, kept per line as runs: the column a run starts at and its style, packed into an
+ * int and sorted by column. A line without runs has style 0, the last run of a line goes on past its end. Edits
+ * follow the positions of {@link com.apkide.common.text.TextModel.TextChangeListener}, the chars inserted take
+ * the style of the char before them.
+ */
 public class StyleSpan {
-    private byte[][] myLines = new byte[100][5];
-    
-    private int getSize(int line) {
-        if (line >= this.myLines.length) {
-            return 0;
-        }
-        byte[] styles = this.myLines[line];
-        if (styles.length == 0) {
-            return 0;
-        }
-        byte lastStyle = styles[styles.length - 1];
-        for (int length = styles.length - 2; length >= 0; length--) {
-            if (styles[length] != lastStyle) {
-                return length + 2;
-            }
-        }
-        return 0;
+    private static final int[] EMPTY = new int[0];
+    // the top bit is left to keep the runs sorted as ints
+    private static final int MAX_COLUMN = (1 << 23) - 1;
+
+    private int[][] myLines = new int[100][];
+    // lines after it have no runs
+    private int myLineCount;
+    private final RunBuilder myBuilder = new RunBuilder();
+
+    public StyleSpan() {
+        Arrays.fill(myLines, EMPTY);
     }
-    
-    private void insert(int line, int column) {
-        int endLine = line + 2;
-        if (this.myLines.length <= endLine) {
+
+    /**
+     * Styles the chars from the start to the end column, the end column included, a span over lines also
+     * styles the rest of its first line.
+     */
+    public void span(byte style, int startLine, int startColumn, int endLine, int endColumn) {
+        if (startLine == endLine) {
+            paint(startLine, startColumn, endColumn + 1, style);
             return;
         }
-        int startLine = line + 1;
-        System.arraycopy(this.myLines, startLine, this.myLines, endLine, (this.myLines.length - line) - 2);
-        byte[] styles = this.myLines[line];
-        byte[] newStyles = new byte[styles.length];
-        this.myLines[startLine] = newStyles;
-        if (styles.length > column) {
-            byte style = styles[column];
-            int newStyleIndex = 0;
-            int index = column;
-            while (index < styles.length) {
-                newStyles[newStyleIndex] = styles[index];
-                styles[index] = style;
-                index++;
-                newStyleIndex++;
-            }
+        paint(startLine, startColumn, Integer.MAX_VALUE, style);
+        for (int line = startLine + 1; line < endLine; line++) {
+            setRuns(line, getLineRuns(style));
         }
+        paint(endLine, 0, endColumn + 1, style);
     }
-    
-    private void insert(int line, int startColumn, int endColumn) {
-        int col;
-        if (endColumn != 0 && this.myLines.length > line && (col = getSize(line)) > startColumn) {
-            if (col - 1 == startColumn && startColumn > 0) {
-                resize(line, col + 1);
-                byte[] styles = this.myLines[line];
-                byte lastStyle = styles[startColumn - 1];
-                styles[startColumn] = lastStyle;
-                return;
-            }
-            resize(line, col + endColumn);
-            byte[] styles = this.myLines[line];
-            int endIndex = startColumn + endColumn;
-            System.arraycopy(styles, startColumn, styles, endIndex, (styles.length - startColumn) - endColumn);
-            byte lastStyle = startColumn > 0 ? styles[startColumn - 1] : (byte) 0;
-   
-            for (int i = startColumn; i < endIndex; i++) {
-                styles[i] = lastStyle;
-            }
-        }
+
+    public void clear() {
+        Arrays.fill(myLines, 0, myLineCount, EMPTY);
+        myLineCount = 0;
     }
-    
-    public void resize(int line, int column) {
-        resize(line);
-        byte[] styles = this.myLines[line];
-        if (styles.length <= column) {
-            byte lastStyle = styles[styles.length - 1];
-            int size = ((column * 5) / 4) + 1;
-            byte[] newStyles = new byte[size];
-            System.arraycopy(styles, 0, newStyles, 0, styles.length);
-            this.myLines[line] = newStyles;
-            for (int length = styles.length; length < size; length++) {
-                newStyles[length] = lastStyle;
-            }
+
+    /**
+     * Removes the styles of the chars from the start to the end column, the end column excluded, -1 for the
+     * start of the end line.
+     */
+    public void remove(int startLine, int startColumn, int endLine, int endColumn) {
+        endColumn = Math.max(endColumn, 0);
+        if (startLine == endLine) {
+            if (endColumn > startColumn)
+                setRuns(startLine, join(getRuns(startLine), startColumn, getRuns(startLine), endColumn));
+            return;
         }
-    }
-    
-    public void resize(int i) {
-        if (this.myLines.length <= i) {
-            byte[][] styles = new byte[i * 5 / 4][5];
-            System.arraycopy(this.myLines, 0, styles, 0, this.myLines.length);
-            this.myLines = styles;
+        if (endLine > startLine) {
+            setRuns(startLine, join(getRuns(startLine), startColumn, getRuns(endLine), endColumn));
+            removeLines(startLine + 1, endLine - startLine);
         }
     }
-    
-    public void span(byte style, int startLine, int startColumn, int endLine, int endColumn) {
+
+    /**
+     * Makes room for the chars inserted from the start to the end column, the end column included, -1 when
+     * the text inserted ends with a line break.
+     */
+    public void insert(int startLine, int startColumn, int endLine, int endColumn) {
+        int[] runs = getRuns(startLine);
+        byte style = startColumn > 0 ? getStyle(runs, startColumn - 1) : 0;
         if (startLine == endLine) {
-            resize(endLine, endColumn + 1);
-            byte[] styles = this.myLines[endLine];
-            for (int i = startColumn; i <= endColumn; i++) {
-                styles[i] = style;
-            }
+            if (endColumn >= startColumn)
+                setRuns(startLine, join(runs, startColumn, style, runs, startColumn, endColumn + 1 - startColumn));
             return;
         }
-        resize(startLine, startColumn + 1);
-        resize(endLine, endColumn + 1);
-        byte[] startStyles = this.myLines[startLine];
-        for (int i = startColumn; i < startStyles.length; i++) {
-            startStyles[i] = style;
-        }
-        int firstLine = startLine + 1;
-        int line;
-        while (true) {
-            line = 0;
-            if (firstLine >= endLine) {
-                break;
-            }
-            byte[] styles = this.myLines[firstLine];
-            while (line < styles.length) {
-                styles[line] = style;
-                line++;
-            }
-            firstLine++;
-        }
-        byte[] endStyles = this.myLines[endLine];
-        while (line <= endColumn) {
-            endStyles[line] = style;
-            line++;
+        if (endLine < startLine)
+            return;
+
+        insertLines(startLine + 1, endLine - startLine);
+        setRuns(endLine, join(EMPTY, 0, style, runs, startColumn, endColumn + 1));
+        for (int line = startLine + 1; line < endLine; line++) {
+            setRuns(line, getLineRuns(style));
         }
+        myBuilder.reset();
+        myBuilder.add(runs, 0, startColumn, 0);
+        myBuilder.add(startColumn, style);
+        setRuns(startLine, myBuilder.toArray());
     }
-    
-    public void clear() {
-        for (byte[] bArr : this.myLines) {
-            Arrays.fill(bArr, (byte) 0);
-        }
+
+    public byte getStyle(int line, int column) {
+        if (line < 0)
+            return 0;
+        return getStyle(getRuns(line), column);
     }
-    
-    public void remove(int startLine, int startColumn, int endLine, int endColumn) {
-        if (startLine == endLine) {
-            if (startLine < this.myLines.length) {
-                byte[] styles = this.myLines[startLine];
-                if (endColumn + 1 < styles.length) {
-                    System.arraycopy(styles, endColumn + 1, styles, startColumn, (styles.length - endColumn) - 1);
-                    return;
-                }
-                return;
+
+    /**
+     * Sets the styles of the spans given, the end columns excluded, a style of -1 leaves its span out. Where
+     * spans overlap, the one given first wins.
+     */
+    public void set(int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns, int size) {
+        clear();
+        if (!isSorted(styles, startLines, startColumns, endLines, endColumns, size)) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (styles[i] != -1)
+                    span((byte) styles[i], startLines[i], startColumns[i], endLines[i], endColumns[i] - 1);
             }
             return;
         }
-        if (endLine < this.myLines.length) {
-            resize(startLine, getSize(startLine) + getSize(endLine));
-            byte[] startStyles = this.myLines[startLine];
-            byte[] endStyles = this.myLines[endLine];
-            int endIndex = endColumn + 1;
-            for (int startIndex = startColumn; endIndex < endStyles.length && startIndex < startStyles.length; startIndex++) {
-                startStyles[startIndex] = endStyles[endIndex];
-                endIndex++;
+
+        // spans one after the other build the runs of each line in one go
+        int line = -1;
+        for (int i = 0; i < size; i++) {
+            if (styles[i] == -1 || isEmpty(startLines[i], startColumns[i], endLines[i], endColumns[i]))
+                continue;
+
+            byte style = (byte) styles[i];
+            if (startLines[i] != line) {
+                if (line >= 0)
+                    setRuns(line, myBuilder.toArray());
+                line = startLines[i];
+                myBuilder.reset();
             }
-        }
-        int lastLine = endLine + 1;
-        if (lastLine < this.myLines.length) {
-            System.arraycopy(this.myLines, lastLine, this.myLines, startLine + 1, (this.myLines.length - endLine) - 2);
-            int lineCount = endLine - startLine;
-            for (int i = 0; i < lineCount; i++) {
-                this.myLines[(this.myLines.length - i) - 1] = new byte[5];
+            myBuilder.add(startColumns[i], style);
+            if (endLines[i] == line) {
+                myBuilder.add(endColumns[i], (byte) 0);
+                continue;
+            }
+            setRuns(line, myBuilder.toArray());
+            for (int spanLine = line + 1; spanLine < endLines[i]; spanLine++) {
+                setRuns(spanLine, getLineRuns(style));
             }
+            line = endLines[i];
+            myBuilder.reset();
+            myBuilder.add(0, style);
+            myBuilder.add(endColumns[i], (byte) 0);
         }
+        if (line >= 0)
+            setRuns(line, myBuilder.toArray());
     }
-    
-    
-    public void insert(int startLine, int startColumn, int endLine, int endColumn) {
-        if (startLine == endLine) {
-            insert(startLine, startColumn, (endColumn - startColumn) + 1);
-            return;
-        }
-        for (int line = startLine; line < endLine; line++) {
-            insert(startLine, startColumn);
+
+    private static boolean isSorted(int[] styles, int[] startLines, int[] startColumns, int[] endLines,
+                                    int[] endColumns, int size) {
+        int line = 0;
+        int column = 0;
+        for (int i = 0; i < size; i++) {
+            if (styles[i] == -1 || isEmpty(startLines[i], startColumns[i], endLines[i], endColumns[i]))
+                continue;
+            if (startLines[i] < line || (startLines[i] == line && startColumns[i] < column))
+                return false;
+            line = endLines[i];
+            column = endColumns[i];
         }
-        insert(endLine, 0, endColumn + 1);
+        return true;
     }
-    
-    public byte getStyle(int line, int column) {
-        if (line >= this.myLines.length) {
-            return (byte) 0;
+
+    private static boolean isEmpty(int startLine, int startColumn, int endLine, int endColumn) {
+        return endLine < startLine || (endLine == startLine && endColumn <= startColumn);
+    }
+
+    private void paint(int line, int startColumn, int endColumn, byte style) {
+        if (endColumn <= startColumn)
+            return;
+
+        int[] runs = getRuns(line);
+        myBuilder.reset();
+        myBuilder.add(runs, 0, startColumn, 0);
+        myBuilder.add(startColumn, style);
+        if (endColumn != Integer.MAX_VALUE) {
+            myBuilder.add(endColumn, getStyle(runs, endColumn));
+            myBuilder.add(runs, endColumn + 1, Integer.MAX_VALUE, 0);
         }
-        byte[] styles = this.myLines[line];
-        if (column >= styles.length) {
-            return styles[styles.length - 1];
+        setRuns(line, myBuilder.toArray());
+    }
+
+    /**
+     * @return the runs before the start column of the first runs given, then the runs from the end column of
+     * the second ones, moved to the start column
+     */
+    private int[] join(int[] startRuns, int startColumn, int[] endRuns, int endColumn) {
+        myBuilder.reset();
+        myBuilder.add(startRuns, 0, startColumn, 0);
+        myBuilder.add(startColumn, getStyle(endRuns, endColumn));
+        myBuilder.add(endRuns, endColumn + 1, Integer.MAX_VALUE, startColumn - endColumn);
+        return myBuilder.toArray();
+    }
+
+    /**
+     * @return the runs before the start column of the first runs given, then chars of a style up to the start
+     * column plus the count, then the runs from the end column of the second ones, moved after those chars
+     */
+    private int[] join(int[] startRuns, int startColumn, byte style, int[] endRuns, int endColumn, int count) {
+        myBuilder.reset();
+        myBuilder.add(startRuns, 0, startColumn, 0);
+        myBuilder.add(startColumn, style);
+        myBuilder.add(startColumn + count, getStyle(endRuns, endColumn));
+        myBuilder.add(endRuns, endColumn + 1, Integer.MAX_VALUE, startColumn + count - endColumn);
+        return myBuilder.toArray();
+    }
+
+    private static byte getStyle(int[] runs, int column) {
+        int index = Arrays.binarySearch(runs, Math.min(column, MAX_COLUMN) << 8 | 0xFF);
+        if (index < 0)
+            index = -index - 2;
+        return index >= 0 ? (byte) runs[index] : 0;
+    }
+
+    private static int[] getLineRuns(byte style) {
+        return style == 0 ? EMPTY : new int[]{style & 0xFF};
+    }
+
+    private int[] getRuns(int line) {
+        return line < myLineCount ? myLines[line] : EMPTY;
+    }
+
+    private void setRuns(int line, int[] runs) {
+        if (line >= myLineCount) {
+            if (runs.length == 0)
+                return;
+            ensureCapacity(line + 1);
+            myLineCount = line + 1;
         }
-        return styles[column];
+        myLines[line] = runs;
     }
-    
-    public void set(int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns, int size) {
-        clear();
-        for (int i = size - 1; i >= 0; i--) {
-            if (styles[i] != -1)
-                span((byte) styles[i], startLines[i], startColumns[i], endLines[i], endColumns[i] - 1);
+
+    private void insertLines(int line, int count) {
+        if (line >= myLineCount)
+            return;
+
+        ensureCapacity(myLineCount + count);
+        System.arraycopy(myLines, line, myLines, line + count, myLineCount - line);
+        Arrays.fill(myLines, line, line + count, EMPTY);
+        myLineCount += count;
+    }
+
+    private void removeLines(int line, int count) {
+        if (line >= myLineCount)
+            return;
+
+        int end = Math.min(line + count, myLineCount);
+        System.arraycopy(myLines, end, myLines, line, myLineCount - end);
+        Arrays.fill(myLines, myLineCount - (end - line), myLineCount, EMPTY);
+        myLineCount -= end - line;
+    }
+
+    private void ensureCapacity(int lineCount) {
+        if (myLines.length < lineCount) {
+            int length = myLines.length;
+            myLines = Arrays.copyOf(myLines, Math.max(lineCount, length * 3 / 2));
+            Arrays.fill(myLines, length, myLines.length, EMPTY);
         }
     }
-    
+
     @NonNull
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        for (byte[] bytes : myLines) {
-            builder.append(Arrays.toString(bytes)).append("\n");
+        for (int line = 0; line < myLineCount; line++) {
+            int[] runs = myLines[line];
+            for (int i = 0; i < runs.length; i++) {
+                if (i > 0)
+                    builder.append(' ');
+                builder.append(runs[i] >>> 8).append(':').append((byte) runs[i]);
+            }
+            builder.append("\n");
         }
         return builder.toString();
     }
+
+    /**
+     * Runs added by increasing column, leaving out the ones that don't change the style.
+     */
+    private static final class RunBuilder {
+        private int[] myRuns = new int[16];
+        private int myCount;
+
+        void reset() {
+            myCount = 0;
+        }
+
+        void add(int column, byte style) {
+            column = Math.min(column, MAX_COLUMN);
+            // a run at the same column replaces the one before
+            if (myCount > 0 && myRuns[myCount - 1] >>> 8 == column)
+                myCount--;
+            byte lastStyle = myCount > 0 ? (byte) myRuns[myCount - 1] : 0;
+            if (style == lastStyle)
+                return;
+
+            if (myCount == myRuns.length)
+                myRuns = Arrays.copyOf(myRuns, myCount * 2);
+            myRuns[myCount++] = column << 8 | style & 0xFF;
+        }
+
+        /**
+         * Adds the runs starting from the start column up to the end column, the end column excluded, moved by
+         * the delta given.
+         */
+        void add(int[] runs, int startColumn, int endColumn, int delta) {
+            for (int run : runs) {
+                int column = run >>> 8;
+                if (column >= endColumn)
+                    break;
+                if (column >= startColumn)
+                    add(column + delta, (byte) run);
+            }
+        }
+
+        int[] toArray() {
+            return myCount == 0 ? EMPTY : Arrays.copyOf(myRuns, myCount);
+        }
+    }
 }
@@ -0,0 +1,280 @@
+package com.apkide.ui.views.editor;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import com.apkide.common.text.PieceTableTextModel;
+import com.apkide.common.text.TextModel;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Edits a text model with random edits and styles, the spans following its change events, and compares the
+ * style of each char with a model keeping one style per char.
+ */
+public class StyleSpanTest {
+    private static final String[] FRAGMENTS = {"a", "bc", "def", "\n", "\n\n", "x\ny", "gh\n", "\nij", ""};
+    // 200 is a negative byte, it has to stay out of the column bits
+    private static final int[] STYLES = {1, 2, 3, 7, 200};
+
+    @Test
+    public void followsRandomEdits() {
+        Random random = new Random(42);
+        Fixture fixture = new Fixture("first line\nsecond\n\nfourth line here\nfifth");
+        fixture.setRandomStyles(random);
+        for (int round = 0; round < 1500; round++) {
+            String operation;
+            switch (random.nextInt(6)) {
+                case 0:
+                    operation = fixture.insertText(random);
+                    break;
+                case 1:
+                    operation = fixture.insertChar(random);
+                    break;
+                case 2:
+                    operation = fixture.remove(random);
+                    break;
+                case 3:
+                    operation = fixture.removeLineBreak(random);
+                    break;
+                default:
+                    operation = fixture.setRandomStyles(random);
+                    break;
+            }
+            fixture.assertStyles("round " + round + ", " + operation);
+        }
+    }
+
+    @Test
+    public void insertEndingWithLineBreakKeepsTheRestOfTheLine() {
+        Fixture fixture = new Fixture("abcd\nef");
+        fixture.set(new int[]{1, 2}, new int[]{0, 0}, new int[]{0, 2}, new int[]{0, 1}, new int[]{2, 1});
+        // the end column is -1
+        fixture.insert(0, 2, "xy\n");
+        fixture.assertStyles("text ending with a line break");
+        fixture.insert(0, 4, '\n');
+        fixture.assertStyles("line break");
+    }
+
+    @Test
+    public void removeLineBreakJoinsTheStylesOfBothLines() {
+        Fixture fixture = new Fixture("ab\ncd\nef");
+        fixture.set(new int[]{1, 2, 3}, new int[]{0, 1, 2}, new int[]{1, 1, 0}, new int[]{0, 1, 2},
+                new int[]{2, 2, 1});
+        // the end column is -1
+        fixture.removeLineBreak(0);
+        fixture.assertStyles("first line break");
+        fixture.removeLineBreak(0);
+        fixture.assertStyles("second line break");
+    }
+
+    @Test
+    public void overlappingSpansKeepTheFirstOne() {
+        Fixture fixture = new Fixture("abcdef\nghijkl\nmnopqr");
+        fixture.set(new int[]{1, 2, 3, -1, 200}, new int[]{0, 0, 1, 0, 0}, new int[]{2, 0, 4, 0, 5},
+                new int[]{1, 0, 2, 2, 2}, new int[]{3, 4, 2, 6, 0});
+        fixture.assertStyles("overlapping spans");
+    }
+
+    /**
+     * A text model whose change events go to the spans, and the same text with a style per char edited
+     * alongside.
+     */
+    private static class Fixture implements TextModel.TextChangeListener {
+        private final PieceTableTextModel myModel = new PieceTableTextModel();
+        private final StyleSpan mySpan = new StyleSpan();
+        private final StringBuilder myText;
+        // the style of each char of the text, the ones of line breaks are never read
+        private final StringBuilder myStyles = new StringBuilder();
+
+        Fixture(String text) {
+            myModel.setText(text);
+            myModel.addTextModelListener(this);
+            myText = new StringBuilder(text);
+            for (int i = 0; i < text.length(); i++) {
+                myStyles.append((char) 0);
+            }
+        }
+
+        String insertText(Random random) {
+            int line = random.nextInt(getLineCount());
+            int column = random.nextInt(getLineLength(line) + 1);
+            String text = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+            insert(line, column, text);
+            return "insert " + line + ":" + column + " '" + text + "'";
+        }
+
+        String insertChar(Random random) {
+            int line = random.nextInt(getLineCount());
+            int column = random.nextInt(getLineLength(line) + 1);
+            char c = random.nextInt(3) == 0 ? '\n' : 'z';
+            insert(line, column, c);
+            return "insert " + line + ":" + column + " '" + c + "'";
+        }
+
+        String remove(Random random) {
+            int startLine = random.nextInt(getLineCount());
+            int startColumn = random.nextInt(getLineLength(startLine) + 1);
+            int endLine = Math.min(getLineCount() - 1, startLine + random.nextInt(3));
+            int endColumn = random.nextInt(getLineLength(endLine) + 1);
+            if (endLine == startLine && endColumn < startColumn) {
+                int column = startColumn;
+                startColumn = endColumn;
+                endColumn = column;
+            }
+            myModel.remove(startLine, startColumn, endLine, endColumn);
+            int start = getOffset(startLine, startColumn);
+            int end = getOffset(endLine, endColumn);
+            myText.delete(start, end);
+            myStyles.delete(start, end);
+            return "remove " + startLine + ":" + startColumn + "-" + endLine + ":" + endColumn;
+        }
+
+        String removeLineBreak(Random random) {
+            int line = random.nextInt(getLineCount());
+            removeLineBreak(line);
+            return "remove line break " + line;
+        }
+
+        void removeLineBreak(int line) {
+            boolean last = line + 1 >= getLineCount();
+            int offset = getOffset(line, getLineLength(line));
+            myModel.removeLineBreak(line);
+            if (!last) {
+                myText.deleteCharAt(offset);
+                myStyles.deleteCharAt(offset);
+            }
+        }
+
+        void insert(int line, int column, String text) {
+            myModel.insert(line, column, text);
+            insertModel(line, column, text);
+        }
+
+        void insert(int line, int column, char c) {
+            myModel.insert(line, column, c);
+            insertModel(line, column, String.valueOf(c));
+        }
+
+        private void insertModel(int line, int column, String text) {
+            int offset = getOffset(line, column);
+            // inserted chars take the style of the char before them on the line
+            char style = column > 0 ? myStyles.charAt(offset - 1) : 0;
+            myText.insert(offset, text);
+            for (int i = 0; i < text.length(); i++) {
+                myStyles.insert(offset, style);
+            }
+        }
+
+        /**
+         * Either spans one after the other as the highlighter sends them, or spans in any order that may
+         * overlap, some left out or empty.
+         */
+        String setRandomStyles(Random random) {
+            int size = random.nextInt(12);
+            int[] styles = new int[size];
+            int[] startLines = new int[size];
+            int[] startColumns = new int[size];
+            int[] endLines = new int[size];
+            int[] endColumns = new int[size];
+            boolean sorted = random.nextBoolean();
+            int line = 0;
+            int column = 0;
+            for (int i = 0; i < size; i++) {
+                styles[i] = random.nextInt(8) == 0 ? -1 : STYLES[random.nextInt(STYLES.length)];
+                if (sorted) {
+                    line = Math.min(getLineCount() - 1, line + (random.nextInt(3) == 0 ? 1 : 0));
+                    column = random.nextInt(getLineLength(line) + 1);
+                    startLines[i] = line;
+                    startColumns[i] = column = Math.max(column, i > 0 && endLines[i - 1] == line
+                            ? endColumns[i - 1] : 0);
+                    line = Math.min(getLineCount() - 1, line + (random.nextInt(4) == 0 ? 1 : 0));
+                    column = line == startLines[i] ? column : 0;
+                    column += random.nextInt(getLineLength(line) - column + 1);
+                } else {
+                    startLines[i] = random.nextInt(getLineCount());
+                    startColumns[i] = random.nextInt(getLineLength(startLines[i]) + 1);
+                    line = Math.min(getLineCount() - 1, startLines[i] + random.nextInt(3));
+                    column = random.nextInt(getLineLength(line) + 1);
+                }
+                endLines[i] = line;
+                endColumns[i] = column;
+            }
+            set(styles, startLines, startColumns, endLines, endColumns);
+            return (sorted ? "set sorted " : "set ") + size + " spans";
+        }
+
+        void set(int[] styles, int[] startLines, int[] startColumns, int[] endLines, int[] endColumns) {
+            int size = styles.length;
+            mySpan.set(styles, startLines, startColumns, endLines, endColumns, size);
+            myStyles.setLength(0);
+            for (int i = 0; i < myText.length(); i++) {
+                myStyles.append((char) 0);
+            }
+            // the span given first wins
+            for (int i = size - 1; i >= 0; i--) {
+                if (styles[i] == -1) {
+                    continue;
+                }
+                int start = getOffset(startLines[i], startColumns[i]);
+                int end = getOffset(endLines[i], endColumns[i]);
+                for (int offset = start; offset < end; offset++) {
+                    myStyles.setCharAt(offset, (char) (styles[i] & 0xFF));
+                }
+            }
+        }
+
+        void assertStyles(String message) {
+            assertEquals(message, myText.toString(), myModel.getText());
+            int offset = 0;
+            for (int line = 0; line < getLineCount(); line++) {
+                int length = getLineLength(line);
+                for (int column = 0; column < length; column++) {
+                    assertEquals(message + "\nat " + line + ":" + column + "\n" + mySpan,
+                            (byte) myStyles.charAt(offset + column), mySpan.getStyle(line, column));
+                }
+                offset += length + 1;
+            }
+        }
+
+        private int getLineCount() {
+            return myModel.getLineCount();
+        }
+
+        private int getLineLength(int line) {
+            return myModel.getLineLength(line);
+        }
+
+        private int getOffset(int line, int column) {
+            int offset = 0;
+            for (int i = 0; i < line; i++) {
+                offset = myText.indexOf("\n", offset) + 1;
+            }
+            return offset + column;
+        }
+
+        @Override
+        public void prepareInsert(@NonNull TextModel model, int line, int column, @NonNull String newText) {
+        }
+
+        @Override
+        public void insertUpdate(@NonNull TextModel model, int startLine, int startColumn, int endLine,
+                                 int endColumn) {
+            mySpan.insert(startLine, startColumn, endLine, endColumn);
+        }
+
+        @Override
+        public void prepareRemove(@NonNull TextModel model, int startLine, int startColumn, int endLine,
+                                  int endColumn) {
+        }
+
+        @Override
+        public void removeUpdate(@NonNull TextModel model, int startLine, int startColumn, int endLine,
+                                 int endColumn) {
+            mySpan.remove(startLine, startColumn, endLine, endColumn);
+        }
+    }
+}
@@ -18,7 +18,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -30,6 +32,7 @@ public class FileSystem {
     private static final int BINARY_CHECK_BYTE_COUNT = 8000;
     
     private static FileArchiveReader[] sArchiveReaders = new FileArchiveReader[0];
+    private static FileMaterializer[] sMaterializers = new FileMaterializer[0];
     private static final Object sLock = new Object();
     
     public static void setArchiveReaders(@NonNull FileArchiveReader[] archiveReaders) {
@@ -45,6 +48,50 @@ public class FileSystem {
         }
     }
     
+    public static void addMaterializer(@NonNull FileMaterializer materializer) {
+        synchronized (sLock) {
+            FileMaterializer[] materializers = new FileMaterializer[sMaterializers.length + 1];
+            System.arraycopy(sMaterializers, 0, materializers, 0, sMaterializers.length);
+            materializers[sMaterializers.length] = materializer;
+            sMaterializers = materializers;
+        }
+    }
+    
+    public static void removeMaterializer(@NonNull FileMaterializer materializer) {
+        synchronized (sLock) {
+            List<FileMaterializer> materializers = new ArrayList<>();
+            for (FileMaterializer m : sMaterializers) {
+                if (m != materializer)
+                    materializers.add(m);
+            }
+            sMaterializers = materializers.toArray(new FileMaterializer[0]);
+        }
+    }
+    
+    @NonNull
+    public static FileMaterializer[] getMaterializers() {
+        synchronized (sLock) {
+            return sMaterializers;
+        }
+    }
+    
+    public static boolean isPendingFile(@NonNull String filePath) {
+        for (FileMaterializer materializer : getMaterializers()) {
+            if (materializer.isPendingFile(filePath))
+                return true;
+        }
+        return false;
+    }
+    
+    private static void materialize(@NonNull String filePath) throws IOException {
+        for (FileMaterializer materializer : getMaterializers()) {
+            if (materializer.isPendingFile(filePath)) {
+                materializer.materialize(filePath);
+                return;
+            }
+        }
+    }
+    
     public static void closeArchives() throws IOException {
         for (FileArchiveReader reader : getArchiveReaders()) {
             reader.close();
@@ -91,6 +138,7 @@ public class FileSystem {
     
     @NonNull
     public static Reader readFile(@NonNull String filePath, @Nullable String encoding) throws IOException {
+        materialize(filePath);
         if (isNormalFile(filePath)) {
             String parent = getParentPath(filePath);
             if (parent == null)
@@ -239,7 +287,7 @@ public class FileSystem {
     }
     
     public static boolean exists(@NonNull String filePath) {
-        return new File(filePath).exists() || isArchiveEntry(filePath);
+        return new File(filePath).exists() || isArchiveEntry(filePath) || isPendingFile(filePath);
     }
     
     public static boolean isArchiveEntry(@NonNull String path) {
@@ -300,7 +348,7 @@ public class FileSystem {
     }
     
     public static boolean isFile(@NonNull String path) {
-        return (isNormalFile(path) || isArchiveFileEntry(path));
+        return (isNormalFile(path) || isArchiveFileEntry(path) || isPendingFile(path));
     }
     
     @NonNull
@@ -324,14 +372,21 @@ public class FileSystem {
             return new ArrayList<>();
         } else {
             String[] entries = new File(dirPath).list();
-            if (entries == null)
-                return new ArrayList<>();
             List<String> list = new ArrayList<>();
-            String[] paths = new String[entries.length];
-            String prefix = dirPath.equals(File.separator) ? File.separator : dirPath + File.separator;
-            for (int i = 0; i < paths.length; i++) {
-                paths[i] = prefix + entries[i];
-                list.add(paths[i]);
+            if (entries != null) {
+                String prefix = dirPath.equals(File.separator) ? File.separator : dirPath + File.separator;
+                for (String entry : entries) {
+                    list.add(prefix + entry);
+                }
+            }
+            Set<String> paths = null;
+            for (FileMaterializer materializer : getMaterializers()) {
+                for (String path : materializer.getPendingChildEntries(dirPath)) {
+                    if (paths == null)
+                        paths = new HashSet<>(list);
+                    if (paths.add(path))
+                        list.add(path);
+                }
             }
             return list;
         }
@@ -432,6 +487,10 @@ public class FileSystem {
         File file = new File(filePath);
         if (file.exists())
             return file.lastModified();
+        for (FileMaterializer materializer : getMaterializers()) {
+            if (materializer.isPendingFile(filePath))
+                return materializer.getPendingLastModified(filePath);
+        }
         return -1;
     }
     
@@ -452,6 +511,10 @@ public class FileSystem {
         File file = new File(filePath);
         if (file.exists())
             return file.length();
+        for (FileMaterializer materializer : getMaterializers()) {
+            if (materializer.isPendingFile(filePath))
+                return materializer.getPendingLength(filePath);
+        }
         return -1;
     }
     
@@ -576,6 +639,7 @@ public class FileSystem {
     
     @NonNull
     public static InputStream getInputStream(@NonNull String filePath) throws IOException {
+        materialize(filePath);
         if (isNormalFile(filePath)) {
             String parent = getParentPath(filePath);
             if (parent == null)
@@ -606,6 +670,31 @@ public class FileSystem {
         throw new IOException();
     }
     
+    /**
+     * Source of files that are listed on disk before they are written, like the classes and
+     * resources of a lazily decoded apk. Pending files are reported by exists, isFile and
+     * getChildEntries, and are written by the materializer the first time they are read.
+     */
+    public interface FileMaterializer {
+        
+        boolean isPendingFile(@NonNull String filePath);
+        
+        void materialize(@NonNull String filePath) throws IOException;
+        
+        @NonNull
+        List<String> getPendingChildEntries(@NonNull String dirPath);
+        
+        /**
+         * @return size of the pending file as it will be written, -1 if it is unknown
+         */
+        long getPendingLength(@NonNull String filePath);
+        
+        /**
+         * @return time of the pending file as it will be written, -1 if it is unknown
+         */
+        long getPendingLastModified(@NonNull String filePath);
+    }
+    
     public interface FileArchiveReader extends Closeable {
         
         @NonNull
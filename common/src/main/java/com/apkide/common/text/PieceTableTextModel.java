@@ -0,0 +1,954 @@
+package com.apkide.common.text;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.common.io.iterator.LineIterator;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Text model keeping the text as a piece table: pieces of the text set and of the append-only buffers edits
+ * write to, in a balanced tree that also counts the line breaks of each subtree, so lines and offsets map onto
+ * each other in O(log n). An edit copies the path it changes instead of changing nodes, the tree read by
+ * {@link #clone()} and the readers stays a snapshot of the text while the model is edited.
+ * <p>
+ * The undo history keeps the offset of each edit with the pieces it removed and the length it inserted, the
+ * text removed stays in the buffers instead of being copied. Typing and deleting char by char merge into one
+ * edit, the edits of a batch undo together, and the oldest edits are dropped past a number of edits or of
+ * chars kept.
+ * <p>
+ * Line breaks are kept as '\n', the text returned uses {@link #getLineBreak()}.
+ */
+public class PieceTableTextModel implements TextModel {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_UNDO_GROUPS = 1000;
+    private static final long MAX_UNDO_LENGTH = 4 * 1024 * 1024;
+    // removed text up to this length is copied, a piece costs more than its chars
+    private static final int MAX_COPIED_LENGTH = 32;
+
+    private final List<TextChangeListener> myListeners;
+    private final String myLineBreak;
+    private boolean myReadOnly;
+    @Nullable
+    private volatile Node myRoot;
+    // buffer typing appends to, larger texts get a buffer of their own
+    @Nullable
+    private Buffer myBuffer;
+    @Nullable
+    private volatile Line myLine;
+    private long myLastEditTimestamps;
+    private final ArrayDeque<EditGroup> myUndoGroups = new ArrayDeque<>();
+    private final ArrayDeque<EditGroup> myRedoGroups = new ArrayDeque<>();
+    // chars the edits of both removed and inserted
+    private long myUndoLength;
+    private int myBatchDepth;
+    @Nullable
+    private EditGroup myBatchGroup;
+    // the last group is a char typed or deleted the next one may join
+    private boolean myMergeable;
+
+    public PieceTableTextModel() {
+        myListeners = new Vector<>(1);
+        myLineBreak = System.lineSeparator();
+    }
+
+    @Override
+    public void addTextModelListener(@NonNull TextChangeListener listener) {
+        if (!myListeners.contains(listener))
+            myListeners.add(listener);
+    }
+
+    @Override
+    public void removeTextModelListener(@NonNull TextChangeListener listener) {
+        myListeners.remove(listener);
+    }
+
+    @Override
+    public void setText(@NonNull String text) {
+        beginBatchEdit();
+        try {
+            remove(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            insert(0, 0, text);
+        } finally {
+            endBatchEdit();
+        }
+    }
+
+    @Override
+    public void insertLineBreak(int line, int column) {
+        for (TextChangeListener listener : myListeners) {
+            listener.prepareInsert(this, line, column, getLineBreak());
+        }
+
+        synchronized (this) {
+            insertText(getOffset(myRoot, line, column), new char[]{'\n'}, 1);
+            updateEditTimestamps();
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.insertUpdate(this, line, column, line + 1, -1);
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, char c) {
+        if (c == '\r' || c == '\n') {
+            insertLineBreak(line, column);
+            return;
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.prepareInsert(this, line, column, String.valueOf(c));
+        }
+
+        synchronized (this) {
+            insertText(getOffset(myRoot, line, column), new char[]{c}, 1);
+            updateEditTimestamps();
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.insertUpdate(this, line, column, line, column);
+        }
+    }
+
+    @Override
+    public void insert(int line, int column, @NonNull String newText) {
+        for (TextChangeListener listener : myListeners) {
+            listener.prepareInsert(this, line, column, newText);
+        }
+
+        char[] chars = newText.toCharArray();
+        int length = 0;
+        int endLine = line;
+        int lastLineStart = 0;
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if (c == '\r') {
+                if (i + 1 < chars.length && chars[i + 1] == '\n')
+                    i++;
+                c = '\n';
+            }
+            chars[length++] = c;
+            if (c == '\n') {
+                endLine++;
+                lastLineStart = length;
+            }
+        }
+        // the end column is the one of the last char inserted, as for a single char
+        int endColumn = (endLine == line ? column : 0) + length - lastLineStart - 1;
+
+        synchronized (this) {
+            insertText(getOffset(myRoot, line, column), chars, length);
+            updateEditTimestamps();
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.insertUpdate(this, line, column, endLine, endColumn);
+        }
+    }
+
+    @Override
+    public void removeLineBreak(int line) {
+        if (line + 1 >= getLineCount())
+            return;
+
+        int column = getLineLength(line);
+        for (TextChangeListener listener : myListeners) {
+            listener.prepareRemove(this, line, column, line + 1, -1);
+        }
+
+        synchronized (this) {
+            int offset = getOffset(myRoot, line, column);
+            removeText(offset, offset + 1);
+            updateEditTimestamps();
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.removeUpdate(this, line, column, line + 1, -1);
+        }
+    }
+
+    @Override
+    public void remove(int startLine, int startColumn, int endLine, int endColumn) {
+        if (endLine >= getLineCount())
+            endLine = getLineCount() - 1;
+
+        if (endColumn > getLineLength(endLine))
+            endColumn = getLineLength(endLine);
+
+        for (TextChangeListener listener : myListeners) {
+            listener.prepareRemove(this, startLine, startColumn, endLine, endColumn);
+        }
+
+        synchronized (this) {
+            Node root = myRoot;
+            removeText(getOffset(root, startLine, startColumn), getOffset(root, endLine, endColumn));
+            updateEditTimestamps();
+        }
+
+        for (TextChangeListener listener : myListeners) {
+            listener.removeUpdate(this, startLine, startColumn, endLine, endColumn);
+        }
+    }
+
+    @Override
+    public void replace(int startLine, int startColumn, int endLine, int endColumn,
+                        @NonNull String newText) {
+        beginBatchEdit();
+        try {
+            remove(startLine, startColumn, endLine, endColumn);
+            insert(startLine, startColumn, newText);
+        } finally {
+            endBatchEdit();
+        }
+    }
+
+    @Override
+    public char getChar(int line, int column) {
+        Line text = getLine(line);
+        if (column < 0 || column >= text.myChars.length)
+            throw new IndexOutOfBoundsException("Column " + column + " of line " + line);
+        return text.myChars[column];
+    }
+
+    /**
+     * The text up to the end of a line takes the line break after it.
+     */
+    @NonNull
+    @Override
+    public String getText(int startLine, int startColumn, int endLine, int endColumn) {
+        Node root = myRoot;
+        int start = getOffset(root, startLine, startColumn);
+        return toString(root, start, Math.max(start, getEndOffset(root, endLine, endColumn)));
+    }
+
+    @NonNull
+    @Override
+    public String getText() {
+        Node root = myRoot;
+        return toString(root, 0, length(root));
+    }
+
+    @NonNull
+    @Override
+    public Reader getReader() {
+        return getReader(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The reader reads the text as it is now, the edits made while reading don't change it.
+     */
+    @NonNull
+    @Override
+    public Reader getReader(int startLine, int startColumn, int endLine, int endColumn) {
+        if (!myLineBreak.equals("\n"))
+            return new StringReader(getText(startLine, startColumn, endLine, endColumn));
+
+        Node root = myRoot;
+        int start = getOffset(root, startLine, startColumn);
+        return new TextReader(root, start, Math.max(start, getEndOffset(root, endLine, endColumn)));
+    }
+
+    @NonNull
+    @Override
+    public LineIterator getIterator(int startLine, int endLine) {
+        return new LineIterator(getReader(startLine, 0, endLine, Integer.MAX_VALUE));
+    }
+
+    @NonNull
+    @Override
+    public LineIterator getIterator() {
+        return new LineIterator(getReader());
+    }
+
+    @NonNull
+    @Override
+    public String getLineBreak() {
+        return myLineBreak;
+    }
+
+    @Override
+    public int getLineCount() {
+        return breaks(myRoot) + 1;
+    }
+
+    @Override
+    public int getLineLength(int line) {
+        Node root = myRoot;
+        Line text = myLine;
+        if (text != null && text.myRoot == root && text.myLine == line)
+            return text.myChars.length;
+        return getLineEnd(root, line) - getLineStart(root, line);
+    }
+
+    @NonNull
+    @Override
+    public String getLineText(int line) {
+        return String.valueOf(getLine(line).myChars);
+    }
+
+    @Override
+    public void getLineChars(int line, int startColumn, int endColumn,
+                             @NonNull char[] dest, int offset) {
+        System.arraycopy(getLine(line).myChars, startColumn, dest, offset, endColumn - startColumn);
+    }
+
+    @Override
+    public float measureLine(int line, int startColumn, int endColumn,
+                             @NonNull Paint paint) {
+        return paint.measureText(getLine(line).myChars, startColumn, endColumn - startColumn);
+    }
+
+    @Override
+    public void getLineWidths(int line, int startColumn, int endColumn,
+                              @NonNull float[] widths, @NonNull Paint paint) {
+        paint.getTextWidths(getLine(line).myChars, startColumn, endColumn - startColumn, widths);
+    }
+
+    @Override
+    public void drawLine(int line, int startColumn, int endColumn, float x, float y,
+                         @NonNull Canvas canvas, @NonNull Paint paint) {
+        canvas.drawText(getLine(line).myChars, startColumn, endColumn - startColumn, x, y, paint);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+        myReadOnly = readOnly;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return myReadOnly;
+    }
+
+    synchronized protected void updateEditTimestamps() {
+        long timestamps = System.currentTimeMillis();
+        if (timestamps == myLastEditTimestamps)
+            myLastEditTimestamps++;
+        else
+            myLastEditTimestamps = timestamps;
+    }
+
+    @Override
+    synchronized public long lastEditTimestamps() {
+        return myLastEditTimestamps;
+    }
+
+    @Override
+    synchronized public void beginBatchEdit() {
+        myBatchDepth++;
+    }
+
+    @Override
+    synchronized public void endBatchEdit() {
+        if (myBatchDepth == 0)
+            return;
+
+        myBatchDepth--;
+        if (myBatchDepth == 0) {
+            myBatchGroup = null;
+            myMergeable = false;
+        }
+    }
+
+    @Override
+    synchronized public boolean isBatchEdit() {
+        return myBatchDepth > 0;
+    }
+
+    @Override
+    synchronized public boolean canUndo() {
+        return !myUndoGroups.isEmpty();
+    }
+
+    @Override
+    synchronized public boolean canRedo() {
+        return !myRedoGroups.isEmpty();
+    }
+
+    @Override
+    public void undo() {
+        EditGroup group;
+        synchronized (this) {
+            group = myUndoGroups.pollLast();
+            if (group == null)
+                return;
+            myRedoGroups.addLast(group);
+            myBatchGroup = null;
+            myMergeable = false;
+        }
+
+        for (int i = group.myEdits.size() - 1; i >= 0; i--) {
+            Edit edit = group.myEdits.get(i);
+            edit.myInserted = apply(edit.myOffset, edit.myInsertedLength, edit.myRemoved, edit.myRemovedChars);
+        }
+    }
+
+    @Override
+    public void redo() {
+        EditGroup group;
+        synchronized (this) {
+            group = myRedoGroups.pollLast();
+            if (group == null)
+                return;
+            myUndoGroups.addLast(group);
+            myBatchGroup = null;
+            myMergeable = false;
+        }
+
+        for (Edit edit : group.myEdits) {
+            Node removed = apply(edit.myOffset, edit.getRemovedLength(), edit.myInserted, null);
+            if (edit.myRemovedChars == null)
+                edit.myRemoved = removed;
+            edit.myInserted = null;
+        }
+    }
+
+    /**
+     * Forgets the edits to undo and to redo, as when the text is loaded from a file.
+     */
+    synchronized public void clearUndoHistory() {
+        myUndoGroups.clear();
+        myRedoGroups.clear();
+        myUndoLength = 0;
+        myBatchGroup = null;
+        myMergeable = false;
+    }
+
+    /**
+     * The clone shares the tree of this model, it costs the same for any length of text.
+     */
+    @NonNull
+    @Override
+    public TextModel clone() {
+        PieceTableTextModel model = new PieceTableTextModel();
+        synchronized (this) {
+            model.myRoot = myRoot;
+            model.myLastEditTimestamps = myLastEditTimestamps;
+        }
+        model.myReadOnly = myReadOnly;
+        return model;
+    }
+
+    private void insertText(int offset, char[] text, int length) {
+        if (length == 0)
+            return;
+
+        Buffer buffer = getBuffer(length);
+        int start = buffer.myLength;
+        int firstBreak = buffer.myBreakCount;
+        buffer.append(text, length);
+        int breakCount = buffer.myBreakCount - firstBreak;
+
+        Node[] parts = split(myRoot, offset);
+        Node left = parts[0];
+        Node last = left;
+        while (last != null && last.myRight != null) {
+            last = last.myRight;
+        }
+        // typing goes on with the piece before, which ends where the buffer did
+        if (last != null && last.myChars == buffer.myChars && last.myStart + last.myLength == start) {
+            left = extendLast(left, buffer.myBreaks, length, breakCount);
+        } else {
+            left = merge(left, new Node(buffer.myChars, buffer.myBreaks, start, length, firstBreak, breakCount));
+        }
+        myRoot = merge(left, parts[1]);
+        addEdit(offset, null, length, length == 1 && text[0] != '\n');
+    }
+
+    @NonNull
+    private Buffer getBuffer(int length) {
+        if (length > BUFFER_SIZE / 4)
+            return new Buffer(length);
+
+        if (myBuffer == null || myBuffer.myChars.length - myBuffer.myLength < length)
+            myBuffer = new Buffer(BUFFER_SIZE);
+        return myBuffer;
+    }
+
+    @NonNull
+    private Node newPiece(char[] text) {
+        Buffer buffer = getBuffer(text.length);
+        int start = buffer.myLength;
+        int firstBreak = buffer.myBreakCount;
+        buffer.append(text, text.length);
+        return new Node(buffer.myChars, buffer.myBreaks, start, text.length, firstBreak,
+                buffer.myBreakCount - firstBreak);
+    }
+
+    private void removeText(int start, int end) {
+        if (start >= end)
+            return;
+
+        Node[] right = split(myRoot, end);
+        Node[] left = split(right[0], start);
+        myRoot = merge(left[0], right[1]);
+        addEdit(start, left[1], 0, end - start == 1);
+    }
+
+    private void addEdit(int offset, @Nullable Node removed, int insertedLength, boolean mergeable) {
+        myRedoGroups.clear();
+        EditGroup group = myUndoGroups.peekLast();
+        if (myBatchDepth == 0 && mergeable && myMergeable && group != null) {
+            Edit last = group.myEdits.get(0);
+            boolean merged = true;
+            if (removed == null && last.myRemovedChars == null && offset == last.myOffset + last.myInsertedLength) {
+                last.myInsertedLength += insertedLength;
+            } else if (removed != null && last.myInsertedLength == 0 && offset + 1 == last.myOffset) {
+                // backspace
+                last.myRemovedChars = concat(toChars(removed), last.myRemovedChars);
+                last.myOffset = offset;
+            } else if (removed != null && last.myInsertedLength == 0 && offset == last.myOffset) {
+                // delete
+                last.myRemovedChars = concat(last.myRemovedChars, toChars(removed));
+            } else {
+                merged = false;
+            }
+            if (merged) {
+                group.myLength++;
+                myUndoLength++;
+                return;
+            }
+        }
+
+        if (myBatchDepth == 0 || myBatchGroup == null) {
+            group = new EditGroup();
+            myUndoGroups.addLast(group);
+            if (myBatchDepth > 0)
+                myBatchGroup = group;
+        } else {
+            group = myBatchGroup;
+        }
+        Edit edit = new Edit();
+        edit.myOffset = offset;
+        if (length(removed) <= MAX_COPIED_LENGTH)
+            edit.myRemovedChars = removed != null ? toChars(removed) : null;
+        else
+            edit.myRemoved = removed;
+        edit.myInsertedLength = insertedLength;
+        group.myEdits.add(edit);
+        group.myLength += length(removed) + insertedLength;
+        myUndoLength += length(removed) + insertedLength;
+        myMergeable = myBatchDepth == 0 && mergeable;
+
+        // the group being added to stays, however long
+        while (myUndoGroups.size() > 1
+                && (myUndoGroups.size() > MAX_UNDO_GROUPS || myUndoLength > MAX_UNDO_LENGTH)) {
+            myUndoLength -= myUndoGroups.pollFirst().myLength;
+        }
+    }
+
+    /**
+     * Removes the text at the offset and inserts the pieces or the chars given instead, with the notifications
+     * of the same edits.
+     *
+     * @return the pieces removed
+     */
+    @Nullable
+    private Node apply(int offset, int removeLength, @Nullable Node insert, @Nullable char[] insertChars) {
+        Node removed = null;
+        if (removeLength > 0) {
+            Node root = myRoot;
+            int startLine = getLineAt(root, offset);
+            int startColumn = offset - getLineStart(root, startLine);
+            int endLine = getLineAt(root, offset + removeLength);
+            int endColumn = offset + removeLength - getLineStart(root, endLine);
+            for (TextChangeListener listener : myListeners) {
+                listener.prepareRemove(this, startLine, startColumn, endLine, endColumn);
+            }
+
+            synchronized (this) {
+                Node[] right = split(myRoot, offset + removeLength);
+                Node[] left = split(right[0], offset);
+                removed = left[1];
+                myRoot = merge(left[0], right[1]);
+                updateEditTimestamps();
+            }
+
+            for (TextChangeListener listener : myListeners) {
+                listener.removeUpdate(this, startLine, startColumn, endLine, endColumn);
+            }
+        }
+
+        if (insertChars != null) {
+            synchronized (this) {
+                insert = newPiece(insertChars);
+            }
+        }
+        if (insert != null) {
+            Node root = myRoot;
+            int line = getLineAt(root, offset);
+            int column = offset - getLineStart(root, line);
+            int insertBreaks = breaks(insert);
+            int endLine = line + insertBreaks;
+            int endColumn = (insertBreaks == 0 ? column : 0) + length(insert) - getLineStart(insert, insertBreaks) - 1;
+            if (!myListeners.isEmpty()) {
+                String text = toString(insert, 0, length(insert));
+                for (TextChangeListener listener : myListeners) {
+                    listener.prepareInsert(this, line, column, text);
+                }
+            }
+
+            synchronized (this) {
+                Node[] parts = split(myRoot, offset);
+                myRoot = merge(merge(parts[0], insert), parts[1]);
+                updateEditTimestamps();
+            }
+
+            for (TextChangeListener listener : myListeners) {
+                listener.insertUpdate(this, line, column, endLine, endColumn);
+            }
+        }
+        return removed;
+    }
+
+    @NonNull
+    private Line getLine(int line) {
+        Node root = myRoot;
+        Line text = myLine;
+        if (text != null && text.myRoot == root && text.myLine == line)
+            return text;
+
+        int start = getLineStart(root, line);
+        int end = getLineEnd(root, line);
+        char[] chars = new char[end - start];
+        getChars(root, start, end, chars, 0);
+        text = new Line(root, line, chars);
+        myLine = text;
+        return text;
+    }
+
+    @NonNull
+    private String toString(@Nullable Node root, int start, int end) {
+        char[] chars = new char[end - start];
+        getChars(root, start, end, chars, 0);
+        String text = new String(chars);
+        return myLineBreak.equals("\n") ? text : text.replace("\n", myLineBreak);
+    }
+
+    private static int getOffset(@Nullable Node root, int line, int column) {
+        int start = getLineStart(root, line);
+        int end = getLineEnd(root, line);
+        if (column < 0 || column > end - start)
+            throw new IndexOutOfBoundsException("Column " + column + " of line " + line);
+        return start + column;
+    }
+
+    private static int getEndOffset(@Nullable Node root, int line, int column) {
+        int lastLine = breaks(root);
+        if (line >= lastLine)
+            return getOffset(root, lastLine, Math.min(column, length(root) - getLineStart(root, lastLine)));
+
+        int start = getLineStart(root, line);
+        int end = getLineEnd(root, line);
+        return column >= end - start ? end + 1 : start + Math.max(column, 0);
+    }
+
+    private static int getLineStart(@Nullable Node node, int line) {
+        if (line < 0 || line > breaks(node))
+            throw new IndexOutOfBoundsException("Line " + line);
+
+        int offset = 0;
+        while (line > 0) {
+            int leftBreaks = breaks(node.myLeft);
+            if (line <= leftBreaks) {
+                node = node.myLeft;
+                continue;
+            }
+            line -= leftBreaks;
+            int leftLength = length(node.myLeft);
+            if (line <= node.myBreakCount)
+                return offset + leftLength + node.myBreaks[node.myFirstBreak + line - 1] - node.myStart + 1;
+
+            line -= node.myBreakCount;
+            offset += leftLength + node.myLength;
+            node = node.myRight;
+        }
+        return offset;
+    }
+
+    private static int getLineEnd(@Nullable Node root, int line) {
+        return line == breaks(root) ? length(root) : getLineStart(root, line + 1) - 1;
+    }
+
+    @NonNull
+    private static char[] toChars(@NonNull Node node) {
+        char[] chars = new char[node.myTotalLength];
+        getChars(node, 0, chars.length, chars, 0);
+        return chars;
+    }
+
+    @NonNull
+    private static char[] concat(@NonNull char[] first, @NonNull char[] second) {
+        char[] chars = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, chars, first.length, second.length);
+        return chars;
+    }
+
+    /**
+     * @return line of the offset, the count of the line breaks before it
+     */
+    private static int getLineAt(@Nullable Node node, int offset) {
+        int line = 0;
+        while (node != null) {
+            int leftLength = length(node.myLeft);
+            if (offset < leftLength) {
+                node = node.myLeft;
+                continue;
+            }
+            line += breaks(node.myLeft);
+            offset -= leftLength;
+            if (offset <= node.myLength) {
+                int index = Arrays.binarySearch(node.myBreaks, node.myFirstBreak,
+                        node.myFirstBreak + node.myBreakCount, node.myStart + offset);
+                if (index < 0)
+                    index = -index - 1;
+                return line + index - node.myFirstBreak;
+            }
+            line += node.myBreakCount;
+            offset -= node.myLength;
+            node = node.myRight;
+        }
+        return line;
+    }
+
+    private static void getChars(@Nullable Node node, int start, int end, char[] dest, int destOffset) {
+        while (node != null && start < end) {
+            int pieceStart = length(node.myLeft);
+            int pieceEnd = pieceStart + node.myLength;
+            if (start < pieceStart)
+                getChars(node.myLeft, start, Math.min(end, pieceStart), dest, destOffset);
+
+            if (start < pieceEnd && end > pieceStart) {
+                int from = Math.max(start, pieceStart);
+                System.arraycopy(node.myChars, node.myStart + from - pieceStart, dest, destOffset + from - start,
+                        Math.min(end, pieceEnd) - from);
+            }
+            if (end <= pieceEnd)
+                return;
+
+            int from = Math.max(start, pieceEnd);
+            destOffset += from - start;
+            start = from - pieceEnd;
+            end -= pieceEnd;
+            node = node.myRight;
+        }
+    }
+
+    /**
+     * @return the nodes before and after the offset, a piece containing it is split in two
+     */
+    private static Node[] split(@Nullable Node node, int offset) {
+        if (node == null)
+            return new Node[2];
+
+        int leftLength = length(node.myLeft);
+        if (offset <= leftLength) {
+            Node[] parts = split(node.myLeft, offset);
+            parts[1] = node.with(parts[1], node.myRight);
+            return parts;
+        }
+        offset -= leftLength;
+        if (offset >= node.myLength) {
+            Node[] parts = split(node.myRight, offset - node.myLength);
+            parts[0] = node.with(node.myLeft, parts[0]);
+            return parts;
+        }
+
+        int position = node.myStart + offset;
+        int index = Arrays.binarySearch(node.myBreaks, node.myFirstBreak, node.myFirstBreak + node.myBreakCount,
+                position);
+        if (index < 0)
+            index = -index - 1;
+        int leftBreaks = index - node.myFirstBreak;
+        Node left = new Node(node.myChars, node.myBreaks, node.myStart, offset, node.myFirstBreak, leftBreaks);
+        Node right = new Node(node.myChars, node.myBreaks, position, node.myLength - offset, index,
+                node.myBreakCount - leftBreaks);
+        return new Node[]{merge(node.myLeft, left), merge(right, node.myRight)};
+    }
+
+    @Nullable
+    private static Node merge(@Nullable Node left, @Nullable Node right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+
+        if (left.myPriority > right.myPriority)
+            return left.with(left.myLeft, merge(left.myRight, right));
+        return right.with(merge(left, right.myLeft), right.myRight);
+    }
+
+    @NonNull
+    private static Node extendLast(@NonNull Node node, int[] breaks, int length, int breakCount) {
+        if (node.myRight != null)
+            return node.with(node.myLeft, extendLast(node.myRight, breaks, length, breakCount));
+
+        return new Node(node.myChars, breaks, node.myStart, node.myLength + length, node.myFirstBreak,
+                node.myBreakCount + breakCount, node.myPriority, node.myLeft, null);
+    }
+
+    private static int length(@Nullable Node node) {
+        return node == null ? 0 : node.myTotalLength;
+    }
+
+    private static int breaks(@Nullable Node node) {
+        return node == null ? 0 : node.myTotalBreaks;
+    }
+
+    /**
+     * Chars a model appends to, with the offsets of the line breaks among them. Appending only writes after
+     * the chars the pieces cover, which never change.
+     */
+    private static final class Buffer {
+        final char[] myChars;
+        int myLength;
+        int[] myBreaks = new int[16];
+        int myBreakCount;
+
+        Buffer(int capacity) {
+            myChars = new char[capacity];
+        }
+
+        void append(char[] text, int length) {
+            System.arraycopy(text, 0, myChars, myLength, length);
+            for (int i = 0; i < length; i++) {
+                if (text[i] != '\n')
+                    continue;
+
+                if (myBreakCount == myBreaks.length)
+                    myBreaks = Arrays.copyOf(myBreaks, myBreakCount * 2);
+                myBreaks[myBreakCount++] = myLength + i;
+            }
+            myLength += length;
+        }
+    }
+
+    /**
+     * Piece of a buffer and the root of the pieces around it, with the length and the line breaks of them all.
+     */
+    private static final class Node {
+        final char[] myChars;
+        final int[] myBreaks;
+        final int myStart;
+        final int myLength;
+        final int myFirstBreak;
+        final int myBreakCount;
+        final int myPriority;
+        @Nullable
+        final Node myLeft;
+        @Nullable
+        final Node myRight;
+        final int myTotalLength;
+        final int myTotalBreaks;
+
+        Node(char[] chars, int[] breaks, int start, int length, int firstBreak, int breakCount) {
+            this(chars, breaks, start, length, firstBreak, breakCount, ThreadLocalRandom.current().nextInt(),
+                    null, null);
+        }
+
+        Node(char[] chars, int[] breaks, int start, int length, int firstBreak, int breakCount, int priority,
+             @Nullable Node left, @Nullable Node right) {
+            myChars = chars;
+            myBreaks = breaks;
+            myStart = start;
+            myLength = length;
+            myFirstBreak = firstBreak;
+            myBreakCount = breakCount;
+            myPriority = priority;
+            myLeft = left;
+            myRight = right;
+            myTotalLength = length(left) + length + length(right);
+            myTotalBreaks = breaks(left) + breakCount + breaks(right);
+        }
+
+        @NonNull
+        Node with(@Nullable Node left, @Nullable Node right) {
+            return new Node(myChars, myBreaks, myStart, myLength, myFirstBreak, myBreakCount, myPriority, left,
+                    right);
+        }
+    }
+
+    /**
+     * Edits undone and redone together.
+     */
+    private static final class EditGroup {
+        final ArrayList<Edit> myEdits = new ArrayList<>(1);
+        long myLength;
+    }
+
+    /**
+     * Edit at an offset, the text removed, as pieces or copied when short, is put back by undo, the text
+     * inserted is taken out by undo and kept for redo.
+     */
+    private static final class Edit {
+        int myOffset;
+        @Nullable
+        Node myRemoved;
+        @Nullable
+        char[] myRemovedChars;
+        int myInsertedLength;
+        @Nullable
+        Node myInserted;
+
+        int getRemovedLength() {
+            return myRemovedChars != null ? myRemovedChars.length : length(myRemoved);
+        }
+    }
+
+    /**
+     * Chars of the line read last, kept while the text doesn't change.
+     */
+    private static final class Line {
+        final Node myRoot;
+        final int myLine;
+        final char[] myChars;
+
+        Line(Node root, int line, char[] chars) {
+            myRoot = root;
+            myLine = line;
+            myChars = chars;
+        }
+    }
+
+    private static final class TextReader extends Reader {
+        private final Node myRoot;
+        private final int myEnd;
+        private int myOffset;
+
+        TextReader(@Nullable Node root, int start, int end) {
+            myRoot = root;
+            myOffset = start;
+            myEnd = end;
+        }
+
+        @Override
+        public int read(@NonNull char[] cbuf, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (myOffset >= myEnd)
+                return -1;
+
+            int count = Math.min(len, myEnd - myOffset);
+            getChars(myRoot, myOffset, myOffset + count, cbuf, off);
+            myOffset += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+
+        }
+    }
+}
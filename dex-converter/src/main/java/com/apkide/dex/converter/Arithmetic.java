@@ -0,0 +1,122 @@
+package com.apkide.dex.converter;
+
+import com.apkide.smali.dexlib2.Opcode;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Dalvik arithmetic, comparison and conversion instructions with their JVM counterparts. The shape of an
+ * instruction follows from its format: 'vA = vB op vC', 'vA = vA op vB' (2addr), 'vA = vB op literal' or
+ * the unary 'vA = op vB'.
+ */
+final class Arithmetic implements JvmOpcodes {
+    private static final Map<Opcode, Arithmetic> OPERATIONS = new EnumMap<>(Opcode.class);
+
+    final int jvmOpcode;
+    final int resultKind;
+    final int firstKind;
+    // 0 for unary operations
+    final int secondKind;
+    // 'literal - vB'
+    final boolean reverse;
+
+    private Arithmetic(int jvmOpcode, int resultKind, int firstKind, int secondKind, boolean reverse) {
+        this.jvmOpcode = jvmOpcode;
+        this.resultKind = resultKind;
+        this.firstKind = firstKind;
+        this.secondKind = secondKind;
+        this.reverse = reverse;
+    }
+
+    static Arithmetic of(Opcode opcode) {
+        return OPERATIONS.get(opcode);
+    }
+
+    /**
+     * @return stack words the JVM instruction takes less than it consumes
+     */
+    int stackDelta() {
+        int consumed = Kinds.size(firstKind) + (secondKind != 0 ? Kinds.size(secondKind) : 0);
+        return Kinds.size(resultKind) - consumed;
+    }
+
+    private static void binary(int jvmOpcode, int kind, int secondKind, Opcode... opcodes) {
+        for (Opcode opcode : opcodes) {
+            OPERATIONS.put(opcode, new Arithmetic(jvmOpcode, kind, kind, secondKind, false));
+        }
+    }
+
+    private static void unary(int jvmOpcode, int resultKind, int kind, Opcode opcode) {
+        OPERATIONS.put(opcode, new Arithmetic(jvmOpcode, resultKind, kind, 0, false));
+    }
+
+    static {
+        binary(IADD, Kinds.INT, Kinds.INT, Opcode.ADD_INT, Opcode.ADD_INT_2ADDR, Opcode.ADD_INT_LIT16, Opcode.ADD_INT_LIT8);
+        binary(ISUB, Kinds.INT, Kinds.INT, Opcode.SUB_INT, Opcode.SUB_INT_2ADDR);
+        binary(IMUL, Kinds.INT, Kinds.INT, Opcode.MUL_INT, Opcode.MUL_INT_2ADDR, Opcode.MUL_INT_LIT16, Opcode.MUL_INT_LIT8);
+        binary(IDIV, Kinds.INT, Kinds.INT, Opcode.DIV_INT, Opcode.DIV_INT_2ADDR, Opcode.DIV_INT_LIT16, Opcode.DIV_INT_LIT8);
+        binary(IREM, Kinds.INT, Kinds.INT, Opcode.REM_INT, Opcode.REM_INT_2ADDR, Opcode.REM_INT_LIT16, Opcode.REM_INT_LIT8);
+        binary(IAND, Kinds.INT, Kinds.INT, Opcode.AND_INT, Opcode.AND_INT_2ADDR, Opcode.AND_INT_LIT16, Opcode.AND_INT_LIT8);
+        binary(IOR, Kinds.INT, Kinds.INT, Opcode.OR_INT, Opcode.OR_INT_2ADDR, Opcode.OR_INT_LIT16, Opcode.OR_INT_LIT8);
+        binary(IXOR, Kinds.INT, Kinds.INT, Opcode.XOR_INT, Opcode.XOR_INT_2ADDR, Opcode.XOR_INT_LIT16, Opcode.XOR_INT_LIT8);
+        binary(ISHL, Kinds.INT, Kinds.INT, Opcode.SHL_INT, Opcode.SHL_INT_2ADDR, Opcode.SHL_INT_LIT8);
+        binary(ISHR, Kinds.INT, Kinds.INT, Opcode.SHR_INT, Opcode.SHR_INT_2ADDR, Opcode.SHR_INT_LIT8);
+        binary(IUSHR, Kinds.INT, Kinds.INT, Opcode.USHR_INT, Opcode.USHR_INT_2ADDR, Opcode.USHR_INT_LIT8);
+        OPERATIONS.put(Opcode.RSUB_INT, new Arithmetic(ISUB, Kinds.INT, Kinds.INT, Kinds.INT, true));
+        OPERATIONS.put(Opcode.RSUB_INT_LIT8, new Arithmetic(ISUB, Kinds.INT, Kinds.INT, Kinds.INT, true));
+
+        binary(LADD, Kinds.LONG, Kinds.LONG, Opcode.ADD_LONG, Opcode.ADD_LONG_2ADDR);
+        binary(LADD + 4, Kinds.LONG, Kinds.LONG, Opcode.SUB_LONG, Opcode.SUB_LONG_2ADDR);
+        binary(LADD + 8, Kinds.LONG, Kinds.LONG, Opcode.MUL_LONG, Opcode.MUL_LONG_2ADDR);
+        binary(LADD + 12, Kinds.LONG, Kinds.LONG, Opcode.DIV_LONG, Opcode.DIV_LONG_2ADDR);
+        binary(LADD + 16, Kinds.LONG, Kinds.LONG, Opcode.REM_LONG, Opcode.REM_LONG_2ADDR);
+        binary(LAND, Kinds.LONG, Kinds.LONG, Opcode.AND_LONG, Opcode.AND_LONG_2ADDR);
+        binary(LOR, Kinds.LONG, Kinds.LONG, Opcode.OR_LONG, Opcode.OR_LONG_2ADDR);
+        binary(LXOR, Kinds.LONG, Kinds.LONG, Opcode.XOR_LONG, Opcode.XOR_LONG_2ADDR);
+        binary(LSHL, Kinds.LONG, Kinds.INT, Opcode.SHL_LONG, Opcode.SHL_LONG_2ADDR);
+        binary(LSHR, Kinds.LONG, Kinds.INT, Opcode.SHR_LONG, Opcode.SHR_LONG_2ADDR);
+        binary(LUSHR, Kinds.LONG, Kinds.INT, Opcode.USHR_LONG, Opcode.USHR_LONG_2ADDR);
+
+        binary(FADD, Kinds.FLOAT, Kinds.FLOAT, Opcode.ADD_FLOAT, Opcode.ADD_FLOAT_2ADDR);
+        binary(FADD + 4, Kinds.FLOAT, Kinds.FLOAT, Opcode.SUB_FLOAT, Opcode.SUB_FLOAT_2ADDR);
+        binary(FADD + 8, Kinds.FLOAT, Kinds.FLOAT, Opcode.MUL_FLOAT, Opcode.MUL_FLOAT_2ADDR);
+        binary(FADD + 12, Kinds.FLOAT, Kinds.FLOAT, Opcode.DIV_FLOAT, Opcode.DIV_FLOAT_2ADDR);
+        binary(FADD + 16, Kinds.FLOAT, Kinds.FLOAT, Opcode.REM_FLOAT, Opcode.REM_FLOAT_2ADDR);
+
+        binary(DADD, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.ADD_DOUBLE, Opcode.ADD_DOUBLE_2ADDR);
+        binary(DADD + 4, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.SUB_DOUBLE, Opcode.SUB_DOUBLE_2ADDR);
+        binary(DADD + 8, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.MUL_DOUBLE, Opcode.MUL_DOUBLE_2ADDR);
+        binary(DADD + 12, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.DIV_DOUBLE, Opcode.DIV_DOUBLE_2ADDR);
+        binary(DADD + 16, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.REM_DOUBLE, Opcode.REM_DOUBLE_2ADDR);
+
+        OPERATIONS.put(Opcode.CMP_LONG, new Arithmetic(LCMP, Kinds.INT, Kinds.LONG, Kinds.LONG, false));
+        OPERATIONS.put(Opcode.CMPL_FLOAT, new Arithmetic(FCMPL, Kinds.INT, Kinds.FLOAT, Kinds.FLOAT, false));
+        OPERATIONS.put(Opcode.CMPG_FLOAT, new Arithmetic(FCMPG, Kinds.INT, Kinds.FLOAT, Kinds.FLOAT, false));
+        OPERATIONS.put(Opcode.CMPL_DOUBLE, new Arithmetic(DCMPL, Kinds.INT, Kinds.DOUBLE, Kinds.DOUBLE, false));
+        OPERATIONS.put(Opcode.CMPG_DOUBLE, new Arithmetic(DCMPG, Kinds.INT, Kinds.DOUBLE, Kinds.DOUBLE, false));
+
+        unary(INEG, Kinds.INT, Kinds.INT, Opcode.NEG_INT);
+        unary(LNEG, Kinds.LONG, Kinds.LONG, Opcode.NEG_LONG);
+        unary(FNEG, Kinds.FLOAT, Kinds.FLOAT, Opcode.NEG_FLOAT);
+        unary(DNEG, Kinds.DOUBLE, Kinds.DOUBLE, Opcode.NEG_DOUBLE);
+        // not has no JVM instruction of its own, it is written as xor with -1
+        unary(IXOR, Kinds.INT, Kinds.INT, Opcode.NOT_INT);
+        unary(LXOR, Kinds.LONG, Kinds.LONG, Opcode.NOT_LONG);
+        unary(I2L, Kinds.LONG, Kinds.INT, Opcode.INT_TO_LONG);
+        unary(I2F, Kinds.FLOAT, Kinds.INT, Opcode.INT_TO_FLOAT);
+        unary(I2D, Kinds.DOUBLE, Kinds.INT, Opcode.INT_TO_DOUBLE);
+        unary(L2I, Kinds.INT, Kinds.LONG, Opcode.LONG_TO_INT);
+        unary(L2F, Kinds.FLOAT, Kinds.LONG, Opcode.LONG_TO_FLOAT);
+        unary(L2D, Kinds.DOUBLE, Kinds.LONG, Opcode.LONG_TO_DOUBLE);
+        unary(F2I, Kinds.INT, Kinds.FLOAT, Opcode.FLOAT_TO_INT);
+        unary(F2L, Kinds.LONG, Kinds.FLOAT, Opcode.FLOAT_TO_LONG);
+        unary(F2D, Kinds.DOUBLE, Kinds.FLOAT, Opcode.FLOAT_TO_DOUBLE);
+        unary(D2I, Kinds.INT, Kinds.DOUBLE, Opcode.DOUBLE_TO_INT);
+        unary(D2L, Kinds.LONG, Kinds.DOUBLE, Opcode.DOUBLE_TO_LONG);
+        unary(D2F, Kinds.FLOAT, Kinds.DOUBLE, Opcode.DOUBLE_TO_FLOAT);
+        unary(I2B, Kinds.INT, Kinds.INT, Opcode.INT_TO_BYTE);
+        unary(I2C, Kinds.INT, Kinds.INT, Opcode.INT_TO_CHAR);
+        unary(I2S, Kinds.INT, Kinds.INT, Opcode.INT_TO_SHORT);
+    }
+}
@@ -0,0 +1,83 @@
+package com.apkide.dex.converter;
+
+import java.util.Arrays;
+
+/**
+ * Growable big-endian byte buffer for writing class files, with patching of already written values.
+ */
+class ByteVector {
+    private byte[] data;
+    private int length;
+
+    ByteVector() {
+        this(64);
+    }
+
+    ByteVector(int capacity) {
+        data = new byte[capacity];
+    }
+
+    int length() {
+        return length;
+    }
+
+    ByteVector putByte(int b) {
+        ensure(1);
+        data[length++] = (byte) b;
+        return this;
+    }
+
+    ByteVector putShort(int s) {
+        ensure(2);
+        data[length++] = (byte) (s >>> 8);
+        data[length++] = (byte) s;
+        return this;
+    }
+
+    ByteVector putInt(int i) {
+        ensure(4);
+        data[length++] = (byte) (i >>> 24);
+        data[length++] = (byte) (i >>> 16);
+        data[length++] = (byte) (i >>> 8);
+        data[length++] = (byte) i;
+        return this;
+    }
+
+    ByteVector putLong(long l) {
+        putInt((int) (l >>> 32));
+        return putInt((int) l);
+    }
+
+    ByteVector putBytes(byte[] bytes, int offset, int count) {
+        ensure(count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+        return this;
+    }
+
+    ByteVector putVector(ByteVector vector) {
+        return putBytes(vector.data, 0, vector.length);
+    }
+
+    void setShort(int offset, int s) {
+        data[offset] = (byte) (s >>> 8);
+        data[offset + 1] = (byte) s;
+    }
+
+    void setInt(int offset, int i) {
+        data[offset] = (byte) (i >>> 24);
+        data[offset + 1] = (byte) (i >>> 16);
+        data[offset + 2] = (byte) (i >>> 8);
+        data[offset + 3] = (byte) i;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+
+    private void ensure(int count) {
+        if (length + count > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+        }
+    }
+}
@@ -0,0 +1,459 @@
+package com.apkide.dex.converter;
+
+import com.apkide.smali.dexlib2.AccessFlags;
+import com.apkide.smali.dexlib2.AnnotationVisibility;
+import com.apkide.smali.dexlib2.iface.Annotation;
+import com.apkide.smali.dexlib2.iface.AnnotationElement;
+import com.apkide.smali.dexlib2.iface.ClassDef;
+import com.apkide.smali.dexlib2.iface.Field;
+import com.apkide.smali.dexlib2.iface.Method;
+import com.apkide.smali.dexlib2.iface.MethodParameter;
+import com.apkide.smali.dexlib2.iface.value.AnnotationEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.ArrayEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.BooleanEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.ByteEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.CharEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.DoubleEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.EncodedValue;
+import com.apkide.smali.dexlib2.iface.value.EnumEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.FloatEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.IntEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.LongEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.MethodEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.ShortEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.StringEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.TypeEncodedValue;
+import com.apkide.smali.dexlib2.iface.reference.MethodReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a dex class definition as a class file. Dalvik keeps the attributes of a class file in system
+ * annotations (dalvik.annotation.Signature, Throws, InnerClass...), they are turned back into attributes.
+ */
+class ClassTranslator implements JvmOpcodes {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int VERSION = 52;
+
+    private static final int CLASS_FLAGS = 0x7631;
+    private static final int FIELD_FLAGS = 0x50DF;
+    private static final int METHOD_FLAGS = 0x1DFF;
+    private static final int INNER_CLASS_FLAGS = 0x761F;
+
+    private static final String SIGNATURE = "Ldalvik/annotation/Signature;";
+    private static final String THROWS = "Ldalvik/annotation/Throws;";
+    private static final String ANNOTATION_DEFAULT = "Ldalvik/annotation/AnnotationDefault;";
+
+    private final DexClassIndex index;
+    private final ClassDef classDef;
+    private final boolean withCode;
+    private final ConstantPoolWriter pool = new ConstantPoolWriter();
+
+    /**
+     * @param withCode whether to translate method bodies, classes only referenced by the decompiled ones
+     *                 need their members alone
+     */
+    ClassTranslator(DexClassIndex index, ClassDef classDef, boolean withCode) {
+        this.index = index;
+        this.classDef = classDef;
+        this.withCode = withCode;
+    }
+
+    byte[] translate() {
+        ByteVector body = new ByteVector(1024);
+        writeClass(body);
+
+        ByteVector out = new ByteVector(body.length() + pool.count() * 8 + 16);
+        out.putInt(MAGIC).putShort(0).putShort(VERSION);
+        pool.write(out);
+        out.putVector(body);
+        return out.toByteArray();
+    }
+
+    private void writeClass(ByteVector out) {
+        int flags = classDef.getAccessFlags() & CLASS_FLAGS;
+        if (!AccessFlags.INTERFACE.isSet(flags)) {
+            flags |= ACC_SUPER;
+        }
+        out.putShort(flags);
+        out.putShort(pool.classRef(MethodTranslator.internalName(classDef.getType())));
+        String superclass = classDef.getSuperclass();
+        out.putShort(superclass != null ? pool.classRef(MethodTranslator.internalName(superclass)) : 0);
+        List<String> interfaces = classDef.getInterfaces();
+        out.putShort(interfaces.size());
+        for (String type : interfaces) {
+            out.putShort(pool.classRef(MethodTranslator.internalName(type)));
+        }
+
+        List<Field> fields = new ArrayList<>();
+        List<Field> staticValues = new ArrayList<>();
+        for (Field field : classDef.getFields()) {
+            fields.add(field);
+            if (AccessFlags.STATIC.isSet(field.getAccessFlags()) && !isConstantField(field) &&
+                    MethodTranslator.isPushableValue(field.getInitialValue()) && !isDefaultValue(field.getInitialValue())) {
+                staticValues.add(field);
+            }
+        }
+        out.putShort(fields.size());
+        for (Field field : fields) {
+            writeField(field, out);
+        }
+
+        List<Method> methods = new ArrayList<>();
+        boolean hasInitializer = false;
+        for (Method method : classDef.getMethods()) {
+            methods.add(method);
+            hasInitializer |= method.getName().equals("<clinit>");
+        }
+        boolean synthesizeInitializer = withCode && !hasInitializer && !staticValues.isEmpty();
+        out.putShort(methods.size() + (synthesizeInitializer ? 1 : 0));
+        for (Method method : methods) {
+            writeMethod(method, method.getName().equals("<clinit>") ? staticValues : new ArrayList<>(), out);
+        }
+        if (synthesizeInitializer) {
+            out.putShort(ACC_STATIC).putShort(pool.utf8("<clinit>")).putShort(pool.utf8("()V"));
+            out.putShort(1);
+            MethodTranslator.writeStaticInitializer(pool, staticValues, out);
+        }
+
+        int countPosition = out.length();
+        out.putShort(0);
+        int attributes = 0;
+        if (classDef.getSourceFile() != null) {
+            out.putShort(pool.utf8("SourceFile")).putInt(2).putShort(pool.utf8(classDef.getSourceFile()));
+            attributes++;
+        }
+        attributes += writeSignature(classDef.getAnnotations(), out);
+        attributes += writeAnnotations(classDef.getAnnotations(), out);
+        attributes += writeInnerClasses(out);
+        attributes += writeEnclosingMethod(out);
+        out.setShort(countPosition, attributes);
+    }
+
+    private void writeField(Field field, ByteVector out) {
+        out.putShort(field.getAccessFlags() & FIELD_FLAGS);
+        out.putShort(pool.utf8(field.getName())).putShort(pool.utf8(field.getType()));
+
+        int countPosition = out.length();
+        out.putShort(0);
+        int attributes = 0;
+        if (isConstantField(field)) {
+            Object constant = constantOf(field.getInitialValue());
+            int value;
+            if (constant instanceof String) {
+                value = pool.string((String) constant);
+            } else if (constant instanceof Long) {
+                value = pool.longValue((Long) constant);
+            } else if (constant instanceof Float) {
+                value = pool.floatValue((Float) constant);
+            } else if (constant instanceof Double) {
+                value = pool.doubleValue((Double) constant);
+            } else {
+                value = pool.integer((Integer) constant);
+            }
+            out.putShort(pool.utf8("ConstantValue")).putInt(2).putShort(value);
+            attributes++;
+        }
+        attributes += writeSignature(field.getAnnotations(), out);
+        attributes += writeAnnotations(field.getAnnotations(), out);
+        out.setShort(countPosition, attributes);
+    }
+
+    private void writeMethod(Method method, List<Field> staticValues, ByteVector out) {
+        int flags = method.getAccessFlags() & METHOD_FLAGS;
+        if (AccessFlags.DECLARED_SYNCHRONIZED.isSet(method.getAccessFlags())) {
+            flags |= ACC_SYNCHRONIZED;
+        }
+        out.putShort(flags);
+        out.putShort(pool.utf8(method.getName())).putShort(pool.utf8(MethodTranslator.descriptor(method)));
+
+        int countPosition = out.length();
+        out.putShort(0);
+        int attributes = 0;
+        if (withCode && method.getImplementation() != null) {
+            new MethodTranslator(pool, index, method, method.getImplementation(), staticValues).write(out);
+            attributes++;
+        }
+
+        EncodedValue exceptions = DexClassIndex.getAnnotationValue(method.getAnnotations(), THROWS, "value");
+        if (exceptions instanceof ArrayEncodedValue) {
+            List<String> types = new ArrayList<>();
+            for (EncodedValue value : ((ArrayEncodedValue) exceptions).getValue()) {
+                if (value instanceof TypeEncodedValue) {
+                    types.add(((TypeEncodedValue) value).getValue());
+                }
+            }
+            out.putShort(pool.utf8("Exceptions")).putInt(2 + types.size() * 2).putShort(types.size());
+            for (String type : types) {
+                out.putShort(pool.classRef(MethodTranslator.internalName(type)));
+            }
+            attributes++;
+        }
+        attributes += writeSignature(method.getAnnotations(), out);
+        attributes += writeAnnotations(method.getAnnotations(), out);
+        attributes += writeParameterAnnotations(method.getParameters(), AnnotationVisibility.RUNTIME,
+                "RuntimeVisibleParameterAnnotations", out);
+        attributes += writeParameterAnnotations(method.getParameters(), AnnotationVisibility.BUILD,
+                "RuntimeInvisibleParameterAnnotations", out);
+
+        EncodedValue defaults = DexClassIndex.getAnnotationValue(classDef.getAnnotations(), ANNOTATION_DEFAULT, "value");
+        if (defaults instanceof AnnotationEncodedValue) {
+            for (AnnotationElement element : ((AnnotationEncodedValue) defaults).getElements()) {
+                if (element.getName().equals(method.getName()) && isEncodable(element.getValue())) {
+                    int lengthPosition = out.length() + 2;
+                    out.putShort(pool.utf8("AnnotationDefault")).putInt(0);
+                    writeElementValue(element.getValue(), out);
+                    out.setInt(lengthPosition, out.length() - lengthPosition - 4);
+                    attributes++;
+                    break;
+                }
+            }
+        }
+        out.setShort(countPosition, attributes);
+    }
+
+    private int writeSignature(Set<? extends Annotation> annotations, ByteVector out) {
+        EncodedValue value = DexClassIndex.getAnnotationValue(annotations, SIGNATURE, "value");
+        if (!(value instanceof ArrayEncodedValue)) {
+            return 0;
+        }
+        // the signature is split into strings to share them in the dex string pool
+        StringBuilder signature = new StringBuilder();
+        for (EncodedValue part : ((ArrayEncodedValue) value).getValue()) {
+            if (part instanceof StringEncodedValue) {
+                signature.append(((StringEncodedValue) part).getValue());
+            }
+        }
+        out.putShort(pool.utf8("Signature")).putInt(2).putShort(pool.utf8(signature.toString()));
+        return 1;
+    }
+
+    private int writeAnnotations(Set<? extends Annotation> annotations, ByteVector out) {
+        int attributes = 0;
+        List<Annotation> visible = filter(annotations, AnnotationVisibility.RUNTIME);
+        if (!visible.isEmpty()) {
+            writeAnnotationsAttribute("RuntimeVisibleAnnotations", visible, out);
+            attributes++;
+        }
+        List<Annotation> invisible = filter(annotations, AnnotationVisibility.BUILD);
+        if (!invisible.isEmpty()) {
+            writeAnnotationsAttribute("RuntimeInvisibleAnnotations", invisible, out);
+            attributes++;
+        }
+        return attributes;
+    }
+
+    private int writeParameterAnnotations(List<? extends MethodParameter> parameters, int visibility, String name,
+                                          ByteVector out) {
+        boolean any = false;
+        List<List<Annotation>> annotations = new ArrayList<>();
+        for (MethodParameter parameter : parameters) {
+            List<Annotation> list = filter(parameter.getAnnotations(), visibility);
+            annotations.add(list);
+            any |= !list.isEmpty();
+        }
+        if (!any) {
+            return 0;
+        }
+
+        int lengthPosition = out.length() + 2;
+        out.putShort(pool.utf8(name)).putInt(0);
+        out.putByte(annotations.size());
+        for (List<Annotation> list : annotations) {
+            out.putShort(list.size());
+            for (Annotation annotation : list) {
+                writeAnnotation(annotation.getType(), annotation.getElements(), out);
+            }
+        }
+        out.setInt(lengthPosition, out.length() - lengthPosition - 4);
+        return 1;
+    }
+
+    private static List<Annotation> filter(Collection<? extends Annotation> annotations, int visibility) {
+        List<Annotation> result = new ArrayList<>();
+        for (Annotation annotation : annotations) {
+            if (annotation.getVisibility() == visibility) {
+                result.add(annotation);
+            }
+        }
+        return result;
+    }
+
+    private void writeAnnotationsAttribute(String name, List<Annotation> annotations, ByteVector out) {
+        int lengthPosition = out.length() + 2;
+        out.putShort(pool.utf8(name)).putInt(0);
+        out.putShort(annotations.size());
+        for (Annotation annotation : annotations) {
+            writeAnnotation(annotation.getType(), annotation.getElements(), out);
+        }
+        out.setInt(lengthPosition, out.length() - lengthPosition - 4);
+    }
+
+    private void writeAnnotation(String type, Set<? extends AnnotationElement> elements, ByteVector out) {
+        List<AnnotationElement> encodable = new ArrayList<>();
+        for (AnnotationElement element : elements) {
+            if (isEncodable(element.getValue())) {
+                encodable.add(element);
+            }
+        }
+        out.putShort(pool.utf8(type)).putShort(encodable.size());
+        for (AnnotationElement element : encodable) {
+            out.putShort(pool.utf8(element.getName()));
+            writeElementValue(element.getValue(), out);
+        }
+    }
+
+    /**
+     * @return whether the value has an element_value form, dex annotations may also hold methods and nulls
+     */
+    private static boolean isEncodable(EncodedValue value) {
+        if (value instanceof ArrayEncodedValue) {
+            for (EncodedValue element : ((ArrayEncodedValue) value).getValue()) {
+                if (!isEncodable(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return MethodTranslator.isPushableValue(value) || value instanceof EnumEncodedValue ||
+                value instanceof AnnotationEncodedValue;
+    }
+
+    private void writeElementValue(EncodedValue value, ByteVector out) {
+        if (value instanceof BooleanEncodedValue) {
+            out.putByte('Z').putShort(pool.integer(((BooleanEncodedValue) value).getValue() ? 1 : 0));
+        } else if (value instanceof ByteEncodedValue) {
+            out.putByte('B').putShort(pool.integer(((ByteEncodedValue) value).getValue()));
+        } else if (value instanceof ShortEncodedValue) {
+            out.putByte('S').putShort(pool.integer(((ShortEncodedValue) value).getValue()));
+        } else if (value instanceof CharEncodedValue) {
+            out.putByte('C').putShort(pool.integer(((CharEncodedValue) value).getValue()));
+        } else if (value instanceof IntEncodedValue) {
+            out.putByte('I').putShort(pool.integer(((IntEncodedValue) value).getValue()));
+        } else if (value instanceof LongEncodedValue) {
+            out.putByte('J').putShort(pool.longValue(((LongEncodedValue) value).getValue()));
+        } else if (value instanceof FloatEncodedValue) {
+            out.putByte('F').putShort(pool.floatValue(((FloatEncodedValue) value).getValue()));
+        } else if (value instanceof DoubleEncodedValue) {
+            out.putByte('D').putShort(pool.doubleValue(((DoubleEncodedValue) value).getValue()));
+        } else if (value instanceof StringEncodedValue) {
+            out.putByte('s').putShort(pool.utf8(((StringEncodedValue) value).getValue()));
+        } else if (value instanceof TypeEncodedValue) {
+            out.putByte('c').putShort(pool.utf8(((TypeEncodedValue) value).getValue()));
+        } else if (value instanceof EnumEncodedValue) {
+            EnumEncodedValue enumValue = (EnumEncodedValue) value;
+            out.putByte('e').putShort(pool.utf8(enumValue.getValue().getType()));
+            out.putShort(pool.utf8(enumValue.getValue().getName()));
+        } else if (value instanceof AnnotationEncodedValue) {
+            out.putByte('@');
+            writeAnnotation(((AnnotationEncodedValue) value).getType(), ((AnnotationEncodedValue) value).getElements(), out);
+        } else {
+            List<? extends EncodedValue> values = ((ArrayEncodedValue) value).getValue();
+            out.putByte('[').putShort(values.size());
+            for (EncodedValue element : values) {
+                writeElementValue(element, out);
+            }
+        }
+    }
+
+    private int writeInnerClasses(ByteVector out) {
+        List<ClassDef> entries = new ArrayList<>();
+        if (isNested(classDef)) {
+            entries.add(classDef);
+        }
+        if (index != null) {
+            for (String type : index.getNestedTypes(classDef.getType())) {
+                ClassDef nested = index.getClassDef(type);
+                if (nested != null && isNested(nested)) {
+                    entries.add(nested);
+                }
+            }
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        out.putShort(pool.utf8("InnerClasses")).putInt(2 + entries.size() * 8).putShort(entries.size());
+        for (ClassDef entry : entries) {
+            Annotation innerClass = DexClassIndex.getAnnotation(entry.getAnnotations(), DexClassIndex.INNER_CLASS);
+            EncodedValue name = DexClassIndex.getElementValue(innerClass.getElements(), "name");
+            EncodedValue flags = DexClassIndex.getElementValue(innerClass.getElements(), "accessFlags");
+            EncodedValue outer = DexClassIndex.getAnnotationValue(entry.getAnnotations(), DexClassIndex.ENCLOSING_CLASS, "value");
+
+            out.putShort(pool.classRef(MethodTranslator.internalName(entry.getType())));
+            // anonymous and local classes have no outer class in the attribute
+            if (name instanceof StringEncodedValue && outer instanceof TypeEncodedValue) {
+                out.putShort(pool.classRef(MethodTranslator.internalName(((TypeEncodedValue) outer).getValue())));
+            } else {
+                out.putShort(0);
+            }
+            out.putShort(name instanceof StringEncodedValue ? pool.utf8(((StringEncodedValue) name).getValue()) : 0);
+            out.putShort(flags instanceof IntEncodedValue ? ((IntEncodedValue) flags).getValue() & INNER_CLASS_FLAGS :
+                    entry.getAccessFlags() & CLASS_FLAGS);
+        }
+        return 1;
+    }
+
+    private static boolean isNested(ClassDef classDef) {
+        return DexClassIndex.getAnnotation(classDef.getAnnotations(), DexClassIndex.INNER_CLASS) != null;
+    }
+
+    private int writeEnclosingMethod(ByteVector out) {
+        EncodedValue value = DexClassIndex.getAnnotationValue(classDef.getAnnotations(), DexClassIndex.ENCLOSING_METHOD, "value");
+        if (!(value instanceof MethodEncodedValue)) {
+            return 0;
+        }
+        MethodReference method = ((MethodEncodedValue) value).getValue();
+        out.putShort(pool.utf8("EnclosingMethod")).putInt(4);
+        out.putShort(pool.classRef(MethodTranslator.internalName(method.getDefiningClass())));
+        out.putShort(pool.nameAndType(method.getName(), MethodTranslator.descriptor(method)));
+        return 1;
+    }
+
+    private static boolean isConstantField(Field field) {
+        int flags = field.getAccessFlags();
+        return AccessFlags.STATIC.isSet(flags) && AccessFlags.FINAL.isSet(flags) &&
+                constantOf(field.getInitialValue()) != null;
+    }
+
+    private static boolean isDefaultValue(EncodedValue value) {
+        Object constant = constantOf(value);
+        if (constant instanceof Float) {
+            return Float.floatToRawIntBits((Float) constant) == 0;
+        } else if (constant instanceof Double) {
+            return Double.doubleToRawLongBits((Double) constant) == 0;
+        } else if (constant instanceof Number) {
+            return ((Number) constant).longValue() == 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return the value as a constant pool constant, null if it is not one
+     */
+    static Object constantOf(EncodedValue value) {
+        if (value instanceof BooleanEncodedValue) {
+            return ((BooleanEncodedValue) value).getValue() ? 1 : 0;
+        } else if (value instanceof ByteEncodedValue) {
+            return (int) ((ByteEncodedValue) value).getValue();
+        } else if (value instanceof ShortEncodedValue) {
+            return (int) ((ShortEncodedValue) value).getValue();
+        } else if (value instanceof CharEncodedValue) {
+            return (int) ((CharEncodedValue) value).getValue();
+        } else if (value instanceof IntEncodedValue) {
+            return ((IntEncodedValue) value).getValue();
+        } else if (value instanceof LongEncodedValue) {
+            return ((LongEncodedValue) value).getValue();
+        } else if (value instanceof FloatEncodedValue) {
+            return ((FloatEncodedValue) value).getValue();
+        } else if (value instanceof DoubleEncodedValue) {
+            return ((DoubleEncodedValue) value).getValue();
+        } else if (value instanceof StringEncodedValue) {
+            return ((StringEncodedValue) value).getValue();
+        }
+        return null;
+    }
+}
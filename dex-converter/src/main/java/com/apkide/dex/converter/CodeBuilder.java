@@ -0,0 +1,430 @@
+package com.apkide.dex.converter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the bytecode of one method: instructions, branches to labels, the exception table and the
+ * debug tables of the Code attribute. The operand stack depth is tracked to compute max_stack.
+ * <p>
+ * Branch offsets are 16 bit unless the builder is in wide jump mode, in which all branches are written
+ * with goto_w; {@link #toCode} throws {@link JumpOverflowException} if a short offset does not fit and
+ * {@link CodeTooLargeException} if the method exceeds the 64K limit of the class file format.
+ */
+class CodeBuilder implements JvmOpcodes {
+    static final int MAX_CODE_LENGTH = 0xFFFF;
+
+    static class Label {
+        int position = -1;
+    }
+
+    static class JumpOverflowException extends Exception {
+    }
+
+    static class CodeTooLargeException extends Exception {
+    }
+
+    private static class Jump {
+        final int opcodePosition;
+        final int offsetPosition;
+        final boolean wide;
+        final Label target;
+
+        Jump(int opcodePosition, int offsetPosition, boolean wide, Label target) {
+            this.opcodePosition = opcodePosition;
+            this.offsetPosition = offsetPosition;
+            this.wide = wide;
+            this.target = target;
+        }
+    }
+
+    private static class Handler {
+        final Label start;
+        final Label end;
+        final Label handler;
+        final String type;
+
+        Handler(Label start, Label end, Label handler, String type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    private static class LocalVariable {
+        final String name;
+        final String descriptor;
+        final String signature;
+        final Label start;
+        final Label end;
+        final int slot;
+
+        LocalVariable(String name, String descriptor, String signature, Label start, Label end, int slot) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.signature = signature;
+            this.start = start;
+            this.end = end;
+            this.slot = slot;
+        }
+    }
+
+    private final ConstantPoolWriter pool;
+    private final boolean wideJumps;
+    private final ByteVector code = new ByteVector(256);
+    private final List<Jump> jumps = new ArrayList<>();
+    private final List<Handler> handlers = new ArrayList<>();
+    private final List<Object[]> lines = new ArrayList<>();
+    private final List<LocalVariable> locals = new ArrayList<>();
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+
+    CodeBuilder(ConstantPoolWriter pool, boolean wideJumps) {
+        this.pool = pool;
+        this.wideJumps = wideJumps;
+    }
+
+    int position() {
+        return code.length();
+    }
+
+    void mark(Label label) {
+        label.position = code.length();
+    }
+
+    void setStack(int depth) {
+        stack = depth;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    void useLocals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    private void push(int words) {
+        stack += words;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    void insn(int opcode, int stackDelta) {
+        code.putByte(opcode);
+        push(stackDelta);
+    }
+
+    void load(int kind, int slot) {
+        varInsn(Kinds.loadOpcode(kind), slot);
+        push(Kinds.size(kind));
+    }
+
+    void store(int kind, int slot) {
+        varInsn(Kinds.storeOpcode(kind), slot);
+        push(-Kinds.size(kind));
+    }
+
+    private void varInsn(int opcode, int slot) {
+        if (slot < 4) {
+            // iload_0 and istore_0 start the groups of the short forms
+            code.putByte(opcode < ISTORE ? 26 + (opcode - ILOAD) * 4 + slot : 59 + (opcode - ISTORE) * 4 + slot);
+        } else if (slot < 256) {
+            code.putByte(opcode).putByte(slot);
+        } else {
+            code.putByte(196).putByte(opcode).putShort(slot);
+        }
+    }
+
+    void intConst(int value) {
+        if (value >= -1 && value <= 5) {
+            code.putByte(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.putByte(BIPUSH).putByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.putByte(SIPUSH).putShort(value);
+        } else {
+            ldc(pool.integer(value));
+        }
+        push(1);
+    }
+
+    void floatConst(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        if (bits == 0 || value == 1f || value == 2f) {
+            code.putByte(FCONST_0 + (int) value);
+        } else {
+            ldc(pool.floatValue(value));
+        }
+        push(1);
+    }
+
+    void longConst(long value) {
+        if (value == 0 || value == 1) {
+            code.putByte(LCONST_0 + (int) value);
+        } else {
+            code.putByte(LDC2_W).putShort(pool.longValue(value));
+        }
+        push(2);
+    }
+
+    void doubleConst(double value) {
+        if (Double.doubleToRawLongBits(value) == 0 || value == 1d) {
+            code.putByte(DCONST_0 + (int) value);
+        } else {
+            code.putByte(LDC2_W).putShort(pool.doubleValue(value));
+        }
+        push(2);
+    }
+
+    void stringConst(String value) {
+        ldc(pool.string(value));
+        push(1);
+    }
+
+    void classConst(String internalName) {
+        ldc(pool.classRef(internalName));
+        push(1);
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            code.putByte(LDC).putByte(index);
+        } else {
+            code.putByte(LDC_W).putShort(index);
+        }
+    }
+
+    void iinc(int slot, int increment) {
+        if (slot < 256 && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE) {
+            code.putByte(132).putByte(slot).putByte(increment);
+        } else {
+            code.putByte(196).putByte(132).putShort(slot).putShort(increment);
+        }
+    }
+
+    /**
+     * @param internalName class name or array descriptor for new, anewarray, checkcast and instanceof
+     */
+    void typeInsn(int opcode, String internalName) {
+        code.putByte(opcode).putShort(pool.classRef(internalName));
+        if (opcode == NEW) {
+            push(1);
+        }
+    }
+
+    void newArray(int arrayType) {
+        code.putByte(NEWARRAY).putByte(arrayType);
+    }
+
+    void fieldInsn(int opcode, String owner, String name, String descriptor) {
+        code.putByte(opcode).putShort(pool.fieldRef(owner, name, descriptor));
+        int size = Kinds.size(Kinds.ofDescriptor(descriptor));
+        switch (opcode) {
+            case GETSTATIC:
+                push(size);
+                break;
+            case PUTSTATIC:
+                push(-size);
+                break;
+            case GETFIELD:
+                push(size - 1);
+                break;
+            default:
+                push(-size - 1);
+                break;
+        }
+    }
+
+    void methodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        int index = pool.methodRef(owner, name, descriptor, isInterface);
+        int argumentSize = argumentSize(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+        code.putByte(opcode).putShort(index);
+        if (opcode == INVOKEINTERFACE) {
+            code.putByte(argumentSize).putByte(0);
+        }
+        char returnType = descriptor.charAt(descriptor.indexOf(')') + 1);
+        push(-argumentSize + (returnType == 'V' ? 0 : returnType == 'J' || returnType == 'D' ? 2 : 1));
+    }
+
+    static int argumentSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                size += 2;
+                i++;
+            } else {
+                while (descriptor.charAt(i) == '[') {
+                    i++;
+                }
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+                size++;
+                i++;
+            }
+        }
+        return size;
+    }
+
+    void jump(int opcode, Label target) {
+        int delta;
+        if (opcode == GOTO) {
+            delta = 0;
+        } else if (opcode >= IF_ICMPEQ && opcode <= IF_ACMPNE) {
+            delta = -2;
+        } else {
+            delta = -1;
+        }
+
+        if (!wideJumps) {
+            int position = code.length();
+            code.putByte(opcode).putShort(0);
+            jumps.add(new Jump(position, position + 1, false, target));
+        } else if (opcode == GOTO) {
+            int position = code.length();
+            code.putByte(GOTO_W).putInt(0);
+            jumps.add(new Jump(position, position + 1, true, target));
+        } else {
+            // the inverted condition skips the goto_w to the target
+            code.putByte(invert(opcode)).putShort(8);
+            int position = code.length();
+            code.putByte(GOTO_W).putInt(0);
+            jumps.add(new Jump(position, position + 1, true, target));
+        }
+        push(delta);
+    }
+
+    private static int invert(int opcode) {
+        if (opcode == IFNULL) {
+            return IFNONNULL;
+        }
+        if (opcode == IFNONNULL) {
+            return IFNULL;
+        }
+        // the conditions come in pairs of a condition and its negation
+        return ((opcode - IFEQ) & 1) == 0 ? opcode + 1 : opcode - 1;
+    }
+
+    void tableSwitch(int low, Label defaultLabel, Label[] targets) {
+        int position = code.length();
+        code.putByte(TABLESWITCH);
+        padSwitch();
+        addSwitchJump(position, defaultLabel);
+        code.putInt(low).putInt(low + targets.length - 1);
+        for (Label target : targets) {
+            addSwitchJump(position, target);
+        }
+        push(-1);
+    }
+
+    void lookupSwitch(int[] keys, Label defaultLabel, Label[] targets) {
+        int position = code.length();
+        code.putByte(LOOKUPSWITCH);
+        padSwitch();
+        addSwitchJump(position, defaultLabel);
+        code.putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            code.putInt(keys[i]);
+            addSwitchJump(position, targets[i]);
+        }
+        push(-1);
+    }
+
+    private void padSwitch() {
+        while (code.length() % 4 != 0) {
+            code.putByte(0);
+        }
+    }
+
+    private void addSwitchJump(int opcodePosition, Label target) {
+        jumps.add(new Jump(opcodePosition, code.length(), true, target));
+        code.putInt(0);
+    }
+
+    void tryCatch(Label start, Label end, Label handler, String type) {
+        handlers.add(new Handler(start, end, handler, type));
+    }
+
+    void lineNumber(int line, Label start) {
+        lines.add(new Object[]{start, line});
+    }
+
+    void localVariable(String name, String descriptor, String signature, Label start, Label end, int slot) {
+        locals.add(new LocalVariable(name, descriptor, signature, start, end, slot));
+    }
+
+    /**
+     * Resolves the branches and writes the Code attribute, without its name index.
+     */
+    void toCode(ByteVector out) throws JumpOverflowException, CodeTooLargeException {
+        if (code.length() > MAX_CODE_LENGTH) {
+            throw new CodeTooLargeException();
+        }
+        for (Jump jump : jumps) {
+            int offset = jump.target.position - jump.opcodePosition;
+            if (jump.wide) {
+                code.setInt(jump.offsetPosition, offset);
+            } else if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new JumpOverflowException();
+            } else {
+                code.setShort(jump.offsetPosition, offset);
+            }
+        }
+
+        List<Handler> table = new ArrayList<>();
+        for (Handler handler : handlers) {
+            if (handler.start.position < handler.end.position) {
+                table.add(handler);
+            }
+        }
+
+        int lengthPosition = out.length();
+        out.putInt(0);
+        out.putShort(maxStack).putShort(maxLocals);
+        out.putInt(code.length()).putVector(code);
+
+        out.putShort(table.size());
+        for (Handler handler : table) {
+            out.putShort(handler.start.position).putShort(handler.end.position).putShort(handler.handler.position);
+            out.putShort(handler.type != null ? pool.classRef(handler.type) : 0);
+        }
+
+        List<LocalVariable> variables = new ArrayList<>();
+        List<LocalVariable> signatures = new ArrayList<>();
+        for (LocalVariable local : locals) {
+            if (local.start.position < local.end.position) {
+                variables.add(local);
+                if (local.signature != null) {
+                    signatures.add(local);
+                }
+            }
+        }
+
+        int attributes = (lines.isEmpty() ? 0 : 1) + (variables.isEmpty() ? 0 : 1) + (signatures.isEmpty() ? 0 : 1);
+        out.putShort(attributes);
+        if (!lines.isEmpty()) {
+            out.putShort(pool.utf8("LineNumberTable")).putInt(2 + lines.size() * 4).putShort(lines.size());
+            for (Object[] line : lines) {
+                out.putShort(((Label) line[0]).position).putShort((Integer) line[1]);
+            }
+        }
+        if (!variables.isEmpty()) {
+            writeLocals(out, "LocalVariableTable", variables, false);
+        }
+        if (!signatures.isEmpty()) {
+            writeLocals(out, "LocalVariableTypeTable", signatures, true);
+        }
+
+        out.setInt(lengthPosition, out.length() - lengthPosition - 4);
+    }
+
+    private void writeLocals(ByteVector out, String attribute, List<LocalVariable> variables, boolean signature) {
+        out.putShort(pool.utf8(attribute)).putInt(2 + variables.size() * 10).putShort(variables.size());
+        for (LocalVariable local : variables) {
+            out.putShort(local.start.position).putShort(local.end.position - local.start.position);
+            out.putShort(pool.utf8(local.name)).putShort(pool.utf8(signature ? local.signature : local.descriptor));
+            out.putShort(local.slot);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.apkide.dex.converter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constant pool of a class file being written, entries are shared by their contents.
+ */
+class ConstantPoolWriter {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteVector pool = new ByteVector(1024);
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int count = 1;
+
+    int utf8(String value) {
+        String key = CONSTANT_UTF8 + ":" + value;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_UTF8);
+            putModifiedUtf8(value);
+        }
+        return index;
+    }
+
+    /**
+     * @param internalName class name with slashes, or descriptor of an array class
+     */
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        String key = CONSTANT_CLASS + ":" + internalName;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_CLASS).putShort(name);
+        }
+        return index;
+    }
+
+    int string(String value) {
+        int utf8 = utf8(value);
+        String key = CONSTANT_STRING + ":" + value;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_STRING).putShort(utf8);
+        }
+        return index;
+    }
+
+    int integer(int value) {
+        String key = CONSTANT_INTEGER + ":" + Integer.toString(value);
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_INTEGER).putInt(value);
+        }
+        return index;
+    }
+
+    int floatValue(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        String key = CONSTANT_FLOAT + ":" + Integer.toString(bits);
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_FLOAT).putInt(bits);
+        }
+        return index;
+    }
+
+    int longValue(long value) {
+        String key = CONSTANT_LONG + ":" + Long.toString(value);
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 2);
+            pool.putByte(CONSTANT_LONG).putLong(value);
+        }
+        return index;
+    }
+
+    int doubleValue(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        String key = CONSTANT_DOUBLE + ":" + Long.toString(bits);
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 2);
+            pool.putByte(CONSTANT_DOUBLE).putLong(bits);
+        }
+        return index;
+    }
+
+    int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        String key = CONSTANT_NAME_AND_TYPE + ":" + name + ' ' + descriptor;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(CONSTANT_NAME_AND_TYPE).putShort(nameIndex).putShort(descriptorIndex);
+        }
+        return index;
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor, boolean isInterface) {
+        return memberRef(isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        String key = tag + ":" + owner + ' ' + name + ' ' + descriptor;
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = add(key, 1);
+            pool.putByte(tag).putShort(classIndex).putShort(nameAndType);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the next entry, the size of the pool including the unused entry 0
+     */
+    int count() {
+        return count;
+    }
+
+    void write(ByteVector out) {
+        out.putShort(count);
+        out.putVector(pool);
+    }
+
+    private int add(String key, int slots) {
+        if (count + slots > 0xFFFF) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        int index = count;
+        indexes.put(key, index);
+        count += slots;
+        return index;
+    }
+
+    private void putModifiedUtf8(String value) {
+        int length = value.length();
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            size += c >= 1 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        if (size > 0xFFFF) {
+            throw new IllegalStateException("String constant too long");
+        }
+
+        pool.putShort(size);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 1 && c <= 0x7F) {
+                pool.putByte(c);
+            } else if (c <= 0x7FF) {
+                pool.putByte(0xC0 | (c >> 6)).putByte(0x80 | (c & 0x3F));
+            } else {
+                pool.putByte(0xE0 | (c >> 12)).putByte(0x80 | ((c >> 6) & 0x3F)).putByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.apkide.dex.converter;
+
+import androidx.annotation.NonNull;
+
+import com.apkide.java.decompiler.main.extern.IBytecodeProvider;
+import com.apkide.smali.dexlib2.iface.ClassDef;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the classes of a {@link DexClassIndex} to the decompiler as class files, converted when first
+ * asked for and kept in a small cache. Classes under {@link #SOURCE_PATH} are converted with their code,
+ * classes under {@link #LIBRARY_PATH} with their members only.
+ */
+public class DexBytecodeProvider implements IBytecodeProvider {
+    public static final String SOURCE_PATH = "dex";
+    public static final String LIBRARY_PATH = "dex-library";
+
+    private static final int MAX_CACHED_CLASSES = 256;
+
+    private final DexClassIndex index;
+    private final Map<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_CACHED_CLASSES;
+        }
+    };
+
+    public DexBytecodeProvider(@NonNull DexClassIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+        boolean withCode = !LIBRARY_PATH.equals(externalPath);
+        String key = (withCode ? "+" : "-") + internalPath;
+        synchronized (cache) {
+            byte[] bytes = cache.get(key);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+
+        ClassDef classDef = index.getClassDef(toType(internalPath));
+        if (classDef == null) {
+            throw new FileNotFoundException(internalPath);
+        }
+        byte[] bytes = new ClassTranslator(index, classDef, withCode).translate();
+        synchronized (cache) {
+            cache.put(key, bytes);
+        }
+        return bytes;
+    }
+
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the class file entry name of the type, "a/b/C.class" for "La/b/C;"
+     */
+    @NonNull
+    public static String toEntryName(@NonNull String type) {
+        return MethodTranslator.internalName(type) + ".class";
+    }
+
+    @NonNull
+    public static String toType(@NonNull String entryName) {
+        String name = entryName.endsWith(".class") ? entryName.substring(0, entryName.length() - 6) : entryName;
+        return "L" + name + ";";
+    }
+}
@@ -0,0 +1,143 @@
+package com.apkide.dex.converter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.smali.dexlib2.AccessFlags;
+import com.apkide.smali.dexlib2.iface.Annotation;
+import com.apkide.smali.dexlib2.iface.AnnotationElement;
+import com.apkide.smali.dexlib2.iface.ClassDef;
+import com.apkide.smali.dexlib2.iface.DexFile;
+import com.apkide.smali.dexlib2.iface.value.EncodedValue;
+import com.apkide.smali.dexlib2.iface.value.MethodEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.TypeEncodedValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The classes of one or more dex files by type descriptor, with the nesting of inner classes taken from
+ * their dalvik.annotation.EnclosingClass and EnclosingMethod annotations.
+ */
+public class DexClassIndex {
+    static final String ENCLOSING_CLASS = "Ldalvik/annotation/EnclosingClass;";
+    static final String ENCLOSING_METHOD = "Ldalvik/annotation/EnclosingMethod;";
+    static final String INNER_CLASS = "Ldalvik/annotation/InnerClass;";
+
+    private final TreeMap<String, ClassDef> classes = new TreeMap<>();
+
+    public DexClassIndex(@NonNull DexFile dexFile) {
+        this(dexFile.getClasses());
+    }
+
+    public DexClassIndex(@NonNull Iterable<? extends ClassDef> classDefs) {
+        for (ClassDef classDef : classDefs) {
+            // the first definition of a type wins, as when the runtime loads multidex
+            classes.putIfAbsent(classDef.getType(), classDef);
+        }
+    }
+
+    @NonNull
+    public Collection<String> getTypes() {
+        return Collections.unmodifiableSet(classes.keySet());
+    }
+
+    @Nullable
+    public ClassDef getClassDef(@NonNull String type) {
+        return classes.get(type);
+    }
+
+    public boolean isInterface(@NonNull String type) {
+        ClassDef classDef = classes.get(type);
+        return classDef != null && AccessFlags.INTERFACE.isSet(classDef.getAccessFlags());
+    }
+
+    /**
+     * @return type of the class the class is declared in, null for a top level class
+     */
+    @Nullable
+    public String getEnclosingType(@NonNull String type) {
+        ClassDef classDef = classes.get(type);
+        return classDef != null ? getEnclosingType(classDef) : null;
+    }
+
+    /**
+     * @return type of the top level class the class is declared in, the type itself if it is top level
+     */
+    @NonNull
+    public String getRootType(@NonNull String type) {
+        String root = type;
+        for (int depth = 0; depth < 64; depth++) {
+            String enclosing = getEnclosingType(root);
+            if (enclosing == null || !classes.containsKey(enclosing)) {
+                break;
+            }
+            root = enclosing;
+        }
+        return root;
+    }
+
+    /**
+     * @return types of the classes declared directly in the class, including anonymous and local classes
+     */
+    @NonNull
+    public List<String> getNestedTypes(@NonNull String type) {
+        List<String> nested = new ArrayList<>();
+        if (!type.endsWith(";")) {
+            return nested;
+        }
+        // nested classes are named after the class they are declared in by all compilers that matter
+        String prefix = type.substring(0, type.length() - 1) + '$';
+        SortedMap<String, ClassDef> candidates = classes.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (ClassDef candidate : candidates.values()) {
+            if (type.equals(getEnclosingType(candidate))) {
+                nested.add(candidate.getType());
+            }
+        }
+        return nested;
+    }
+
+    @Nullable
+    static String getEnclosingType(@NonNull ClassDef classDef) {
+        EncodedValue value = getAnnotationValue(classDef.getAnnotations(), ENCLOSING_CLASS, "value");
+        if (value instanceof TypeEncodedValue) {
+            return ((TypeEncodedValue) value).getValue();
+        }
+        value = getAnnotationValue(classDef.getAnnotations(), ENCLOSING_METHOD, "value");
+        if (value instanceof MethodEncodedValue) {
+            return ((MethodEncodedValue) value).getValue().getDefiningClass();
+        }
+        return null;
+    }
+
+    @Nullable
+    static Annotation getAnnotation(@NonNull Iterable<? extends Annotation> annotations, @NonNull String type) {
+        for (Annotation annotation : annotations) {
+            if (annotation.getType().equals(type)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    static EncodedValue getAnnotationValue(@NonNull Iterable<? extends Annotation> annotations,
+                                           @NonNull String type, @NonNull String name) {
+        Annotation annotation = getAnnotation(annotations, type);
+        return annotation != null ? getElementValue(annotation.getElements(), name) : null;
+    }
+
+    @Nullable
+    static EncodedValue getElementValue(@NonNull Iterable<? extends AnnotationElement> elements, @NonNull String name) {
+        for (AnnotationElement element : elements) {
+            if (element.getName().equals(name)) {
+                return element.getValue();
+            }
+        }
+        return null;
+    }
+}
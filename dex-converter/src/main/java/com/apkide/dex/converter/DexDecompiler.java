@@ -0,0 +1,102 @@
+package com.apkide.dex.converter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.java.decompiler.main.DecompilerContext;
+import com.apkide.java.decompiler.main.Fernflower;
+import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
+import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
+import com.apkide.java.decompiler.main.extern.IResultSaver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decompiles classes of dex files without writing class files. The class with its nested classes is
+ * converted in memory and decompiled, the other classes of the index are only converted, without code,
+ * when the decompiler looks them up. One decompiler context is kept for the index, the classes decompiled
+ * once stay in it and the library classes are not looked up again for each class.
+ */
+public class DexDecompiler {
+    private static final IResultSaver NO_SAVER = (path, qualifiedName, entryName, content, mapping) -> { };
+
+    private final DexClassIndex index;
+    private final DexBytecodeProvider provider;
+    private final Map<String, Object> options;
+    private final IFernflowerLogger logger;
+    private final Set<String> sourceTypes = new HashSet<>();
+    private Fernflower engine;
+    private DecompilerContext context;
+
+    public DexDecompiler(@NonNull DexClassIndex index, @Nullable Map<String, Object> options,
+                         @NonNull IFernflowerLogger logger) {
+        this.index = index;
+        this.provider = new DexBytecodeProvider(index);
+        this.options = new HashMap<>();
+        if (options != null) {
+            this.options.putAll(options);
+        }
+        this.options.put(IFernflowerPreferences.LAZY_LIBRARIES, "1");
+        this.logger = logger;
+    }
+
+    @NonNull
+    public DexClassIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Decompiles the top level class of the given class, the class itself if it is not nested.
+     *
+     * @param type type descriptor of the class, 'La/b/C;'
+     * @return the source, null if the class is unknown or could not be decompiled
+     */
+    @Nullable
+    public synchronized String decompile(@NonNull String type) {
+        if (index.getClassDef(type) == null) {
+            return null;
+        }
+        String root = index.getRootType(type);
+
+        DecompilerContext previous = DecompilerContext.getCurrentContext();
+        try {
+            if (engine == null) {
+                engine = new Fernflower(provider, NO_SAVER, options, logger);
+                context = DecompilerContext.getCurrentContext();
+                List<String> libraries = new ArrayList<>();
+                for (String other : index.getTypes()) {
+                    libraries.add(DexBytecodeProvider.toEntryName(other));
+                }
+                engine.addLibrary(DexBytecodeProvider.LIBRARY_PATH, libraries);
+            } else {
+                DecompilerContext.setCurrentContext(context);
+            }
+
+            // the class and its nested classes become sources the first time, replacing their library entries
+            List<String> sources = new ArrayList<>();
+            Deque<String> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                String next = queue.poll();
+                if (sourceTypes.add(next)) {
+                    sources.add(DexBytecodeProvider.toEntryName(next));
+                    queue.addAll(index.getNestedTypes(next));
+                }
+            }
+            if (!sources.isEmpty()) {
+                engine.addSource(DexBytecodeProvider.SOURCE_PATH, sources);
+                engine.loadContext();
+            }
+            return engine.getClassContent(MethodTranslator.internalName(root));
+        } finally {
+            DecompilerContext.setCurrentContext(previous);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.apkide.dex.converter;
+
+/**
+ * JVM value kinds of Dalvik registers. A register holds a 32 bit value or half of a 64 bit one, which
+ * kind it is has to be inferred from its definitions and uses, so kinds are bit masks of the candidates.
+ */
+final class Kinds {
+    static final int INT = 1;
+    static final int FLOAT = 2;
+    static final int OBJECT = 4;
+    static final int LONG = 8;
+    static final int DOUBLE = 16;
+
+    static final int NARROW = INT | FLOAT;
+    static final int NARROW_OR_NULL = INT | FLOAT | OBJECT;
+    static final int INT_OR_OBJECT = INT | OBJECT;
+    static final int WIDE = LONG | DOUBLE;
+
+    private Kinds() {
+    }
+
+    static int ofDescriptor(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'Z':
+            case 'B':
+            case 'S':
+            case 'C':
+            case 'I':
+                return INT;
+            case 'F':
+                return FLOAT;
+            case 'J':
+                return LONG;
+            case 'D':
+                return DOUBLE;
+            default:
+                return OBJECT;
+        }
+    }
+
+    /**
+     * @return the single kind a mask of candidates stands for, int and long if undecided
+     */
+    static int resolve(int mask) {
+        if ((mask & INT) != 0) return INT;
+        if ((mask & LONG) != 0) return LONG;
+        if ((mask & OBJECT) != 0) return OBJECT;
+        if ((mask & FLOAT) != 0) return FLOAT;
+        if ((mask & DOUBLE) != 0) return DOUBLE;
+        return INT;
+    }
+
+    static boolean isWide(int kind) {
+        return (kind & WIDE) != 0;
+    }
+
+    static int size(int kind) {
+        return isWide(kind) ? 2 : 1;
+    }
+
+    /**
+     * @return index of the kind, for tables and slot keys
+     */
+    static int index(int kind) {
+        return Integer.numberOfTrailingZeros(kind);
+    }
+
+    static int loadOpcode(int kind) {
+        switch (kind) {
+            case LONG:
+                return JvmOpcodes.LLOAD;
+            case FLOAT:
+                return JvmOpcodes.FLOAD;
+            case DOUBLE:
+                return JvmOpcodes.DLOAD;
+            case OBJECT:
+                return JvmOpcodes.ALOAD;
+            default:
+                return JvmOpcodes.ILOAD;
+        }
+    }
+
+    static int storeOpcode(int kind) {
+        return loadOpcode(kind) + (JvmOpcodes.ISTORE - JvmOpcodes.ILOAD);
+    }
+
+    static int returnOpcode(int kind) {
+        switch (kind) {
+            case LONG:
+                return JvmOpcodes.LRETURN;
+            case FLOAT:
+                return JvmOpcodes.FRETURN;
+            case DOUBLE:
+                return JvmOpcodes.DRETURN;
+            case OBJECT:
+                return JvmOpcodes.ARETURN;
+            default:
+                return JvmOpcodes.IRETURN;
+        }
+    }
+
+    static String descriptor(int kind) {
+        switch (kind) {
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case OBJECT:
+                return "Ljava/lang/Object;";
+            default:
+                return "I";
+        }
+    }
+}
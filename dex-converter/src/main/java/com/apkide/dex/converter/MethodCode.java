@@ -0,0 +1,180 @@
+package com.apkide.dex.converter;
+
+import com.apkide.smali.dexlib2.Opcode;
+import com.apkide.smali.dexlib2.iface.ExceptionHandler;
+import com.apkide.smali.dexlib2.iface.MethodImplementation;
+import com.apkide.smali.dexlib2.iface.TryBlock;
+import com.apkide.smali.dexlib2.iface.instruction.FiveRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.Instruction;
+import com.apkide.smali.dexlib2.iface.instruction.OffsetInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.RegisterRangeInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.SwitchElement;
+import com.apkide.smali.dexlib2.iface.instruction.SwitchPayload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Instructions of a method indexed by code address, with the control flow between them.
+ */
+class MethodCode {
+    final MethodImplementation implementation;
+    final Instruction[] instructions;
+    final int[] addresses;
+    final int codeUnits;
+    // exception handlers covering each instruction, null if none
+    final List<List<? extends ExceptionHandler>> handlers;
+    private final int[] indexByAddress;
+
+    MethodCode(MethodImplementation implementation) {
+        this.implementation = implementation;
+
+        List<Instruction> list = new ArrayList<>();
+        for (Instruction instruction : implementation.getInstructions()) {
+            list.add(instruction);
+        }
+        instructions = list.toArray(new Instruction[0]);
+        addresses = new int[instructions.length];
+
+        int address = 0;
+        for (int i = 0; i < instructions.length; i++) {
+            addresses[i] = address;
+            address += instructions[i].getCodeUnits();
+        }
+        codeUnits = address;
+
+        indexByAddress = new int[codeUnits + 1];
+        Arrays.fill(indexByAddress, -1);
+        for (int i = 0; i < instructions.length; i++) {
+            indexByAddress[addresses[i]] = i;
+        }
+        indexByAddress[codeUnits] = instructions.length;
+
+        handlers = new ArrayList<>(instructions.length);
+        for (int i = 0; i < instructions.length; i++) {
+            handlers.add(null);
+        }
+        for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+            int start = tryBlock.getStartCodeAddress();
+            int end = start + tryBlock.getCodeUnitCount();
+            for (int i = indexAtOrAfter(start); i < instructions.length && addresses[i] < end; i++) {
+                handlers.set(i, tryBlock.getExceptionHandlers());
+            }
+        }
+    }
+
+    /**
+     * @return index of the instruction at the address, -1 if no instruction starts there
+     */
+    int indexOf(int address) {
+        return address >= 0 && address < indexByAddress.length ? indexByAddress[address] : -1;
+    }
+
+    /**
+     * @return index of the first instruction at or after the address, the instruction count past the end
+     */
+    int indexAtOrAfter(int address) {
+        if (address <= 0) {
+            return 0;
+        }
+        for (int a = address; a < indexByAddress.length; a++) {
+            if (indexByAddress[a] != -1) {
+                return indexByAddress[a];
+            }
+        }
+        return instructions.length;
+    }
+
+    /**
+     * @return index of the instruction at the address relative to instruction i, -1 if invalid
+     */
+    int target(int i, int offset) {
+        return indexOf(addresses[i] + offset);
+    }
+
+    /**
+     * @return the payload of a switch or fill-array-data instruction, null if missing
+     */
+    Instruction payload(int i) {
+        int index = target(i, ((OffsetInstruction) instructions[i]).getCodeOffset());
+        return index != -1 ? instructions[index] : null;
+    }
+
+    /**
+     * @return indexes of the instructions control may pass to after instruction i, without exception handlers
+     */
+    int[] successors(int i) {
+        Instruction instruction = instructions[i];
+        Opcode opcode = instruction.getOpcode();
+        int[] result = new int[0];
+
+        if (opcode.canContinue() && !opcode.format.isPayloadFormat && i + 1 < instructions.length) {
+            result = append(result, i + 1);
+        }
+
+        switch (opcode) {
+            case GOTO:
+            case GOTO_16:
+            case GOTO_32:
+            case IF_EQ:
+            case IF_NE:
+            case IF_LT:
+            case IF_GE:
+            case IF_GT:
+            case IF_LE:
+            case IF_EQZ:
+            case IF_NEZ:
+            case IF_LTZ:
+            case IF_GEZ:
+            case IF_GTZ:
+            case IF_LEZ: {
+                int target = target(i, ((OffsetInstruction) instruction).getCodeOffset());
+                if (target != -1) {
+                    result = append(result, target);
+                }
+                break;
+            }
+            case PACKED_SWITCH:
+            case SPARSE_SWITCH: {
+                Instruction payload = payload(i);
+                if (payload instanceof SwitchPayload) {
+                    for (SwitchElement element : ((SwitchPayload) payload).getSwitchElements()) {
+                        int target = target(i, element.getOffset());
+                        if (target != -1) {
+                            result = append(result, target);
+                        }
+                    }
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * @return registers passed to an invoke or filled-new-array instruction, a wide value taking two
+     */
+    static int[] invokeRegisters(Instruction instruction) {
+        if (instruction instanceof RegisterRangeInstruction) {
+            RegisterRangeInstruction range = (RegisterRangeInstruction) instruction;
+            int[] registers = new int[range.getRegisterCount()];
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = range.getStartRegister() + i;
+            }
+            return registers;
+        }
+
+        FiveRegisterInstruction five = (FiveRegisterInstruction) instruction;
+        int[] all = {five.getRegisterC(), five.getRegisterD(), five.getRegisterE(), five.getRegisterF(), five.getRegisterG()};
+        return Arrays.copyOf(all, five.getRegisterCount());
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+}
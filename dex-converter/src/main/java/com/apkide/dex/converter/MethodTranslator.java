@@ -0,0 +1,1026 @@
+package com.apkide.dex.converter;
+
+import com.apkide.dex.converter.CodeBuilder.Label;
+import com.apkide.smali.dexlib2.Opcode;
+import com.apkide.smali.dexlib2.iface.ExceptionHandler;
+import com.apkide.smali.dexlib2.iface.Field;
+import com.apkide.smali.dexlib2.iface.Method;
+import com.apkide.smali.dexlib2.iface.MethodImplementation;
+import com.apkide.smali.dexlib2.iface.MethodParameter;
+import com.apkide.smali.dexlib2.iface.TryBlock;
+import com.apkide.smali.dexlib2.iface.debug.DebugItem;
+import com.apkide.smali.dexlib2.iface.debug.EndLocal;
+import com.apkide.smali.dexlib2.iface.debug.LineNumber;
+import com.apkide.smali.dexlib2.iface.debug.LocalInfo;
+import com.apkide.smali.dexlib2.iface.debug.RestartLocal;
+import com.apkide.smali.dexlib2.iface.debug.StartLocal;
+import com.apkide.smali.dexlib2.iface.instruction.Instruction;
+import com.apkide.smali.dexlib2.iface.instruction.OffsetInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.OneRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.SwitchElement;
+import com.apkide.smali.dexlib2.iface.instruction.SwitchPayload;
+import com.apkide.smali.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.TwoRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.WideLiteralInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.formats.ArrayPayload;
+import com.apkide.smali.dexlib2.iface.instruction.formats.PackedSwitchPayload;
+import com.apkide.smali.dexlib2.iface.reference.FieldReference;
+import com.apkide.smali.dexlib2.iface.reference.MethodReference;
+import com.apkide.smali.dexlib2.iface.reference.StringReference;
+import com.apkide.smali.dexlib2.iface.value.BooleanEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.ByteEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.CharEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.DoubleEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.EncodedValue;
+import com.apkide.smali.dexlib2.iface.value.FloatEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.IntEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.LongEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.ShortEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.StringEncodedValue;
+import com.apkide.smali.dexlib2.iface.value.TypeEncodedValue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates the code of a Dalvik method to JVM bytecode.
+ * <p>
+ * Registers become local variables, one per register and kind of value it holds (see {@link RegisterTypes}),
+ * the parameters keeping the slots the JVM calling convention gives them. Each Dalvik instruction turns into
+ * loads of its operands, the JVM instruction and a store of the result; a move-result is merged into the
+ * invoke before it. Methods that cannot be translated get a body throwing an exception instead.
+ */
+class MethodTranslator implements JvmOpcodes {
+    private static final String STUB_EXCEPTION = "java/lang/UnsupportedOperationException";
+
+    private static class UnsupportedCodeException extends Exception {
+        UnsupportedCodeException(String message) {
+            super(message);
+        }
+    }
+
+    private final ConstantPoolWriter pool;
+    private final DexClassIndex index;
+    private final Method method;
+    private final MethodCode code;
+    private final RegisterTypes types;
+    private final List<? extends Field> staticValues;
+    private final boolean[] branchTargets;
+    private final Map<Integer, Integer> slots = new HashMap<>();
+    private int nextSlot;
+
+    private CodeBuilder builder;
+    private Label[] labels;
+    private boolean[] merged;
+
+    /**
+     * @param staticValues static fields whose initial values are assigned at the start of the method
+     */
+    MethodTranslator(ConstantPoolWriter pool, DexClassIndex index, Method method, MethodImplementation implementation,
+                     List<? extends Field> staticValues) {
+        this.pool = pool;
+        this.index = index;
+        this.method = method;
+        this.staticValues = staticValues;
+        code = new MethodCode(implementation);
+        types = new RegisterTypes(method, code);
+
+        branchTargets = new boolean[code.instructions.length + 1];
+        for (int i = 0; i < code.instructions.length; i++) {
+            for (int successor : code.successors(i)) {
+                if (successor != i + 1) {
+                    branchTargets[successor] = true;
+                }
+            }
+        }
+        for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+            for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                int target = code.indexOf(handler.getHandlerCodeAddress());
+                if (target != -1) {
+                    branchTargets[target] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the Code attribute of the method.
+     */
+    void write(ByteVector out) {
+        ByteVector attribute = new ByteVector(256);
+        try {
+            try {
+                translate(false).toCode(attribute);
+            } catch (CodeBuilder.JumpOverflowException e) {
+                attribute = new ByteVector(256);
+                translate(true).toCode(attribute);
+            }
+        } catch (CodeBuilder.JumpOverflowException | CodeBuilder.CodeTooLargeException e) {
+            attribute = writeStub("code too large");
+        } catch (UnsupportedCodeException e) {
+            attribute = writeStub(e.getMessage());
+        } catch (RuntimeException e) {
+            attribute = writeStub(e.toString());
+        }
+        out.putShort(pool.utf8("Code")).putVector(attribute);
+    }
+
+    /**
+     * Writes the Code attribute of a method that only assigns the initial values of static fields.
+     */
+    static void writeStaticInitializer(ConstantPoolWriter pool, List<? extends Field> staticValues, ByteVector out) {
+        CodeBuilder builder = new CodeBuilder(pool, false);
+        for (Field field : staticValues) {
+            pushValue(builder, field.getInitialValue(), field.getType());
+            builder.fieldInsn(PUTSTATIC, internalName(field.getDefiningClass()), field.getName(), field.getType());
+        }
+        builder.insn(RETURN, 0);
+
+        ByteVector attribute = new ByteVector(64);
+        try {
+            builder.toCode(attribute);
+        } catch (CodeBuilder.JumpOverflowException | CodeBuilder.CodeTooLargeException e) {
+            throw new IllegalStateException(e);
+        }
+        out.putShort(pool.utf8("Code")).putVector(attribute);
+    }
+
+    /**
+     * @return whether the value can be assigned by {@link #pushValue}
+     */
+    static boolean isPushableValue(EncodedValue value) {
+        return value instanceof BooleanEncodedValue ||
+                value instanceof ByteEncodedValue ||
+                value instanceof ShortEncodedValue ||
+                value instanceof CharEncodedValue ||
+                value instanceof IntEncodedValue ||
+                value instanceof LongEncodedValue ||
+                value instanceof FloatEncodedValue ||
+                value instanceof DoubleEncodedValue ||
+                value instanceof StringEncodedValue ||
+                value instanceof TypeEncodedValue;
+    }
+
+    private static void pushValue(CodeBuilder builder, EncodedValue value, String type) {
+        Object constant = ClassTranslator.constantOf(value);
+        if (constant instanceof String) {
+            builder.stringConst((String) constant);
+        } else if (value instanceof TypeEncodedValue) {
+            builder.classConst(internalName(((TypeEncodedValue) value).getValue()));
+        } else if (constant instanceof Long) {
+            builder.longConst((Long) constant);
+        } else if (constant instanceof Float) {
+            builder.floatConst((Float) constant);
+        } else if (constant instanceof Double) {
+            builder.doubleConst((Double) constant);
+        } else {
+            builder.intConst((Integer) constant);
+        }
+    }
+
+    private ByteVector writeStub(String reason) {
+        CodeBuilder stub = new CodeBuilder(pool, false);
+        stub.typeInsn(NEW, STUB_EXCEPTION);
+        stub.insn(DUP, 1);
+        stub.stringConst("Method not converted: " + reason);
+        stub.methodInsn(INVOKESPECIAL, STUB_EXCEPTION, "<init>", "(Ljava/lang/String;)V", false);
+        stub.insn(ATHROW, -1);
+        stub.useLocals(CodeBuilder.argumentSize(descriptor(method)) + (isStatic() ? 0 : 1));
+
+        ByteVector attribute = new ByteVector(64);
+        try {
+            stub.toCode(attribute);
+        } catch (CodeBuilder.JumpOverflowException | CodeBuilder.CodeTooLargeException e) {
+            throw new IllegalStateException(e);
+        }
+        return attribute;
+    }
+
+    private boolean isStatic() {
+        return types.getParameterCount() == method.getParameterTypes().size();
+    }
+
+    private CodeBuilder translate(boolean wideJumps) throws UnsupportedCodeException {
+        Instruction[] instructions = code.instructions;
+        builder = new CodeBuilder(pool, wideJumps);
+        labels = new Label[instructions.length + 1];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = new Label();
+        }
+        merged = new boolean[instructions.length];
+        slots.clear();
+        nextSlot = 0;
+        for (int p = 0; p < types.getParameterCount(); p++) {
+            slot(types.getParameterRegister(p), Kinds.ofDescriptor(types.getParameterType(p)));
+        }
+
+        for (Field field : staticValues) {
+            pushValue(builder, field.getInitialValue(), field.getType());
+            builder.fieldInsn(PUTSTATIC, internalName(field.getDefiningClass()), field.getName(), field.getType());
+        }
+
+        for (int i = 0; i < instructions.length; i++) {
+            builder.mark(labels[i]);
+            if (types.isReachable(i) && !merged[i]) {
+                builder.setStack(0);
+                translate(i, instructions[i]);
+            }
+        }
+        builder.mark(labels[instructions.length]);
+
+        translateTryBlocks();
+        translateDebugInfo();
+        builder.useLocals(nextSlot);
+        return builder;
+    }
+
+    private void translateTryBlocks() {
+        Map<Integer, Label> stubs = new HashMap<>();
+        for (TryBlock<? extends ExceptionHandler> tryBlock : code.implementation.getTryBlocks()) {
+            int start = tryBlock.getStartCodeAddress();
+            Label startLabel = labels[code.indexAtOrAfter(start)];
+            Label endLabel = labels[code.indexAtOrAfter(start + tryBlock.getCodeUnitCount())];
+
+            for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                int target = code.indexOf(handler.getHandlerCodeAddress());
+                if (target == -1 || !types.isReachable(target)) {
+                    continue;
+                }
+
+                Label handlerLabel;
+                if (code.instructions[target].getOpcode() == Opcode.MOVE_EXCEPTION) {
+                    handlerLabel = labels[target];
+                } else {
+                    // the handler does not take the exception, it is stored to a variable of its own
+                    handlerLabel = stubs.get(target);
+                    if (handlerLabel == null) {
+                        handlerLabel = new Label();
+                        builder.mark(handlerLabel);
+                        builder.setStack(1);
+                        builder.store(Kinds.OBJECT, slot(code.implementation.getRegisterCount(), Kinds.OBJECT));
+                        builder.jump(GOTO, labels[target]);
+                        stubs.put(target, handlerLabel);
+                    }
+                }
+
+                String type = handler.getExceptionType();
+                builder.tryCatch(startLabel, endLabel, handlerLabel, type != null ? internalName(type) : null);
+            }
+        }
+    }
+
+    private void translateDebugInfo() {
+        Label end = labels[code.instructions.length];
+
+        List<? extends MethodParameter> parameters = method.getParameters();
+        int offset = types.getParameterCount() - parameters.size();
+        if (offset == 1) {
+            addLocal("this", method.getDefiningClass(), null, types.getParameterRegister(0), labels[0], end);
+        }
+        for (int p = 0; p < parameters.size(); p++) {
+            MethodParameter parameter = parameters.get(p);
+            if (parameter.getName() != null) {
+                addLocal(parameter.getName(), parameter.getType(), parameter.getSignature(),
+                        types.getParameterRegister(p + offset), labels[0], end);
+            }
+        }
+
+        Map<Integer, LocalInfo> open = new HashMap<>();
+        Map<Integer, Label> starts = new HashMap<>();
+        Map<Integer, LocalInfo> last = new HashMap<>();
+        for (DebugItem item : code.implementation.getDebugItems()) {
+            Label label = labels[code.indexAtOrAfter(item.getCodeAddress())];
+            if (item instanceof LineNumber) {
+                builder.lineNumber(((LineNumber) item).getLineNumber(), label);
+            } else if (item instanceof StartLocal || item instanceof RestartLocal) {
+                int register = item instanceof StartLocal ? ((StartLocal) item).getRegister() : ((RestartLocal) item).getRegister();
+                closeLocal(open, starts, register, label);
+                LocalInfo info = item instanceof StartLocal ? (LocalInfo) item : last.get(register);
+                if (info != null) {
+                    open.put(register, info);
+                    starts.put(register, label);
+                    last.put(register, info);
+                }
+            } else if (item instanceof EndLocal) {
+                closeLocal(open, starts, ((EndLocal) item).getRegister(), label);
+            }
+        }
+        for (Integer register : open.keySet().toArray(new Integer[0])) {
+            closeLocal(open, starts, register, end);
+        }
+    }
+
+    private void closeLocal(Map<Integer, LocalInfo> open, Map<Integer, Label> starts, int register, Label end) {
+        LocalInfo info = open.remove(register);
+        if (info != null) {
+            addLocal(info.getName(), info.getType(), info.getSignature(), register, starts.remove(register), end);
+        }
+    }
+
+    private void addLocal(String name, String type, String signature, int register, Label start, Label end) {
+        if (name == null || type == null) {
+            return;
+        }
+        // only variables of the kind the register was found to hold
+        Integer slot = slots.get(slotKey(register, Kinds.ofDescriptor(type)));
+        if (slot != null) {
+            builder.localVariable(name, type, signature, start, end, slot);
+        }
+    }
+
+    private static int slotKey(int register, int kind) {
+        return register * 5 + Kinds.index(kind);
+    }
+
+    private int slot(int register, int kind) {
+        int key = slotKey(register, kind);
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            slot = nextSlot;
+            slots.put(key, slot);
+            nextSlot += Kinds.size(kind);
+        }
+        return slot;
+    }
+
+    private Label label(int i, int offset) throws UnsupportedCodeException {
+        int target = code.target(i, offset);
+        if (target == -1) {
+            throw new UnsupportedCodeException("invalid branch at " + code.addresses[i]);
+        }
+        return labels[target];
+    }
+
+    private void load(int i, int register, int kind) {
+        int actual = types.kindOfUse(i, register);
+        if (actual != kind) {
+            int constant = types.constantOfUse(i, register);
+            if (constant != -1) {
+                pushConstant(((WideLiteralInstruction) code.instructions[constant]).getWideLiteral(), kind);
+                return;
+            }
+        }
+        builder.load(actual, slot(register, actual));
+        convert(actual, kind);
+    }
+
+    private void store(int i, int register, int producedKind) {
+        int kind = types.kindOfDefinition(i);
+        convert(producedKind, kind);
+        builder.store(kind, slot(register, kind));
+    }
+
+    private void pushConstant(long value, int kind) {
+        switch (kind) {
+            case Kinds.FLOAT:
+                builder.floatConst(Float.intBitsToFloat((int) value));
+                break;
+            case Kinds.LONG:
+                builder.longConst(value);
+                break;
+            case Kinds.DOUBLE:
+                builder.doubleConst(Double.longBitsToDouble(value));
+                break;
+            case Kinds.OBJECT:
+                builder.insn(ACONST_NULL, 1);
+                break;
+            default:
+                builder.intConst((int) value);
+                break;
+        }
+    }
+
+    /**
+     * Converts the value on top of the stack, registers are untyped so a float may be read as int.
+     */
+    private void convert(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        if (from == Kinds.INT && to == Kinds.FLOAT) {
+            builder.methodInsn(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false);
+        } else if (from == Kinds.FLOAT && to == Kinds.INT) {
+            builder.methodInsn(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+        } else if (from == Kinds.LONG && to == Kinds.DOUBLE) {
+            builder.methodInsn(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false);
+        } else if (from == Kinds.DOUBLE && to == Kinds.LONG) {
+            builder.methodInsn(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+        } else {
+            pop(from);
+            pushConstant(0, to);
+        }
+    }
+
+    private void pop(int kind) {
+        builder.insn(Kinds.isWide(kind) ? POP2 : POP, -Kinds.size(kind));
+    }
+
+    private void translate(int i, Instruction instruction) throws UnsupportedCodeException {
+        Opcode opcode = instruction.getOpcode();
+        Arithmetic arithmetic = Arithmetic.of(opcode);
+        if (arithmetic != null) {
+            translateArithmetic(i, instruction, arithmetic);
+            return;
+        }
+
+        switch (opcode) {
+            case NOP:
+            case PACKED_SWITCH_PAYLOAD:
+            case SPARSE_SWITCH_PAYLOAD:
+            case ARRAY_PAYLOAD:
+            case MOVE_RESULT:
+            case MOVE_RESULT_WIDE:
+            case MOVE_RESULT_OBJECT:
+                break;
+            case MOVE:
+            case MOVE_FROM16:
+            case MOVE_16:
+            case MOVE_WIDE:
+            case MOVE_WIDE_FROM16:
+            case MOVE_WIDE_16:
+            case MOVE_OBJECT:
+            case MOVE_OBJECT_FROM16:
+            case MOVE_OBJECT_16: {
+                TwoRegisterInstruction move = (TwoRegisterInstruction) instruction;
+                int kind = types.kindOfDefinition(i);
+                load(i, move.getRegisterB(), kind);
+                store(i, move.getRegisterA(), kind);
+                break;
+            }
+            case MOVE_EXCEPTION:
+                builder.setStack(1);
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                break;
+            case RETURN_VOID:
+                builder.insn(RETURN, 0);
+                break;
+            case RETURN:
+            case RETURN_WIDE:
+            case RETURN_OBJECT: {
+                int kind = Kinds.ofDescriptor(method.getReturnType());
+                load(i, ((OneRegisterInstruction) instruction).getRegisterA(), kind);
+                builder.insn(Kinds.returnOpcode(kind), -Kinds.size(kind));
+                break;
+            }
+            case CONST_4:
+            case CONST_16:
+            case CONST:
+            case CONST_HIGH16:
+            case CONST_WIDE_16:
+            case CONST_WIDE_32:
+            case CONST_WIDE:
+            case CONST_WIDE_HIGH16: {
+                if (types.useCount(i) == 0) {
+                    // a register cleared for the verifier and never read
+                    break;
+                }
+                int kind = types.kindOfDefinition(i);
+                pushConstant(((WideLiteralInstruction) instruction).getWideLiteral(), kind);
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), kind);
+                break;
+            }
+            case CONST_STRING:
+            case CONST_STRING_JUMBO:
+                builder.stringConst(((StringReference) ((ReferenceInstruction) instruction).getReference()).getString());
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                break;
+            case CONST_CLASS:
+                builder.classConst(internalName(RegisterTypes.referencedType(instruction)));
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                break;
+            case MONITOR_ENTER:
+            case MONITOR_EXIT:
+                load(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                builder.insn(opcode == Opcode.MONITOR_ENTER ? MONITORENTER : MONITOREXIT, -1);
+                break;
+            case CHECK_CAST: {
+                int register = ((OneRegisterInstruction) instruction).getRegisterA();
+                load(i, register, Kinds.OBJECT);
+                builder.typeInsn(CHECKCAST, internalName(RegisterTypes.referencedType(instruction)));
+                store(i, register, Kinds.OBJECT);
+                break;
+            }
+            case INSTANCE_OF:
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                builder.typeInsn(INSTANCEOF, internalName(RegisterTypes.referencedType(instruction)));
+                store(i, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+                break;
+            case ARRAY_LENGTH:
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                builder.insn(ARRAYLENGTH, 0);
+                store(i, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+                break;
+            case NEW_INSTANCE:
+                builder.typeInsn(NEW, internalName(RegisterTypes.referencedType(instruction)));
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                break;
+            case NEW_ARRAY:
+                translateNewArray(i, (TwoRegisterInstruction) instruction);
+                break;
+            case FILLED_NEW_ARRAY:
+            case FILLED_NEW_ARRAY_RANGE:
+                translateFilledNewArray(i, instruction);
+                break;
+            case FILL_ARRAY_DATA: {
+                int register = ((OneRegisterInstruction) instruction).getRegisterA();
+                translateArrayData(i, register, false);
+                break;
+            }
+            case THROW:
+                load(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                builder.insn(ATHROW, -1);
+                break;
+            case GOTO:
+            case GOTO_16:
+            case GOTO_32:
+                builder.jump(GOTO, label(i, ((OffsetInstruction) instruction).getCodeOffset()));
+                break;
+            case PACKED_SWITCH:
+            case SPARSE_SWITCH:
+                translateSwitch(i, instruction);
+                break;
+            case IF_EQ:
+            case IF_NE:
+            case IF_LT:
+            case IF_GE:
+            case IF_GT:
+            case IF_LE: {
+                TwoRegisterInstruction compare = (TwoRegisterInstruction) instruction;
+                int kind = types.kindOfUse(i, compare.getRegisterA()) == Kinds.OBJECT &&
+                        (opcode == Opcode.IF_EQ || opcode == Opcode.IF_NE) ? Kinds.OBJECT : Kinds.INT;
+                load(i, compare.getRegisterA(), kind);
+                load(i, compare.getRegisterB(), kind);
+                int jvmOpcode = IF_ICMPEQ + (opcode.ordinal() - Opcode.IF_EQ.ordinal());
+                if (kind == Kinds.OBJECT) {
+                    jvmOpcode = opcode == Opcode.IF_EQ ? IF_ACMPEQ : IF_ACMPNE;
+                }
+                builder.jump(jvmOpcode, label(i, ((OffsetInstruction) instruction).getCodeOffset()));
+                break;
+            }
+            case IF_EQZ:
+            case IF_NEZ:
+            case IF_LTZ:
+            case IF_GEZ:
+            case IF_GTZ:
+            case IF_LEZ: {
+                int register = ((OneRegisterInstruction) instruction).getRegisterA();
+                int kind = types.kindOfUse(i, register) == Kinds.OBJECT &&
+                        (opcode == Opcode.IF_EQZ || opcode == Opcode.IF_NEZ) ? Kinds.OBJECT : Kinds.INT;
+                load(i, register, kind);
+                int jvmOpcode = IFEQ + (opcode.ordinal() - Opcode.IF_EQZ.ordinal());
+                if (kind == Kinds.OBJECT) {
+                    jvmOpcode = opcode == Opcode.IF_EQZ ? IFNULL : IFNONNULL;
+                }
+                builder.jump(jvmOpcode, label(i, ((OffsetInstruction) instruction).getCodeOffset()));
+                break;
+            }
+            case AGET:
+            case AGET_WIDE:
+            case AGET_OBJECT:
+            case AGET_BOOLEAN:
+            case AGET_BYTE:
+            case AGET_CHAR:
+            case AGET_SHORT: {
+                ThreeRegisterInstruction access = (ThreeRegisterInstruction) instruction;
+                int kind = elementKind(opcode, types.kindOfDefinition(i));
+                load(i, access.getRegisterB(), Kinds.OBJECT);
+                load(i, access.getRegisterC(), Kinds.INT);
+                builder.insn(arrayOpcode(opcode, kind, IALOAD), Kinds.size(kind) - 2);
+                store(i, access.getRegisterA(), kind);
+                break;
+            }
+            case APUT:
+            case APUT_WIDE:
+            case APUT_OBJECT:
+            case APUT_BOOLEAN:
+            case APUT_BYTE:
+            case APUT_CHAR:
+            case APUT_SHORT: {
+                ThreeRegisterInstruction access = (ThreeRegisterInstruction) instruction;
+                int kind = elementKind(opcode, types.kindOfUse(i, access.getRegisterA()));
+                load(i, access.getRegisterB(), Kinds.OBJECT);
+                load(i, access.getRegisterC(), Kinds.INT);
+                load(i, access.getRegisterA(), kind);
+                builder.insn(arrayOpcode(opcode, kind, IASTORE), -2 - Kinds.size(kind));
+                break;
+            }
+            case IGET:
+            case IGET_WIDE:
+            case IGET_OBJECT:
+            case IGET_BOOLEAN:
+            case IGET_BYTE:
+            case IGET_CHAR:
+            case IGET_SHORT: {
+                FieldReference field = (FieldReference) ((ReferenceInstruction) instruction).getReference();
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                builder.fieldInsn(GETFIELD, internalName(field.getDefiningClass()), field.getName(), field.getType());
+                store(i, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(field.getType()));
+                break;
+            }
+            case IPUT:
+            case IPUT_WIDE:
+            case IPUT_OBJECT:
+            case IPUT_BOOLEAN:
+            case IPUT_BYTE:
+            case IPUT_CHAR:
+            case IPUT_SHORT: {
+                FieldReference field = (FieldReference) ((ReferenceInstruction) instruction).getReference();
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(field.getType()));
+                builder.fieldInsn(PUTFIELD, internalName(field.getDefiningClass()), field.getName(), field.getType());
+                break;
+            }
+            case SGET:
+            case SGET_WIDE:
+            case SGET_OBJECT:
+            case SGET_BOOLEAN:
+            case SGET_BYTE:
+            case SGET_CHAR:
+            case SGET_SHORT: {
+                FieldReference field = (FieldReference) ((ReferenceInstruction) instruction).getReference();
+                builder.fieldInsn(GETSTATIC, internalName(field.getDefiningClass()), field.getName(), field.getType());
+                store(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(field.getType()));
+                break;
+            }
+            case SPUT:
+            case SPUT_WIDE:
+            case SPUT_OBJECT:
+            case SPUT_BOOLEAN:
+            case SPUT_BYTE:
+            case SPUT_CHAR:
+            case SPUT_SHORT: {
+                FieldReference field = (FieldReference) ((ReferenceInstruction) instruction).getReference();
+                load(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(field.getType()));
+                builder.fieldInsn(PUTSTATIC, internalName(field.getDefiningClass()), field.getName(), field.getType());
+                break;
+            }
+            case INVOKE_VIRTUAL:
+            case INVOKE_SUPER:
+            case INVOKE_DIRECT:
+            case INVOKE_STATIC:
+            case INVOKE_INTERFACE:
+            case INVOKE_VIRTUAL_RANGE:
+            case INVOKE_SUPER_RANGE:
+            case INVOKE_DIRECT_RANGE:
+            case INVOKE_STATIC_RANGE:
+            case INVOKE_INTERFACE_RANGE:
+                translateInvoke(i, instruction);
+                break;
+            default:
+                throw new UnsupportedCodeException(opcode.name + " at " + code.addresses[i]);
+        }
+    }
+
+    private void translateArithmetic(int i, Instruction instruction, Arithmetic arithmetic) {
+        int register = ((OneRegisterInstruction) instruction).getRegisterA();
+        if (instruction instanceof ThreeRegisterInstruction) {
+            load(i, ((ThreeRegisterInstruction) instruction).getRegisterB(), arithmetic.firstKind);
+            load(i, ((ThreeRegisterInstruction) instruction).getRegisterC(), arithmetic.secondKind);
+            builder.insn(arithmetic.jvmOpcode, arithmetic.stackDelta());
+        } else if (instruction instanceof WideLiteralInstruction) {
+            int literal = (int) ((WideLiteralInstruction) instruction).getWideLiteral();
+            if (arithmetic.reverse) {
+                builder.intConst(literal);
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.INT);
+            } else {
+                load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.INT);
+                builder.intConst(literal);
+            }
+            builder.insn(arithmetic.jvmOpcode, arithmetic.stackDelta());
+        } else if (arithmetic.secondKind != 0) {
+            load(i, register, arithmetic.firstKind);
+            load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), arithmetic.secondKind);
+            builder.insn(arithmetic.jvmOpcode, arithmetic.stackDelta());
+        } else if (instruction.getOpcode() == Opcode.NOT_INT || instruction.getOpcode() == Opcode.NOT_LONG) {
+            load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), arithmetic.firstKind);
+            pushConstant(-1, arithmetic.firstKind);
+            builder.insn(arithmetic.jvmOpcode, -Kinds.size(arithmetic.firstKind));
+        } else {
+            load(i, ((TwoRegisterInstruction) instruction).getRegisterB(), arithmetic.firstKind);
+            builder.insn(arithmetic.jvmOpcode, arithmetic.stackDelta());
+        }
+
+        // a comparison only read by the branch after it, as javac writes 'lcmp; ifge'
+        int next = i + 1;
+        if (arithmetic.jvmOpcode >= LCMP && arithmetic.jvmOpcode <= DCMPG && types.useCount(i) == 1 &&
+                next < code.instructions.length && !branchTargets[next]) {
+            Instruction branch = code.instructions[next];
+            Opcode opcode = branch.getOpcode();
+            if (opcode.ordinal() >= Opcode.IF_EQZ.ordinal() && opcode.ordinal() <= Opcode.IF_LEZ.ordinal() &&
+                    ((OneRegisterInstruction) branch).getRegisterA() == register) {
+                int target = code.target(next, ((OffsetInstruction) branch).getCodeOffset());
+                if (target != -1) {
+                    builder.jump(IFEQ + (opcode.ordinal() - Opcode.IF_EQZ.ordinal()), labels[target]);
+                    merged[next] = true;
+                    return;
+                }
+            }
+        }
+        store(i, register, arithmetic.resultKind);
+    }
+
+    private void translateInvoke(int i, Instruction instruction) throws UnsupportedCodeException {
+        Opcode opcode = instruction.getOpcode();
+        MethodReference target = (MethodReference) ((ReferenceInstruction) instruction).getReference();
+        int[] registers = MethodCode.invokeRegisters(instruction);
+        boolean isStatic = opcode == Opcode.INVOKE_STATIC || opcode == Opcode.INVOKE_STATIC_RANGE;
+
+        String descriptor = descriptor(target);
+        if (CodeBuilder.argumentSize(descriptor) + (isStatic ? 0 : 1) != registers.length) {
+            throw new UnsupportedCodeException("invalid invoke at " + code.addresses[i]);
+        }
+
+        int r = 0;
+        if (!isStatic) {
+            load(i, registers[r++], Kinds.OBJECT);
+        }
+        for (CharSequence parameter : target.getParameterTypes()) {
+            int kind = Kinds.ofDescriptor(parameter.toString());
+            load(i, registers[r], kind);
+            r += Kinds.size(kind);
+        }
+
+        int jvmOpcode;
+        boolean isInterface;
+        switch (opcode) {
+            case INVOKE_VIRTUAL:
+            case INVOKE_VIRTUAL_RANGE:
+                jvmOpcode = INVOKEVIRTUAL;
+                isInterface = false;
+                break;
+            case INVOKE_INTERFACE:
+            case INVOKE_INTERFACE_RANGE:
+                jvmOpcode = INVOKEINTERFACE;
+                isInterface = true;
+                break;
+            case INVOKE_STATIC:
+            case INVOKE_STATIC_RANGE:
+                jvmOpcode = INVOKESTATIC;
+                isInterface = index != null && index.isInterface(target.getDefiningClass());
+                break;
+            default:
+                jvmOpcode = INVOKESPECIAL;
+                isInterface = index != null && index.isInterface(target.getDefiningClass());
+                break;
+        }
+        builder.methodInsn(jvmOpcode, internalName(target.getDefiningClass()), target.getName(), descriptor, isInterface);
+        storeResult(i, target.getReturnType());
+    }
+
+    /**
+     * Stores the result of the instruction with the move-result after it, or drops it.
+     */
+    private void storeResult(int i, String type) {
+        if (type.equals("V")) {
+            return;
+        }
+        int kind = Kinds.ofDescriptor(type);
+        int next = i + 1;
+        if (next < code.instructions.length && types.isReachable(next) && !branchTargets[next]) {
+            Opcode opcode = code.instructions[next].getOpcode();
+            if (opcode == Opcode.MOVE_RESULT || opcode == Opcode.MOVE_RESULT_WIDE || opcode == Opcode.MOVE_RESULT_OBJECT) {
+                store(next, ((OneRegisterInstruction) code.instructions[next]).getRegisterA(), kind);
+                merged[next] = true;
+                return;
+            }
+        }
+        pop(kind);
+    }
+
+    private void translateNewArray(int i, TwoRegisterInstruction instruction) {
+        String type = RegisterTypes.referencedType(instruction);
+        load(i, instruction.getRegisterB(), Kinds.INT);
+        newArray(type);
+
+        // 'new int[]{...}' is written by javac as stores to the new array before it is assigned
+        int register = instruction.getRegisterA();
+        int next = i + 1;
+        if (next < code.instructions.length && types.isReachable(next) && !branchTargets[next] &&
+                code.instructions[next].getOpcode() == Opcode.FILL_ARRAY_DATA &&
+                ((OneRegisterInstruction) code.instructions[next]).getRegisterA() == register &&
+                code.handlers.get(next) == null) {
+            translateArrayData(next, register, true);
+            merged[next] = true;
+        }
+        store(i, register, Kinds.OBJECT);
+    }
+
+    private void newArray(String type) {
+        String component = type.substring(1);
+        switch (component.charAt(0)) {
+            case 'Z':
+                builder.newArray(T_BOOLEAN);
+                break;
+            case 'C':
+                builder.newArray(T_CHAR);
+                break;
+            case 'F':
+                builder.newArray(T_FLOAT);
+                break;
+            case 'D':
+                builder.newArray(T_DOUBLE);
+                break;
+            case 'B':
+                builder.newArray(T_BYTE);
+                break;
+            case 'S':
+                builder.newArray(T_SHORT);
+                break;
+            case 'I':
+                builder.newArray(T_INT);
+                break;
+            case 'J':
+                builder.newArray(T_LONG);
+                break;
+            default:
+                builder.typeInsn(ANEWARRAY, internalName(component));
+                break;
+        }
+    }
+
+    private void translateFilledNewArray(int i, Instruction instruction) {
+        String type = RegisterTypes.referencedType(instruction);
+        String component = type.substring(1);
+        int kind = Kinds.ofDescriptor(component);
+        int[] registers = MethodCode.invokeRegisters(instruction);
+
+        builder.intConst(registers.length);
+        newArray(type);
+        for (int e = 0; e < registers.length; e++) {
+            builder.insn(DUP, 1);
+            builder.intConst(e);
+            load(i, registers[e], kind);
+            builder.insn(arrayStoreOpcode(component), -2 - Kinds.size(kind));
+        }
+        storeResult(i, type);
+    }
+
+    /**
+     * @param onStack whether the array is on the stack, as after new-array, instead of in the register
+     */
+    private void translateArrayData(int i, int register, boolean onStack) {
+        Instruction payload = code.payload(i);
+        if (!(payload instanceof ArrayPayload)) {
+            return;
+        }
+        ArrayPayload data = (ArrayPayload) payload;
+
+        String component = null;
+        String type = onStack ? RegisterTypes.referencedType(code.instructions[i - 1]) : types.typeOfUse(i, register);
+        if (type != null && type.length() == 2 && type.charAt(0) == '[') {
+            component = type.substring(1);
+        }
+        if (component == null) {
+            int width = data.getElementWidth();
+            component = width == 1 ? "B" : width == 2 ? "S" : width == 4 ? "I" : "J";
+        }
+
+        int kind = Kinds.ofDescriptor(component);
+        List<Number> elements = data.getArrayElements();
+        for (int e = 0; e < elements.size(); e++) {
+            Number element = elements.get(e);
+            if (onStack) {
+                builder.insn(DUP, 1);
+            } else {
+                load(i, register, Kinds.OBJECT);
+            }
+            builder.intConst(e);
+            switch (component.charAt(0)) {
+                case 'F':
+                    builder.floatConst(Float.intBitsToFloat(element.intValue()));
+                    break;
+                case 'D':
+                    builder.doubleConst(Double.longBitsToDouble(element.longValue()));
+                    break;
+                case 'J':
+                    builder.longConst(element.longValue());
+                    break;
+                case 'C':
+                    builder.intConst((char) element.intValue());
+                    break;
+                case 'S':
+                    builder.intConst((short) element.intValue());
+                    break;
+                case 'Z':
+                case 'B':
+                    builder.intConst((byte) element.intValue());
+                    break;
+                default:
+                    builder.intConst(element.intValue());
+                    break;
+            }
+            builder.insn(arrayStoreOpcode(component), -2 - Kinds.size(kind));
+        }
+    }
+
+    private void translateSwitch(int i, Instruction instruction) throws UnsupportedCodeException {
+        Instruction payload = code.payload(i);
+        if (!(payload instanceof SwitchPayload)) {
+            throw new UnsupportedCodeException("missing switch payload at " + code.addresses[i]);
+        }
+        List<? extends SwitchElement> elements = ((SwitchPayload) payload).getSwitchElements();
+
+        load(i, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+        if (elements.isEmpty()) {
+            pop(Kinds.INT);
+            return;
+        }
+
+        Label[] targets = new Label[elements.size()];
+        int[] keys = new int[elements.size()];
+        for (int e = 0; e < targets.length; e++) {
+            targets[e] = label(i, elements.get(e).getOffset());
+            keys[e] = elements.get(e).getKey();
+        }
+        if (payload instanceof PackedSwitchPayload) {
+            builder.tableSwitch(keys[0], labels[i + 1], targets);
+        } else {
+            builder.lookupSwitch(keys, labels[i + 1], targets);
+        }
+    }
+
+    private static int elementKind(Opcode opcode, int kind) {
+        switch (opcode) {
+            case AGET:
+            case APUT:
+                return kind == Kinds.FLOAT ? Kinds.FLOAT : Kinds.INT;
+            case AGET_WIDE:
+            case APUT_WIDE:
+                return kind == Kinds.DOUBLE ? Kinds.DOUBLE : Kinds.LONG;
+            case AGET_OBJECT:
+            case APUT_OBJECT:
+                return Kinds.OBJECT;
+            default:
+                return Kinds.INT;
+        }
+    }
+
+    /**
+     * @param base IALOAD or IASTORE, the array loads and stores come in the same order
+     */
+    private static int arrayOpcode(Opcode opcode, int kind, int base) {
+        int offset;
+        switch (opcode) {
+            case AGET_BOOLEAN:
+            case AGET_BYTE:
+            case APUT_BOOLEAN:
+            case APUT_BYTE:
+                offset = BALOAD - IALOAD;
+                break;
+            case AGET_CHAR:
+            case APUT_CHAR:
+                offset = CALOAD - IALOAD;
+                break;
+            case AGET_SHORT:
+            case APUT_SHORT:
+                offset = SALOAD - IALOAD;
+                break;
+            default:
+                offset = Kinds.loadOpcode(kind) - ILOAD;
+                break;
+        }
+        return base + offset;
+    }
+
+    private static int arrayStoreOpcode(String component) {
+        switch (component.charAt(0)) {
+            case 'Z':
+            case 'B':
+                return BASTORE;
+            case 'C':
+                return CASTORE;
+            case 'S':
+                return SASTORE;
+            case 'I':
+                return IASTORE;
+            case 'J':
+                return LASTORE;
+            case 'F':
+                return FASTORE;
+            case 'D':
+                return DASTORE;
+            default:
+                return AASTORE;
+        }
+    }
+
+    static String descriptor(MethodReference method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (CharSequence parameter : method.getParameterTypes()) {
+            descriptor.append(parameter);
+        }
+        return descriptor.append(')').append(method.getReturnType()).toString();
+    }
+
+    /**
+     * @return the class name with slashes for an object type, arrays keep their descriptor
+     */
+    static String internalName(String type) {
+        if (type.length() > 2 && type.charAt(0) == 'L' && type.charAt(type.length() - 1) == ';') {
+            return type.substring(1, type.length() - 1);
+        }
+        return type;
+    }
+}
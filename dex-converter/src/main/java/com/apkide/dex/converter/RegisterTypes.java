@@ -0,0 +1,685 @@
+package com.apkide.dex.converter;
+
+import com.apkide.smali.dexlib2.Opcode;
+import com.apkide.smali.dexlib2.iface.ExceptionHandler;
+import com.apkide.smali.dexlib2.iface.Method;
+import com.apkide.smali.dexlib2.iface.instruction.Instruction;
+import com.apkide.smali.dexlib2.iface.instruction.OneRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.TwoRegisterInstruction;
+import com.apkide.smali.dexlib2.iface.instruction.WideLiteralInstruction;
+import com.apkide.smali.dexlib2.iface.reference.FieldReference;
+import com.apkide.smali.dexlib2.iface.reference.MethodReference;
+import com.apkide.smali.dexlib2.iface.reference.TypeReference;
+import com.apkide.smali.dexlib2.util.MethodUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infers the JVM kind of the values held in the registers of a method.
+ * <p>
+ * The definitions reaching each register use are computed by a data flow pass over the instructions.
+ * All definitions reaching the same use hold one variable and are merged, so the values form classes
+ * of a union-find structure. Each class collects the kinds its definitions and uses allow: an
+ * add-float makes its operands float, a 'const/4 v0, 0' passed as an object parameter makes a null.
+ * Kinds still undecided in the end are taken as int and long.
+ */
+class RegisterTypes {
+    private static final int ANY = Kinds.NARROW_OR_NULL | Kinds.WIDE;
+
+    private final MethodCode code;
+    private final int registerCount;
+    private final String[] parameterTypes;
+    private final int[] parameterRegisters;
+    private final int returnKind;
+    private final boolean[] reachable;
+    // number of instructions reading the value each instruction defines
+    private final int[] useCounts;
+
+    private int[] parents;
+    private int[] masks;
+    private String[] types;
+    private int nodeCount;
+
+    // (instruction << 16 | register) of a use to a node of the reaching definitions
+    private final Map<Long, Integer> uses = new HashMap<>();
+    // (instruction << 16 | register) of a use to the const instruction that is its only definition
+    private final Map<Long, Integer> constantUses = new HashMap<>();
+    private final List<int[]> definitionKinds = new ArrayList<>();
+    private final List<int[]> useKinds = new ArrayList<>();
+    private final List<int[]> sameKinds = new ArrayList<>();
+    private final List<int[]> arrayElements = new ArrayList<>();
+
+    RegisterTypes(Method method, MethodCode code) {
+        this.code = code;
+        registerCount = code.implementation.getRegisterCount();
+        returnKind = Kinds.ofDescriptor(method.getReturnType());
+
+        boolean isStatic = MethodUtil.isStatic(method);
+        List<? extends CharSequence> parameters = method.getParameterTypes();
+        parameterTypes = new String[parameters.size() + (isStatic ? 0 : 1)];
+        parameterRegisters = new int[parameterTypes.length];
+        int p = 0;
+        if (!isStatic) {
+            parameterTypes[p++] = method.getDefiningClass();
+        }
+        for (CharSequence parameter : parameters) {
+            parameterTypes[p++] = parameter.toString();
+        }
+        int register = registerCount - MethodUtil.getParameterRegisterCount(method);
+        for (p = 0; p < parameterTypes.length; p++) {
+            parameterRegisters[p] = register;
+            register += Kinds.size(Kinds.ofDescriptor(parameterTypes[p]));
+        }
+
+        int count = parameterTypes.length + code.instructions.length;
+        parents = new int[count + 16];
+        masks = new int[count + 16];
+        types = new String[count + 16];
+        for (int i = 0; i < count; i++) {
+            newNode();
+        }
+        for (p = 0; p < parameterTypes.length; p++) {
+            define(p, Kinds.ofDescriptor(parameterTypes[p]), parameterTypes[p]);
+        }
+
+        reachable = new boolean[code.instructions.length];
+        useCounts = new int[code.instructions.length];
+        int[][][] states = computeReachingDefinitions();
+        for (int i = 0; i < code.instructions.length; i++) {
+            if (states[i] != null) {
+                reachable[i] = true;
+                collect(i, states[i]);
+            }
+        }
+        solve();
+    }
+
+    int getParameterCount() {
+        return parameterTypes.length;
+    }
+
+    String getParameterType(int parameter) {
+        return parameterTypes[parameter];
+    }
+
+    int getParameterRegister(int parameter) {
+        return parameterRegisters[parameter];
+    }
+
+    boolean isReachable(int i) {
+        return reachable[i];
+    }
+
+    /**
+     * @return number of instructions reading the value the instruction defines
+     */
+    int useCount(int i) {
+        return useCounts[i];
+    }
+
+    /**
+     * @return kind of the value the instruction writes to its register
+     */
+    int kindOfDefinition(int i) {
+        return Kinds.resolve(masks[find(parameterTypes.length + i)]);
+    }
+
+    int kindOfParameter(int parameter) {
+        return Kinds.resolve(masks[find(parameter)]);
+    }
+
+    /**
+     * @return kind of the variable the instruction reads from the register
+     */
+    int kindOfUse(int i, int register) {
+        Integer node = uses.get(key(i, register));
+        return node != null ? Kinds.resolve(masks[find(node)]) : Kinds.INT;
+    }
+
+    /**
+     * @return descriptor of the reference type read from the register if known, null otherwise
+     */
+    String typeOfUse(int i, int register) {
+        Integer node = uses.get(key(i, register));
+        return node != null ? types[find(node)] : null;
+    }
+
+    /**
+     * @return index of the const instruction that is the only definition reaching the use, -1 if none
+     */
+    int constantOfUse(int i, int register) {
+        Integer constant = constantUses.get(key(i, register));
+        return constant != null ? constant : -1;
+    }
+
+    static boolean isConstant(Opcode opcode) {
+        switch (opcode) {
+            case CONST_4:
+            case CONST_16:
+            case CONST:
+            case CONST_HIGH16:
+            case CONST_WIDE_16:
+            case CONST_WIDE_32:
+            case CONST_WIDE:
+            case CONST_WIDE_HIGH16:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long key(int i, int register) {
+        return ((long) i << 16) | register;
+    }
+
+    private int[][][] computeReachingDefinitions() {
+        Instruction[] instructions = code.instructions;
+        int[][][] states = new int[instructions.length][][];
+        if (instructions.length == 0) {
+            return states;
+        }
+
+        int[][] entry = new int[registerCount][];
+        for (int p = 0; p < parameterTypes.length; p++) {
+            entry[parameterRegisters[p]] = new int[]{p};
+        }
+        states[0] = entry;
+
+        Deque<Integer> queue = new ArrayDeque<>();
+        boolean[] queued = new boolean[instructions.length];
+        queue.add(0);
+        queued[0] = true;
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            queued[i] = false;
+            int[][] state = states[i];
+
+            Instruction instruction = instructions[i];
+            Opcode opcode = instruction.getOpcode();
+            List<? extends ExceptionHandler> handlers = code.handlers.get(i);
+            if (handlers != null && opcode.canThrow()) {
+                // an instruction that throws has not written its register
+                for (ExceptionHandler handler : handlers) {
+                    int target = code.indexOf(handler.getHandlerCodeAddress());
+                    if (target != -1 && merge(states, target, state)) {
+                        enqueue(queue, queued, target);
+                    }
+                }
+            }
+
+            int[][] out = state;
+            if (opcode.setsRegister()) {
+                int register = ((OneRegisterInstruction) instruction).getRegisterA();
+                out = state.clone();
+                out[register] = new int[]{parameterTypes.length + i};
+                if (opcode.setsWideRegister() && register + 1 < registerCount) {
+                    out[register + 1] = null;
+                }
+            }
+            for (int successor : code.successors(i)) {
+                if (merge(states, successor, out)) {
+                    enqueue(queue, queued, successor);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static void enqueue(Deque<Integer> queue, boolean[] queued, int i) {
+        if (!queued[i]) {
+            queued[i] = true;
+            queue.add(i);
+        }
+    }
+
+    private static boolean merge(int[][][] states, int target, int[][] state) {
+        int[][] current = states[target];
+        if (current == null) {
+            states[target] = state;
+            return true;
+        }
+
+        int[][] merged = current;
+        for (int r = 0; r < state.length; r++) {
+            int[] union = union(current[r], state[r]);
+            if (union != current[r]) {
+                if (merged == current) {
+                    merged = current.clone();
+                }
+                merged[r] = union;
+            }
+        }
+        if (merged != current) {
+            states[target] = merged;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return union of the sorted sets, the first set itself if it contains the second
+     */
+    private static int[] union(int[] a, int[] b) {
+        if (b == null || a == b) {
+            return a;
+        }
+        if (a == null) {
+            return b;
+        }
+
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[n++] = b[j++];
+            } else {
+                result[n++] = a[i++];
+                j++;
+            }
+        }
+        return n == a.length ? a : Arrays.copyOf(result, n);
+    }
+
+    private void collect(int i, int[][] state) {
+        Instruction instruction = code.instructions[i];
+        Opcode opcode = instruction.getOpcode();
+        Arithmetic arithmetic = Arithmetic.of(opcode);
+        if (arithmetic != null) {
+            if (instruction instanceof ThreeRegisterInstruction) {
+                use(i, state, ((ThreeRegisterInstruction) instruction).getRegisterB(), arithmetic.firstKind);
+                use(i, state, ((ThreeRegisterInstruction) instruction).getRegisterC(), arithmetic.secondKind);
+            } else if (arithmetic.secondKind != 0 && !(instruction instanceof WideLiteralInstruction)) {
+                // 2addr
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterA(), arithmetic.firstKind);
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), arithmetic.secondKind);
+            } else {
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), arithmetic.firstKind);
+            }
+            define(node(i), arithmetic.resultKind, null);
+            return;
+        }
+
+        switch (opcode) {
+            case MOVE:
+            case MOVE_FROM16:
+            case MOVE_16:
+            case MOVE_WIDE:
+            case MOVE_WIDE_FROM16:
+            case MOVE_WIDE_16:
+            case MOVE_OBJECT:
+            case MOVE_OBJECT_FROM16:
+            case MOVE_OBJECT_16: {
+                int kind = opcode.setsWideRegister() ? Kinds.WIDE :
+                        opcode.name().startsWith("MOVE_OBJECT") ? Kinds.OBJECT : Kinds.NARROW_OR_NULL;
+                int source = use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), kind);
+                union(node(i), source);
+                define(node(i), kind, null);
+                break;
+            }
+            case MOVE_RESULT:
+            case MOVE_RESULT_WIDE:
+            case MOVE_RESULT_OBJECT: {
+                String type = i > 0 ? resultType(code.instructions[i - 1]) : null;
+                if (type != null) {
+                    define(node(i), Kinds.ofDescriptor(type), type);
+                } else {
+                    define(node(i), opcode == Opcode.MOVE_RESULT_WIDE ? Kinds.WIDE :
+                            opcode == Opcode.MOVE_RESULT_OBJECT ? Kinds.OBJECT : Kinds.NARROW, null);
+                }
+                break;
+            }
+            case MOVE_EXCEPTION:
+                define(node(i), Kinds.OBJECT, null);
+                break;
+            case RETURN:
+            case RETURN_WIDE:
+            case RETURN_OBJECT:
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), returnKind);
+                break;
+            case CONST_4:
+            case CONST_16:
+            case CONST:
+            case CONST_HIGH16:
+                define(node(i), ((WideLiteralInstruction) instruction).getWideLiteral() == 0 ?
+                        Kinds.NARROW_OR_NULL : Kinds.NARROW, null);
+                break;
+            case CONST_WIDE_16:
+            case CONST_WIDE_32:
+            case CONST_WIDE:
+            case CONST_WIDE_HIGH16:
+                define(node(i), Kinds.WIDE, null);
+                break;
+            case CONST_STRING:
+            case CONST_STRING_JUMBO:
+                define(node(i), Kinds.OBJECT, "Ljava/lang/String;");
+                break;
+            case CONST_CLASS:
+                define(node(i), Kinds.OBJECT, "Ljava/lang/Class;");
+                break;
+            case MONITOR_ENTER:
+            case MONITOR_EXIT:
+            case THROW:
+            case FILL_ARRAY_DATA:
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                break;
+            case CHECK_CAST: {
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.OBJECT);
+                define(node(i), Kinds.OBJECT, referencedType(instruction));
+                break;
+            }
+            case INSTANCE_OF:
+            case ARRAY_LENGTH:
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                define(node(i), Kinds.INT, null);
+                break;
+            case NEW_INSTANCE:
+                define(node(i), Kinds.OBJECT, referencedType(instruction));
+                break;
+            case NEW_ARRAY:
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.INT);
+                define(node(i), Kinds.OBJECT, referencedType(instruction));
+                break;
+            case FILLED_NEW_ARRAY:
+            case FILLED_NEW_ARRAY_RANGE: {
+                int kind = Kinds.ofDescriptor(referencedType(instruction).substring(1));
+                for (int register : MethodCode.invokeRegisters(instruction)) {
+                    use(i, state, register, kind);
+                }
+                break;
+            }
+            case PACKED_SWITCH:
+            case SPARSE_SWITCH:
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+                break;
+            case IF_EQ:
+            case IF_NE: {
+                int a = use(i, state, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.INT_OR_OBJECT);
+                int b = use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.INT_OR_OBJECT);
+                sameKinds.add(new int[]{a, b});
+                break;
+            }
+            case IF_LT:
+            case IF_GE:
+            case IF_GT:
+            case IF_LE:
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.INT);
+                break;
+            case IF_EQZ:
+            case IF_NEZ:
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.INT_OR_OBJECT);
+                break;
+            case IF_LTZ:
+            case IF_GEZ:
+            case IF_GTZ:
+            case IF_LEZ:
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.INT);
+                break;
+            case AGET:
+            case AGET_WIDE:
+            case AGET_OBJECT:
+            case AGET_BOOLEAN:
+            case AGET_BYTE:
+            case AGET_CHAR:
+            case AGET_SHORT: {
+                ThreeRegisterInstruction three = (ThreeRegisterInstruction) instruction;
+                int array = use(i, state, three.getRegisterB(), Kinds.OBJECT);
+                use(i, state, three.getRegisterC(), Kinds.INT);
+                define(node(i), arrayKind(opcode), null);
+                arrayElements.add(new int[]{array, node(i)});
+                break;
+            }
+            case APUT:
+            case APUT_WIDE:
+            case APUT_OBJECT:
+            case APUT_BOOLEAN:
+            case APUT_BYTE:
+            case APUT_CHAR:
+            case APUT_SHORT: {
+                ThreeRegisterInstruction three = (ThreeRegisterInstruction) instruction;
+                int value = use(i, state, three.getRegisterA(), arrayKind(opcode));
+                int array = use(i, state, three.getRegisterB(), Kinds.OBJECT);
+                use(i, state, three.getRegisterC(), Kinds.INT);
+                arrayElements.add(new int[]{array, value});
+                break;
+            }
+            case IGET:
+            case IGET_WIDE:
+            case IGET_OBJECT:
+            case IGET_BOOLEAN:
+            case IGET_BYTE:
+            case IGET_CHAR:
+            case IGET_SHORT: {
+                String type = ((FieldReference) ((ReferenceInstruction) instruction).getReference()).getType();
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                define(node(i), Kinds.ofDescriptor(type), type);
+                break;
+            }
+            case IPUT:
+            case IPUT_WIDE:
+            case IPUT_OBJECT:
+            case IPUT_BOOLEAN:
+            case IPUT_BYTE:
+            case IPUT_CHAR:
+            case IPUT_SHORT: {
+                String type = ((FieldReference) ((ReferenceInstruction) instruction).getReference()).getType();
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(type));
+                use(i, state, ((TwoRegisterInstruction) instruction).getRegisterB(), Kinds.OBJECT);
+                break;
+            }
+            case SGET:
+            case SGET_WIDE:
+            case SGET_OBJECT:
+            case SGET_BOOLEAN:
+            case SGET_BYTE:
+            case SGET_CHAR:
+            case SGET_SHORT: {
+                String type = ((FieldReference) ((ReferenceInstruction) instruction).getReference()).getType();
+                define(node(i), Kinds.ofDescriptor(type), type);
+                break;
+            }
+            case SPUT:
+            case SPUT_WIDE:
+            case SPUT_OBJECT:
+            case SPUT_BOOLEAN:
+            case SPUT_BYTE:
+            case SPUT_CHAR:
+            case SPUT_SHORT: {
+                String type = ((FieldReference) ((ReferenceInstruction) instruction).getReference()).getType();
+                use(i, state, ((OneRegisterInstruction) instruction).getRegisterA(), Kinds.ofDescriptor(type));
+                break;
+            }
+            case INVOKE_VIRTUAL:
+            case INVOKE_SUPER:
+            case INVOKE_DIRECT:
+            case INVOKE_STATIC:
+            case INVOKE_INTERFACE:
+            case INVOKE_VIRTUAL_RANGE:
+            case INVOKE_SUPER_RANGE:
+            case INVOKE_DIRECT_RANGE:
+            case INVOKE_STATIC_RANGE:
+            case INVOKE_INTERFACE_RANGE: {
+                MethodReference method = (MethodReference) ((ReferenceInstruction) instruction).getReference();
+                int[] registers = MethodCode.invokeRegisters(instruction);
+                int r = 0;
+                if (opcode != Opcode.INVOKE_STATIC && opcode != Opcode.INVOKE_STATIC_RANGE && r < registers.length) {
+                    use(i, state, registers[r++], Kinds.OBJECT);
+                }
+                for (CharSequence parameter : method.getParameterTypes()) {
+                    if (r >= registers.length) {
+                        break;
+                    }
+                    int kind = Kinds.ofDescriptor(parameter.toString());
+                    use(i, state, registers[r], kind);
+                    r += Kinds.size(kind);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return type of the value a move-result after the instruction takes, null if not known
+     */
+    static String resultType(Instruction instruction) {
+        if (!(instruction instanceof ReferenceInstruction)) {
+            return null;
+        }
+        Object reference = ((ReferenceInstruction) instruction).getReference();
+        if (reference instanceof MethodReference) {
+            return ((MethodReference) reference).getReturnType();
+        }
+        if (reference instanceof TypeReference && instruction.getOpcode().setsResult()) {
+            return ((TypeReference) reference).getType();
+        }
+        return null;
+    }
+
+    static String referencedType(Instruction instruction) {
+        return ((TypeReference) ((ReferenceInstruction) instruction).getReference()).getType();
+    }
+
+    private static int arrayKind(Opcode opcode) {
+        switch (opcode) {
+            case AGET:
+            case APUT:
+                return Kinds.NARROW;
+            case AGET_WIDE:
+            case APUT_WIDE:
+                return Kinds.WIDE;
+            case AGET_OBJECT:
+            case APUT_OBJECT:
+                return Kinds.OBJECT;
+            default:
+                return Kinds.INT;
+        }
+    }
+
+    private int node(int i) {
+        return parameterTypes.length + i;
+    }
+
+    private int newNode() {
+        if (nodeCount == parents.length) {
+            int length = parents.length * 2;
+            parents = Arrays.copyOf(parents, length);
+            masks = Arrays.copyOf(masks, length);
+            types = Arrays.copyOf(types, length);
+        }
+        parents[nodeCount] = nodeCount;
+        masks[nodeCount] = ANY;
+        return nodeCount++;
+    }
+
+    private int find(int node) {
+        int root = node;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[node] != root) {
+            int next = parents[node];
+            parents[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA != rootB) {
+            parents[rootB] = rootA;
+            if (types[rootA] == null) {
+                types[rootA] = types[rootB];
+            }
+        }
+    }
+
+    private void define(int node, int kind, String type) {
+        definitionKinds.add(new int[]{node, kind});
+        if (type != null && types[find(node)] == null) {
+            types[find(node)] = type;
+        }
+    }
+
+    /**
+     * Records a use of the register by an instruction, the definitions reaching it are merged.
+     *
+     * @return node of the value used
+     */
+    private int use(int i, int[][] state, int register, int kind) {
+        int[] definitions = register < state.length ? state[register] : null;
+        int node;
+        if (definitions == null || definitions.length == 0) {
+            node = newNode();
+        } else {
+            node = definitions[0];
+            for (int d = 1; d < definitions.length; d++) {
+                union(node, definitions[d]);
+            }
+            for (int definition : definitions) {
+                int index = definition - parameterTypes.length;
+                if (index >= 0 && index < useCounts.length) {
+                    useCounts[index]++;
+                }
+            }
+            if (definitions.length == 1 && definitions[0] >= parameterTypes.length) {
+                int definition = definitions[0] - parameterTypes.length;
+                if (isConstant(code.instructions[definition].getOpcode())) {
+                    constantUses.put(key(i, register), definition);
+                }
+            }
+        }
+        uses.put(key(i, register), node);
+        useKinds.add(new int[]{node, kind});
+        return node;
+    }
+
+    private boolean constrain(int node, int kind) {
+        int root = find(node);
+        int mask = masks[root] & kind;
+        // a conflict keeps the earlier decision, the use converts the value
+        if (mask != 0 && mask != masks[root]) {
+            masks[root] = mask;
+            return true;
+        }
+        return false;
+    }
+
+    private void solve() {
+        // definitions first, so that they win over uses in conflicts
+        for (int[] definition : definitionKinds) {
+            constrain(definition[0], definition[1]);
+        }
+        for (int[] use : useKinds) {
+            constrain(use[0], use[1]);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] pair : sameKinds) {
+                changed |= constrain(pair[0], masks[find(pair[1])]);
+                changed |= constrain(pair[1], masks[find(pair[0])]);
+            }
+            for (int[] element : arrayElements) {
+                String type = types[find(element[0])];
+                if (type != null && type.length() > 1 && type.charAt(0) == '[') {
+                    changed |= constrain(element[1], Kinds.ofDescriptor(type.substring(1)));
+                }
+            }
+        }
+    }
+}
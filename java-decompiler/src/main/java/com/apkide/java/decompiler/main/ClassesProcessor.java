@@ -2,7 +2,9 @@
 package com.apkide.java.decompiler.main;
 
 import com.apkide.java.decompiler.main.collectors.BytecodeSourceMapper;
+import com.apkide.java.decompiler.main.collectors.ClassStats;
 import com.apkide.java.decompiler.main.collectors.ImportCollector;
+import com.apkide.java.decompiler.main.collectors.ProcessingStats;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.main.extern.IIdentifierRenamer;
@@ -30,6 +32,7 @@ import com.apkide.java.decompiler.struct.consts.PrimitiveConstant;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -43,7 +46,8 @@ public class ClassesProcessor implements CodeConstants {
   public static final int AVERAGE_CLASS_SIZE = 16 * 1024;
 
   private final StructContext context;
-  private final Map<String, ClassNode> mapRootClasses = new HashMap<>();
+  // lambda nodes are added while classes are written, possibly on several threads
+  private final Map<String, ClassNode> mapRootClasses = Collections.synchronizedMap(new HashMap<>());
 
   private static class Inner {
     private String simpleName;
@@ -190,6 +194,9 @@ public class ClassesProcessor implements CodeConstants {
                   DecompilerContext.getLogger().writeMessage("Nested class " + nestedClass + " missing!", IFernflowerLogger.Severity.WARN);
                   continue;
                 }
+                if (nestedNode.parent != null) {
+                  continue;  // connected when loaded by an earlier call
+                }
 
                 Inner rec = mapInnerClasses.get(nestedClass);
 
@@ -333,6 +340,9 @@ public class ClassesProcessor implements CodeConstants {
     boolean packageInfo = cl.isSynthetic() && "package-info".equals(root.simpleName);
     boolean moduleInfo = cl.hasModifier(ACC_MODULE) && cl.hasAttribute(StructGeneralAttribute.ATTRIBUTE_MODULE);
 
+    ProcessingStats processingStats = DecompilerContext.getProcessingStats();
+    ClassStats classStats = null;
+
     DecompilerContext.getLogger().startReadingClass(cl.qualifiedName);
     try {
       ImportCollector importCollector = new ImportCollector(root);
@@ -352,6 +362,11 @@ public class ClassesProcessor implements CodeConstants {
         buffer.append(moduleBuffer);
       }
       else {
+        if (processingStats != null) {
+          classStats = new ClassStats(cl.qualifiedName);
+          DecompilerContext.setClassStats(classStats);
+        }
+
         new LambdaProcessor().processClass(root);
 
         // add simple class names to implicit import
@@ -364,9 +379,17 @@ public class ClassesProcessor implements CodeConstants {
 
         new NestedMemberAccess().propagateMemberAccess(root);
 
+        if (classStats != null) {
+          classStats.startWrite();
+        }
+
         TextBuffer classBuffer = new TextBuffer(AVERAGE_CLASS_SIZE);
         new ClassWriter().classToJava(root, classBuffer, 0, null);
 
+        if (classStats != null) {
+          classStats.endWrite();
+        }
+
         int index = cl.qualifiedName.lastIndexOf('/');
         if (index >= 0) {
           String packageName = cl.qualifiedName.substring(0, index).replace('/', '.');
@@ -393,6 +416,10 @@ public class ClassesProcessor implements CodeConstants {
       }
     }
     finally {
+      if (classStats != null) {
+        DecompilerContext.setClassStats(null);
+        processingStats.classProcessed(classStats);
+      }
       destroyWrappers(root);
       DecompilerContext.getLogger().endReadingClass();
     }
@@ -407,6 +434,7 @@ public class ClassesProcessor implements CodeConstants {
     wrapper.init();
 
     node.wrapper = wrapper;
+    node.wrapperContext = DecompilerContext.getCurrentContext();
 
     for (ClassNode nd : node.nested) {
       initWrappers(nd);
@@ -425,6 +453,7 @@ public class ClassesProcessor implements CodeConstants {
 
   private static void destroyWrappers(ClassNode node) {
     node.wrapper = null;
+    node.wrapperContext = null;
     node.classStruct.releaseResources();
 
     for (ClassNode nd : node.nested) {
@@ -450,6 +479,7 @@ public class ClassesProcessor implements CodeConstants {
     public String simpleName;
     public final StructClass classStruct;
     private ClassWrapper wrapper;
+    private DecompilerContext wrapperContext;
     public String enclosingMethod;
     public InvocationExprent superInvocation;
     public final Map<String, VarVersionPair> mapFieldsToVars = new HashMap<>();
@@ -512,12 +542,16 @@ public class ClassesProcessor implements CodeConstants {
       return null;
     }
 
+    /**
+     * @return the wrapper of this class if it is being written in the current context. Wrappers only exist
+     * for the class tree a context is writing, other threads may be writing other root classes.
+     */
     public ClassWrapper getWrapper() {
       ClassNode node = this;
       while (node.type == CLASS_LAMBDA) {
         node = node.parent;
       }
-      return node.wrapper;
+      return node.wrapperContext == DecompilerContext.getCurrentContext() ? node.wrapper : null;
     }
 
     public boolean isNonSealed() {
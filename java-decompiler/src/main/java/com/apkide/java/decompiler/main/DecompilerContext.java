@@ -2,16 +2,21 @@
 package com.apkide.java.decompiler.main;
 
 import com.apkide.java.decompiler.main.collectors.BytecodeSourceMapper;
+import com.apkide.java.decompiler.main.collectors.ClassStats;
 import com.apkide.java.decompiler.main.collectors.CounterContainer;
 import com.apkide.java.decompiler.main.collectors.ImportCollector;
+import com.apkide.java.decompiler.main.collectors.MethodStats;
+import com.apkide.java.decompiler.main.collectors.ProcessingStats;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.struct.StructContext;
 import com.apkide.java.decompiler.modules.decompiler.vars.VarProcessor;
 import com.apkide.java.decompiler.modules.renamer.PoolInterceptor;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 
 public class DecompilerContext {
   public static final String CURRENT_CLASS = "CURRENT_CLASS";
@@ -28,6 +33,8 @@ public class DecompilerContext {
   private VarProcessor varProcessor;
   private CounterContainer counterContainer;
   private BytecodeSourceMapper bytecodeSourceMapper;
+  private ProcessingStats processingStats;
+  private ClassStats classStats;
 
   public DecompilerContext(Map<String, Object> properties,
                            IFernflowerLogger logger,
@@ -47,11 +54,59 @@ public class DecompilerContext {
     this.counterContainer = new CounterContainer();
   }
 
+  /**
+   * Creates a context for a worker thread decompiling classes next to this one. The struct context,
+   * class processor and renamer pool are shared, properties are copied and per-class state starts empty.
+   */
+  public DecompilerContext fork(IFernflowerLogger logger) {
+    DecompilerContext context = new DecompilerContext(new HashMap<>(properties), logger, structContext, classProcessor, poolInterceptor);
+    context.processingStats = processingStats;
+    return context;
+  }
+
+  /**
+   * Creates a context for a worker processing a method of the class processed in this one. The worker keeps the
+   * method state of this context as it is now, so a worker abandoned past its time limit does not share the
+   * counters and var processor of the methods started here after it. Imports and bytecode mappings are collected
+   * apart and only taken into this context by {@link #joinMethod} once the method is done in time.
+   */
+  public DecompilerContext forkMethod() {
+    DecompilerContext context = new DecompilerContext(new HashMap<>(properties), logger, structContext, classProcessor, poolInterceptor);
+    context.importCollector = importCollector != null ? new ImportCollector(importCollector) : null;
+    context.varProcessor = varProcessor;
+    context.counterContainer = counterContainer;
+    context.bytecodeSourceMapper = bytecodeSourceMapper != null ? new BytecodeSourceMapper() : null;
+    context.processingStats = processingStats;
+    context.classStats = classStats;
+    return context;
+  }
+
+  /**
+   * Takes the imports and bytecode mappings collected by a worker created with {@link #forkMethod} into this context.
+   */
+  public void joinMethod(DecompilerContext context) {
+    if (importCollector != null && context.importCollector != null) {
+      importCollector.merge(context.importCollector);
+    }
+    if (bytecodeSourceMapper != null && context.bytecodeSourceMapper != null) {
+      bytecodeSourceMapper.merge(context.bytecodeSourceMapper);
+    }
+  }
+
+  /**
+   * Sets the stats collecting the processing times of this context and its forks, null to collect none.
+   */
+  public void setProcessingStats(ProcessingStats processingStats) {
+    this.processingStats = processingStats;
+  }
+
   // *****************************************************************************
   // context setup and update
   // *****************************************************************************
 
   private static final ThreadLocal<DecompilerContext> currentContext = new ThreadLocal<>();
+  private static final ThreadLocal<long[]> methodDeadline = ThreadLocal.withInitial(() -> new long[1]);
+  private static final ThreadLocal<MethodStats> methodStats = new ThreadLocal<>();
 
   public static DecompilerContext getCurrentContext() {
     return currentContext.get();
@@ -72,6 +127,50 @@ public class DecompilerContext {
     context.bytecodeSourceMapper = new BytecodeSourceMapper();
   }
 
+  /**
+   * Sets the {@link System#nanoTime()} by which the method processed on this thread has to be done, 0 for no limit.
+   */
+  public static void setMethodDeadline(long deadline) {
+    methodDeadline.get()[0] = deadline;
+  }
+
+  /**
+   * Cooperative cancellation point of long running method transformations.
+   *
+   * Does nothing for a method processed without a time limit.
+   *
+   * @throws CancellationException the processing time limit of the current method is exceeded, or the thread
+   *                               processing it is interrupted
+   */
+  public static void checkMethodDeadline() {
+    long deadline = methodDeadline.get()[0];
+    if (deadline == 0) {
+      return;
+    }
+    if (System.nanoTime() - deadline > 0) {
+      throw new CancellationException("Processing time limit exceeded");
+    }
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Processing interrupted");
+    }
+  }
+
+  /**
+   * Sets the stats of the method processed on this thread, null when the method is done.
+   */
+  public static void setMethodStats(MethodStats stats) {
+    if (stats != null) {
+      methodStats.set(stats);
+    }
+    else {
+      methodStats.remove();
+    }
+  }
+
+  public static void setClassStats(ClassStats stats) {
+    getCurrentContext().classStats = stats;
+  }
+
   public static void startMethod(VarProcessor varProcessor) {
     DecompilerContext context = getCurrentContext();
     context.varProcessor = varProcessor;
@@ -126,4 +225,26 @@ public class DecompilerContext {
   public static BytecodeSourceMapper getBytecodeSourceMapper() {
     return getCurrentContext().bytecodeSourceMapper;
   }
+
+  /**
+   * @return the stats of this decompilation run, null if they are not collected
+   */
+  public static ProcessingStats getProcessingStats() {
+    return getCurrentContext().processingStats;
+  }
+
+  /**
+   * @return the stats of the top level class being decompiled, null if they are not collected
+   */
+  public static ClassStats getClassStats() {
+    return getCurrentContext().classStats;
+  }
+
+  /**
+   * @return the stats of the method processed on this thread, {@link MethodStats#DISABLED} if they are not collected
+   */
+  public static MethodStats getMethodStats() {
+    MethodStats stats = methodStats.get();
+    return stats != null ? stats : MethodStats.DISABLED;
+  }
 }
\ No newline at end of file
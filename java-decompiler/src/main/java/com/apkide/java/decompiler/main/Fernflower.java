@@ -1,10 +1,12 @@
 // Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.apkide.java.decompiler.main;
 
+import com.apkide.java.decompiler.main.collectors.ProcessingStats;
 import com.apkide.java.decompiler.main.extern.IBytecodeProvider;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.main.extern.IIdentifierRenamer;
+import com.apkide.java.decompiler.main.extern.IProcessingListener;
 import com.apkide.java.decompiler.main.extern.IResultSaver;
 import com.apkide.java.decompiler.modules.renamer.ConverterHelper;
 import com.apkide.java.decompiler.modules.renamer.IdentifierConverter;
@@ -16,7 +18,12 @@ import com.apkide.java.decompiler.util.TextBuffer;
 import com.apkide.java.decompiler.struct.lazy.LazyLoader;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -25,6 +32,8 @@ public class Fernflower implements IDecompiledData {
     private final ClassesProcessor classProcessor;
     private final IIdentifierRenamer helper;
     private final IdentifierConverter converter;
+    private final int slowestMethodCount;
+    private ProcessingStats processingStats;
 
     public Fernflower(IBytecodeProvider provider, IResultSaver saver, Map<String, Object> customProperties, IFernflowerLogger logger) {
         Map<String, Object> properties = new HashMap<>(IFernflowerPreferences.DEFAULTS);
@@ -55,6 +64,37 @@ public class Fernflower implements IDecompiledData {
 
         DecompilerContext context = new DecompilerContext(properties, logger, structContext, classProcessor, interceptor);
         DecompilerContext.setCurrentContext(context);
+
+        int slowestCount = 0;
+        try {
+            slowestCount = Integer.parseInt(properties.get(IFernflowerPreferences.PROCESSING_STATS).toString());
+        } catch (NumberFormatException ignore) {
+        }
+        slowestMethodCount = slowestCount;
+        if (slowestMethodCount > 0) {
+            setProcessingListener(null);
+        }
+    }
+
+    /**
+     * Starts collecting processing times and allocations per phase, method and class. The stats keep the
+     * slowest methods asked for with {@link IFernflowerPreferences#PROCESSING_STATS}, which are also logged
+     * after {@link #decompileContext()}.
+     *
+     * @param listener listener of the stats of every method and class, may be null
+     * @return the collected stats
+     */
+    public ProcessingStats setProcessingListener(IProcessingListener listener) {
+        processingStats = new ProcessingStats(slowestMethodCount, listener);
+        DecompilerContext.getCurrentContext().setProcessingStats(processingStats);
+        return processingStats;
+    }
+
+    /**
+     * @return the collected processing stats, null if none are collected
+     */
+    public ProcessingStats getProcessingStats() {
+        return processingStats;
     }
 
     private static IIdentifierRenamer loadHelper(String className, IFernflowerLogger logger) {
@@ -78,14 +118,87 @@ public class Fernflower implements IDecompiledData {
         structContext.addSpace(library, false);
     }
 
+    /**
+     * Adds classes the bytecode provider serves under the given external path, the entry names being
+     * class file paths like "a/b/C.class".
+     */
+    public void addSource(String externalPath, Collection<String> entryNames) {
+        structContext.addEntries(externalPath, entryNames, true);
+    }
+
+    public void addLibrary(String externalPath, Collection<String> entryNames) {
+        structContext.addEntries(externalPath, entryNames, false);
+    }
+
     public void decompileContext() {
+        loadContext();
+
+        structContext.saveContext();
+
+        if (processingStats != null && slowestMethodCount > 0) {
+            DecompilerContext.getLogger().writeMessage(processingStats.getSummary(), IFernflowerLogger.Severity.INFO);
+        }
+    }
+
+    /**
+     * Renames entities if asked for and builds the class tree, after which single classes can be
+     * decompiled with {@link #getClassContent(String)} instead of saving the whole context. Sources added
+     * later are loaded into the tree by calling it again.
+     */
+    public void loadContext() {
         if (converter != null) {
             converter.rename();
         }
 
         classProcessor.loadClasses(helper);
+    }
 
-        structContext.saveContext();
+    /**
+     * @return names of the classes that are decompiled to a file of their own
+     */
+    public List<String> getRootClassNames() {
+        List<String> names = new ArrayList<>();
+        synchronized (classProcessor.getMapRootClasses()) {
+            for (ClassesProcessor.ClassNode node : classProcessor.getMapRootClasses().values()) {
+                if (node.type == ClassesProcessor.ClassNode.CLASS_ROOT && node.classStruct.isOwn()) {
+                    names.add(node.classStruct.qualifiedName);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Decompiles the root class of the given class, the class itself if it is not nested.
+     *
+     * @return source of the root class, null if the class is unknown or could not be decompiled
+     */
+    public String getClassContent(String qualifiedName) {
+        StructClass root = getRootClass(qualifiedName);
+        return root != null ? getClassContent(root) : null;
+    }
+
+    /**
+     * Decompiles the root class of the given class into the writer, which is left open.
+     *
+     * @return whether the class is known and could be decompiled, nothing is written otherwise
+     */
+    public boolean writeClassContent(String qualifiedName, Writer out) throws IOException {
+        StructClass root = getRootClass(qualifiedName);
+        TextBuffer buffer = root != null ? getClassBuffer(root) : null;
+        if (buffer == null) {
+            return false;
+        }
+        buffer.writeTo(out);
+        return true;
+    }
+
+    private StructClass getRootClass(String qualifiedName) {
+        ClassesProcessor.ClassNode node = classProcessor.getMapRootClasses().get(qualifiedName);
+        while (node != null && node.type != ClassesProcessor.ClassNode.CLASS_ROOT) {
+            node = node.parent;
+        }
+        return node != null && node.classStruct.isOwn() ? node.classStruct : null;
     }
 
     public void clearContext() {
@@ -107,11 +220,17 @@ public class Fernflower implements IDecompiledData {
 
     @Override
     public String getClassContent(StructClass cl) {
+        TextBuffer buffer = getClassBuffer(cl);
+        return buffer != null ? buffer.toString() : null;
+    }
+
+    @Override
+    public TextBuffer getClassBuffer(StructClass cl) {
         try {
             TextBuffer buffer = new TextBuffer(ClassesProcessor.AVERAGE_CLASS_SIZE);
             buffer.append(DecompilerContext.getProperty(IFernflowerPreferences.BANNER).toString());
             classProcessor.writeClass(cl, buffer);
-            return buffer.toString();
+            return buffer;
         } catch (Throwable t) {
             DecompilerContext.getLogger().writeMessage("Class " + cl.qualifiedName + " couldn't be fully decompiled.", t);
             return null;
@@ -41,6 +41,21 @@ public class BytecodeSourceMapper {
     unmappedLines.addAll(tracer.getUnmappedLines());
   }
 
+  /**
+   * Takes the mappings collected by another mapper of the same class.
+   */
+  public void merge(BytecodeSourceMapper mapper) {
+    for (Entry<String, Map<String, Map<Integer, Integer>>> class_entry : mapper.mapping.entrySet()) {
+      for (Entry<String, Map<Integer, Integer>> method_entry : class_entry.getValue().entrySet()) {
+        for (Entry<Integer, Integer> entry : method_entry.getValue().entrySet()) {
+          addMapping(class_entry.getKey(), method_entry.getKey(), entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    linesMapping.putAll(mapper.linesMapping);
+    unmappedLines.addAll(mapper.unmappedLines);
+  }
+
   public void dumpMapping(TextBuffer buffer, boolean offsetsToHex) {
     if (mapping.isEmpty() && linesMapping.isEmpty()) {
       return;
@@ -0,0 +1,89 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.collectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing stats of a top level class, covering the methods of the class and its nested classes and
+ * the time spent writing its source.
+ */
+public class ClassStats {
+  public final String className;
+
+  private final List<MethodStats> methods = Collections.synchronizedList(new ArrayList<>());
+  private long writeNanos;
+  private long writeBytes;
+  private long writeStartNanos;
+  private long writeStartBytes;
+
+  public ClassStats(String className) {
+    this.className = className;
+  }
+
+  void addMethod(MethodStats stats) {
+    methods.add(stats);
+  }
+
+  public List<MethodStats> getMethods() {
+    synchronized (methods) {
+      return new ArrayList<>(methods);
+    }
+  }
+
+  public void startWrite() {
+    writeStartBytes = ProcessingStats.getCurrentThreadAllocatedBytes();
+    writeStartNanos = System.nanoTime();
+  }
+
+  public void endWrite() {
+    writeNanos += System.nanoTime() - writeStartNanos;
+    if (writeStartBytes >= 0) {
+      writeBytes += ProcessingStats.getCurrentThreadAllocatedBytes() - writeStartBytes;
+    }
+  }
+
+  public long getNanos(ProcessingPhase phase) {
+    if (phase == ProcessingPhase.WRITE) {
+      return writeNanos;
+    }
+    long total = 0;
+    for (MethodStats method : getMethods()) {
+      total += method.getNanos(phase);
+    }
+    return total;
+  }
+
+  /**
+   * @return bytes allocated in the phase, -1 if the VM does not report allocations
+   */
+  public long getAllocatedBytes(ProcessingPhase phase) {
+    if (!ProcessingStats.ALLOCATIONS_SUPPORTED) {
+      return -1;
+    }
+    if (phase == ProcessingPhase.WRITE) {
+      return writeBytes;
+    }
+    long total = 0;
+    for (MethodStats method : getMethods()) {
+      total += method.getAllocatedBytes(phase);
+    }
+    return total;
+  }
+
+  public long getTotalNanos() {
+    long total = writeNanos;
+    for (MethodStats method : getMethods()) {
+      total += method.getTotalNanos();
+    }
+    return total;
+  }
+
+  @Override
+  public String toString() {
+    return className + ' ' + TimeUnit.NANOSECONDS.toMillis(getTotalNanos()) + " ms (" + methods.size() + " methods, write " +
+           TimeUnit.NANOSECONDS.toMillis(writeNanos) + " ms)";
+  }
+}
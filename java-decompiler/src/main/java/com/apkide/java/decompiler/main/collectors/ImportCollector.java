@@ -43,7 +43,7 @@ public class ImportCollector {
       currentPackagePoint = "";
     }
 
-    Map<String, StructClass> classes = DecompilerContext.getStructContext().getClasses();
+    StructContext context = DecompilerContext.getStructContext();
     LinkedList<String> queue = new LinkedList<>();
     Set<StructClass> processedClasses = new HashSet<>();
     StructClass currentClass = root.classStruct;
@@ -72,7 +72,7 @@ public class ImportCollector {
 
       // .. and traverse through parent.
       do {
-        currentClass = queue.isEmpty() ? null : classes.get(queue.removeFirst());
+        currentClass = queue.isEmpty() ? null : context.getClass(queue.removeFirst());
 
         if (currentClass != null && processedClasses.contains(currentClass)) {
           // Class already processed, skipping.
@@ -85,6 +85,30 @@ public class ImportCollector {
     }
   }
 
+  /**
+   * Creates a copy of the collector, to collect the imports of a method apart from the class.
+   */
+  public ImportCollector(ImportCollector collector) {
+    mapSimpleNames.putAll(collector.mapSimpleNames);
+    setNotImportedNames.addAll(collector.setNotImportedNames);
+    setFieldNames.addAll(collector.setFieldNames);
+    setInnerClassNames.addAll(collector.setInnerClassNames);
+    currentPackageSlash = collector.currentPackageSlash;
+    currentPackagePoint = collector.currentPackagePoint;
+  }
+
+  /**
+   * Takes the names collected by a copy of this collector.
+   */
+  public void merge(ImportCollector collector) {
+    for (Map.Entry<String, String> entry : collector.mapSimpleNames.entrySet()) {
+      if (mapSimpleNames.putIfAbsent(entry.getKey(), entry.getValue()) == null &&
+          collector.setNotImportedNames.contains(entry.getKey())) {
+        setNotImportedNames.add(entry.getKey());
+      }
+    }
+  }
+
   /**
    * Check whether the package-less name ClassName is shaded by variable in a context of
    * the decompiled class
@@ -157,8 +181,8 @@ public class ImportCollector {
     // 2) class with the same short name in the default package
     // 3) inner class with the same short name in the current class, a super class, or an implemented interface
     boolean existsDefaultClass =
-      (context.getClass(currentPackageSlash + outerShortName) != null && !packageName.equals(currentPackagePoint)) || // current package
-      (context.getClass(outerShortName) != null && !currentPackagePoint.isEmpty()) || // default package
+      (context.hasClass(currentPackageSlash + outerShortName) && !packageName.equals(currentPackagePoint)) || // current package
+      (context.hasClass(outerShortName) && !currentPackagePoint.isEmpty()) || // default package
       setInnerClassNames.contains(outerShortName); // inner class
 
     if (existsDefaultClass || (mapSimpleNames.containsKey(outerShortName) && !packageName.equals(mapSimpleNames.get(outerShortName)))) {
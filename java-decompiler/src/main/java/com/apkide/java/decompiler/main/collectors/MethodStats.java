@@ -0,0 +1,123 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.collectors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time and allocated bytes of the processing phases of one method, measured on the thread processing it.
+ * Phases follow each other, starting one ends the running one.
+ */
+public class MethodStats {
+  private static final ProcessingPhase[] PHASES = ProcessingPhase.values();
+
+  /** Stats of methods processed without a {@link ProcessingStats}, recording nothing. */
+  public static final MethodStats DISABLED = new MethodStats(null, null, null);
+
+  public final String className;
+  public final String methodName;
+  public final String descriptor;
+
+  private final long[] nanos = new long[PHASES.length];
+  private final long[] bytes = new long[PHASES.length];
+
+  private ProcessingPhase phase;
+  private long phaseStartNanos;
+  private long phaseStartBytes;
+  private volatile boolean failed;
+
+  public MethodStats(String className, String methodName, String descriptor) {
+    this.className = className;
+    this.methodName = methodName;
+    this.descriptor = descriptor;
+  }
+
+  public void startPhase(ProcessingPhase phase) {
+    if (this == DISABLED) {
+      return;
+    }
+
+    endPhase();
+
+    this.phase = phase;
+    phaseStartBytes = ProcessingStats.getCurrentThreadAllocatedBytes();
+    phaseStartNanos = System.nanoTime();
+  }
+
+  public void endPhase() {
+    if (phase != null) {
+      long now = System.nanoTime();
+      int index = phase.ordinal();
+      nanos[index] += now - phaseStartNanos;
+      if (phaseStartBytes >= 0) {
+        bytes[index] += ProcessingStats.getCurrentThreadAllocatedBytes() - phaseStartBytes;
+      }
+      phase = null;
+    }
+  }
+
+  public void setFailed() {
+    failed = true;
+  }
+
+  /**
+   * @return whether the method could not be decompiled, the phases then cover the work done until it failed
+   */
+  public boolean isFailed() {
+    return failed;
+  }
+
+  public long getNanos(ProcessingPhase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * @return bytes allocated in the phase, -1 if the VM does not report allocations
+   */
+  public long getAllocatedBytes(ProcessingPhase phase) {
+    return ProcessingStats.ALLOCATIONS_SUPPORTED ? bytes[phase.ordinal()] : -1;
+  }
+
+  public long getTotalNanos() {
+    long total = 0;
+    for (long value : nanos) {
+      total += value;
+    }
+    return total;
+  }
+
+  public long getTotalAllocatedBytes() {
+    if (!ProcessingStats.ALLOCATIONS_SUPPORTED) {
+      return -1;
+    }
+    long total = 0;
+    for (long value : bytes) {
+      total += value;
+    }
+    return total;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(className).append('.').append(methodName).append(descriptor).append(' ');
+    buffer.append(TimeUnit.NANOSECONDS.toMillis(getTotalNanos())).append(" ms");
+    if (failed) {
+      buffer.append(", failed");
+    }
+    buffer.append(" (");
+    boolean first = true;
+    for (ProcessingPhase phase : PHASES) {
+      if (nanos[phase.ordinal()] > 0) {
+        if (!first) {
+          buffer.append(", ");
+        }
+        first = false;
+        buffer.append(phase.label).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos[phase.ordinal()])).append(" ms");
+        if (ProcessingStats.ALLOCATIONS_SUPPORTED) {
+          buffer.append(' ').append(bytes[phase.ordinal()] >> 10).append(" KB");
+        }
+      }
+    }
+    return buffer.append(')').toString();
+  }
+}
@@ -0,0 +1,20 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.collectors;
+
+public enum ProcessingPhase {
+  CFG("cfg"),
+  DEAD_CODE("dead code"),
+  DOM("dom"),
+  FINALLY("finally"),
+  EXPR("expr"),
+  STACK_VARS("stack vars"),
+  SSA("ssa"),
+  STRUCTURE("structure"),
+  WRITE("write");
+
+  public final String label;
+
+  ProcessingPhase(String label) {
+    this.label = label;
+  }
+}
@@ -0,0 +1,168 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.collectors;
+
+import com.apkide.java.decompiler.main.extern.IProcessingListener;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing stats of a decompilation run, shared by the worker threads. Keeps the phase totals and the slowest
+ * methods, and forwards the stats of every method and class to an optional listener.
+ */
+public class ProcessingStats {
+  private static final Comparator<MethodStats> BY_TOTAL_TIME = Comparator.comparingLong(MethodStats::getTotalNanos);
+  private static final ProcessingPhase[] PHASES = ProcessingPhase.values();
+
+  private final int slowestCount;
+  private final IProcessingListener listener;
+  private final PriorityQueue<MethodStats> slowest;
+  private final long[] phaseNanos = new long[PHASES.length];
+  private final long[] phaseBytes = new long[PHASES.length];
+  private int methodCount;
+  private int failedCount;
+  private int classCount;
+
+  /**
+   * @param slowestCount number of slowest methods to keep
+   * @param listener     listener of the single method and class stats, may be null
+   */
+  public ProcessingStats(int slowestCount, IProcessingListener listener) {
+    this.slowestCount = slowestCount;
+    this.listener = listener;
+    this.slowest = new PriorityQueue<>(Math.max(1, slowestCount + 1), BY_TOTAL_TIME);
+  }
+
+  public void methodProcessed(ClassStats classStats, MethodStats stats) {
+    if (classStats != null) {
+      classStats.addMethod(stats);
+    }
+
+    synchronized (this) {
+      methodCount++;
+      if (stats.isFailed()) {
+        failedCount++;
+      }
+      for (ProcessingPhase phase : PHASES) {
+        phaseNanos[phase.ordinal()] += stats.getNanos(phase);
+        phaseBytes[phase.ordinal()] += stats.getAllocatedBytes(phase);
+      }
+      if (slowestCount > 0) {
+        slowest.add(stats);
+        if (slowest.size() > slowestCount) {
+          slowest.poll();
+        }
+      }
+    }
+
+    if (listener != null) {
+      listener.methodProcessed(stats);
+    }
+  }
+
+  public void classProcessed(ClassStats stats) {
+    synchronized (this) {
+      classCount++;
+      phaseNanos[ProcessingPhase.WRITE.ordinal()] += stats.getNanos(ProcessingPhase.WRITE);
+      phaseBytes[ProcessingPhase.WRITE.ordinal()] += stats.getAllocatedBytes(ProcessingPhase.WRITE);
+    }
+
+    if (listener != null) {
+      listener.classProcessed(stats);
+    }
+  }
+
+  /**
+   * @return the slowest methods processed so far, slowest first
+   */
+  public synchronized List<MethodStats> getSlowestMethods() {
+    List<MethodStats> result = new ArrayList<>(slowest);
+    result.sort(BY_TOTAL_TIME.reversed());
+    return result;
+  }
+
+  public synchronized long getNanos(ProcessingPhase phase) {
+    return phaseNanos[phase.ordinal()];
+  }
+
+  /**
+   * @return bytes allocated in the phase, -1 if the VM does not report allocations
+   */
+  public synchronized long getAllocatedBytes(ProcessingPhase phase) {
+    return ALLOCATIONS_SUPPORTED ? phaseBytes[phase.ordinal()] : -1;
+  }
+
+  public synchronized String getSummary() {
+    String separator = System.lineSeparator();
+    StringBuilder buffer = new StringBuilder();
+    buffer.append("Processed ").append(classCount).append(" classes, ").append(methodCount).append(" methods");
+    if (failedCount > 0) {
+      buffer.append(", ").append(failedCount).append(" failed");
+    }
+    buffer.append(separator);
+
+    for (ProcessingPhase phase : PHASES) {
+      buffer.append("  ").append(phase.label).append(": ").append(TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()])).append(" ms");
+      if (ALLOCATIONS_SUPPORTED) {
+        buffer.append(", ").append(phaseBytes[phase.ordinal()] >> 20).append(" MB");
+      }
+      buffer.append(separator);
+    }
+
+    List<MethodStats> methods = getSlowestMethods();
+    if (!methods.isEmpty()) {
+      buffer.append("Slowest methods:").append(separator);
+      for (MethodStats method : methods) {
+        buffer.append("  ").append(method).append(separator);
+      }
+    }
+
+    return buffer.toString();
+  }
+
+  // *****************************************************************************
+  // allocation measurement
+  // *****************************************************************************
+
+  // java.lang.management is missing on Android, so the HotSpot extension of the thread bean is looked up reflectively
+  private static final Object THREAD_BEAN;
+  private static final Method GET_THREAD_ALLOCATED_BYTES;
+  static final boolean ALLOCATIONS_SUPPORTED;
+
+  static {
+    Object bean = null;
+    Method method = null;
+    try {
+      bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+      method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+      if ((Long)method.invoke(bean, Thread.currentThread().getId()) < 0) {
+        method = null;
+      }
+    }
+    catch (Throwable t) {
+      method = null;
+    }
+    THREAD_BEAN = bean;
+    GET_THREAD_ALLOCATED_BYTES = method;
+    ALLOCATIONS_SUPPORTED = method != null;
+  }
+
+  /**
+   * @return bytes allocated by the current thread so far, -1 if the VM does not report them
+   */
+  static long getCurrentThreadAllocatedBytes() {
+    if (GET_THREAD_ALLOCATED_BYTES == null) {
+      return -1;
+    }
+    try {
+      return (Long)GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+    }
+    catch (ReflectiveOperationException e) {
+      return -1;
+    }
+  }
+}
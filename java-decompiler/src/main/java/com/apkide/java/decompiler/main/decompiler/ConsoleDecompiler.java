@@ -8,8 +8,10 @@ import com.apkide.java.decompiler.main.extern.IBytecodeProvider;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IResultSaver;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
@@ -190,6 +192,12 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
   }
 
+  @Override
+  public Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) throws IOException {
+    File file = new File(getAbsolutePath(path), entryName);
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+
   @Override
   public void createArchive(String path, String archiveName, Manifest manifest) {
     File file = new File(getAbsolutePath(path), archiveName);
@@ -257,6 +265,30 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
     }
   }
 
+  @Override
+  public Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) throws IOException {
+    String file = new File(getAbsolutePath(path), archiveName).getPath();
+
+    if (!checkEntry(entryName, file)) {
+      return new NullWriter();
+    }
+
+    ZipOutputStream out = mapArchiveStreams.get(file);
+    out.putNextEntry(new ZipEntry(entryName));
+    // the source is encoded as it is written, closing the writer ends the entry but leaves the archive open
+    return new BufferedWriter(new OutputStreamWriter(new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    }, StandardCharsets.UTF_8));
+  }
+
   private boolean checkEntry(String entryName, String file) {
     Set<String> set = mapArchiveEntries.computeIfAbsent(file, k -> new HashSet<>());
 
@@ -279,4 +311,16 @@ public class ConsoleDecompiler implements IBytecodeProvider, IResultSaver {
       DecompilerContext.getLogger().writeMessage("Cannot close " + file, IFernflowerLogger.Severity.WARN);
     }
   }
-}
\ No newline at end of file
+
+  // a writer for entries left out, Writer.nullWriter() is not there before Android 13
+  private static class NullWriter extends Writer {
+    @Override
+    public void write(char[] cbuf, int off, int len) { }
+
+    @Override
+    public void flush() { }
+
+    @Override
+    public void close() { }
+  }
+}
@@ -0,0 +1,261 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.decompiler;
+
+import com.apkide.java.decompiler.main.Fernflower;
+import com.apkide.java.decompiler.main.extern.IBytecodeProvider;
+import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
+import com.apkide.java.decompiler.main.extern.IResultSaver;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-lived decompilation of single classes of an archive (or folder). The sources and libraries are parsed
+ * once, into one {@link Fernflower} context owned by the session thread, after which any class can be
+ * decompiled on demand. Classes of the same package as a requested one are decompiled ahead in the background,
+ * at a lower priority than explicit requests.
+ * <p>
+ * Names are the qualified names of the class files ('a/b/C', 'a/b/C$D'); a nested class yields the source of
+ * its root class.
+ */
+public class DecompilerSession implements Closeable {
+  private static final int PRIORITY_REQUEST = 0;
+  private static final int PRIORITY_PREFETCH = 1;
+  private static final int MAX_CACHED_SOURCES = 64;
+  private static final int DEFAULT_PREFETCH_COUNT = 4;
+
+  private static final IResultSaver NO_SAVER = (path, qualifiedName, entryName, content, mapping) -> { };
+
+  private final AtomicLong sequence = new AtomicLong();
+  private final ThreadPoolExecutor executor;
+  private final Map<String, String> sources = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > MAX_CACHED_SOURCES;
+    }
+  });
+  private final List<File> sourceFiles = new ArrayList<>();
+  private final List<File> libraryFiles = new ArrayList<>();
+  private final IBytecodeProvider provider;
+  private final Map<String, Object> options;
+  private final IFernflowerLogger logger;
+  private volatile int prefetchCount = DEFAULT_PREFETCH_COUNT;
+
+  // owned by the session thread
+  private Fernflower engine;
+  private List<String> rootClasses;
+
+  public DecompilerSession(IBytecodeProvider provider, Map<String, Object> options, IFernflowerLogger logger) {
+    this.provider = provider;
+    this.options = options;
+    this.logger = logger;
+
+    executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "Java decompiler session");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    });
+  }
+
+  /**
+   * Adds an archive or folder of classes to decompile, only before the first class is decompiled.
+   */
+  public synchronized void addSource(File source) {
+    checkNotLoaded();
+    sourceFiles.add(source);
+  }
+
+  /**
+   * Adds an archive or folder of classes that are referenced only, only before the first class is decompiled.
+   */
+  public synchronized void addLibrary(File library) {
+    checkNotLoaded();
+    libraryFiles.add(library);
+  }
+
+  private void checkNotLoaded() {
+    if (sequence.get() != 0) {
+      throw new IllegalStateException("Session already loaded");
+    }
+  }
+
+  /**
+   * @param count how many classes of the same package are decompiled ahead of a request, 0 to disable
+   */
+  public void setPrefetchCount(int count) {
+    prefetchCount = count;
+  }
+
+  /**
+   * Decompiles the root class of the given class, waiting for the result.
+   *
+   * @return the source, null if the class is unknown or could not be decompiled
+   * @throws CancellationException the session is closed before the class is decompiled
+   */
+  public String decompile(String qualifiedName) throws InterruptedException {
+    String source = sources.get(qualifiedName);
+    if (source != null) {
+      return source;
+    }
+
+    Task task = submit(PRIORITY_REQUEST, () -> {
+      String result = decompileOnSessionThread(qualifiedName);
+      prefetchSiblings(qualifiedName);
+      return result;
+    });
+    try {
+      return task.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /**
+   * Decompiles the class in the background, so a later {@link #decompile(String)} of it returns at once.
+   */
+  public void prefetch(String qualifiedName) {
+    if (!sources.containsKey(qualifiedName)) {
+      submit(PRIORITY_PREFETCH, () -> decompileOnSessionThread(qualifiedName));
+    }
+  }
+
+  private synchronized Task submit(int priority, Callable<String> callable) {
+    Task task = new Task(callable, priority, sequence.incrementAndGet());
+    try {
+      executor.execute(task);
+    }
+    catch (RejectedExecutionException e) {
+      task.cancel(false);
+    }
+    return task;
+  }
+
+  private String decompileOnSessionThread(String qualifiedName) {
+    String source = sources.get(qualifiedName);
+    if (source != null) {
+      return source;
+    }
+
+    load();
+    source = engine.getClassContent(qualifiedName);
+    if (Thread.interrupted()) {
+      // closed while decompiling, the source may have been cut short
+      throw new CancellationException("Session closed");
+    }
+    if (source != null) {
+      sources.put(qualifiedName, source);
+    }
+    return source;
+  }
+
+  /**
+   * Parses the sources and libraries, again on the next request if it fails.
+   */
+  private void load() {
+    if (engine != null) {
+      return;
+    }
+
+    List<File> sourceList;
+    List<File> libraryList;
+    synchronized (this) {
+      sourceList = new ArrayList<>(sourceFiles);
+      libraryList = new ArrayList<>(libraryFiles);
+    }
+    Fernflower loaded = new Fernflower(provider, NO_SAVER, options, logger);
+    List<String> names;
+    try {
+      for (File source : sourceList) {
+        loaded.addSource(source);
+      }
+      for (File library : libraryList) {
+        loaded.addLibrary(library);
+      }
+      loaded.loadContext();
+
+      names = loaded.getRootClassNames();
+      Collections.sort(names);
+    }
+    catch (RuntimeException | Error e) {
+      loaded.clearContext();
+      throw e;
+    }
+    engine = loaded;
+    rootClasses = names;
+  }
+
+  private void prefetchSiblings(String qualifiedName) {
+    int count = prefetchCount;
+    if (count <= 0 || rootClasses.isEmpty()) {
+      return;
+    }
+
+    int slash = qualifiedName.lastIndexOf('/');
+    String packagePrefix = qualifiedName.substring(0, slash + 1);
+    int index = Collections.binarySearch(rootClasses, qualifiedName);
+    int start = index >= 0 ? index + 1 : -index - 1;
+
+    // classes following the requested one are the likeliest next, as in a package listing
+    for (int i = start; i < rootClasses.size() && count > 0; i++) {
+      String name = rootClasses.get(i);
+      if (!name.startsWith(packagePrefix)) {
+        break;
+      }
+      if (name.indexOf('/', packagePrefix.length()) == -1 && !sources.containsKey(name)) {
+        prefetch(name);
+        count--;
+      }
+    }
+  }
+
+  /**
+   * Stops the session, requests waiting for a class fail with a {@link CancellationException}.
+   */
+  @Override
+  public void close() {
+    for (Runnable task : executor.shutdownNow()) {
+      ((Task)task).cancel(false);
+    }
+    sources.clear();
+    // the context is dropped with the session thread
+  }
+
+  private static final class Task extends FutureTask<String> implements Comparable<Task> {
+    private final int priority;
+    private final long sequence;
+
+    private Task(Callable<String> callable, int priority, long sequence) {
+      super(callable);
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Task o) {
+      return priority != o.priority ? Integer.compare(priority, o.priority) : Long.compare(sequence, o.sequence);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright 2000-2018 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.apkide.java.decompiler.main.decompiler;
+
+import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
+
+/**
+ * Logger handed to the worker threads of a multi-threaded decompilation. Every call is forwarded
+ * to the shared logger under its lock, so loggers that are not thread-safe keep working.
+ */
+public class SynchronizedLogger extends IFernflowerLogger {
+
+  private final IFernflowerLogger logger;
+
+  public SynchronizedLogger(IFernflowerLogger logger) {
+    this.logger = logger;
+  }
+
+  @Override
+  public boolean accepts(Severity severity) {
+    synchronized (logger) {
+      return logger.accepts(severity);
+    }
+  }
+
+  @Override
+  public void setSeverity(Severity severity) {
+    synchronized (logger) {
+      logger.setSeverity(severity);
+    }
+  }
+
+  @Override
+  public void writeMessage(String message, Severity severity) {
+    synchronized (logger) {
+      logger.writeMessage(message, severity);
+    }
+  }
+
+  @Override
+  public void writeMessage(String message, Severity severity, Throwable t) {
+    synchronized (logger) {
+      logger.writeMessage(message, severity, t);
+    }
+  }
+
+  @Override
+  public void startReadingClass(String className) {
+    synchronized (logger) {
+      logger.startReadingClass(className);
+    }
+  }
+
+  @Override
+  public void endReadingClass() {
+    synchronized (logger) {
+      logger.endReadingClass();
+    }
+  }
+
+  @Override
+  public void startClass(String className) {
+    synchronized (logger) {
+      logger.startClass(className);
+    }
+  }
+
+  @Override
+  public void endClass() {
+    synchronized (logger) {
+      logger.endClass();
+    }
+  }
+
+  @Override
+  public void startMethod(String methodName) {
+    synchronized (logger) {
+      logger.startMethod(methodName);
+    }
+  }
+
+  @Override
+  public void endMethod() {
+    synchronized (logger) {
+      logger.endMethod();
+    }
+  }
+
+  @Override
+  public void startWriteClass(String className) {
+    synchronized (logger) {
+      logger.startWriteClass(className);
+    }
+  }
+
+  @Override
+  public void endWriteClass() {
+    synchronized (logger) {
+      logger.endWriteClass();
+    }
+  }
+}
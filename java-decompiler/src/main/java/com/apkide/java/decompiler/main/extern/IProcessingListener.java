@@ -0,0 +1,21 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.main.extern;
+
+import com.apkide.java.decompiler.main.collectors.ClassStats;
+import com.apkide.java.decompiler.main.collectors.MethodStats;
+
+/**
+ * Receives the processing stats of decompiled methods and classes. Classes are decompiled on several threads,
+ * so implementations have to be thread safe.
+ */
+public interface IProcessingListener {
+  /**
+   * Called once the processing of a method is done, also when it failed or ran out of time.
+   */
+  default void methodProcessed(MethodStats stats) { }
+
+  /**
+   * Called once the source of a top level class is written.
+   */
+  default void classProcessed(ClassStats stats) { }
+}
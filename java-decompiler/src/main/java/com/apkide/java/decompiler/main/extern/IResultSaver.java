@@ -1,6 +1,8 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.apkide.java.decompiler.main.extern;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.jar.Manifest;
 
 public interface IResultSaver {
@@ -13,6 +15,14 @@ public interface IResultSaver {
   }
   
   void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping);
+
+  /**
+   * Opens a sink the source of a class file is streamed to, closed once written. Returning null, as by default,
+   * has the source handed to {@link #saveClassFile} as a string.
+   */
+  default Writer openClassFile(String path, String qualifiedName, String entryName, int[] mapping) throws IOException {
+    return null;
+  }
   
   default void createArchive(String path, String archiveName, Manifest manifest) {
   
@@ -29,6 +39,13 @@ public interface IResultSaver {
   default void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
   
   }
+
+  /**
+   * Archive counterpart of {@link #openClassFile}, null has the source handed to {@link #saveClassEntry}.
+   */
+  default Writer openClassEntry(String path, String archiveName, String qualifiedName, String entryName) throws IOException {
+    return null;
+  }
   
   default void closeArchive(String path, String archiveName) {
   
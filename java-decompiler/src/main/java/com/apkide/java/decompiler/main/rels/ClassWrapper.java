@@ -2,6 +2,8 @@
 package com.apkide.java.decompiler.main.rels;
 
 import com.apkide.java.decompiler.main.collectors.CounterContainer;
+import com.apkide.java.decompiler.main.collectors.MethodStats;
+import com.apkide.java.decompiler.main.collectors.ProcessingStats;
 import com.apkide.java.decompiler.main.collectors.VarNamesCollector;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
@@ -24,8 +26,22 @@ import com.apkide.java.decompiler.struct.attr.StructMethodParametersAttribute;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ClassWrapper {
+  private static final int TIMEOUT_GRACE_SEC = 5;
+  private static final ExecutorService METHOD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "Java decompiler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private final StructClass classStruct;
   private final Set<String> hiddenMembers = new HashSet<>();
   private final VBStyleCollection<Exprent, String> staticFieldInitializers = new VBStyleCollection<>();
@@ -43,6 +59,7 @@ public class ClassWrapper {
 
     int maxSec = Integer.parseInt(DecompilerContext.getProperty(IFernflowerPreferences.MAX_PROCESSING_METHOD).toString());
     boolean testMode = DecompilerContext.getOption(IFernflowerPreferences.UNIT_TEST_MODE);
+    ProcessingStats processingStats = DecompilerContext.getProcessingStats();
 
     for (StructMethod mt : classStruct.getMethods()) {
       DecompilerContext.getLogger().startMethod(mt.getName() + " " + mt.getDescriptor());
@@ -58,41 +75,51 @@ public class ClassWrapper {
 
       boolean isError = false;
 
+      MethodStats methodStats = null;
+      if (processingStats != null && mt.containsCode()) {
+        methodStats = new MethodStats(classStruct.qualifiedName, mt.getName(), mt.getDescriptor());
+      }
+
       try {
         if (mt.containsCode()) {
           if (maxSec == 0 || testMode) {
-            root = MethodProcessorRunnable.codeToJava(classStruct, mt, md, varProc);
+            DecompilerContext.setMethodStats(methodStats);
+            try {
+              root = MethodProcessorRunnable.codeToJava(classStruct, mt, md, varProc);
+            }
+            finally {
+              DecompilerContext.setMethodStats(null);
+            }
           }
           else {
-            MethodProcessorRunnable mtProc = new MethodProcessorRunnable(classStruct, mt, md, varProc, DecompilerContext.getCurrentContext());
-
-            Thread mtThread = new Thread(mtProc, "Java decompiler");
-            long stopAt = System.currentTimeMillis() + maxSec * 1000L;
-
-            mtThread.start();
-
-            while (!mtProc.isFinished()) {
-              try {
-                synchronized (mtProc.lock) {
-                  mtProc.lock.wait(200);
-                }
-              }
-              catch (InterruptedException e) {
-                killThread(mtThread);
-                throw e;
-              }
-
-              if (System.currentTimeMillis() >= stopAt) {
-                String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
-                DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
-                killThread(mtThread);
-                isError = true;
-                break;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maxSec);
+            DecompilerContext methodContext = DecompilerContext.getCurrentContext().forkMethod();
+            Future<RootStatement> task = METHOD_EXECUTOR.submit(
+              new MethodProcessorRunnable(classStruct, mt, md, varProc, methodContext, deadline, methodStats));
+
+            try {
+              // the worker stops itself at the next deadline check, the grace period only covers code without one
+              root = task.get(maxSec + TIMEOUT_GRACE_SEC, TimeUnit.SECONDS);
+              DecompilerContext.getCurrentContext().joinMethod(methodContext);
+            }
+            catch (ExecutionException e) {
+              if (!(e.getCause() instanceof CancellationException)) {
+                throw e.getCause();
               }
+              String message = "Processing time limit exceeded for method " + mt.getName() + ", execution interrupted.";
+              DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
+              isError = true;
             }
-
-            if (!isError) {
-              root = mtProc.getResult();
+            catch (TimeoutException e) {
+              String message = "Processing time limit exceeded for method " + mt.getName() + ", execution abandoned.";
+              DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.ERROR);
+              task.cancel(true);
+              isError = true;
+            }
+            catch (InterruptedException e) {
+              task.cancel(true);
+              Thread.currentThread().interrupt();
+              throw new CancellationException("Processing interrupted");
             }
           }
         }
@@ -109,12 +136,23 @@ public class ClassWrapper {
           }
         }
       }
+      catch (CancellationException e) {
+        // the class is not decompiled at all rather than with stubbed methods
+        throw e;
+      }
       catch (Throwable t) {
         String message = "Method " + mt.getName() + " " + mt.getDescriptor() + " couldn't be decompiled.";
         DecompilerContext.getLogger().writeMessage(message, IFernflowerLogger.Severity.WARN, t);
         isError = true;
       }
 
+      if (methodStats != null) {
+        if (isError) {
+          methodStats.setFailed();
+        }
+        processingStats.methodProcessed(DecompilerContext.getClassStats(), methodStats);
+      }
+
       MethodWrapper methodWrapper = new MethodWrapper(root, varProc, mt, counter);
       methodWrapper.decompiledWithErrors = isError;
 
@@ -183,11 +221,6 @@ public class ClassWrapper {
     }
   }
 
-  @SuppressWarnings("deprecation")
-  private static void killThread(Thread thread) {
-    thread.stop();
-  }
-
   public MethodWrapper getMethodWrapper(String name, String descriptor) {
     return methods.getWithKey(InterpreterUtil.makeUniqueKey(name, descriptor));
   }
@@ -2,6 +2,8 @@
 package com.apkide.java.decompiler.main.rels;
 
 import com.apkide.java.decompiler.main.collectors.CounterContainer;
+import com.apkide.java.decompiler.main.collectors.MethodStats;
+import com.apkide.java.decompiler.main.collectors.ProcessingPhase;
 import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.modules.decompiler.ClearStructHelper;
@@ -34,61 +36,71 @@ import com.apkide.java.decompiler.modules.decompiler.stats.RootStatement;
 import com.apkide.java.decompiler.modules.decompiler.vars.VarProcessor;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
-public class MethodProcessorRunnable implements Runnable {
-  public final Object lock = new Object();
-
+public class MethodProcessorRunnable implements Callable<RootStatement> {
   private final StructClass klass;
   private final StructMethod method;
   private final MethodDescriptor methodDescriptor;
   private final VarProcessor varProc;
-  private final DecompilerContext parentContext;
-
-  private volatile RootStatement root;
-  private volatile Throwable error;
-  private volatile boolean finished = false;
+  private final DecompilerContext context;
+  private final long deadline;
+  private final MethodStats stats;
 
   public MethodProcessorRunnable(StructClass klass,
                                  StructMethod method,
                                  MethodDescriptor methodDescriptor,
                                  VarProcessor varProc,
-                                 DecompilerContext parentContext) {
+                                 DecompilerContext context,
+                                 long deadline,
+                                 MethodStats stats) {
     this.klass = klass;
     this.method = method;
     this.methodDescriptor = methodDescriptor;
     this.varProc = varProc;
-    this.parentContext = parentContext;
+    this.context = context;
+    this.deadline = deadline;
+    this.stats = stats;
   }
 
   @Override
-  public void run() {
-    error = null;
-    root = null;
-
+  public RootStatement call() throws IOException {
     try {
-      DecompilerContext.setCurrentContext(parentContext);
-      root = codeToJava(klass, method, methodDescriptor, varProc);
-    }
-    catch (Throwable t) {
-      error = t;
+      DecompilerContext.setCurrentContext(context);
+      DecompilerContext.setMethodDeadline(deadline);
+      DecompilerContext.setMethodStats(stats);
+      return codeToJava(klass, method, methodDescriptor, varProc);
     }
     finally {
+      DecompilerContext.setMethodDeadline(0);
+      DecompilerContext.setMethodStats(null);
       DecompilerContext.setCurrentContext(null);
     }
+  }
 
-    finished = true;
-    synchronized (lock) {
-      lock.notifyAll();
+  public static RootStatement codeToJava(StructClass cl, StructMethod mt, MethodDescriptor md, VarProcessor varProc) throws IOException {
+    MethodStats stats = DecompilerContext.getMethodStats();
+    try {
+      return processCode(cl, mt, md, varProc, stats);
+    }
+    finally {
+      stats.endPhase();
     }
   }
 
-  public static RootStatement codeToJava(StructClass cl, StructMethod mt, MethodDescriptor md, VarProcessor varProc) throws IOException {
+  private static RootStatement processCode(StructClass cl,
+                                           StructMethod mt,
+                                           MethodDescriptor md,
+                                           VarProcessor varProc,
+                                           MethodStats stats) throws IOException {
     boolean isInitializer = CodeConstants.CLINIT_NAME.equals(mt.getName()); // for now static initializer only
 
+    stats.startPhase(ProcessingPhase.CFG);
     mt.expandData(cl);
     InstructionSequence seq = mt.getInstructionSequence();
     ControlFlowGraph graph = new ControlFlowGraph(seq);
 
+    stats.startPhase(ProcessingPhase.DEAD_CODE);
     DeadCodeHelper.removeDeadBlocks(graph);
 
     //
@@ -100,7 +112,9 @@ public class MethodProcessorRunnable implements Runnable {
     // call to inlineJsr() is only meaningful for class files prior to the Java 7.
     //
     if (!cl.isVersion7()) {
+      stats.startPhase(ProcessingPhase.CFG);
       graph.inlineJsr(cl, mt);
+      stats.startPhase(ProcessingPhase.DEAD_CODE);
     }
 
     // TODO: move to the start, before jsr inlining
@@ -141,13 +155,24 @@ public class MethodProcessorRunnable implements Runnable {
       ExceptionDeobfuscator.insertDummyExceptionHandlerBlocks(graph, mt.getBytecodeVersion());
     }
 
+    DecompilerContext.checkMethodDeadline();
+
+    stats.startPhase(ProcessingPhase.DOM);
     RootStatement root = DomHelper.parseGraph(graph);
 
     FinallyProcessor fProc = new FinallyProcessor(md, varProc);
-    while (fProc.iterateGraph(cl, mt, root, graph)) {
+    while (true) {
+      stats.startPhase(ProcessingPhase.FINALLY);
+      if (!fProc.iterateGraph(cl, mt, root, graph)) {
+        break;
+      }
+      DecompilerContext.checkMethodDeadline();
+      stats.startPhase(ProcessingPhase.DOM);
       root = DomHelper.parseGraph(graph);
     }
 
+    stats.startPhase(ProcessingPhase.STRUCTURE);
+
     // remove synchronized exception handler
     // not until now because of comparison between synchronized statements in the finally cycle
     DomHelper.removeSynchronizedHandler(root);
@@ -158,23 +183,32 @@ public class MethodProcessorRunnable implements Runnable {
 
     ClearStructHelper.clearStatements(root);
 
+    stats.startPhase(ProcessingPhase.EXPR);
     ExprProcessor proc = new ExprProcessor(md, varProc);
     proc.processStatement(root, cl);
 
+    stats.startPhase(ProcessingPhase.STRUCTURE);
     SequenceHelper.condenseSequences(root);
 
     StackVarsProcessor stackProc = new StackVarsProcessor();
 
     do {
+      DecompilerContext.checkMethodDeadline();
+      stats.startPhase(ProcessingPhase.STACK_VARS);
       stackProc.simplifyStackVars(root, mt, cl);
+      stats.startPhase(ProcessingPhase.SSA);
       varProc.setVarVersions(root);
+      stats.startPhase(ProcessingPhase.STACK_VARS);
     }
     while (new PPandMMHelper().findPPandMM(root));
 
+    stats.startPhase(ProcessingPhase.STRUCTURE);
     while (true) {
+      DecompilerContext.checkMethodDeadline();
       LabelHelper.cleanUpEdges(root);
 
       do {
+        DecompilerContext.checkMethodDeadline();
         MergeHelper.enhanceLoops(root);
       }
       while (LoopExtractHelper.extractLoops(root) || IfHelper.mergeAllIfs(root));
@@ -182,8 +216,11 @@ public class MethodProcessorRunnable implements Runnable {
       if (DecompilerContext.getOption(IFernflowerPreferences.IDEA_NOT_NULL_ANNOTATION)) {
         if (IdeaNotNullHelper.removeHardcodedChecks(root, mt)) {
           SequenceHelper.condenseSequences(root);
+          stats.startPhase(ProcessingPhase.STACK_VARS);
           stackProc.simplifyStackVars(root, mt, cl);
+          stats.startPhase(ProcessingPhase.SSA);
           varProc.setVarVersions(root);
+          stats.startPhase(ProcessingPhase.STRUCTURE);
         }
       }
 
@@ -221,14 +258,4 @@ public class MethodProcessorRunnable implements Runnable {
 
     return root;
   }
-
-  public RootStatement getResult() throws Throwable {
-    Throwable t = error;
-    if (t != null) throw t;
-    return root;
-  }
-
-  public boolean isFinished() {
-    return finished;
-  }
 }
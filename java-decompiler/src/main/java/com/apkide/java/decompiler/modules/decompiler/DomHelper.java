@@ -368,6 +368,7 @@ public final class DomHelper {
           boolean forceall = i != 0;
 
           while (true) {
+            DecompilerContext.checkMethodDeadline();
 
             if (findSimpleStatements(general, mapExtPost)) {
               reducibility = 0;
@@ -489,6 +490,7 @@ public final class DomHelper {
         HashSet<Statement> setHandlers = new HashSet<>();
         setHandlers.add(head);
         while (true) {
+          DecompilerContext.checkMethodDeadline();
 
           boolean hdfound = false;
           for (Statement handler : setHandlers) {
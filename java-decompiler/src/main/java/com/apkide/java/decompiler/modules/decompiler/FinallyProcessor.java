@@ -62,6 +62,7 @@ public class FinallyProcessor {
     stack.add(root);
 
     while (!stack.isEmpty()) {
+      DecompilerContext.checkMethodDeadline();
       Statement stat = stack.removeLast();
 
       Statement parent = stat.getParent();
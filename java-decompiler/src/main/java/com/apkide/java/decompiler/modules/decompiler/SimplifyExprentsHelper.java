@@ -14,7 +14,7 @@ import com.apkide.java.decompiler.modules.decompiler.exps.NewExprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.VarExprent;
 import com.apkide.java.decompiler.struct.StructClass;
 import com.apkide.java.decompiler.struct.gen.VarType;
-import com.apkide.java.decompiler.util.FastSparseSetFactory;
+import com.apkide.java.decompiler.util.FastIntSparseSet;
 import com.apkide.java.decompiler.util.InterpreterUtil;
 import com.apkide.java.decompiler.code.CodeConstants;
 import com.apkide.java.decompiler.main.ClassesProcessor.ClassNode;
@@ -678,7 +678,7 @@ public class SimplifyExprentsHelper {
               if (ifVar.getIndex() == elseVar.getIndex() && ifVar.isStack()) { // ifVar.getIndex() >= VarExprent.STACK_BASE) {
                 boolean found = false;
 
-                for (Entry<VarVersionPair, FastSparseSetFactory.FastSparseSet<Integer>> ent : ssa.getPhi().entrySet()) {
+                for (Entry<VarVersionPair, FastIntSparseSet> ent : ssa.getPhi().entrySet()) {
                   if (ent.getKey().var == ifVar.getIndex()) {
                     if (ent.getValue().contains(ifVar.getVersion()) && ent.getValue().contains(elseVar.getVersion())) {
                       found = true;
@@ -9,7 +9,7 @@ import com.apkide.java.decompiler.modules.decompiler.exps.VarExprent;
 import com.apkide.java.decompiler.modules.decompiler.vars.VarVersionNode;
 import com.apkide.java.decompiler.struct.StructClass;
 import com.apkide.java.decompiler.struct.StructMethod;
-import com.apkide.java.decompiler.util.FastSparseSetFactory;
+import com.apkide.java.decompiler.util.FastIntSparseSet;
 import com.apkide.java.decompiler.util.SFormsFastMapDirect;
 import com.apkide.java.decompiler.code.CodeConstants;
 import com.apkide.java.decompiler.modules.decompiler.sforms.DirectGraph;
@@ -217,8 +217,8 @@ public class StackVarsProcessor {
     for (VarVersionPair varpaar : setVars) {
       VarVersionNode node = ssau.getSsuversions().nodes.getWithKey(varpaar);
 
-      for (Iterator<Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>>> itent = node.live.entryList().iterator(); itent.hasNext(); ) {
-        Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>> ent = itent.next();
+      for (Iterator<Entry<Integer, FastIntSparseSet>> itent = node.live.entryList().iterator(); itent.hasNext(); ) {
+        Entry<Integer, FastIntSparseSet> ent = itent.next();
 
         Integer key = ent.getKey();
 
@@ -226,7 +226,7 @@ public class StackVarsProcessor {
           itent.remove();
         }
         else {
-          FastSparseSetFactory.FastSparseSet<Integer> set = ent.getValue();
+          FastIntSparseSet set = ent.getValue();
 
           set.complement(livemap.get(key));
           if (set.isEmpty()) {
@@ -607,7 +607,7 @@ public class StackVarsProcessor {
     }
 
     for (Entry<Integer, Set<VarVersionPair>> ent : mapVars.entrySet()) {
-      FastSparseSetFactory.FastSparseSet<Integer> liveverset = mapLiveVars.get(ent.getKey());
+      FastIntSparseSet liveverset = mapLiveVars.get(ent.getKey());
       if (liveverset == null) {
         return false;
       }
@@ -619,8 +619,8 @@ public class StackVarsProcessor {
 
       boolean isdom = false;
 
-      for (Integer livever : liveverset) {
-        VarVersionNode node = ssuversions.nodes.getWithKey(new VarVersionPair(ent.getKey().intValue(), livever.intValue()));
+      for (int livever = liveverset.first(); livever >= 0; livever = liveverset.nextElement(livever + 1)) {
+        VarVersionNode node = ssuversions.nodes.getWithKey(new VarVersionPair(ent.getKey().intValue(), livever));
 
         if (ssuversions.isDominatorSet(node, domset)) {
           isdom = true;
@@ -651,8 +651,9 @@ public class StackVarsProcessor {
         if (leftvar.var != varindex) {
           if (mapLiveVars.containsKey(varindex)) {
             Set<VarVersionPair> verset = new HashSet<>();
-            for (Integer vers : mapLiveVars.get(varindex)) {
-              verset.add(new VarVersionPair(varindex, vers.intValue()));
+            FastIntSparseSet liveVersions = mapLiveVars.get(varindex);
+            for (int vers = liveVersions.first(); vers >= 0; vers = liveVersions.nextElement(vers + 1)) {
+              verset.add(new VarVersionPair(varindex, vers));
             }
             map.put(varindex, verset);
           }
@@ -669,8 +670,9 @@ public class StackVarsProcessor {
           int varindex = ssau.getMapFieldVars().get(expr.id);
           if (mapLiveVars.containsKey(varindex)) {
             Set<VarVersionPair> verset = new HashSet<>();
-            for (Integer vers : mapLiveVars.get(varindex)) {
-              verset.add(new VarVersionPair(varindex, vers.intValue()));
+            FastIntSparseSet liveVersions = mapLiveVars.get(varindex);
+            for (int vers = liveVersions.first(); vers >= 0; vers = liveVersions.nextElement(vers + 1)) {
+              verset.add(new VarVersionPair(varindex, vers));
             }
             map.put(varindex, verset);
           }
@@ -1,13 +1,15 @@
 // Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
 package com.apkide.java.decompiler.modules.decompiler.sforms;
 
+import com.apkide.java.decompiler.main.DecompilerContext;
 import com.apkide.java.decompiler.modules.decompiler.exps.AssignmentExprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.Exprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.FunctionExprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.VarExprent;
 import com.apkide.java.decompiler.struct.StructMethod;
 import com.apkide.java.decompiler.struct.gen.MethodDescriptor;
-import com.apkide.java.decompiler.util.FastSparseSetFactory;
+import com.apkide.java.decompiler.util.FastIntSparseSet;
+import com.apkide.java.decompiler.util.IntIntHashMap;
 import com.apkide.java.decompiler.util.SFormsFastMapDirect;
 import com.apkide.java.decompiler.code.CodeConstants;
 import com.apkide.java.decompiler.modules.decompiler.sforms.FlattenStatementsHelper.FinallyPathWrapper;
@@ -39,13 +41,10 @@ public class SSAConstructorSparseEx {
   private final HashMap<String, SFormsFastMapDirect> extraVarVersions = new HashMap<>();
 
   // (var, version), version
-  private final HashMap<VarVersionPair, FastSparseSetFactory.FastSparseSet<Integer>> phi = new HashMap<>();
+  private final HashMap<VarVersionPair, FastIntSparseSet> phi = new HashMap<>();
 
   // var, version
-  private final HashMap<Integer, Integer> lastversion = new HashMap<>();
-
-  // set factory
-  private FastSparseSetFactory<Integer> factory;
+  private final IntIntHashMap lastversion = new IntIntHashMap();
 
   public void splitVariables(RootStatement root, StructMethod mt) {
 
@@ -56,12 +55,6 @@ public class SSAConstructorSparseEx {
     // DotExporter.toDotFile(dgraph, new File("c:\\Temp\\gr12_my.dot"));
     // } catch(Exception ex) {ex.printStackTrace();}
 
-    HashSet<Integer> setInit = new HashSet<>();
-    for (int i = 0; i < 64; i++) {
-      setInit.add(i);
-    }
-    factory = new FastSparseSetFactory<>(setInit);
-
     SFormsFastMapDirect firstmap = createFirstMap(mt);
     extraVarVersions.put(dgraph.first.id, firstmap);
 
@@ -83,6 +76,7 @@ public class SSAConstructorSparseEx {
     // } catch(Exception ex) {ex.printStackTrace();}
 
     for (DirectNode node : dgraph.nodes) {
+      DecompilerContext.checkMethodDeadline();
 
       //			if (node.id.endsWith("_inc")) {
       //				System.out.println();
@@ -218,11 +212,11 @@ public class SSAConstructorSparseEx {
 
     if (varassign != null) {
 
-      Integer varindex = varassign.getIndex();
+      int varindex = varassign.getIndex();
 
       if (varassign.getVersion() == 0) {
         // get next version
-        Integer nextver = getNextFreeVersion(varindex);
+        int nextver = getNextFreeVersion(varindex);
 
         // set version
         varassign.setVersion(nextver);
@@ -236,17 +230,16 @@ public class SSAConstructorSparseEx {
     else if (expr.type == Exprent.EXPRENT_VAR) {
 
       VarExprent vardest = (VarExprent)expr;
-      Integer varindex = vardest.getIndex();
-      FastSparseSetFactory.FastSparseSet<Integer> vers = varmap.get(varindex);
+      int varindex = vardest.getIndex();
+      FastIntSparseSet vers = varmap.get(varindex);
 
       int cardinality = vers.getCardinality();
       if (cardinality == 1) { // == 1
         // set version
-        Integer it = vers.iterator().next();
-        vardest.setVersion(it);
+        vardest.setVersion(vers.first());
       }
       else if (cardinality == 2) { // size > 1
-        Integer current_vers = vardest.getVersion();
+        int current_vers = vardest.getVersion();
 
         VarVersionPair currpaar = new VarVersionPair(varindex, current_vers);
         if (current_vers != 0 && phi.containsKey(currpaar)) {
@@ -256,7 +249,7 @@ public class SSAConstructorSparseEx {
         }
         else {
           // increase version
-          Integer nextver = getNextFreeVersion(varindex);
+          int nextver = getNextFreeVersion(varindex);
           // set version
           vardest.setVersion(nextver);
 
@@ -268,14 +261,8 @@ public class SSAConstructorSparseEx {
     }
   }
 
-  private Integer getNextFreeVersion(Integer var) {
-    Integer nextver = lastversion.get(var);
-    if (nextver == null) {
-      nextver = 1;
-    }
-    else {
-      nextver++;
-    }
+  private int getNextFreeVersion(int var) {
+    int nextver = lastversion.get(var, 0) + 1;
     lastversion.put(var, nextver);
     return nextver;
   }
@@ -421,7 +408,7 @@ public class SSAConstructorSparseEx {
       return false;
     }
 
-    for (Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>> ent2 : map2.entryList()) {
+    for (Entry<Integer, FastIntSparseSet> ent2 : map2.entryList()) {
       if (!Objects.equals(map1.get(ent2.getKey()), ent2.getValue())) {
         return false;
       }
@@ -430,10 +417,8 @@ public class SSAConstructorSparseEx {
     return true;
   }
 
-  private void setCurrentVar(SFormsFastMapDirect varmap, Integer var, Integer vers) {
-    FastSparseSetFactory.FastSparseSet<Integer> set = factory.spawnEmptySet();
-    set.add(vers);
-    varmap.put(var, set);
+  private static void setCurrentVar(SFormsFastMapDirect varmap, int var, int vers) {
+    varmap.put(var, FastIntSparseSet.of(vers));
   }
 
   private void setCatchMaps(Statement stat, DirectGraph dgraph, FlattenStatementsHelper flatthelper) {
@@ -480,9 +465,7 @@ public class SSAConstructorSparseEx {
     for (int i = 0; i < paramcount; i++) {
       int version = getNextFreeVersion(varindex); // == 1
 
-      FastSparseSetFactory.FastSparseSet<Integer> set = factory.spawnEmptySet();
-      set.add(version);
-      map.put(varindex, set);
+      map.put(varindex, FastIntSparseSet.of(version));
 
       if (thisvar) {
         if (i == 0) {
@@ -500,7 +483,7 @@ public class SSAConstructorSparseEx {
     return map;
   }
 
-  public HashMap<VarVersionPair, FastSparseSetFactory.FastSparseSet<Integer>> getPhi() {
+  public HashMap<VarVersionPair, FastIntSparseSet> getPhi() {
     return phi;
   }
 }
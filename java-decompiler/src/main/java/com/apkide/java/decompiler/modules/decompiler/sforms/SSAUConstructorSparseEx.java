@@ -1,6 +1,7 @@
 // Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
 package com.apkide.java.decompiler.modules.decompiler.sforms;
 
+import com.apkide.java.decompiler.main.DecompilerContext;
 import com.apkide.java.decompiler.modules.decompiler.exps.AssignmentExprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.Exprent;
 import com.apkide.java.decompiler.modules.decompiler.exps.FunctionExprent;
@@ -9,7 +10,8 @@ import com.apkide.java.decompiler.modules.decompiler.exps.VarExprent;
 import com.apkide.java.decompiler.modules.decompiler.vars.VarVersionNode;
 import com.apkide.java.decompiler.struct.StructMethod;
 import com.apkide.java.decompiler.struct.gen.MethodDescriptor;
-import com.apkide.java.decompiler.util.FastSparseSetFactory;
+import com.apkide.java.decompiler.util.FastIntSparseSet;
+import com.apkide.java.decompiler.util.IntIntHashMap;
 import com.apkide.java.decompiler.util.SFormsFastMapDirect;
 import com.apkide.java.decompiler.util.VBStyleCollection;
 import com.apkide.java.decompiler.code.CodeConstants;
@@ -50,7 +52,7 @@ public class SSAUConstructorSparseEx {
   //private HashMap<String, HashMap<Integer, FastSet<Integer>>> extraVarVersions = new HashMap<String, HashMap<Integer, FastSet<Integer>>>();
 
   // var, version
-  private final HashMap<Integer, Integer> lastversion = new HashMap<>();
+  private final IntIntHashMap lastversion = new IntIntHashMap();
 
   // version, protected ranges (catch, finally)
   private final HashMap<VarVersionPair, Integer> mapVersionFirstRange = new HashMap<>();
@@ -71,20 +73,11 @@ public class SSAUConstructorSparseEx {
   // field access counter
   private int fieldvarcounter = -1;
 
-  // set factory
-  private FastSparseSetFactory<Integer> factory;
-
   public void splitVariables(RootStatement root, StructMethod mt) {
 
     FlattenStatementsHelper flatthelper = new FlattenStatementsHelper();
     DirectGraph dgraph = flatthelper.buildDirectGraph(root);
 
-    HashSet<Integer> setInit = new HashSet<>();
-    for (int i = 0; i < 64; i++) {
-      setInit.add(i);
-    }
-    factory = new FastSparseSetFactory<>(setInit);
-
     extraVarVersions.put(dgraph.first.id, createFirstMap(mt, root));
 
     setCatchMaps(root, dgraph, flatthelper);
@@ -110,6 +103,7 @@ public class SSAUConstructorSparseEx {
   private void ssaStatements(DirectGraph dgraph, HashSet<String> updated, boolean calcLiveVars) {
 
     for (DirectNode node : dgraph.nodes) {
+      DecompilerContext.checkMethodDeadline();
 
       updated.remove(node.id);
       mergeInVarMaps(node, dgraph);
@@ -287,11 +281,11 @@ public class SSAUConstructorSparseEx {
 
     if (varassign != null) {
 
-      Integer varindex = varassign.getIndex();
+      int varindex = varassign.getIndex();
 
       if (varassign.getVersion() == 0) {
         // get next version
-        Integer nextver = getNextFreeVersion(varindex, stat);
+        int nextver = getNextFreeVersion(varindex, stat);
 
         // set version
         varassign.setVersion(nextver);
@@ -303,7 +297,7 @@ public class SSAUConstructorSparseEx {
       }
       else {
         if (calcLiveVars) {
-          varMapToGraph(new VarVersionPair(varindex.intValue(), varassign.getVersion()), varmap);
+          varMapToGraph(new VarVersionPair(varindex, varassign.getVersion()), varmap);
         }
         setCurrentVar(varmap, varindex, varassign.getVersion());
       }
@@ -319,21 +313,21 @@ public class SSAUConstructorSparseEx {
 
           if (func.getLstOperands().get(0).type == Exprent.EXPRENT_VAR) {
             VarExprent var = (VarExprent)func.getLstOperands().get(0);
-            Integer varindex = var.getIndex();
-            VarVersionPair varpaar = new VarVersionPair(varindex.intValue(), var.getVersion());
+            int varindex = var.getIndex();
+            VarVersionPair varpaar = new VarVersionPair(varindex, var.getVersion());
 
             // ssu graph
             VarVersionPair phantomver = phantomppnodes.get(varpaar);
             if (phantomver == null) {
               // get next version
-              Integer nextver = getNextFreeVersion(varindex, null);
+              int nextver = getNextFreeVersion(varindex, null);
               phantomver = new VarVersionPair(varindex, nextver);
               //ssuversions.createOrGetNode(phantomver);
               ssuversions.createNode(phantomver);
 
               VarVersionNode vernode = ssuversions.nodes.getWithKey(varpaar);
 
-              FastSparseSetFactory.FastSparseSet<Integer> vers = factory.spawnEmptySet();
+              FastIntSparseSet vers = new FastIntSparseSet();
               if (vernode.predecessors.size() == 1) {
                 vers.add(vernode.predecessors.iterator().next().source.version);
               }
@@ -357,10 +351,10 @@ public class SSAUConstructorSparseEx {
 
       VarExprent vardest = (VarExprent)expr;
 
-      Integer varindex = vardest.getIndex();
-      Integer current_vers = vardest.getVersion();
+      int varindex = vardest.getIndex();
+      int current_vers = vardest.getVersion();
 
-      FastSparseSetFactory.FastSparseSet<Integer> vers = varmap.get(varindex);
+      FastIntSparseSet vers = varmap.get(varindex);
 
       int cardinality = vers.getCardinality();
       if (cardinality == 1) { // size == 1
@@ -372,14 +366,14 @@ public class SSAUConstructorSparseEx {
         }
         else {
           // split last version
-          Integer usever = getNextFreeVersion(varindex, stat);
+          int usever = getNextFreeVersion(varindex, stat);
 
           // set version
           vardest.setVersion(usever);
           setCurrentVar(varmap, varindex, usever);
 
           // ssu graph
-          Integer lastver = vers.iterator().next();
+          int lastver = vers.first();
           VarVersionNode prenode = ssuversions.nodes.getWithKey(new VarVersionPair(varindex, lastver));
           VarVersionNode usenode = ssuversions.createNode(new VarVersionPair(varindex, usever));
           VarVersionEdge edge = new VarVersionEdge(VarVersionEdge.EDGE_GENERAL, prenode, usenode);
@@ -397,7 +391,7 @@ public class SSAUConstructorSparseEx {
         }
         else {
           // split version
-          Integer usever = getNextFreeVersion(varindex, stat);
+          int usever = getNextFreeVersion(varindex, stat);
           // set version
           vardest.setVersion(usever);
 
@@ -414,9 +408,9 @@ public class SSAUConstructorSparseEx {
     }
   }
 
-  private void createOrUpdatePhiNode(VarVersionPair phivar, FastSparseSetFactory.FastSparseSet<Integer> vers, Statement stat) {
+  private void createOrUpdatePhiNode(VarVersionPair phivar, FastIntSparseSet vers, Statement stat) {
 
-    FastSparseSetFactory.FastSparseSet<Integer> versCopy = vers.getCopy();
+    FastIntSparseSet versCopy = vers.getCopy();
     HashSet<Integer> phiVers = new HashSet<>();
 
     // take into account the corresponding mm/pp node if existing
@@ -448,16 +442,16 @@ public class SSAUConstructorSparseEx {
     List<VarVersionNode> colnodes = new ArrayList<>();
     List<VarVersionPair> colpaars = new ArrayList<>();
 
-    for (Integer ver : versCopy) {
+    for (int ver = versCopy.first(); ver >= 0; ver = versCopy.nextElement(ver + 1)) {
 
-      VarVersionNode prenode = ssuversions.nodes.getWithKey(new VarVersionPair(phivar.var, ver.intValue()));
+      VarVersionNode prenode = ssuversions.nodes.getWithKey(new VarVersionPair(phivar.var, ver));
 
-      Integer tempver = getNextFreeVersion(phivar.var, stat);
+      int tempver = getNextFreeVersion(phivar.var, stat);
 
       VarVersionNode tempnode = new VarVersionNode(phivar.var, tempver);
 
       colnodes.add(tempnode);
-      colpaars.add(new VarVersionPair(phivar.var, tempver.intValue()));
+      colpaars.add(new VarVersionPair(phivar.var, tempver));
 
       VarVersionEdge edge = new VarVersionEdge(VarVersionEdge.EDGE_GENERAL, prenode, tempnode);
 
@@ -484,16 +478,9 @@ public class SSAUConstructorSparseEx {
     node.live = new SFormsFastMapDirect(varmap);
   }
 
-  private Integer getNextFreeVersion(Integer var, Statement stat) {
-
-    Integer nextver = lastversion.get(var);
+  private int getNextFreeVersion(int var, Statement stat) {
 
-    if (nextver == null) {
-      nextver = 1;
-    }
-    else {
-      nextver++;
-    }
+    int nextver = lastversion.get(var, 0) + 1;
     lastversion.put(var, nextver);
 
     // save the first protected range, containing current statement
@@ -629,12 +616,13 @@ public class SSAUConstructorSparseEx {
           SFormsFastMapDirect mapExitVar = mapNew.getCopy();
           mapExitVar.complement(mapTrueSource);
 
-          for (Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>> ent : mapExitVar.entryList()) {
-            for (Integer version : ent.getValue()) {
+          for (Entry<Integer, FastIntSparseSet> ent : mapExitVar.entryList()) {
+            FastIntSparseSet exitVersions = ent.getValue();
+            for (int version = exitVersions.first(); version >= 0; version = exitVersions.nextElement(version + 1)) {
 
-              Integer varindex = ent.getKey();
+              int varindex = ent.getKey();
               VarVersionPair exitvar = new VarVersionPair(varindex, version);
-              FastSparseSetFactory.FastSparseSet<Integer> newSet = mapNew.get(varindex);
+              FastIntSparseSet newSet = mapNew.get(varindex);
 
               // remove the actual exit version
               newSet.remove(version);
@@ -642,8 +630,8 @@ public class SSAUConstructorSparseEx {
               // get or create phantom version
               VarVersionPair phantomvar = mapPhantom.get(exitvar);
               if (phantomvar == null) {
-                Integer newversion = getNextFreeVersion(exitvar.var, null);
-                phantomvar = new VarVersionPair(exitvar.var, newversion.intValue());
+                int newversion = getNextFreeVersion(exitvar.var, null);
+                phantomvar = new VarVersionPair(exitvar.var, newversion);
 
                 VarVersionNode exitnode = ssuversions.nodes.getWithKey(exitvar);
                 VarVersionNode phantomnode = ssuversions.createNode(phantomvar);
@@ -693,7 +681,7 @@ public class SSAUConstructorSparseEx {
       return false;
     }
 
-    for (Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>> ent2 : map2.entryList()) {
+    for (Entry<Integer, FastIntSparseSet> ent2 : map2.entryList()) {
       if (!Objects.equals(map1.get(ent2.getKey()), ent2.getValue())) {
         return false;
       }
@@ -703,10 +691,8 @@ public class SSAUConstructorSparseEx {
   }
 
 
-  private void setCurrentVar(SFormsFastMapDirect varmap, Integer var, Integer vers) {
-    FastSparseSetFactory.FastSparseSet<Integer> set = factory.spawnEmptySet();
-    set.add(vers);
-    varmap.put(var, set);
+  private static void setCurrentVar(SFormsFastMapDirect varmap, int var, int vers) {
+    varmap.put(var, FastIntSparseSet.of(vers));
   }
 
   private void setCatchMaps(Statement stat, DirectGraph dgraph, FlattenStatementsHelper flatthelper) {
@@ -755,9 +741,7 @@ public class SSAUConstructorSparseEx {
     for (int i = 0; i < paramcount; i++) {
       int version = getNextFreeVersion(varindex, root); // == 1
 
-      FastSparseSetFactory.FastSparseSet<Integer> set = factory.spawnEmptySet();
-      set.add(version);
-      map.put(varindex, set);
+      map.put(varindex, FastIntSparseSet.of(version));
       ssuversions.createNode(new VarVersionPair(varindex, version));
 
       if (thisvar) {
@@ -0,0 +1,88 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.modules.decompiler.vars;
+
+import com.apkide.java.decompiler.util.IntIntHashMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Map of var-version pairs to ints without boxing. The versions of a variable are numbered densely from 1, so the
+ * values of a variable are kept in an array indexed by version. Pairs with negative or very large versions go to
+ * a plain {@link VarVersionPair} map instead. {@link Integer#MIN_VALUE} is reserved and can't be stored.
+ */
+final class VarVersionIntMap {
+  private static final int MAX_DENSE_VERSION = 1 << 16;
+  private static final int ABSENT = Integer.MIN_VALUE;
+  private static final int[] EMPTY_VALUES = new int[0];
+
+  // var -> index into values
+  private final IntIntHashMap varSlots = new IntIntHashMap();
+  private int[][] values = new int[8][];
+  private Map<VarVersionPair, Integer> fallback;
+  private int size;
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int get(int var, int version, int defaultValue) {
+    if (version < 0 || version >= MAX_DENSE_VERSION) {
+      Integer value = fallback != null ? fallback.get(new VarVersionPair(var, version)) : null;
+      return value != null ? value : defaultValue;
+    }
+
+    int slot = varSlots.get(var, -1);
+    if (slot < 0) {
+      return defaultValue;
+    }
+
+    int[] versions = values[slot];
+    int value = version < versions.length ? versions[version] : ABSENT;
+    return value != ABSENT ? value : defaultValue;
+  }
+
+  public void put(int var, int version, int value) {
+    if (value == ABSENT) {
+      throw new IllegalArgumentException("Reserved value");
+    }
+
+    if (version < 0 || version >= MAX_DENSE_VERSION) {
+      if (fallback == null) {
+        fallback = new HashMap<>();
+      }
+      if (fallback.put(new VarVersionPair(var, version), value) == null) {
+        size++;
+      }
+      return;
+    }
+
+    int slot = varSlots.get(var, -1);
+    if (slot < 0) {
+      slot = varSlots.size();
+      varSlots.put(var, slot);
+      if (slot == values.length) {
+        values = Arrays.copyOf(values, slot * 2);
+      }
+      values[slot] = EMPTY_VALUES;
+    }
+
+    int[] versions = values[slot];
+    if (version >= versions.length) {
+      int length = Math.max(version + 1, versions.length * 2);
+      versions = Arrays.copyOf(versions, length);
+      Arrays.fill(versions, values[slot].length, length, ABSENT);
+      values[slot] = versions;
+    }
+
+    if (versions[version] == ABSENT) {
+      size++;
+    }
+    versions[version] = value;
+  }
+}
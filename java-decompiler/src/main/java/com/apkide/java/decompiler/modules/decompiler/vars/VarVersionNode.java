@@ -18,6 +18,8 @@ public class VarVersionNode implements IGraphNode {
   public final Set<VarVersionEdge> successors = new HashSet<>();
 
   public int flags;
+  // position in the nodes of the graph when the dominators were calculated
+  int index = -1;
   public SFormsFastMapDirect live = new SFormsFastMapDirect();
 
   public VarVersionNode(int var, int version) {
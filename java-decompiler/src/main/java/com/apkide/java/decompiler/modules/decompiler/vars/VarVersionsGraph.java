@@ -1,24 +1,27 @@
 // Copyright 2000-2021 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.apkide.java.decompiler.modules.decompiler.vars;
 
-import com.apkide.java.decompiler.modules.decompiler.decompose.GenericDominatorEngine;
-import com.apkide.java.decompiler.modules.decompiler.decompose.IGraph;
-import com.apkide.java.decompiler.modules.decompiler.decompose.IGraphNode;
 import com.apkide.java.decompiler.util.VBStyleCollection;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 public class VarVersionsGraph {
   public final VBStyleCollection<VarVersionNode, VarVersionPair> nodes = new VBStyleCollection<>();
 
-  private GenericDominatorEngine engine;
+  // nodes reachable from the roots in reverse post order, with the position of each node by index and the
+  // immediate dominator of each by position
+  private VarVersionNode[] order;
+  private int[] positions;
+  private int[] idoms;
 
   public VarVersionNode createNode(VarVersionPair ver) {
     VarVersionNode node;
@@ -32,7 +35,7 @@ public class VarVersionsGraph {
 
   public boolean isDominatorSet(VarVersionNode node, Set<VarVersionNode> domnodes) {
     if (domnodes.size() == 1) {
-      return engine.isDominator(node, domnodes.iterator().next());
+      return isDominator(node, domnodes.iterator().next());
     }
     else {
       Set<VarVersionNode> marked = new HashSet<>();
@@ -70,72 +73,152 @@ public class VarVersionsGraph {
   }
 
   public void initDominators() {
-    Set<VarVersionNode> roots = new HashSet<>();
-
-    for (VarVersionNode node : nodes) {
+    int count = nodes.size();
+    List<VarVersionNode> roots = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      VarVersionNode node = nodes.get(i);
+      node.index = i;
       if (node.predecessors.isEmpty()) {
         roots.add(node);
       }
     }
 
-    engine = new GenericDominatorEngine(new IGraph() {
-      @Override
-      public List<? extends IGraphNode> getReversePostOrderList() {
-        return getReversedPostOrder(roots);
-      }
+    order = getReversedPostOrder(roots, count);
 
-      @Override
-      public Set<? extends IGraphNode> getRoots() {
-        return new HashSet<IGraphNode>(roots);
+    positions = new int[count];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i < order.length; i++) {
+      positions[order[i].index] = i;
+    }
+
+    idoms = calcIDoms(order, positions);
+  }
+
+  private boolean isDominator(VarVersionNode node, VarVersionNode dom) {
+    if (node == dom) {
+      return true;
+    }
+
+    int position = node.index >= 0 && node.index < positions.length ? positions[node.index] : -1;
+    if (position < 0) {
+      throw new RuntimeException("Inconsistent idom sequence discovered!");
+    }
+
+    while (order[position] != dom) {
+      int idom = idoms[position];
+      if (idom == position) {
+        return false; // root node or merging point
       }
-    });
+      position = idom;
+    }
 
-    engine.initialize();
+    return true;
   }
 
-  private static List<VarVersionNode> getReversedPostOrder(Collection<VarVersionNode> roots) {
-    List<VarVersionNode> lst = new LinkedList<>();
-    Set<VarVersionNode> setVisited = new HashSet<>();
+  // immediate dominators by position in reverse post order, a node is its own dominator if it is a root
+  // or the merging point of two trees
+  private static int[] calcIDoms(VarVersionNode[] order, int[] positions) {
+    int[] idoms = new int[order.length];
+    Arrays.fill(idoms, -1);
+
+    boolean changed;
+    do {
+      changed = false;
+
+      for (int i = 0; i < order.length; i++) {
+        int idom = -1;
+
+        for (VarVersionEdge edge : order[i].predecessors) {
+          int pred = edge.source.index >= 0 ? positions[edge.source.index] : -1;
+          if (pred >= 0 && idoms[pred] >= 0) {
+            idom = idom < 0 ? pred : getCommonIDom(idom, pred, idoms);
+            if (idom < 0) {
+              break; // no idom found: merging point of two trees
+            }
+          }
+        }
+
+        if (idom < 0) {
+          idom = i;
+        }
 
-    for (VarVersionNode root : roots) {
-      List<VarVersionNode> lstTemp = new LinkedList<>();
-      addToReversePostOrderListIterative(root, lstTemp, setVisited);
-      lst.addAll(lstTemp);
+        if (idoms[i] != idom) {
+          idoms[i] = idom;
+          changed = true;
+        }
+      }
     }
+    while (changed);
+
+    return idoms;
+  }
 
-    return lst;
+  private static int getCommonIDom(int first, int second, int[] idoms) {
+    while (first != second) {
+      if (first > second) {
+        int idom = idoms[first];
+        if (idom == first || idom < 0) {
+          return -1;
+        }
+        first = idom;
+      }
+      else {
+        int idom = idoms[second];
+        if (idom == second || idom < 0) {
+          return -1;
+        }
+        second = idom;
+      }
+    }
+    return first;
   }
 
-  private static void addToReversePostOrderListIterative(VarVersionNode root, List<? super VarVersionNode> lst, Set<? super VarVersionNode> setVisited) {
-    Map<VarVersionNode, List<VarVersionEdge>> mapNodeSuccs = new HashMap<>();
-    LinkedList<VarVersionNode> stackNode = new LinkedList<>();
-    LinkedList<Integer> stackIndex = new LinkedList<>();
+  private static VarVersionNode[] getReversedPostOrder(List<VarVersionNode> roots, int count) {
+    VarVersionNode[] order = new VarVersionNode[count];
+    int size = 0;
+
+    boolean[] visited = new boolean[count];
+    Deque<VarVersionNode> stackNode = new ArrayDeque<>();
+    Deque<Iterator<VarVersionEdge>> stackSuccs = new ArrayDeque<>();
 
-    stackNode.add(root);
-    stackIndex.add(0);
+    for (VarVersionNode root : roots) {
+      int start = size;
 
-    while (!stackNode.isEmpty()) {
-      VarVersionNode node = stackNode.getLast();
-      int index = stackIndex.removeLast();
+      visited[root.index] = true;
+      stackNode.add(root);
+      stackSuccs.add(root.successors.iterator());
 
-      setVisited.add(node);
+      while (!stackNode.isEmpty()) {
+        Iterator<VarVersionEdge> succs = stackSuccs.getLast();
 
-      List<VarVersionEdge> lstSuccs = mapNodeSuccs.computeIfAbsent(node, n -> new ArrayList<>(n.successors));
-      for (; index < lstSuccs.size(); index++) {
-        VarVersionNode succ = lstSuccs.get(index).dest;
+        VarVersionNode next = null;
+        while (succs.hasNext()) {
+          VarVersionNode succ = succs.next().dest;
+          if (!visited[succ.index]) {
+            next = succ;
+            break;
+          }
+        }
 
-        if (!setVisited.contains(succ)) {
-          stackIndex.add(index + 1);
-          stackNode.add(succ);
-          stackIndex.add(0);
-          break;
+        if (next != null) {
+          visited[next.index] = true;
+          stackNode.add(next);
+          stackSuccs.add(next.successors.iterator());
+        }
+        else {
+          order[size++] = stackNode.removeLast();
+          stackSuccs.removeLast();
         }
       }
 
-      if (index == lstSuccs.size()) {
-        lst.add(0, node);
-        stackNode.removeLast();
+      // post order of the tree to reverse post order, the trees stay in the order of their roots
+      for (int i = start, j = size - 1; i < j; i++, j--) {
+        VarVersionNode node = order[i];
+        order[i] = order[j];
+        order[j] = node;
       }
     }
+
+    return Arrays.copyOf(order, size);
   }
 }
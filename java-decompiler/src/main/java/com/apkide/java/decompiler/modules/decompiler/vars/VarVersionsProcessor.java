@@ -13,10 +13,11 @@ import com.apkide.java.decompiler.modules.decompiler.stats.RootStatement;
 import com.apkide.java.decompiler.struct.StructMethod;
 import com.apkide.java.decompiler.struct.gen.MethodDescriptor;
 import com.apkide.java.decompiler.struct.gen.VarType;
-import com.apkide.java.decompiler.util.FastSparseSetFactory;
+import com.apkide.java.decompiler.util.FastIntSparseSet;
 import com.apkide.java.decompiler.code.CodeConstants;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -56,47 +57,22 @@ public class VarVersionsProcessor {
   }
 
   private static void mergePhiVersions(SSAConstructorSparseEx ssa, DirectGraph graph) {
-    // collect phi versions
-    List<Set<VarVersionPair>> lst = new ArrayList<>();
-    for (Entry<VarVersionPair, FastSparseSetFactory.FastSparseSet<Integer>> ent : ssa.getPhi().entrySet()) {
-      Set<VarVersionPair> set = new HashSet<>();
-      set.add(ent.getKey());
-      for (Integer version : ent.getValue()) {
-        set.add(new VarVersionPair(ent.getKey().var, version.intValue()));
-      }
-
-      for (int i = lst.size() - 1; i >= 0; i--) {
-        Set<VarVersionPair> tset = lst.get(i);
-        Set<VarVersionPair> intersection = new HashSet<>(set);
-        intersection.retainAll(tset);
-
-        if (!intersection.isEmpty()) {
-          set.addAll(tset);
-          lst.remove(i);
-        }
-      }
-
-      lst.add(set);
-    }
-
-    Map<VarVersionPair, Integer> phiVersions = new HashMap<>();
-    for (Set<VarVersionPair> set : lst) {
-      int min = Integer.MAX_VALUE;
-      for (VarVersionPair paar : set) {
-        if (paar.version < min) {
-          min = paar.version;
-        }
-      }
-
-      for (VarVersionPair paar : set) {
-        phiVersions.put(new VarVersionPair(paar.var, paar.version), min);
+    // versions joined by phi nodes, directly or through other phi nodes, are merged into the smallest one
+    PhiVersionUnion union = new PhiVersionUnion();
+    for (Entry<VarVersionPair, FastIntSparseSet> ent : ssa.getPhi().entrySet()) {
+      int var = ent.getKey().var;
+      int phi = union.id(var, ent.getKey().version);
+
+      FastIntSparseSet versions = ent.getValue();
+      for (int version = versions.first(); version >= 0; version = versions.nextElement(version + 1)) {
+        union.union(phi, union.id(var, version));
       }
     }
 
-    updateVersions(graph, phiVersions);
+    updateVersions(graph, union.getMergedVersions());
   }
 
-  private static void updateVersions(DirectGraph graph, final Map<VarVersionPair, Integer> versions) {
+  private static void updateVersions(DirectGraph graph, final VarVersionIntMap versions) {
     graph.iterateExprents(exprent -> {
       List<Exprent> lst = exprent.getAllExprents(true);
       lst.add(exprent);
@@ -104,8 +80,8 @@ public class VarVersionsProcessor {
       for (Exprent expr : lst) {
         if (expr.type == Exprent.EXPRENT_VAR) {
           VarExprent var = (VarExprent)expr;
-          Integer version = versions.get(new VarVersionPair(var));
-          if (version != null) {
+          int version = versions.get(var.getIndex(), var.getVersion(), -1);
+          if (version >= 0) {
             var.setVersion(version);
           }
         }
@@ -154,7 +130,7 @@ public class VarVersionsProcessor {
 
     boolean is_method_static = mt.hasModifier(CodeConstants.ACC_STATIC);
 
-    Map<VarVersionPair, Integer> mapMergedVersions = new HashMap<>();
+    VarVersionIntMap mapMergedVersions = new VarVersionIntMap();
 
     for (Entry<Integer, Set<Integer>> ent : mapVarVersions.entrySet()) {
 
@@ -247,7 +223,7 @@ public class VarVersionsProcessor {
               }
 
               mapExprentMaxTypes.put(firstPair, type);
-              mapMergedVersions.put(secondPair, firstPair.version);
+              mapMergedVersions.put(secondPair.var, secondPair.version, firstPair.version);
               mapExprentMaxTypes.remove(secondPair);
               mapExprentMinTypes.remove(secondPair);
 
@@ -279,7 +255,7 @@ public class VarVersionsProcessor {
 
     CounterContainer counters = DecompilerContext.getCounterContainer();
 
-    final Map<VarVersionPair, Integer> mapVarPaar = new HashMap<>();
+    final VarVersionIntMap mapVarPaar = new VarVersionIntMap();
     Map<Integer, Integer> mapOriginalVarIndices = new HashMap<>();
 
     // map var-version pairs on new var indexes
@@ -297,7 +273,7 @@ public class VarVersionsProcessor {
           mapFinalVars.put(newVar, mapFinalVars.remove(pair));
         }
 
-        mapVarPaar.put(pair, newIndex);
+        mapVarPaar.put(pair.var, pair.version, newIndex);
         mapOriginalVarIndices.put(newIndex, pair.var);
       }
     }
@@ -310,8 +286,8 @@ public class VarVersionsProcessor {
       for (Exprent expr : lst) {
         if (expr.type == Exprent.EXPRENT_VAR) {
           VarExprent newVar = (VarExprent)expr;
-          Integer newVarIndex = mapVarPaar.get(new VarVersionPair(newVar));
-          if (newVarIndex != null) {
+          int newVarIndex = mapVarPaar.get(newVar.getIndex(), newVar.getVersion(), -1);
+          if (newVarIndex >= 0) {
             newVar.setIndex(newVarIndex);
             newVar.setVersion(0);
           }
@@ -362,4 +338,59 @@ public class VarVersionsProcessor {
   public Map<Integer, Integer> getMapOriginalVarIndices() {
     return mapOriginalVarIndices;
   }
-}
\ No newline at end of file
+
+  // union-find over the var-version pairs of phi nodes, the root of a set is its smallest version
+  private static final class PhiVersionUnion {
+    private final VarVersionIntMap ids = new VarVersionIntMap();
+    private int[] parent = new int[16];
+    private int[] vars = new int[16];
+    private int[] versions = new int[16];
+    private int count;
+
+    int id(int var, int version) {
+      int id = ids.get(var, version, -1);
+      if (id < 0) {
+        if (count == parent.length) {
+          parent = Arrays.copyOf(parent, count * 2);
+          vars = Arrays.copyOf(vars, count * 2);
+          versions = Arrays.copyOf(versions, count * 2);
+        }
+        id = count++;
+        parent[id] = id;
+        vars[id] = var;
+        versions[id] = version;
+        ids.put(var, version, id);
+      }
+      return id;
+    }
+
+    private int find(int id) {
+      while (parent[id] != id) {
+        parent[id] = parent[parent[id]];
+        id = parent[id];
+      }
+      return id;
+    }
+
+    void union(int first, int second) {
+      int firstRoot = find(first);
+      int secondRoot = find(second);
+      if (firstRoot != secondRoot) {
+        if (versions[firstRoot] <= versions[secondRoot]) {
+          parent[secondRoot] = firstRoot;
+        }
+        else {
+          parent[firstRoot] = secondRoot;
+        }
+      }
+    }
+
+    VarVersionIntMap getMergedVersions() {
+      VarVersionIntMap merged = new VarVersionIntMap();
+      for (int id = 0; id < count; id++) {
+        merged.put(vars[id], versions[id], versions[find(id)]);
+      }
+      return merged;
+    }
+  }
+}
@@ -2,15 +2,25 @@
 package com.apkide.java.decompiler.struct;
 
 import com.apkide.java.decompiler.main.DecompilerContext;
+import com.apkide.java.decompiler.main.decompiler.SynchronizedLogger;
+import com.apkide.java.decompiler.main.extern.IFernflowerLogger;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.main.extern.IResultSaver;
 import com.apkide.java.decompiler.struct.lazy.LazyLoader;
 import com.apkide.java.decompiler.struct.lazy.LazyLoader.Link;
 import com.apkide.java.decompiler.util.DataInputFullStream;
+import com.apkide.java.decompiler.util.TextBuffer;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -90,23 +100,11 @@ public class ContextUnit {
         }
 
         // classes
-        for (int i = 0; i < classes.size(); i++) {
-          StructClass cl = classes.get(i);
-          if (!cl.isOwn()) {
-            continue;
+        decompileClasses(true, (cl, entryName, content, mapping) -> {
+          if (content != null) {
+            saveClassFile(cl, entryName, content, mapping);
           }
-          String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
-          if (entryName != null) {
-            String content = decompiledData.getClassContent(cl);
-            if (content != null) {
-              int[] mapping = null;
-              if (DecompilerContext.getOption(IFernflowerPreferences.BYTECODE_SOURCE_MAPPING)) {
-                mapping = DecompilerContext.getBytecodeSourceMapper().getOriginalLinesMapping();
-              }
-              resultSaver.saveClassFile(filename, cl.qualifiedName, entryName, content, mapping);
-            }
-          }
-        }
+        });
 
         break;
 
@@ -129,19 +127,155 @@ public class ContextUnit {
         }
 
         // classes
-        for (int i = 0; i < classes.size(); i++) {
-          StructClass cl = classes.get(i);
-          String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
-          if (entryName != null) {
-            String content = decompiledData.getClassContent(cl);
-            resultSaver.saveClassEntry(archivePath, filename, cl.qualifiedName, entryName, content);
-          }
-        }
+        decompileClasses(false, (cl, entryName, content, mapping) -> saveClassEntry(cl, entryName, content));
 
         resultSaver.closeArchive(archivePath, filename);
     }
   }
 
+  /**
+   * Decompiles the classes of this unit and hands them to the saver callback in unit order. With
+   * {@link IFernflowerPreferences#THREADS} above one, root classes are decompiled on a worker pool, each
+   * worker with its own {@link DecompilerContext}, while results are still delivered one by one in order.
+   */
+  private void decompileClasses(boolean ownOnly, ClassSaver saver) {
+    List<StructClass> toDecompile = new ArrayList<>();
+    List<String> entryNames = new ArrayList<>();
+    for (int i = 0; i < classes.size(); i++) {
+      StructClass cl = classes.get(i);
+      if (ownOnly && !cl.isOwn()) {
+        continue;
+      }
+      String entryName = decompiledData.getClassEntryName(cl, classEntries.get(i));
+      if (entryName != null) {
+        toDecompile.add(cl);
+        entryNames.add(entryName);
+      }
+    }
+
+    int threads = getThreadCount();
+    if (threads <= 1 || toDecompile.size() <= 1) {
+      for (int i = 0; i < toDecompile.size(); i++) {
+        DecompiledClass result = decompileClass(toDecompile.get(i));
+        saver.save(toDecompile.get(i), entryNames.get(i), result.content, result.mapping);
+      }
+      return;
+    }
+
+    DecompilerContext parent = DecompilerContext.getCurrentContext();
+    IFernflowerLogger logger = new SynchronizedLogger(DecompilerContext.getLogger());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, toDecompile.size()), runnable -> {
+      Thread thread = new Thread(() -> {
+        DecompilerContext.setCurrentContext(parent.fork(logger));
+        try {
+          runnable.run();
+        }
+        finally {
+          DecompilerContext.setCurrentContext(null);
+        }
+      }, "Java decompiler worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    // only a window of classes is decompiled ahead of the saver, so finished sources do not pile up in memory
+    int window = threads * 4;
+    Deque<Future<DecompiledClass>> pending = new ArrayDeque<>(window);
+    try {
+      int next = 0;
+      for (int i = 0; i < toDecompile.size(); i++) {
+        while (next < toDecompile.size() && next - i < window) {
+          StructClass cl = toDecompile.get(next++);
+          pending.add(executor.submit(() -> decompileClass(cl)));
+        }
+
+        DecompiledClass result;
+        try {
+          result = pending.removeFirst().get();
+        }
+        catch (ExecutionException ex) {
+          throw new RuntimeException(ex.getCause());
+        }
+        catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(ex);
+        }
+        saver.save(toDecompile.get(i), entryNames.get(i), result.content, result.mapping);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void saveClassFile(StructClass cl, String entryName, TextBuffer content, int[] mapping) {
+    try (Writer out = resultSaver.openClassFile(filename, cl.qualifiedName, entryName, mapping)) {
+      if (out != null) {
+        content.writeTo(out);
+      }
+      else {
+        resultSaver.saveClassFile(filename, cl.qualifiedName, entryName, content.toString(), mapping);
+      }
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot write class file " + entryName, ex);
+    }
+  }
+
+  private void saveClassEntry(StructClass cl, String entryName, TextBuffer content) {
+    if (content == null) {
+      resultSaver.saveClassEntry(archivePath, filename, cl.qualifiedName, entryName, null);
+      return;
+    }
+
+    try (Writer out = resultSaver.openClassEntry(archivePath, filename, cl.qualifiedName, entryName)) {
+      if (out != null) {
+        content.writeTo(out);
+      }
+      else {
+        resultSaver.saveClassEntry(archivePath, filename, cl.qualifiedName, entryName, content.toString());
+      }
+    }
+    catch (IOException ex) {
+      DecompilerContext.getLogger().writeMessage("Cannot write entry " + entryName + " to " + filename, ex);
+    }
+  }
+
+  private DecompiledClass decompileClass(StructClass cl) {
+    TextBuffer content = decompiledData.getClassBuffer(cl);
+    int[] mapping = null;
+    if (content != null && DecompilerContext.getOption(IFernflowerPreferences.BYTECODE_SOURCE_MAPPING)) {
+      mapping = DecompilerContext.getBytecodeSourceMapper().getOriginalLinesMapping();
+    }
+    return new DecompiledClass(content, mapping);
+  }
+
+  private static int getThreadCount() {
+    Object value = DecompilerContext.getProperty(IFernflowerPreferences.THREADS);
+    int threads;
+    try {
+      threads = value == null ? 1 : Integer.parseInt(value.toString());
+    }
+    catch (NumberFormatException ex) {
+      threads = 1;
+    }
+    return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+  }
+
+  private interface ClassSaver {
+    void save(StructClass cl, String entryName, TextBuffer content, int[] mapping);
+  }
+
+  private static final class DecompiledClass {
+    private final TextBuffer content;
+    private final int[] mapping;
+
+    private DecompiledClass(TextBuffer content, int[] mapping) {
+      this.content = content;
+      this.mapping = mapping;
+    }
+  }
+
   public void setManifest(Manifest manifest) {
     this.manifest = manifest;
   }
@@ -1,9 +1,16 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.apkide.java.decompiler.struct;
 
+import com.apkide.java.decompiler.util.TextBuffer;
+
 public interface IDecompiledData {
 
   String getClassEntryName(StructClass cl, String entryname);
 
   String getClassContent(StructClass cl);
+
+  /**
+   * @return the decompiled source, to be written out without turning it into a string; null on failure
+   */
+  TextBuffer getClassBuffer(StructClass cl);
 }
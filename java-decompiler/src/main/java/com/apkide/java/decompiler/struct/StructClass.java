@@ -142,6 +142,7 @@ public class StructClass extends StructMember {
   public void releaseResources() {
     if (loader != null) {
       pool = null;
+      loader.releaseClass(qualifiedName);
     }
   }
 
@@ -2,6 +2,7 @@
 package com.apkide.java.decompiler.struct;
 
 import com.apkide.java.decompiler.main.DecompilerContext;
+import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 import com.apkide.java.decompiler.main.extern.IResultSaver;
 import com.apkide.java.decompiler.struct.lazy.LazyLoader;
 import com.apkide.java.decompiler.util.DataInputFullStream;
@@ -9,8 +10,10 @@ import com.apkide.java.decompiler.util.InterpreterUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
@@ -22,6 +25,16 @@ public class StructContext {
   private final LazyLoader loader;
   private final Map<String, ContextUnit> units = new HashMap<>();
   private final Map<String, StructClass> classes = new HashMap<>();
+  // library classes of the lazy library mode, only parsed once asked for
+  private final Map<String, LazyLoader.Link> libraryClasses = new HashMap<>();
+  private final Map<String, StructClass> libraryCache = new LinkedHashMap<String, StructClass>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, StructClass> eldest) {
+      return size() > MAX_CACHED_LIBRARY_CLASSES;
+    }
+  };
+
+  private static final int MAX_CACHED_LIBRARY_CLASSES = 2048;
 
   public StructContext(IResultSaver saver, IDecompiledData decompiledData, LazyLoader loader) {
     this.saver = saver;
@@ -33,10 +46,53 @@ public class StructContext {
   }
 
   public StructClass getClass(String name) {
-    return classes.get(name);
+    StructClass cl = classes.get(name);
+    if (cl == null && libraryClasses.containsKey(name)) {
+      cl = loadLibraryClass(name);
+    }
+    return cl;
+  }
+
+  public boolean hasClass(String name) {
+    return classes.containsKey(name) || libraryClasses.containsKey(name);
+  }
+
+  private StructClass loadLibraryClass(String name) {
+    synchronized (libraryCache) {
+      StructClass cl = libraryCache.get(name);
+      if (cl != null) {
+        return cl;
+      }
+    }
+
+    StructClass cl;
+    try (DataInputFullStream in = loader.getClassStream(name)) {
+      cl = StructClass.create(in, false, loader);
+    }
+    catch (IOException ex) {
+      String message = "Corrupted class file: " + name;
+      DecompilerContext.getLogger().writeMessage(message, ex);
+      return null;
+    }
+
+    if (!name.equals(cl.qualifiedName)) {
+      // entry name does not match the class, indexed under a wrong name
+      return null;
+    }
+
+    synchronized (libraryCache) {
+      StructClass cached = libraryCache.putIfAbsent(name, cl);
+      return cached != null ? cached : cl;
+    }
   }
 
   public void reloadContext() throws IOException {
+    // the interceptor changed, library classes have to be parsed again
+    synchronized (libraryCache) {
+      libraryCache.clear();
+    }
+    loader.clearCache();
+
     for (ContextUnit unit : units.values()) {
       for (StructClass cl : unit.getClasses()) {
         classes.remove(cl.qualifiedName);
@@ -119,7 +175,49 @@ public class StructContext {
     }
   }
 
+  /**
+   * Adds class entries served by the bytecode provider under the given external path, for classes that
+   * do not come from files, such as classes converted in memory.
+   */
+  public void addEntries(String externalPath, Collection<String> entryNames, boolean isOwn) {
+    boolean lazy = !isOwn && DecompilerContext.getOption(IFernflowerPreferences.LAZY_LIBRARIES);
+    ContextUnit unit = units.get("");
+    for (String name : entryNames) {
+      LazyLoader.Link link = new LazyLoader.Link(externalPath, name);
+      if (lazy) {
+        addLibraryClass(name, link);
+        continue;
+      }
+      try (DataInputFullStream in = loader.getClassStream(externalPath, name)) {
+        StructClass cl = StructClass.create(in, isOwn, loader);
+        classes.put(cl.qualifiedName, cl);
+        unit.addClass(cl, name);
+        loader.addClassLink(cl.qualifiedName, link);
+        // a library class added again as a source of the same context
+        if (libraryClasses.remove(cl.qualifiedName) != null) {
+          synchronized (libraryCache) {
+            libraryCache.remove(cl.qualifiedName);
+          }
+        }
+      }
+      catch (IOException ex) {
+        String message = "Corrupted class file: " + name;
+        DecompilerContext.getLogger().writeMessage(message, ex);
+      }
+    }
+  }
+
+  private void addLibraryClass(String entryName, LazyLoader.Link link) {
+    String name = entryName.substring(0, entryName.length() - ".class".length());
+    if (!classes.containsKey(name)) {
+      libraryClasses.put(name, link);
+      loader.addClassLink(name, link);
+    }
+  }
+
   private void addArchive(String path, File file, int type, boolean isOwn) throws IOException {
+    // loose class files are few, the entry names of archives give the class names without parsing them
+    boolean lazy = !isOwn && DecompilerContext.getOption(IFernflowerPreferences.LAZY_LIBRARIES);
     try (ZipFile archive = type == ContextUnit.TYPE_JAR ? new JarFile(file) : new ZipFile(file)) {
       Enumeration<? extends ZipEntry> entries = archive.entries();
       while (entries.hasMoreElements()) {
@@ -136,7 +234,10 @@ public class StructContext {
 
         String name = entry.getName();
         if (!entry.isDirectory()) {
-          if (name.endsWith(".class")) {
+          if (name.endsWith(".class") && lazy) {
+            addLibraryClass(name, new LazyLoader.Link(file.getAbsolutePath(), name));
+          }
+          else if (name.endsWith(".class")) {
             byte[] bytes = InterpreterUtil.getBytes(archive, entry);
             StructClass cl = StructClass.create(new DataInputFullStream(bytes), isOwn, loader);
             classes.put(cl.qualifiedName, cl);
@@ -154,6 +255,10 @@ public class StructContext {
     }
   }
 
+  /**
+   * Classes parsed up front, which are all own classes and the library classes unless the lazy
+   * library mode is on. Use {@link #getClass(String)} or {@link #hasClass(String)} for lookups.
+   */
   public Map<String, StructClass> getClasses() {
     return classes;
   }
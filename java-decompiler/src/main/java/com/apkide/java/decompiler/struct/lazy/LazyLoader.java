@@ -7,14 +7,26 @@ import com.apkide.java.decompiler.struct.StructMethod;
 import com.apkide.java.decompiler.struct.consts.ConstantPool;
 import com.apkide.java.decompiler.util.DataInputFullStream;
 import com.apkide.java.decompiler.struct.attr.StructGeneralAttribute;
+import com.apkide.java.decompiler.util.InterpreterUtil;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class LazyLoader {
+  // classes being decompiled are released in processing order, the bound only matters for classes that never are
+  private static final int MAX_CACHED_CLASSES = 64;
+
   private final Map<String, Link> mapClassLinks = new HashMap<>();
   private final IBytecodeProvider provider;
+  private final Map<String, ClassFile> classFiles = new LinkedHashMap<String, ClassFile>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, ClassFile> eldest) {
+      return size() > MAX_CACHED_CLASSES;
+    }
+  };
 
   public LazyLoader(IBytecodeProvider provider) {
     this.provider = provider;
@@ -22,19 +34,38 @@ public class LazyLoader {
 
   public void addClassLink(String className, Link link) {
     mapClassLinks.put(className, link);
+    releaseClass(className);
   }
 
   public void removeClassLink(String className) {
     mapClassLinks.remove(className);
+    releaseClass(className);
   }
 
   public Link getClassLink(String className) {
     return mapClassLinks.get(className);
   }
 
+  /**
+   * Drops the cached class file, called once the class is processed.
+   */
+  public void releaseClass(String className) {
+    synchronized (classFiles) {
+      classFiles.remove(className);
+    }
+  }
+
+  public void clearCache() {
+    synchronized (classFiles) {
+      classFiles.clear();
+    }
+  }
+
   public ConstantPool loadPool(String className) {
-    try (DataInputFullStream in = getClassStream(className)) {
-      if (in != null) {
+    try {
+      ClassFile classFile = getClassFile(className);
+      if (classFile != null) {
+        DataInputFullStream in = new DataInputFullStream(classFile.bytes);
         in.discard(8);
         return new ConstantPool(in);
       }
@@ -49,67 +80,99 @@ public class LazyLoader {
   public byte[] loadBytecode(StructClass classStruct, StructMethod mt, int codeFullLength) {
     String className = classStruct.qualifiedName;
 
-    try (DataInputFullStream in = getClassStream(className)) {
-      if (in != null) {
-        in.discard(8);
+    try {
+      ClassFile classFile = getClassFile(className);
+      if (classFile == null) {
+        return null;
+      }
 
-        ConstantPool pool = classStruct.getPool();
-        if (pool == null) {
-          pool = new ConstantPool(in);
-        }
-        else {
-          ConstantPool.skipPool(in);
+      Integer offset;
+      synchronized (classFile) {
+        if (classFile.codeOffsets == null) {
+          classFile.codeOffsets = readCodeOffsets(classStruct, classFile.bytes);
         }
+        offset = classFile.codeOffsets.get(InterpreterUtil.makeUniqueKey(mt.getName(), mt.getDescriptor()));
+      }
 
-        in.discard(6);
+      return offset == null ? null : Arrays.copyOfRange(classFile.bytes, offset, offset + codeFullLength);
+    }
+    catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
 
-        // interfaces
-        in.discard(in.readUnsignedShort() * 2);
+  private ClassFile getClassFile(String className) throws IOException {
+    synchronized (classFiles) {
+      ClassFile classFile = classFiles.get(className);
+      if (classFile != null) {
+        return classFile;
+      }
+    }
 
-        // fields
-        int size = in.readUnsignedShort();
-        for (int i = 0; i < size; i++) {
-          in.discard(6);
-          skipAttributes(in);
-        }
+    Link link = mapClassLinks.get(className);
+    if (link == null) {
+      return null;
+    }
+
+    ClassFile classFile = new ClassFile(provider.getBytecode(link.externalPath, link.internalPath));
+    synchronized (classFiles) {
+      ClassFile cached = classFiles.putIfAbsent(className, classFile);
+      return cached != null ? cached : classFile;
+    }
+  }
 
-        // methods
-        size = in.readUnsignedShort();
-        for (int i = 0; i < size; i++) {
-          in.discard(2);
+  /**
+   * One pass over the method table mapping every method to the offset of its code in the class file.
+   */
+  private static Map<String, Integer> readCodeOffsets(StructClass classStruct, byte[] bytes) throws IOException {
+    String className = classStruct.qualifiedName;
+    DataInputFullStream in = new DataInputFullStream(bytes);
+    in.discard(8);
 
-          int nameIndex = in.readUnsignedShort();
-          int descriptorIndex = in.readUnsignedShort();
+    ConstantPool pool = classStruct.getPool();
+    if (pool == null) {
+      pool = new ConstantPool(in);
+    }
+    else {
+      ConstantPool.skipPool(in);
+    }
 
-          String[] values = pool.getClassElement(ConstantPool.METHOD, className, nameIndex, descriptorIndex);
-          if (!mt.getName().equals(values[0]) || !mt.getDescriptor().equals(values[1])) {
-            skipAttributes(in);
-            continue;
-          }
+    in.discard(6);
 
-          int attrSize = in.readUnsignedShort();
-          for (int j = 0; j < attrSize; j++) {
-            int attrNameIndex = in.readUnsignedShort();
-            String attrName = pool.getPrimitiveConstant(attrNameIndex).getString();
-            if (!StructGeneralAttribute.ATTRIBUTE_CODE.name.equals(attrName)) {
-              in.discard(in.readInt());
-              continue;
-            }
+    // interfaces
+    in.discard(in.readUnsignedShort() * 2);
 
-            in.discard(12);
+    // fields
+    int size = in.readUnsignedShort();
+    for (int i = 0; i < size; i++) {
+      in.discard(6);
+      skipAttributes(in);
+    }
 
-            return in.read(codeFullLength);
-          }
+    // methods
+    size = in.readUnsignedShort();
+    Map<String, Integer> offsets = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      in.discard(2);
 
-          break;
+      int nameIndex = in.readUnsignedShort();
+      int descriptorIndex = in.readUnsignedShort();
+      String[] values = pool.getClassElement(ConstantPool.METHOD, className, nameIndex, descriptorIndex);
+
+      int attrSize = in.readUnsignedShort();
+      for (int j = 0; j < attrSize; j++) {
+        int attrNameIndex = in.readUnsignedShort();
+        int attrLength = in.readInt();
+        String attrName = pool.getPrimitiveConstant(attrNameIndex).getString();
+        if (StructGeneralAttribute.ATTRIBUTE_CODE.name.equals(attrName)) {
+          // max_stack, max_locals and code_length precede the code
+          offsets.putIfAbsent(InterpreterUtil.makeUniqueKey(values[0], values[1]), bytes.length - in.available() + 8);
         }
+        in.discard(attrLength);
       }
-
-      return null;
-    }
-    catch (IOException ex) {
-      throw new RuntimeException(ex);
     }
+
+    return offsets;
   }
 
   public DataInputFullStream getClassStream(String externalPath, String internalPath) throws IOException {
@@ -130,6 +193,15 @@ public class LazyLoader {
     }
   }
 
+  private static class ClassFile {
+    final byte[] bytes;
+    Map<String, Integer> codeOffsets;
+
+    ClassFile(byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+
   public static class Link {
     public final String externalPath;
     public final String internalPath;
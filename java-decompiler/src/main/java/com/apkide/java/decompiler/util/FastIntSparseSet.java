@@ -0,0 +1,261 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Set of non-negative ints kept as a bitset, the element itself is the bit index. Meant for variable versions,
+ * which are numbered densely from 1 per variable, so unlike {@link FastSparseSetFactory.FastSparseSet} no element
+ * lookup and no boxing is needed.
+ */
+public final class FastIntSparseSet implements Iterable<Integer> {
+  public static final FastIntSparseSet[] EMPTY_ARRAY = new FastIntSparseSet[0];
+
+  private static final long[] EMPTY_WORDS = new long[0];
+
+  private long[] words;
+
+  // number of words up to and including the last non-zero one
+  private int inUse;
+
+  public FastIntSparseSet() {
+    words = EMPTY_WORDS;
+  }
+
+  private FastIntSparseSet(long[] words, int inUse) {
+    this.words = words;
+    this.inUse = inUse;
+  }
+
+  public static FastIntSparseSet of(int element) {
+    FastIntSparseSet set = new FastIntSparseSet();
+    set.add(element);
+    return set;
+  }
+
+  public FastIntSparseSet getCopy() {
+    return new FastIntSparseSet(inUse == 0 ? EMPTY_WORDS : Arrays.copyOf(words, inUse), inUse);
+  }
+
+  private void ensureCapacity(int length) {
+    if (words.length < length) {
+      words = Arrays.copyOf(words, Math.max(length, 2 * words.length));
+    }
+  }
+
+  private void recalculateInUse() {
+    int i = inUse - 1;
+    while (i >= 0 && words[i] == 0) {
+      i--;
+    }
+    inUse = i + 1;
+  }
+
+  public void add(int element) {
+    if (element < 0) {
+      throw new IllegalArgumentException("Negative element: " + element);
+    }
+
+    int word = element >>> 6;
+    if (word >= inUse) {
+      ensureCapacity(word + 1);
+      inUse = word + 1;
+    }
+    words[word] |= 1L << element;
+  }
+
+  public void remove(int element) {
+    int word = element >>> 6;
+    if (element >= 0 && word < inUse) {
+      words[word] &= ~(1L << element);
+      if (word == inUse - 1) {
+        recalculateInUse();
+      }
+    }
+  }
+
+  public boolean contains(int element) {
+    int word = element >>> 6;
+    return element >= 0 && word < inUse && (words[word] & (1L << element)) != 0;
+  }
+
+  public void union(FastIntSparseSet set) {
+    long[] extwords = set.words;
+    int extInUse = set.inUse;
+
+    if (extInUse > inUse) {
+      ensureCapacity(extInUse);
+      inUse = extInUse;
+    }
+
+    long[] intwords = words;
+    for (int i = extInUse - 1; i >= 0; i--) {
+      intwords[i] |= extwords[i];
+    }
+  }
+
+  public void intersection(FastIntSparseSet set) {
+    long[] extwords = set.words;
+    long[] intwords = words;
+
+    int minlength = Math.min(inUse, set.inUse);
+
+    for (int i = minlength - 1; i >= 0; i--) {
+      intwords[i] &= extwords[i];
+    }
+
+    for (int i = inUse - 1; i >= minlength; i--) {
+      intwords[i] = 0;
+    }
+
+    inUse = minlength;
+    recalculateInUse();
+  }
+
+  public void complement(FastIntSparseSet set) {
+    long[] extwords = set.words;
+    long[] intwords = words;
+
+    for (int i = Math.min(inUse, set.inUse) - 1; i >= 0; i--) {
+      intwords[i] &= ~extwords[i];
+    }
+
+    recalculateInUse();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof FastIntSparseSet)) return false;
+
+    FastIntSparseSet set = (FastIntSparseSet)o;
+    if (inUse != set.inUse) {
+      return false;
+    }
+
+    long[] extwords = set.words;
+    for (int i = inUse - 1; i >= 0; i--) {
+      if (words[i] != extwords[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    long hash = 1234;
+    for (int i = inUse - 1; i >= 0; i--) {
+      hash ^= words[i] * (i + 1);
+    }
+    return (int)((hash >> 32) ^ hash);
+  }
+
+  /**
+   * @return 0 for an empty set, 1 for a set of one element and 2 for a set of more elements
+   */
+  public int getCardinality() {
+    if (inUse == 0) {
+      return 0;
+    }
+
+    long last = words[inUse - 1];
+    if ((last & (last - 1)) != 0) {
+      return 2;
+    }
+
+    for (int i = inUse - 2; i >= 0; i--) {
+      if (words[i] != 0) {
+        return 2;
+      }
+    }
+
+    return 1;
+  }
+
+  public boolean isEmpty() {
+    return inUse == 0;
+  }
+
+  /**
+   * @return the first element not less than the given one, -1 if there is none
+   */
+  public int nextElement(int from) {
+    if (from < 0) {
+      from = 0;
+    }
+
+    int word = from >>> 6;
+    if (word >= inUse) {
+      return -1;
+    }
+
+    long bits = words[word] & (-1L << from);
+    while (true) {
+      if (bits != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+      }
+      if (++word >= inUse) {
+        return -1;
+      }
+      bits = words[word];
+    }
+  }
+
+  /**
+   * @return the smallest element, -1 for an empty set
+   */
+  public int first() {
+    return nextElement(0);
+  }
+
+  @Override
+  public Iterator<Integer> iterator() {
+    return new Iterator<Integer>() {
+      private int next = first();
+      private int last = -1;
+
+      @Override
+      public boolean hasNext() {
+        return next >= 0;
+      }
+
+      @Override
+      public Integer next() {
+        if (next < 0) {
+          throw new NoSuchElementException();
+        }
+        last = next;
+        next = nextElement(next + 1);
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        if (last < 0) {
+          throw new IllegalStateException();
+        }
+        FastIntSparseSet.this.remove(last);
+        last = -1;
+      }
+    };
+  }
+
+  public Set<Integer> toPlainSet() {
+    HashSet<Integer> set = new HashSet<>();
+    for (int element = first(); element >= 0; element = nextElement(element + 1)) {
+      set.add(element);
+    }
+    return set;
+  }
+
+  @Override
+  public String toString() {
+    return toPlainSet().toString();
+  }
+}
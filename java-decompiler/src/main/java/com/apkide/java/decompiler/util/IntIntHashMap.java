@@ -0,0 +1,129 @@
+// Copyright 2000-2022 JetBrains s.r.o. and contributors. Use of this source code is governed by the Apache 2.0 license.
+package com.apkide.java.decompiler.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing int to int map with linear probing, for the hot maps of the variable passes that would
+ * otherwise box every key and value. Entries can't be removed.
+ */
+public final class IntIntHashMap {
+  private static final int MIN_CAPACITY = 16;
+
+  private int[] keys;
+  private int[] values;
+  private boolean[] used;
+  private int size;
+  private int threshold;
+
+  public IntIntHashMap() {
+    this(MIN_CAPACITY);
+  }
+
+  public IntIntHashMap(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * 3 / 4 < expectedSize) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new int[capacity];
+    used = new boolean[capacity];
+    threshold = capacity * 3 / 4;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private int indexOf(int key) {
+    int mask = keys.length - 1;
+    int index = hash(key) & mask;
+    while (used[index]) {
+      if (keys[index] == key) {
+        return index;
+      }
+      index = (index + 1) & mask;
+    }
+    return -1 - index;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(int key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * @return the value of the key, the given default value if there is none
+   */
+  public int get(int key, int defaultValue) {
+    int index = indexOf(key);
+    return index >= 0 ? values[index] : defaultValue;
+  }
+
+  public void put(int key, int value) {
+    int index = indexOf(key);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+
+    if (size >= threshold) {
+      rehash(keys.length << 1);
+      index = indexOf(key);
+    }
+
+    index = -1 - index;
+    keys[index] = key;
+    values[index] = value;
+    used[index] = true;
+    size++;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    allocate(capacity);
+
+    for (int i = oldKeys.length - 1; i >= 0; i--) {
+      if (oldUsed[i]) {
+        int index = -1 - indexOf(oldKeys[i]);
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+        used[index] = true;
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(used, false);
+    size = 0;
+  }
+
+  /**
+   * @return the keys of the map in no particular order
+   */
+  public int[] keys() {
+    int[] result = new int[size];
+    int count = 0;
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        result[count++] = keys[i];
+      }
+    }
+    return result;
+  }
+}
@@ -13,7 +13,7 @@ public class SFormsFastMapDirect {
 
   private int size;
 
-  @SuppressWarnings("unchecked") private final FastSparseSetFactory.FastSparseSet<Integer>[][] elements = new FastSparseSetFactory.FastSparseSet[3][];
+  private final FastIntSparseSet[][] elements = new FastIntSparseSet[3][];
 
   private final int[][] next = new int[3][];
 
@@ -24,8 +24,7 @@ public class SFormsFastMapDirect {
   private SFormsFastMapDirect(boolean initialize) {
     if (initialize) {
       for (int i = 2; i >= 0; i--) {
-        @SuppressWarnings("unchecked") FastSparseSetFactory.FastSparseSet<Integer>[] empty = FastSparseSetFactory.FastSparseSet.EMPTY_ARRAY;
-        elements[i] = empty;
+        elements[i] = FastIntSparseSet.EMPTY_ARRAY;
         next[i] = InterpreterUtil.EMPTY_INT_ARRAY;
       }
     }
@@ -33,11 +32,11 @@ public class SFormsFastMapDirect {
 
   public SFormsFastMapDirect(SFormsFastMapDirect map) {
     for (int i = 2; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer>[] arr = map.elements[i];
+      FastIntSparseSet[] arr = map.elements[i];
       int[] arrnext = map.next[i];
 
       int length = arr.length;
-      @SuppressWarnings("unchecked") FastSparseSetFactory.FastSparseSet<Integer>[] arrnew = new FastSparseSetFactory.FastSparseSet[length];
+      FastIntSparseSet[] arrnew = new FastIntSparseSet[length];
       int[] arrnextnew = new int[length];
 
       System.arraycopy(arr, 0, arrnew, 0, length);
@@ -55,17 +54,17 @@ public class SFormsFastMapDirect {
     SFormsFastMapDirect map = new SFormsFastMapDirect(false);
     map.size = size;
 
-    FastSparseSetFactory.FastSparseSet[][] mapelements = map.elements;
+    FastIntSparseSet[][] mapelements = map.elements;
     int[][] mapnext = map.next;
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer>[] arr = elements[i];
+      FastIntSparseSet[] arr = elements[i];
       int length = arr.length;
 
       if (length > 0) {
         int[] arrnext = next[i];
 
-        @SuppressWarnings("unchecked") FastSparseSetFactory.FastSparseSet<Integer>[] arrnew = new FastSparseSetFactory.FastSparseSet[length];
+        FastIntSparseSet[] arrnew = new FastIntSparseSet[length];
         int[] arrnextnew = Arrays.copyOf(arrnext, length);
 
         mapelements[i] = arrnew;
@@ -73,7 +72,7 @@ public class SFormsFastMapDirect {
 
         int pointer = 0;
         do {
-          FastSparseSetFactory.FastSparseSet<Integer> set = arr[pointer];
+          FastIntSparseSet set = arr[pointer];
           if (set != null) {
             arrnew[pointer] = set.getCopy();
           }
@@ -83,7 +82,7 @@ public class SFormsFastMapDirect {
         while (pointer != 0);
       }
       else {
-        mapelements[i] = FastSparseSetFactory.FastSparseSet.EMPTY_ARRAY;
+        mapelements[i] = FastIntSparseSet.EMPTY_ARRAY;
         mapnext[i] = InterpreterUtil.EMPTY_INT_ARRAY;
       }
     }
@@ -99,16 +98,16 @@ public class SFormsFastMapDirect {
     return size == 0;
   }
 
-  public void put(int key, FastSparseSetFactory.FastSparseSet<Integer> value) {
+  public void put(int key, FastIntSparseSet value) {
     putInternal(key, value, false);
   }
 
   public void removeAllFields() {
-    FastSparseSetFactory.FastSparseSet<Integer>[] arr = elements[2];
+    FastIntSparseSet[] arr = elements[2];
     int[] arrnext = next[2];
 
     for (int i = arr.length - 1; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer> val = arr[i];
+      FastIntSparseSet val = arr[i];
       if (val != null) {
         arr[i] = null;
         size--;
@@ -117,7 +116,7 @@ public class SFormsFastMapDirect {
     }
   }
 
-  public void putInternal(final int key, final FastSparseSetFactory.FastSparseSet<Integer> value, boolean remove) {
+  public void putInternal(final int key, final FastIntSparseSet value, boolean remove) {
 
     int index = 0;
     int ikey = key;
@@ -130,7 +129,7 @@ public class SFormsFastMapDirect {
       ikey -= VarExprent.STACK_BASE;
     }
 
-    FastSparseSetFactory.FastSparseSet<Integer>[] arr = elements[index];
+    FastIntSparseSet[] arr = elements[index];
     if (ikey >= arr.length) {
       if (remove) {
         return;
@@ -140,7 +139,7 @@ public class SFormsFastMapDirect {
       }
     }
 
-    FastSparseSetFactory.FastSparseSet<Integer> oldval = arr[ikey];
+    FastIntSparseSet oldval = arr[ikey];
     arr[ikey] = value;
 
     int[] arrnext = next[index];
@@ -170,7 +169,7 @@ public class SFormsFastMapDirect {
     return get(key) != null;
   }
 
-  public FastSparseSetFactory.FastSparseSet<Integer> get(int key) {
+  public FastIntSparseSet get(int key) {
 
     int index = 0;
     if (key < 0) {
@@ -182,7 +181,7 @@ public class SFormsFastMapDirect {
       key -= VarExprent.STACK_BASE;
     }
 
-    FastSparseSetFactory.FastSparseSet<Integer>[] arr = elements[index];
+    FastIntSparseSet[] arr = elements[index];
 
     if (key < arr.length) {
       return arr[key];
@@ -193,24 +192,24 @@ public class SFormsFastMapDirect {
   public void complement(SFormsFastMapDirect map) {
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSparseSet[] lstOwn = elements[i];
 
       if (lstOwn.length == 0) {
         continue;
       }
 
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSparseSet[] lstExtern = map.elements[i];
       int[] arrnext = next[i];
 
       int pointer = 0;
       do {
-        FastSparseSetFactory.FastSparseSet<Integer> first = lstOwn[pointer];
+        FastIntSparseSet first = lstOwn[pointer];
 
         if (first != null) {
           if (pointer >= lstExtern.length) {
             break;
           }
-          FastSparseSetFactory.FastSparseSet<Integer> second = lstExtern[pointer];
+          FastIntSparseSet second = lstExtern[pointer];
 
           if (second != null) {
             first.complement(second);
@@ -231,21 +230,21 @@ public class SFormsFastMapDirect {
   public void intersection(SFormsFastMapDirect map) {
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSparseSet[] lstOwn = elements[i];
 
       if (lstOwn.length == 0) {
         continue;
       }
 
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSparseSet[] lstExtern = map.elements[i];
       int[] arrnext = next[i];
 
       int pointer = 0;
       do {
-        FastSparseSetFactory.FastSparseSet<Integer> first = lstOwn[pointer];
+        FastIntSparseSet first = lstOwn[pointer];
 
         if (first != null) {
-          FastSparseSetFactory.FastSparseSet<Integer> second = null;
+          FastIntSparseSet second = null;
           if (pointer < lstExtern.length) {
             second = lstExtern[pointer];
           }
@@ -270,13 +269,13 @@ public class SFormsFastMapDirect {
   public void union(SFormsFastMapDirect map) {
 
     for (int i = 2; i >= 0; i--) {
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstExtern = map.elements[i];
+      FastIntSparseSet[] lstExtern = map.elements[i];
 
       if (lstExtern.length == 0) {
         continue;
       }
 
-      FastSparseSetFactory.FastSparseSet<Integer>[] lstOwn = elements[i];
+      FastIntSparseSet[] lstOwn = elements[i];
       int[] arrnext = next[i];
       int[] arrnextExtern = map.next[i];
 
@@ -287,10 +286,10 @@ public class SFormsFastMapDirect {
           arrnext = next[i];
         }
 
-        FastSparseSetFactory.FastSparseSet<Integer> second = lstExtern[pointer];
+        FastIntSparseSet second = lstExtern[pointer];
 
         if (second != null) {
-          FastSparseSetFactory.FastSparseSet<Integer> first = lstOwn[pointer];
+          FastIntSparseSet first = lstOwn[pointer];
 
           if (first == null) {
             lstOwn[pointer] = second.getCopy();
@@ -312,10 +311,10 @@ public class SFormsFastMapDirect {
 
     StringBuilder buffer = new StringBuilder("{");
 
-    List<Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>>> lst = entryList();
+    List<Entry<Integer, FastIntSparseSet>> lst = entryList();
     if (lst != null) {
       boolean first = true;
-      for (Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>> entry : lst) {
+      for (Entry<Integer, FastIntSparseSet> entry : lst) {
         if (!first) {
           buffer.append(", ");
         }
@@ -332,19 +331,19 @@ public class SFormsFastMapDirect {
     return buffer.toString();
   }
 
-  public List<Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>>> entryList() {
-    List<Entry<Integer, FastSparseSetFactory.FastSparseSet<Integer>>> list = new ArrayList<>();
+  public List<Entry<Integer, FastIntSparseSet>> entryList() {
+    List<Entry<Integer, FastIntSparseSet>> list = new ArrayList<>();
 
     for (int i = 2; i >= 0; i--) {
       int ikey = 0;
-      for (final FastSparseSetFactory.FastSparseSet<Integer> ent : elements[i]) {
+      for (final FastIntSparseSet ent : elements[i]) {
         if (ent != null) {
           final int key = i == 0 ? ikey : (i == 1 ? ikey + VarExprent.STACK_BASE : -ikey);
 
           list.add(new Entry<>() {
 
             private final Integer var = key;
-            private final FastSparseSetFactory.FastSparseSet<Integer> val = ent;
+            private final FastIntSparseSet val = ent;
 
             @Override
             public Integer getKey() {
@@ -352,12 +351,12 @@ public class SFormsFastMapDirect {
             }
 
             @Override
-            public FastSparseSetFactory.FastSparseSet<Integer> getValue() {
+            public FastIntSparseSet getValue() {
               return val;
             }
 
             @Override
-            public FastSparseSetFactory.FastSparseSet<Integer> setValue(FastSparseSetFactory.FastSparseSet<Integer> newvalue) {
+            public FastIntSparseSet setValue(FastIntSparseSet newvalue) {
               return null;
             }
           });
@@ -370,9 +369,9 @@ public class SFormsFastMapDirect {
     return list;
   }
 
-  private FastSparseSetFactory.FastSparseSet<Integer>[] ensureCapacity(int index, int size, boolean exact) {
+  private FastIntSparseSet[] ensureCapacity(int index, int size, boolean exact) {
 
-    FastSparseSetFactory.FastSparseSet<Integer>[] arr = elements[index];
+    FastIntSparseSet[] arr = elements[index];
     int[] arrnext = next[index];
 
     int minsize = size;
@@ -383,7 +382,7 @@ public class SFormsFastMapDirect {
       }
     }
 
-    @SuppressWarnings("unchecked") FastSparseSetFactory.FastSparseSet<Integer>[] arrnew = new FastSparseSetFactory.FastSparseSet[minsize];
+    FastIntSparseSet[] arrnew = new FastIntSparseSet[minsize];
     System.arraycopy(arr, 0, arrnew, 0, arr.length);
 
     int[] arrnextnew = new int[minsize];
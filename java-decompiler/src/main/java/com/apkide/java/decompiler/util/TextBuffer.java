@@ -6,6 +6,8 @@ package com.apkide.java.decompiler.util;
 import com.apkide.java.decompiler.main.DecompilerContext;
 import com.apkide.java.decompiler.main.extern.IFernflowerPreferences;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,6 +25,8 @@ import java.util.TreeSet;
  */
 @SuppressWarnings("UnusedReturnValue")
 public class TextBuffer {
+  private static final int WRITE_CHUNK_SIZE = 8192;
+
   private final String myLineSeparator = DecompilerContext.getNewLineSeparator();
   private final String myIndent = (String)DecompilerContext.getProperty(IFernflowerPreferences.INDENT_STRING);
   private final StringBuilder myStringBuilder;
@@ -131,6 +135,24 @@ public class TextBuffer {
     }
   }
 
+  /**
+   * Writes the text as {@link #toString()} returns it, without copying it into a string first unless lines
+   * have to be rearranged.
+   */
+  public void writeTo(Writer out) throws IOException {
+    if ((myLineToOffsetMapping != null && !myLineToOffsetMapping.isEmpty()) || myLineMapping != null) {
+      out.write(toString());
+      return;
+    }
+
+    char[] chunk = new char[Math.min(WRITE_CHUNK_SIZE, Math.max(myStringBuilder.length(), 1))];
+    for (int start = 0; start < myStringBuilder.length(); start += chunk.length) {
+      int end = Math.min(start + chunk.length, myStringBuilder.length());
+      myStringBuilder.getChars(start, end, chunk, 0);
+      out.write(chunk, 0, end - start);
+    }
+  }
+
   private String addOriginalLineNumbers() {
     StringBuilder sb = new StringBuilder();
     int lineStart = 0, lineEnd;
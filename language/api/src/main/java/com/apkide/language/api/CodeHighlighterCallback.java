@@ -1,5 +1,7 @@
 package com.apkide.language.api;
 
+import androidx.annotation.NonNull;
+
 /**
  * 高亮回调
  */
@@ -10,4 +12,20 @@ public interface CodeHighlighterCallback extends FileStoreCallback {
     
     void semanticTokenFound(int styleKind, int startLine, int startColumn,
                             int endLine, int endColumn);
+    
+    /**
+     * 是否保留了该文件上一次的高亮结果, 只有保留时高亮器才会只报告变化的范围
+     */
+    default boolean hasPreviousHighlighting(@NonNull String filePath) {
+        return false;
+    }
+    
+    /**
+     * 报告变化的范围, 之后找到的 token 替换上一次高亮中 start 到 oldEnd 之间的 token,
+     * oldEnd 之后的 token 移动到 newEnd. 没有调用时找到的 token 就是整个文件的高亮.
+     */
+    default void tokensReplaced(int startLine, int startColumn,
+                                int oldEndLine, int oldEndColumn,
+                                int newEndLine, int newEndColumn) {
+    }
 }
@@ -0,0 +1,65 @@
+package com.apkide.language.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 读取文件的行和行中的单词, 供补全和导航查找光标处的单词
+ */
+public final class FileLines {
+
+    private FileLines() {
+    }
+
+    /**
+     * 读取文件的一行
+     *
+     * @return 文件没有该行时返回 null
+     */
+    @Nullable
+    public static String readLine(@NonNull FileStoreCallback callback, @NonNull String filePath, int line)
+            throws IOException {
+        try (Reader reader = callback.getFileReader(filePath);
+             BufferedReader lines = new BufferedReader(reader)) {
+            for (int i = 0; i < line; i++) {
+                if (lines.readLine() == null) {
+                    return null;
+                }
+            }
+            return lines.readLine();
+        }
+    }
+
+    /**
+     * 单词由空白字符和给定的分隔符分开
+     */
+    public static boolean isDelimiter(char c, @NonNull String delimiters) {
+        return Character.isWhitespace(c) || delimiters.indexOf(c) != -1;
+    }
+
+    /**
+     * @return 列所在单词的开始列
+     */
+    public static int getWordStart(@NonNull String text, int column, @NonNull String delimiters) {
+        int start = Math.min(column, text.length());
+        while (start > 0 && !isDelimiter(text.charAt(start - 1), delimiters)) {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * @return 列所在单词的结束列
+     */
+    public static int getWordEnd(@NonNull String text, int column, @NonNull String delimiters) {
+        int end = Math.min(column, text.length());
+        while (end < text.length() && !isDelimiter(text.charAt(end), delimiters)) {
+            end++;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,480 @@
+package com.apkide.language.api;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 增量高亮, 保存每个 token 开始处的词法状态. 文件变化后从变化之前最近的可恢复位置重新分析,
+ * 词法状态和 token 边界与上一次一致后停止, 只报告变化的范围.
+ */
+public class IncrementalHighlighter {
+    private static final int MAX_FILES = 4;
+    // chars handed to the lexer at a time, bounds how far the read position runs ahead of the lexer
+    private static final int READ_CHUNK = 64;
+
+    private final RestartableLexer myLexer;
+    private final Map<String, Snapshot> mySnapshots = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+    private final TokenBuffer myTokens = new TokenBuffer();
+    private final TextReader myReader = new TextReader();
+
+    public IncrementalHighlighter(@NonNull RestartableLexer lexer) {
+        myLexer = lexer;
+    }
+
+    public void highlighting(@NonNull String filePath, @NonNull CodeHighlighterCallback callback) throws IOException {
+        // read before the text, a change in between leaves the snapshot with an older version
+        long version = callback.getFileVersion(filePath);
+        Text text;
+        try (Reader reader = callback.getFileReader(filePath)) {
+            text = Text.read(reader);
+        }
+
+        Snapshot previous = callback.hasPreviousHighlighting(filePath) ? mySnapshots.get(filePath) : null;
+        if (previous != null) {
+            relex(previous, text, callback);
+            previous.myVersion = version;
+            return;
+        }
+
+        lex(text, 0, 0, null, 0, 0);
+        myReader.reset(null, 0, 0);
+        reportTokens(callback);
+        // the snapshot changes only once the callback took all tokens, a cancelled run leaves it as it was
+        Snapshot snapshot = new Snapshot(text, myTokens);
+        snapshot.myVersion = version;
+        mySnapshots.put(filePath, snapshot);
+    }
+    
+    /**
+     * 获取文件在该版本高亮时分析出的 token, 在下一次高亮该文件之前有效
+     *
+     * @return 没有该版本的高亮时返回 null
+     */
+    @Nullable
+    public Tokens getTokens(@NonNull String filePath, long version) {
+        Snapshot snapshot = mySnapshots.get(filePath);
+        if (snapshot == null || snapshot.myVersion != version) {
+            return null;
+        }
+        return new Tokens(snapshot);
+    }
+
+    private void relex(Snapshot previous, Text text, CodeHighlighterCallback callback) throws IOException {
+        Text oldText = previous.myText;
+        int length = Math.min(oldText.myLength, text.myLength);
+        int prefix = 0;
+        while (prefix < length && oldText.myChars[prefix] == text.myChars[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < length - prefix
+                && oldText.myChars[oldText.myLength - suffix - 1] == text.myChars[text.myLength - suffix - 1]) {
+            suffix++;
+        }
+
+        if (prefix == oldText.myLength && prefix == text.myLength) {
+            int line = text.lineOf(text.myLength);
+            int column = text.myLength - text.myLineStarts[line];
+            callback.tokensReplaced(line, column, line, column, line, column);
+            previous.myText = text;
+            return;
+        }
+
+        int restart = previous.findRestart(prefix, myLexer.isLineStartRestartOnly());
+        int from = restart >= 0 ? previous.myStarts[restart] : 0;
+        long state = restart >= 0 ? previous.myStates[restart] : 0;
+        int delta = text.myLength - oldText.myLength;
+        int stop = lex(text, from, state, previous, text.myLength - suffix, delta);
+        myReader.reset(null, 0, 0);
+
+        int startLine = text.lineOf(from);
+        int oldEnd = stop < previous.myCount ? previous.myStarts[stop] : oldText.myLength;
+        int oldEndLine = oldText.lineOf(oldEnd);
+        callback.tokensReplaced(startLine, from - text.myLineStarts[startLine],
+                oldEndLine, oldEnd - oldText.myLineStarts[oldEndLine],
+                myTokens.myEndLine, myTokens.myEndColumn);
+        reportTokens(callback);
+
+        previous.replace(Math.max(restart, 0), stop, myTokens, delta);
+        previous.myText = text;
+    }
+
+    /**
+     * Lexes the text from the given offset on, until its end or until lexer state and token boundary
+     * match a token of the previous snapshot behind the changed range again.
+     *
+     * @return index of the previous token lexing stopped at, the token count of the previous snapshot
+     * if it got to the end
+     */
+    private int lex(Text text, int from, long state, Snapshot previous, int changeEnd, int delta) throws IOException {
+        myTokens.clear();
+        myReader.reset(text.myChars, from, text.myLength);
+        myLexer.yyreset(myReader);
+        myLexer.restoreState(state);
+
+        boolean lineStartOnly = myLexer.isLineStartRestartOnly();
+        int baseLine = text.lineOf(from);
+        int baseColumn = from - text.myLineStarts[baseLine];
+        int lastStart = from - 1;
+        while (true) {
+            long tokenState = myLexer.getRestartState();
+            int style = myLexer.yylex();
+            int line = myLexer.getLine();
+            int column = myLexer.getColumn();
+            if (line == 0) {
+                column += baseColumn;
+            }
+            line += baseLine;
+
+            if (style == -1) {
+                int endLine = text.lineOf(text.myLength);
+                myTokens.end(endLine, text.myLength - text.myLineStarts[endLine]);
+                return previous != null ? previous.myCount : 0;
+            }
+
+            int start = text.offsetOf(line, column);
+            if (start <= lastStart) {
+                // JFlex reports a token starting between \r and \n at the start of the line, and lexers
+                // resetting yycolumn report positions out of order as well. Such tokens get the position
+                // they have in the text, lexing doesn't restart or stop at them.
+                start = text.fixOffset(line, lastStart);
+                line = text.lineOf(start);
+                column = start - text.myLineStarts[line];
+                tokenState = -1;
+            }
+
+            if (previous != null && start >= changeEnd && tokenState != -1) {
+                int index = Arrays.binarySearch(previous.myStarts, 0, previous.myCount, start - delta);
+                if (index >= 0 && previous.myStates[index] == tokenState
+                        && (!lineStartOnly || text.isLineStart(start) && previous.myText.isLineStart(start - delta))) {
+                    myTokens.end(line, column);
+                    return index;
+                }
+            }
+
+            myTokens.add(start, line, column, style, myLexer.getTokenType(), tokenState, myReader.myPosition);
+            lastStart = start;
+        }
+    }
+
+    private void reportTokens(CodeHighlighterCallback callback) {
+        TokenBuffer tokens = myTokens;
+        for (int i = 0; i < tokens.myCount; i++) {
+            int endLine = i + 1 < tokens.myCount ? tokens.myLines[i + 1] : tokens.myEndLine;
+            int endColumn = i + 1 < tokens.myCount ? tokens.myColumns[i + 1] : tokens.myEndColumn;
+            callback.tokenFound(tokens.myStyles[i], tokens.myLines[i], tokens.myColumns[i], endLine, endColumn);
+        }
+    }
+
+    private static final class Text {
+        final char[] myChars;
+        final int myLength;
+        // line starts as JFlex counts lines
+        final int[] myLineStarts;
+        final int myLineCount;
+
+        private Text(char[] chars, int length) {
+            myChars = chars;
+            myLength = length;
+
+            int[] lineStarts = new int[64];
+            int lineCount = 1;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c == '\r' && i + 1 < length && chars[i + 1] == '\n') {
+                    continue;
+                }
+                if (c == '\n' || c == '\r' || c == '\u000B' || c == '\u000C'
+                        || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                    if (lineCount == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                    }
+                    lineStarts[lineCount++] = i + 1;
+                }
+            }
+            myLineStarts = lineStarts;
+            myLineCount = lineCount;
+        }
+
+        static Text read(Reader reader) throws IOException {
+            char[] chars = new char[16384];
+            int length = 0;
+            while (true) {
+                if (length == chars.length) {
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                }
+                int count = reader.read(chars, length, chars.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+            return new Text(chars, length);
+        }
+
+        int lineOf(int offset) {
+            int index = Arrays.binarySearch(myLineStarts, 0, myLineCount, offset);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        /**
+         * @return offset of the position, -1 if there is no such position
+         */
+        int offsetOf(int line, int column) {
+            if (line < 0 || line >= myLineCount || column < 0) {
+                return -1;
+            }
+            int offset = myLineStarts[line] + column;
+            int lineEnd = line + 1 < myLineCount ? myLineStarts[line + 1] : myLength;
+            return offset <= lineEnd ? offset : -1;
+        }
+
+        /**
+         * @return offset of a token the lexer reported on the given line, but not after the last token
+         */
+        int fixOffset(int line, int lastStart) {
+            if (line >= 0 && line + 1 < myLineCount) {
+                int next = myLineStarts[line + 1];
+                if (next - 1 > lastStart && next >= 2 && myChars[next - 2] == '\r' && myChars[next - 1] == '\n') {
+                    return next - 1;
+                }
+            }
+            return Math.max(lastStart, 0);
+        }
+
+        boolean isLineStart(int offset) {
+            return Arrays.binarySearch(myLineStarts, 0, myLineCount, offset) >= 0;
+        }
+    }
+
+    /**
+     * Hands the text to the lexer in small chunks, so the read position tells how far the lexer
+     * could have looked ahead.
+     */
+    private static final class TextReader extends Reader {
+        private char[] myChars;
+        private int myLength;
+        int myPosition;
+
+        void reset(char[] chars, int from, int length) {
+            myChars = chars;
+            myPosition = from;
+            myLength = length;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (myPosition >= myLength) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, READ_CHUNK), myLength - myPosition);
+            System.arraycopy(myChars, myPosition, buffer, offset, count);
+            myPosition += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class TokenBuffer {
+        int[] myStarts = new int[1024];
+        int[] myLines = new int[1024];
+        int[] myColumns = new int[1024];
+        int[] myStyles = new int[1024];
+        int[] myTypes = new int[1024];
+        long[] myStates = new long[1024];
+        int[] myReadEnds = new int[1024];
+        int myCount;
+        int myEndLine, myEndColumn;
+
+        void clear() {
+            myCount = 0;
+        }
+
+        void add(int start, int line, int column, int style, int type, long state, int readEnd) {
+            if (myCount == myStarts.length) {
+                int capacity = myCount * 2;
+                myStarts = Arrays.copyOf(myStarts, capacity);
+                myLines = Arrays.copyOf(myLines, capacity);
+                myColumns = Arrays.copyOf(myColumns, capacity);
+                myStyles = Arrays.copyOf(myStyles, capacity);
+                myTypes = Arrays.copyOf(myTypes, capacity);
+                myStates = Arrays.copyOf(myStates, capacity);
+                myReadEnds = Arrays.copyOf(myReadEnds, capacity);
+            }
+            myStarts[myCount] = start;
+            myLines[myCount] = line;
+            myColumns[myCount] = column;
+            myStyles[myCount] = style;
+            myTypes[myCount] = type;
+            myStates[myCount] = state;
+            myReadEnds[myCount] = readEnd;
+            myCount++;
+        }
+
+        void end(int line, int column) {
+            myEndLine = line;
+            myEndColumn = column;
+        }
+    }
+
+    /**
+     * Text, token starts and types, lexer states at the token starts and how far the lexer had read
+     * the text when it matched the tokens, of the last highlighting of a file.
+     */
+    private static final class Snapshot {
+        Text myText;
+        long myVersion;
+        int[] myStarts;
+        int[] myTypes;
+        long[] myStates;
+        int[] myReadEnds;
+        int myCount;
+
+        Snapshot(Text text, TokenBuffer tokens) {
+            myText = text;
+            myCount = tokens.myCount;
+            myStarts = Arrays.copyOf(tokens.myStarts, myCount + myCount / 8 + 16);
+            myTypes = Arrays.copyOf(tokens.myTypes, myStarts.length);
+            myStates = Arrays.copyOf(tokens.myStates, myStarts.length);
+            myReadEnds = Arrays.copyOf(tokens.myReadEnds, myStarts.length);
+        }
+
+        /**
+         * Finds the token to restart lexing at for a change at the given offset. Matching a token may
+         * look far ahead of its end, like a quoted scalar that isn't closed, so it is the last restartable
+         * token not after the first one the lexer could have matched having read the changed text.
+         *
+         * @return index of the token, -1 to restart at the start of the file
+         */
+        int findRestart(int changeStart, boolean lineStartOnly) {
+            // read ends are kept growing with the tokens, the first token whose read end reaches the change
+            int low = 0;
+            int high = myCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (myReadEnds[mid] < changeStart) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = Math.min(low, myCount - 1); i >= 0; i--) {
+                if (myStates[i] != -1 && (!lineStartOnly || myText.isLineStart(myStarts[i]))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Replaces the tokens from start up to the stop index with the given ones, moving the tokens after
+         * them by the given number of chars. The lexer run the given tokens come from may have read less far
+         * than the tokens before them, each token keeps the largest read end up to it so they stay ordered.
+         */
+        void replace(int start, int stop, TokenBuffer tokens, int delta) {
+            int tail = myCount - stop;
+            int count = start + tokens.myCount + tail;
+            if (count > myStarts.length) {
+                int capacity = count + count / 8 + 16;
+                int[] starts = new int[capacity];
+                int[] types = new int[capacity];
+                long[] states = new long[capacity];
+                int[] readEnds = new int[capacity];
+                System.arraycopy(myStarts, 0, starts, 0, start);
+                System.arraycopy(myTypes, 0, types, 0, start);
+                System.arraycopy(myStates, 0, states, 0, start);
+                System.arraycopy(myReadEnds, 0, readEnds, 0, start);
+                System.arraycopy(myStarts, stop, starts, count - tail, tail);
+                System.arraycopy(myTypes, stop, types, count - tail, tail);
+                System.arraycopy(myStates, stop, states, count - tail, tail);
+                System.arraycopy(myReadEnds, stop, readEnds, count - tail, tail);
+                myStarts = starts;
+                myTypes = types;
+                myStates = states;
+                myReadEnds = readEnds;
+            } else {
+                System.arraycopy(myStarts, stop, myStarts, count - tail, tail);
+                System.arraycopy(myTypes, stop, myTypes, count - tail, tail);
+                System.arraycopy(myStates, stop, myStates, count - tail, tail);
+                System.arraycopy(myReadEnds, stop, myReadEnds, count - tail, tail);
+            }
+            System.arraycopy(tokens.myStarts, 0, myStarts, start, tokens.myCount);
+            System.arraycopy(tokens.myTypes, 0, myTypes, start, tokens.myCount);
+            System.arraycopy(tokens.myStates, 0, myStates, start, tokens.myCount);
+            System.arraycopy(tokens.myReadEnds, 0, myReadEnds, start, tokens.myCount);
+            for (int i = count - tail; i < count; i++) {
+                myStarts[i] += delta;
+                myReadEnds[i] += delta;
+            }
+            for (int i = Math.max(start, 1); i < count; i++) {
+                if (myReadEnds[i] < myReadEnds[i - 1]) {
+                    myReadEnds[i] = myReadEnds[i - 1];
+                }
+            }
+            myCount = count;
+        }
+    }
+
+    /**
+     * 最近一次高亮的 token, 每个 token 到下一个 token 开始处结束
+     */
+    public static final class Tokens {
+        private final Snapshot mySnapshot;
+        
+        private Tokens(Snapshot snapshot) {
+            mySnapshot = snapshot;
+        }
+        
+        public int getCount() {
+            return mySnapshot.myCount;
+        }
+        
+        /**
+         * 获取 token 的类型, 即词法分析器 {@link RestartableLexer#getTokenType()} 的返回值
+         */
+        public int getType(int index) {
+            return mySnapshot.myTypes[index];
+        }
+        
+        public int getStart(int index) {
+            return mySnapshot.myStarts[index];
+        }
+        
+        public int getEnd(int index) {
+            return index + 1 < mySnapshot.myCount ? mySnapshot.myStarts[index + 1] : mySnapshot.myText.myLength;
+        }
+        
+        public int getLine(int offset) {
+            return mySnapshot.myText.lineOf(offset);
+        }
+        
+        public int getColumn(int offset) {
+            Text text = mySnapshot.myText;
+            return offset - text.myLineStarts[text.lineOf(offset)];
+        }
+        
+        public char charAt(int offset) {
+            return mySnapshot.myText.myChars[offset];
+        }
+        
+        @NonNull
+        public String getText(int index) {
+            int start = getStart(index);
+            return new String(mySnapshot.myText.myChars, start, getEnd(index) - start);
+        }
+    }
+}
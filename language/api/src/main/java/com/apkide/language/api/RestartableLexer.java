@@ -0,0 +1,44 @@
+package com.apkide.language.api;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 可以从中间位置重新开始的词法分析器, 用于增量高亮
+ */
+public interface RestartableLexer {
+    
+    void yyreset(Reader reader);
+    
+    int yylex() throws IOException;
+    
+    int getLine();
+    
+    int getColumn();
+    
+    /**
+     * 获取当前位置的词法状态, 包括词法状态以外的嵌套信息
+     *
+     * @return 词法状态, 0 为初始状态, -1 表示不能从当前位置重新开始
+     */
+    long getRestartState();
+    
+    /**
+     * 恢复 {@link #getRestartState()} 返回的词法状态
+     */
+    void restoreState(long state);
+    
+    /**
+     * 获取最近一个 token 的类型, 保存在 {@link IncrementalHighlighter.Tokens} 中供语义高亮使用
+     */
+    default int getTokenType() {
+        return 0;
+    }
+    
+    /**
+     * 规则依赖列号的词法分析器只能从行首重新开始
+     */
+    default boolean isLineStartRestartOnly() {
+        return false;
+    }
+}
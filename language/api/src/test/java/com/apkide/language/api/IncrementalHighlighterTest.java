@@ -0,0 +1,309 @@
+package com.apkide.language.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Relexes a file after random edits and compares the tokens with those of lexing it from scratch.
+ */
+public class IncrementalHighlighterTest {
+    private static final String FILE_PATH = "/test.txt";
+    private static final String[] FRAGMENTS = {"'", "'", "\n", " ", "a", "bc", "x'y", "'quoted'", ":", ":", "\n\n",
+            "        ", "\n\n\n\n\n\n\n\n"};
+
+    @Test
+    public void relexMatchesFullLex() throws IOException {
+        Random random = new Random(42);
+        for (int run = 0; run < 6; run++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                text.append("key").append(i).append(": value ").append(i).append('\n');
+            }
+            TextCallback incremental = new TextCallback(text.toString(), true);
+            IncrementalHighlighter highlighter = new IncrementalHighlighter(new QuoteLexer());
+            highlighter.highlighting(FILE_PATH, incremental);
+
+            for (int round = 0; round < 250; round++) {
+                incremental.edit(random);
+                highlighter.highlighting(FILE_PATH, incremental);
+                assertTokens("run " + run + ", round " + round + ", text:\n" + incremental.myText,
+                        incremental.myText, highlighter.getTokens(FILE_PATH, incremental.myVersion));
+            }
+        }
+    }
+
+    @Test
+    public void unclosedQuoteIsRelexedBeforeTheChange() throws IOException {
+        String text = "a: b c d e f g h i j k\n";
+        TextCallback incremental = new TextCallback(text, true);
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(new QuoteLexer());
+        highlighter.highlighting(FILE_PATH, incremental);
+
+        // the quote reads to the end of the text while the tokens after it are kept, closing it near the end
+        // has to relex it
+        String[] edits = {"a: 'b c d e f g h i j k\n", "a: 'b c d e f g h i j' k\n"};
+        for (String edit : edits) {
+            incremental.myText = edit;
+            incremental.myVersion++;
+            highlighter.highlighting(FILE_PATH, incremental);
+            assertTokens(edit, edit, highlighter.getTokens(FILE_PATH, incremental.myVersion));
+        }
+    }
+
+    private static void assertTokens(String message, String text, IncrementalHighlighter.Tokens actual) throws IOException {
+        TextCallback full = new TextCallback(text, false);
+        IncrementalHighlighter reference = new IncrementalHighlighter(new QuoteLexer());
+        reference.highlighting(FILE_PATH, full);
+        IncrementalHighlighter.Tokens expected = reference.getTokens(FILE_PATH, full.myVersion);
+
+        assertNotNull(message, expected);
+        assertNotNull(message, actual);
+        assertEquals(message, expected.getCount(), actual.getCount());
+        for (int i = 0; i < expected.getCount(); i++) {
+            assertEquals(message + "\ntoken " + i, expected.getStart(i), actual.getStart(i));
+            assertEquals(message + "\ntoken " + i, expected.getType(i), actual.getType(i));
+        }
+    }
+
+    /**
+     * Words, keys, spaces, line breaks and quoted text. A word is a key if only white space is between it and
+     * a colon, and a quote without a closing one is a token of its own, found only after reading the rest of
+     * the text as a yaml lexer does for an unclosed quoted scalar. Both look ahead past the end of the token.
+     */
+    private static class QuoteLexer implements RestartableLexer {
+        private static final int WORD = 1;
+        private static final int KEY = 2;
+        private static final int SPACE = 3;
+        private static final int LINE_BREAK = 4;
+        private static final int QUOTED = 5;
+        private static final int QUOTE = 6;
+        private static final int OTHER = 7;
+
+        private Reader myReader;
+        private char[] myChars = new char[256];
+        private int myLength;
+        private boolean myEof;
+        private int myPosition;
+        private int myTokenStart;
+        private int myLine, myColumn;
+        private int myTokenType;
+
+        @Override
+        public void yyreset(Reader reader) {
+            myReader = reader;
+            myLength = 0;
+            myEof = false;
+            myPosition = 0;
+            myTokenStart = 0;
+            myLine = 0;
+            myColumn = 0;
+        }
+
+        @Override
+        public int yylex() throws IOException {
+            // position after the token matched last
+            for (int i = myTokenStart; i < myPosition; i++) {
+                if (myChars[i] == '\n') {
+                    myLine++;
+                    myColumn = 0;
+                } else {
+                    myColumn++;
+                }
+            }
+            myTokenStart = myPosition;
+            if (!ensure(myPosition)) {
+                return -1;
+            }
+            char c = myChars[myPosition];
+            int end = myPosition + 1;
+            if (c == '\'') {
+                int close = end;
+                while (ensure(close) && myChars[close] != '\'') {
+                    close++;
+                }
+                if (ensure(close)) {
+                    end = close + 1;
+                    myTokenType = QUOTED;
+                } else {
+                    myTokenType = QUOTE;
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                while (ensure(end) && Character.isLetterOrDigit(myChars[end])) {
+                    end++;
+                }
+                int colon = end;
+                while (ensure(colon) && (myChars[colon] == ' ' || myChars[colon] == '\n')) {
+                    colon++;
+                }
+                myTokenType = ensure(colon) && myChars[colon] == ':' ? KEY : WORD;
+            } else if (c == ' ') {
+                while (ensure(end) && myChars[end] == ' ') {
+                    end++;
+                }
+                myTokenType = SPACE;
+            } else {
+                myTokenType = c == '\n' ? LINE_BREAK : OTHER;
+            }
+            myPosition = end;
+            return myTokenType;
+        }
+
+        private boolean ensure(int index) throws IOException {
+            while (index >= myLength && !myEof) {
+                if (myLength == myChars.length) {
+                    myChars = Arrays.copyOf(myChars, myLength * 2);
+                }
+                // a char at a time, the highlighter sees how far the lexer really looked ahead
+                int count = myReader.read(myChars, myLength, 1);
+                if (count < 0) {
+                    myEof = true;
+                } else {
+                    myLength += count;
+                }
+            }
+            return index < myLength;
+        }
+
+        @Override
+        public int getLine() {
+            return myLine;
+        }
+
+        @Override
+        public int getColumn() {
+            return myColumn;
+        }
+
+        @Override
+        public long getRestartState() {
+            return 0;
+        }
+
+        @Override
+        public void restoreState(long state) {
+        }
+
+        @Override
+        public int getTokenType() {
+            return myTokenType;
+        }
+    }
+
+    private static class TextCallback implements CodeHighlighterCallback {
+        private final boolean myIncremental;
+        String myText;
+        long myVersion = 1;
+
+        TextCallback(String text, boolean incremental) {
+            myText = text;
+            myIncremental = incremental;
+        }
+
+        void edit(Random random) {
+            int start = myText.isEmpty() ? 0 : random.nextInt(myText.length() + 1);
+            int end = start;
+            if (random.nextInt(3) == 0 && start < myText.length()) {
+                end = Math.min(myText.length(), start + 1 + random.nextInt(8));
+            }
+            String inserted = random.nextInt(4) == 0 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+            myText = myText.substring(0, start) + inserted + myText.substring(end);
+            myVersion++;
+        }
+
+        @Override
+        public boolean hasPreviousHighlighting(@NonNull String filePath) {
+            return myIncremental;
+        }
+
+        @Override
+        public void tokenFound(int styleKind, int startLine, int startColumn, int endLine, int endColumn) {
+        }
+
+        @Override
+        public void semanticTokenFound(int styleKind, int startLine, int startColumn, int endLine, int endColumn) {
+        }
+
+        @NonNull
+        @Override
+        public String getFileExtension(@NonNull String filePath) {
+            return "txt";
+        }
+
+        @NonNull
+        @Override
+        public String getFileName(@NonNull String filePath) {
+            return "test.txt";
+        }
+
+        @Nullable
+        @Override
+        public String getParentFilePath(@NonNull String filePath) {
+            return "/";
+        }
+
+        @NonNull
+        @Override
+        public Reader getFileReader(@NonNull String filePath) {
+            return new StringReader(myText);
+        }
+
+        @Override
+        public long getFileSize(@NonNull String filePath) {
+            return myText.length();
+        }
+
+        @Override
+        public long getFileVersion(@NonNull String filePath) {
+            return myVersion;
+        }
+
+        @NonNull
+        @Override
+        public List<String> getFileChildren(@NonNull String filePath) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isFileExists(@NonNull String filePath) {
+            return true;
+        }
+
+        @Override
+        public boolean isDirectory(@NonNull String filePath) {
+            return false;
+        }
+
+        @Override
+        public boolean isFile(@NonNull String filePath) {
+            return true;
+        }
+
+        @Override
+        public boolean isArchiveFile(@NonNull String filePath) {
+            return false;
+        }
+
+        @Override
+        public boolean isArchiveEntry(@NonNull String filePath) {
+            return false;
+        }
+
+        @Override
+        public boolean isReadOnly(@NonNull String filePath) {
+            return false;
+        }
+    }
+}
@@ -6,13 +6,13 @@ import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeHighlighter;
 import com.apkide.language.api.CodeHighlighterCallback;
+import com.apkide.language.api.IncrementalHighlighter;
 
 import java.io.IOException;
-import java.io.Reader;
 
 public class JavaCodeHighlighter implements CodeHighlighter {
     private final JavaLanguage myLanguage;
-    private final JavaLexer myLexer = new JavaLexer();
+    private final IncrementalHighlighter myHighlighter = new IncrementalHighlighter(new JavaLexer());
     
     public JavaCodeHighlighter(JavaLanguage language) {
         myLanguage = language;
@@ -22,24 +22,7 @@ public class JavaCodeHighlighter implements CodeHighlighter {
     public void highlighting(@NonNull String filePath, @NonNull CodeHighlighterCallback callback) {
         long startTime=System.currentTimeMillis();
         try {
-            Reader reader = callback.getFileReader(filePath);
-            myLexer.yyreset(reader);
-            myLexer.yybegin(myLexer.getDefaultState());
-            int style = myLexer.yylex();
-            int startLine = myLexer.getLine();
-            int startColumn = myLexer.getColumn();
-            
-            while (true) {
-                int nextStyle = myLexer.yylex();
-                int line = myLexer.getLine();
-                int column = myLexer.getColumn();
-                callback.tokenFound(style, startLine,
-                        startColumn, line, column);
-                style = nextStyle;
-                startLine = line;
-                startColumn = column;
-                if (nextStyle == -1) break;
-            }
+            myHighlighter.highlighting(filePath, callback);
         } catch (IOException ignored) {
         
         }
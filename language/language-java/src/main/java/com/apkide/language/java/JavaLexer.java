@@ -4,13 +4,14 @@
 
 package com.apkide.language.java;
 import static com.apkide.language.api.StyleKind.*;
+import com.apkide.language.api.RestartableLexer;
 import java.io.Reader;
 import java.io.IOException;
 
 
 
 @SuppressWarnings("fallthrough")
-public class JavaLexer {
+public class JavaLexer implements RestartableLexer {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -841,6 +842,16 @@ public class JavaLexer {
       return yycolumn;
   }
 
+  @Override
+  public long getRestartState(){
+      return yystate();
+  }
+
+  @Override
+  public void restoreState(long state){
+      yybegin((int) state);
+  }
+
 
 
   /**
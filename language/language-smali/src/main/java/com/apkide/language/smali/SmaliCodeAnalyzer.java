@@ -4,16 +4,68 @@ import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeAnalyzer;
 import com.apkide.language.api.CodeAnalyzerCallback;
+import com.apkide.language.api.FileStoreCallback;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class SmaliCodeAnalyzer implements CodeAnalyzer {
+    private static final int MAX_FILES = 4;
+
     private final SmaliLanguage myLanguage;
-    
+    private final ThreadLocal<SmaliFileParser> myParsers = ThreadLocal.withInitial(SmaliFileParser::new);
+    private final Map<String, SmaliParse> myParses = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SmaliParse> eldest) {
+            return size() > MAX_FILES;
+        }
+    };
+
     public SmaliCodeAnalyzer(SmaliLanguage language) {
         myLanguage = language;
     }
-    
+
+    /**
+     * Reports the errors of lexing, parsing and assembling the file, from the cached parse while the
+     * version of the file stays the same.
+     */
     @Override
     public void analyze(@NonNull String filePath, @NonNull CodeAnalyzerCallback callback) {
-    
+        SmaliParse parse;
+        try {
+            parse = getParse(callback, filePath);
+        } catch (IOException e) {
+            return;
+        }
+        for (int i = 0; i < parse.myErrorCount; i++) {
+            int line = parse.myLines[i];
+            int column = parse.myColumns[i];
+            callback.errorFound(filePath, parse.myMessages[i], parse.myCodes[i], line, column, line,
+                    column + parse.myLengths[i]);
+        }
+    }
+
+    @NonNull
+    private SmaliParse getParse(@NonNull FileStoreCallback callback, @NonNull String filePath)
+            throws IOException {
+        // read before the text, a change in between leaves the parse with an older version to parse again
+        long version = callback.getFileVersion(filePath);
+        synchronized (myParses) {
+            SmaliParse parse = myParses.get(filePath);
+            if (parse != null && parse.myVersion == version) {
+                return parse;
+            }
+        }
+
+        SmaliParse parse;
+        try (Reader reader = callback.getFileReader(filePath)) {
+            parse = myParsers.get().parse(filePath, version, reader);
+        }
+        synchronized (myParses) {
+            myParses.put(filePath, parse);
+        }
+        return parse;
     }
 }
@@ -4,17 +4,65 @@ import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeCompleter;
 import com.apkide.language.api.CodeCompleterCallback;
+import com.apkide.language.api.FileLines;
+
+import java.io.IOException;
+import java.util.Map;
 
 public class SmaliCodeCompleter implements CodeCompleter {
+    private static final int MAX_COMPLETIONS = 200;
+    private static final String DELIMITERS = ",{}()";
+    
     private final SmaliLanguage myLanguage;
     
     public SmaliCodeCompleter(SmaliLanguage language) {
         myLanguage = language;
     }
     
+    /**
+     * Completes the members of the class before an arrow and class descriptors from the index.
+     */
     @Override
     public void completion(@NonNull String filePath, int line, int column, boolean allowTypes,
                            @NonNull CodeCompleterCallback callback) {
-    
+        String text;
+        try {
+            myLanguage.getIndex().update(callback, filePath);
+            text = FileLines.readLine(callback, filePath, line);
+        } catch (IOException e) {
+            return;
+        }
+        if (text == null) {
+            return;
+        }
+        text = text.substring(0, Math.min(column, text.length()));
+        
+        String word = text.substring(FileLines.getWordStart(text, text.length(), DELIMITERS));
+        
+        int arrow = word.lastIndexOf("->");
+        if (arrow > 0 && word.charAt(arrow - 1) == ';') {
+            String owner = word.substring(0, arrow + 2);
+            String member = word.substring(arrow + 2);
+            for (Map.Entry<String, Integer> entry :
+                    myLanguage.getIndex().findSymbols(owner + member, false, MAX_COMPLETIONS).entrySet()) {
+                String descriptor = entry.getKey().substring(owner.length());
+                callback.completionFound(entry.getValue(), SmaliFileSymbols.getName(entry.getKey()), descriptor,
+                        null, false, false, null, descriptor, false);
+            }
+            return;
+        }
+        
+        int type = 0;
+        while (type < word.length() && word.charAt(type) == '[') {
+            type++;
+        }
+        if (allowTypes && type < word.length() && word.charAt(type) == 'L') {
+            String prefix = word.substring(type);
+            for (Map.Entry<String, Integer> entry :
+                    myLanguage.getIndex().findSymbols(prefix, true, MAX_COMPLETIONS).entrySet()) {
+                callback.completionFound(entry.getValue(), entry.getKey(), null, null, false, false, null,
+                        entry.getKey(), false);
+            }
+        }
     }
 }
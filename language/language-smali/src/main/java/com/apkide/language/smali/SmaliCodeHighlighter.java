@@ -1,26 +1,163 @@
 package com.apkide.language.smali;
 
+import static com.apkide.language.api.StyleKind.*;
+import static com.apkide.smali.smali.SmaliParser.*;
+
 import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeHighlighter;
 import com.apkide.language.api.CodeHighlighterCallback;
+import com.apkide.language.api.IncrementalHighlighter;
+
+import java.io.IOException;
 
 public class SmaliCodeHighlighter implements CodeHighlighter {
     private final SmaliLanguage myLanguage;
-    
+    private final IncrementalHighlighter myHighlighter = new IncrementalHighlighter(new SmaliLexer());
+
     public SmaliCodeHighlighter(SmaliLanguage language) {
         myLanguage = language;
     }
-    
+
     @Override
     public void highlighting(@NonNull String filePath,
                              @NonNull CodeHighlighterCallback callback) {
-    
+        try {
+            myHighlighter.highlighting(filePath, callback);
+        } catch (IOException ignored) {
+        }
     }
-    
+
+    /**
+     * Highlights registers, labels, type descriptors and member names on the tokens of the highlighting
+     * of the same file version, the file isn't lexed again.
+     */
     @Override
     public void semanticHighlighting(@NonNull String filePath,
                                      @NonNull CodeHighlighterCallback callback) {
-    
+        IncrementalHighlighter.Tokens tokens = myHighlighter.getTokens(filePath, callback.getFileVersion(filePath));
+        if (tokens == null) {
+            // the file changed since its highlighting, the next one comes with its own tokens
+            return;
+        }
+
+        int count = tokens.getCount();
+        for (int i = 0; i < count; i++) {
+            switch (tokens.getType(i)) {
+                case REGISTER:
+                    report(tokens, i, i, tokens.charAt(tokens.getStart(i)) == 'p' ? ParameterStyle : VariableStyle,
+                            callback);
+                    break;
+                case COLON:
+                    // a label is a colon right before its name, a colon after a field name has a type behind it
+                    if (i + 1 < count && tokens.getType(i + 1) == SIMPLE_NAME) {
+                        report(tokens, i, i + 1, NamespaceStyle, callback);
+                        i++;
+                    }
+                    break;
+                case ARRAY_TYPE_PREFIX:
+                    if (i + 1 < count && isType(tokens.getType(i + 1))) {
+                        report(tokens, i, i + 1, TypeStyle, callback);
+                        i++;
+                    } else {
+                        report(tokens, i, i, TypeStyle, callback);
+                    }
+                    break;
+                case CLASS_DESCRIPTOR:
+                case PRIMITIVE_TYPE:
+                case VOID_TYPE:
+                case PARAM_LIST_OR_ID_PRIMITIVE_TYPE:
+                    report(tokens, i, i, TypeStyle, callback);
+                    break;
+                case ARROW: {
+                    // Lclass;->name(...) is a method reference, Lclass;->name:type a field reference
+                    int name = next(tokens, i);
+                    int after = name >= 0 ? next(tokens, name) : -1;
+                    if (after >= 0 && tokens.getType(after) == OPEN_PAREN) {
+                        report(tokens, name, name, FunctionCallStyle, callback);
+                        i = name;
+                    } else if (after >= 0 && tokens.getType(after) == COLON) {
+                        report(tokens, name, name, VariableStyle, callback);
+                        i = name;
+                    }
+                    break;
+                }
+                case METHOD_DIRECTIVE:
+                case FIELD_DIRECTIVE:
+                    i = declaration(tokens, i, callback);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reports the name of a method or field declaration, the last name before its parameters or type.
+     *
+     * @return index of the name, the directive if there is none
+     */
+    private static int declaration(IncrementalHighlighter.Tokens tokens, int directive,
+                                   CodeHighlighterCallback callback) {
+        boolean method = tokens.getType(directive) == METHOD_DIRECTIVE;
+        int name = -1;
+        for (int i = next(tokens, directive); i >= 0; i = next(tokens, i)) {
+            int type = tokens.getType(i);
+            if (type == (method ? OPEN_PAREN : COLON)) {
+                if (name >= 0) {
+                    report(tokens, name, name, method ? FunctionStyle : VariableStyle, callback);
+                    return name;
+                }
+                break;
+            }
+            if (type == ACCESS_SPEC || type == HIDDENAPI_RESTRICTION) {
+                continue;
+            }
+            if (name >= 0) {
+                break;
+            }
+            name = i;
+        }
+        return directive;
+    }
+
+    /**
+     * @return index of the next token that isn't white space or a comment, -1 at the end of the line
+     */
+    private static int next(IncrementalHighlighter.Tokens tokens, int index) {
+        int count = tokens.getCount();
+        for (int i = index + 1; i < count; i++) {
+            int type = tokens.getType(i);
+            if (type == WHITE_SPACE) {
+                if (containsLineBreak(tokens, i)) {
+                    return -1;
+                }
+            } else if (type != LINE_COMMENT) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsLineBreak(IncrementalHighlighter.Tokens tokens, int index) {
+        for (int offset = tokens.getStart(index), end = tokens.getEnd(index); offset < end; offset++) {
+            char c = tokens.charAt(offset);
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isType(int type) {
+        return type == CLASS_DESCRIPTOR || type == PRIMITIVE_TYPE;
+    }
+
+    private static void report(IncrementalHighlighter.Tokens tokens, int first, int last, int style,
+                               CodeHighlighterCallback callback) {
+        int start = tokens.getStart(first);
+        int end = tokens.getEnd(last);
+        callback.semanticTokenFound(style, tokens.getLine(start), tokens.getColumn(start),
+                tokens.getLine(end), tokens.getColumn(end));
     }
 }
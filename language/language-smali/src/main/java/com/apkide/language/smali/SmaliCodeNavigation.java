@@ -5,6 +5,8 @@ import androidx.annotation.NonNull;
 import com.apkide.language.api.CodeNavigation;
 import com.apkide.language.api.CodeNavigationCallback;
 
+import java.io.IOException;
+
 public class SmaliCodeNavigation implements CodeNavigation {
     private final SmaliLanguage myLanguage;
     
@@ -12,16 +14,56 @@ public class SmaliCodeNavigation implements CodeNavigation {
         myLanguage = language;
     }
     
+    /**
+     * Reports the references of the class, method or field at the position.
+     */
     @Override
     public void searchUsages(@NonNull String filePath, int line, int column,
                              @NonNull CodeNavigationCallback callback) {
-    
+        String symbol = findSymbol(filePath, line, column, callback);
+        if (symbol == null) {
+            return;
+        }
+        myLanguage.getIndex().findSites(symbol, (path, kind, siteLine, siteColumn, length, declaration) -> {
+            if (!declaration) {
+                callback.usageFound(path, siteLine, siteColumn, siteLine, siteColumn + length);
+            }
+        });
     }
     
+    /**
+     * Reports the declarations of the class, method or field at the position, without the declaration
+     * at the position itself unless it is asked for.
+     */
     @Override
     public void searchSymbol(@NonNull String filePath, int line, int column,
                              boolean includeDeclaration,
                              @NonNull CodeNavigationCallback callback) {
+        String symbol = findSymbol(filePath, line, column, callback);
+        if (symbol == null) {
+            return;
+        }
+        String name = SmaliFileSymbols.getName(symbol);
+        myLanguage.getIndex().findSites(symbol, (path, kind, siteLine, siteColumn, length, declaration) -> {
+            if (!declaration) {
+                return;
+            }
+            if (!includeDeclaration && path.equals(filePath) && siteLine == line
+                    && siteColumn <= column && column <= siteColumn + length) {
+                return;
+            }
+            callback.symbolFound(kind, name, false, path, siteLine, siteColumn, siteLine, siteColumn + length);
+        });
+    }
     
+    private String findSymbol(String filePath, int line, int column, CodeNavigationCallback callback) {
+        SmaliFileSymbols symbols;
+        try {
+            symbols = myLanguage.getIndex().update(callback, filePath);
+        } catch (IOException e) {
+            return null;
+        }
+        int site = symbols.findSite(line, column);
+        return site >= 0 ? symbols.mySymbols[site] : null;
     }
 }
@@ -0,0 +1,106 @@
+package com.apkide.language.smali;
+
+import static com.apkide.language.smali.SmaliFileSymbols.API_LEVEL;
+
+import androidx.annotation.NonNull;
+
+import com.apkide.smali.dexlib2.Opcodes;
+import com.apkide.smali.dexlib2.writer.builder.DexBuilder;
+import com.apkide.smali.smali.InvalidToken;
+import com.apkide.smali.smali.SmaliFlexLexer;
+import com.apkide.smali.smali.SmaliParser;
+import com.apkide.smali.smali.SmaliTreeWalker;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTreeNodeStream;
+
+import java.io.Reader;
+
+/**
+ * Lexer, parser and tree walker of one thread, reused for each file the thread parses. The tree walker
+ * assembles the file into a throwaway {@link DexBuilder}, which finds the errors only a build would find
+ * otherwise.
+ */
+final class SmaliFileParser {
+    private final SmaliFlexLexer myLexer = new SmaliFlexLexer(null, API_LEVEL);
+    private final Parser myParser = new Parser();
+    private final TreeWalker myTreeWalker = new TreeWalker();
+    private SmaliParse myParse;
+
+    SmaliFileParser() {
+        myLexer.setSuppressErrors(true);
+        myParser.setApiLevel(API_LEVEL);
+        myTreeWalker.setApiLevel(API_LEVEL);
+    }
+
+    @NonNull
+    SmaliParse parse(@NonNull String filePath, long version, @NonNull Reader reader) {
+        SmaliParse parse = new SmaliParse(filePath, version);
+        myParse = parse;
+        try {
+            myLexer.yyreset(reader);
+            CommonTokenStream tokens = new CommonTokenStream(myLexer);
+            tokens.fill();
+            parse.myTokens = tokens;
+
+            myParser.setTokenStream(tokens);
+            try {
+                parse.myTree = myParser.smali_file().getTree();
+            } catch (RecognitionException e) {
+                myParser.reportError(e);
+            }
+            for (Token token : tokens.getTokens()) {
+                if (token instanceof InvalidToken) {
+                    parse.addError(SmaliParse.LEXER_ERROR, ((InvalidToken) token).getMessage(), token.getLine(),
+                            token.getCharPositionInLine(), token);
+                }
+            }
+
+            // the tree of a file with syntax errors is incomplete, walking it only gives errors that aren't there
+            if (parse.myTree != null && parse.myErrorCount == 0) {
+                CommonTreeNodeStream nodes = new CommonTreeNodeStream(parse.myTree);
+                nodes.setTokenStream(tokens);
+                myTreeWalker.setTreeNodeStream(nodes);
+                myTreeWalker.reset();
+                myTreeWalker.setDexBuilder(new DexBuilder(Opcodes.forApi(API_LEVEL)));
+                try {
+                    myTreeWalker.smali_file();
+                } catch (RecognitionException e) {
+                    myTreeWalker.reportError(e);
+                }
+            }
+        } finally {
+            myParse = null;
+            myParser.setTokenStream(null);
+            myTreeWalker.setTreeNodeStream(null);
+            myTreeWalker.setDexBuilder(null);
+        }
+        return parse;
+    }
+
+    private final class Parser extends SmaliParser {
+        Parser() {
+            super(null);
+        }
+
+        @Override
+        public void displayRecognitionError(String[] tokenNames, RecognitionException e) {
+            myParse.addError(SmaliParse.SYNTAX_ERROR, getErrorMessage(e, tokenNames), e.line, e.charPositionInLine,
+                    e.token);
+        }
+    }
+
+    private final class TreeWalker extends SmaliTreeWalker {
+        TreeWalker() {
+            super(null);
+        }
+
+        @Override
+        public void displayRecognitionError(String[] tokenNames, RecognitionException e) {
+            myParse.addError(SmaliParse.SEMANTIC_ERROR, getErrorMessage(e, tokenNames), e.line,
+                    e.charPositionInLine, e.token);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.apkide.language.smali;
+
+import static com.apkide.smali.smali.SmaliParser.*;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.language.api.SymbolKind;
+import com.apkide.smali.smali.SmaliFlexLexer;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Classes, methods and fields a smali file declares or references, each site with the position of its name.
+ * Symbols are named by their descriptor, {@code Lcom/Foo;}, {@code Lcom/Foo;->bar(I)V} and
+ * {@code Lcom/Foo;->baz:I}. Sites are picked out of the tokens without a full parse, a broken line
+ * only loses the sites on it.
+ */
+final class SmaliFileSymbols {
+    // accept what any api level accepts, indexing doesn't know the target of the file
+    static final int API_LEVEL = Integer.MAX_VALUE;
+
+    final String myFilePath;
+    final long myVersion;
+    String[] mySymbols = new String[64];
+    int[] myKinds = new int[64];
+    boolean[] myDeclarations = new boolean[64];
+    int[] myLines = new int[64];
+    int[] myColumns = new int[64];
+    int[] myLengths = new int[64];
+    int myCount;
+
+    // significant tokens of the file while parsing, white space and comments left out
+    private int[] myTokenTypes;
+    private String[] myTokenTexts;
+    private int[] myTokenLines;
+    private int[] myTokenColumns;
+    private int[] myTokenLengths;
+    private int myTokenCount;
+
+    SmaliFileSymbols(@NonNull String filePath, long version) {
+        myFilePath = filePath;
+        myVersion = version;
+    }
+
+    /**
+     * @return a file that was deleted, it has no sites
+     */
+    @NonNull
+    static SmaliFileSymbols removed(@NonNull String filePath) {
+        return new SmaliFileSymbols(filePath, -1);
+    }
+
+    boolean isRemoved() {
+        return myVersion == -1;
+    }
+
+    /**
+     * @return index of the site whose name contains the position, -1 if there is none
+     */
+    int findSite(int line, int column) {
+        for (int i = 0; i < myCount; i++) {
+            if (myLines[i] == line && myColumns[i] <= column && column <= myColumns[i] + myLengths[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the simple name of a symbol, the class descriptor or the member name
+     */
+    @NonNull
+    static String getName(@NonNull String symbol) {
+        int arrow = symbol.indexOf("->");
+        if (arrow < 0) {
+            return symbol;
+        }
+        int end = arrow + 2;
+        while (end < symbol.length() && symbol.charAt(end) != '(' && symbol.charAt(end) != ':') {
+            end++;
+        }
+        return symbol.substring(arrow + 2, end);
+    }
+
+    @NonNull
+    static SmaliFileSymbols parse(@NonNull String filePath, long version, @NonNull Reader reader,
+                                  @NonNull SmaliFlexLexer lexer) throws IOException {
+        SmaliFileSymbols symbols = new SmaliFileSymbols(filePath, version);
+        symbols.readTokens(reader, lexer);
+        symbols.findSites();
+        symbols.myTokenTypes = null;
+        symbols.myTokenTexts = null;
+        symbols.myTokenLines = null;
+        symbols.myTokenColumns = null;
+        symbols.myTokenLengths = null;
+        return symbols;
+    }
+
+    private void readTokens(Reader reader, SmaliFlexLexer lexer) throws IOException {
+        myTokenTypes = new int[1024];
+        myTokenTexts = new String[1024];
+        myTokenLines = new int[1024];
+        myTokenColumns = new int[1024];
+        myTokenLengths = new int[1024];
+        lexer.yyreset(reader);
+        while (true) {
+            Token token = lexer.yylex();
+            int type = token.getType();
+            if (type == Token.EOF) {
+                break;
+            }
+            if (type == WHITE_SPACE || type == LINE_COMMENT) {
+                continue;
+            }
+            if (myTokenCount == myTokenTypes.length) {
+                int capacity = myTokenCount * 2;
+                myTokenTypes = Arrays.copyOf(myTokenTypes, capacity);
+                myTokenTexts = Arrays.copyOf(myTokenTexts, capacity);
+                myTokenLines = Arrays.copyOf(myTokenLines, capacity);
+                myTokenColumns = Arrays.copyOf(myTokenColumns, capacity);
+                myTokenLengths = Arrays.copyOf(myTokenLengths, capacity);
+            }
+            myTokenTypes[myTokenCount] = type;
+            myTokenTexts[myTokenCount] = token.getText();
+            myTokenLines[myTokenCount] = token.getLine() - 1;
+            myTokenColumns[myTokenCount] = token.getCharPositionInLine();
+            // the text of a quoted name or a string lost its quotes, the indices keep the length in the file
+            CommonToken common = (CommonToken) token;
+            myTokenLengths[myTokenCount] = common.getStopIndex() - common.getStartIndex() + 1;
+            myTokenCount++;
+        }
+    }
+
+    private void findSites() {
+        String className = null;
+        for (int i = 0; i < myTokenCount; i++) {
+            switch (myTokenTypes[i]) {
+                case CLASS_DIRECTIVE: {
+                    int j = skipModifiers(i + 1, i);
+                    if (j < myTokenCount && myTokenTypes[j] == CLASS_DESCRIPTOR && isSameLine(i, j)) {
+                        className = myTokenTexts[j];
+                        addSite(className, SymbolKind.Class, true, j, j);
+                        i = j;
+                    }
+                    break;
+                }
+                case METHOD_DIRECTIVE:
+                case FIELD_DIRECTIVE: {
+                    boolean method = myTokenTypes[i] == METHOD_DIRECTIVE;
+                    int name = skipModifiers(i + 1, i);
+                    int nameEnd = readName(name, i);
+                    if (className == null || nameEnd == name) {
+                        break;
+                    }
+                    String descriptor = method ? readMethodDescriptor(nameEnd) : readFieldDescriptor(nameEnd);
+                    if (descriptor != null) {
+                        String memberName = join(name, nameEnd);
+                        addSite(className + "->" + memberName + descriptor, memberKind(method, memberName), true,
+                                name, nameEnd - 1);
+                        // the types of the descriptor are references of their own
+                        i = nameEnd - 1;
+                    }
+                    break;
+                }
+                case ARROW: {
+                    String owner = readOwner(i);
+                    int name = i + 1;
+                    int nameEnd = readName(name, i);
+                    if (owner == null || nameEnd == name || nameEnd == myTokenCount) {
+                        break;
+                    }
+                    boolean method = myTokenTypes[nameEnd] == OPEN_PAREN;
+                    String descriptor = method ? readMethodDescriptor(nameEnd) : readFieldDescriptor(nameEnd);
+                    if (descriptor != null) {
+                        String memberName = join(name, nameEnd);
+                        addSite(owner + "->" + memberName + descriptor, memberKind(method, memberName), false,
+                                name, nameEnd - 1);
+                        i = nameEnd - 1;
+                    }
+                    break;
+                }
+                case CLASS_DESCRIPTOR:
+                    addSite(myTokenTexts[i], SymbolKind.Class, false, i, i);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static int memberKind(boolean method, String name) {
+        if (!method) {
+            return SymbolKind.Field;
+        }
+        return name.equals("<init>") || name.equals("<clinit>") ? SymbolKind.Constructor : SymbolKind.Method;
+    }
+
+    private int skipModifiers(int index, int directive) {
+        while (index < myTokenCount && isSameLine(directive, index)
+                && (myTokenTypes[index] == ACCESS_SPEC || myTokenTypes[index] == HIDDENAPI_RESTRICTION)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Reads a member name, names that look like types or literals are lexed as those, so it is the tokens
+     * right after each other up to the parameters or the type.
+     *
+     * @return index of the token after the name
+     */
+    private int readName(int index, int previous) {
+        int end = index;
+        while (end < myTokenCount && isSameLine(previous, end)
+                && myTokenTypes[end] != OPEN_PAREN && myTokenTypes[end] != COLON
+                && (end == index || isAdjacent(end - 1, end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * @return the class or array type right before the arrow, null if there is none
+     */
+    @Nullable
+    private String readOwner(int arrow) {
+        int owner = arrow - 1;
+        if (owner < 0 || !isAdjacent(owner, arrow)) {
+            return null;
+        }
+        if (myTokenTypes[owner] == CLASS_DESCRIPTOR) {
+            if (owner > 0 && myTokenTypes[owner - 1] == ARRAY_TYPE_PREFIX && isAdjacent(owner - 1, owner)) {
+                return myTokenTexts[owner - 1] + myTokenTexts[owner];
+            }
+            return myTokenTexts[owner];
+        }
+        if (myTokenTypes[owner] == PRIMITIVE_TYPE && owner > 0 && myTokenTypes[owner - 1] == ARRAY_TYPE_PREFIX
+                && isAdjacent(owner - 1, owner)) {
+            return myTokenTexts[owner - 1] + myTokenTexts[owner];
+        }
+        return null;
+    }
+
+    /**
+     * @return the descriptor from the open paren on, {@code (I)V}, null if it is incomplete
+     */
+    @Nullable
+    private String readMethodDescriptor(int open) {
+        if (open >= myTokenCount || myTokenTypes[open] != OPEN_PAREN) {
+            return null;
+        }
+        int close = open + 1;
+        while (close < myTokenCount && myTokenTypes[close] != CLOSE_PAREN && isAdjacent(close - 1, close)) {
+            close++;
+        }
+        if (close == myTokenCount || myTokenTypes[close] != CLOSE_PAREN || !isAdjacent(close - 1, close)) {
+            return null;
+        }
+        int end = readType(close + 1, close);
+        return end > close + 1 ? join(open, end) : null;
+    }
+
+    /**
+     * @return the descriptor from the colon on, {@code :I}, null if it is incomplete
+     */
+    @Nullable
+    private String readFieldDescriptor(int colon) {
+        if (colon >= myTokenCount || myTokenTypes[colon] != COLON) {
+            return null;
+        }
+        int end = readType(colon + 1, colon);
+        return end > colon + 1 ? join(colon, end) : null;
+    }
+
+    /**
+     * @return index of the token after the type, the given index if there is no type
+     */
+    private int readType(int index, int previous) {
+        int end = index;
+        while (end < myTokenCount && myTokenTypes[end] == ARRAY_TYPE_PREFIX && isAdjacent(end - 1, end)) {
+            end++;
+        }
+        if (end < myTokenCount && isAdjacent(end - 1, end)) {
+            switch (myTokenTypes[end]) {
+                case CLASS_DESCRIPTOR:
+                case PRIMITIVE_TYPE:
+                case VOID_TYPE:
+                case PARAM_LIST_OR_ID_PRIMITIVE_TYPE:
+                    return end + 1;
+                default:
+                    break;
+            }
+        }
+        return index;
+    }
+
+    private String join(int start, int end) {
+        if (end - start == 1) {
+            return myTokenTexts[start];
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            builder.append(myTokenTexts[i]);
+        }
+        return builder.toString();
+    }
+
+    private boolean isSameLine(int first, int second) {
+        return myTokenLines[first] == myTokenLines[second];
+    }
+
+    private boolean isAdjacent(int first, int second) {
+        return isSameLine(first, second) && myTokenColumns[first] + myTokenLengths[first] == myTokenColumns[second];
+    }
+
+    private void addSite(String symbol, int kind, boolean declaration, int first, int last) {
+        if (myCount == mySymbols.length) {
+            int capacity = myCount * 2;
+            mySymbols = Arrays.copyOf(mySymbols, capacity);
+            myKinds = Arrays.copyOf(myKinds, capacity);
+            myDeclarations = Arrays.copyOf(myDeclarations, capacity);
+            myLines = Arrays.copyOf(myLines, capacity);
+            myColumns = Arrays.copyOf(myColumns, capacity);
+            myLengths = Arrays.copyOf(myLengths, capacity);
+        }
+        mySymbols[myCount] = symbol;
+        myKinds[myCount] = kind;
+        myDeclarations[myCount] = declaration;
+        myLines[myCount] = myTokenLines[first];
+        myColumns[myCount] = myTokenColumns[first];
+        myLengths[myCount] = myTokenColumns[last] + myTokenLengths[last] - myTokenColumns[first];
+        myCount++;
+    }
+}
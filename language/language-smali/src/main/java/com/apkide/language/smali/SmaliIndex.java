@@ -0,0 +1,446 @@
+package com.apkide.language.smali;
+
+import androidx.annotation.NonNull;
+
+import com.apkide.language.api.FileStoreCallback;
+import com.apkide.smali.smali.SmaliFlexLexer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the classes, methods and fields the smali files of the project declare and reference, the files
+ * under the smali dirs of the assembly root. It lives in an {@link SmaliIndexFile} in the build dir. Files
+ * whose {@link FileStoreCallback#getFileVersion} changed since it was written are parsed again and kept in
+ * memory, until there are enough of them to write a new index file. The project files are checked on the
+ * index executor, the index answers with what it has meanwhile.
+ */
+final class SmaliIndex {
+    private static final String INDEX_FILE_NAME = "smali.index";
+    // files parsed and written to a run of their own at a time when building the index
+    private static final int BATCH_SIZE = 2000;
+    private static final int MAX_CHANGED_FILES = 256;
+    private static final int MAX_THREADS = 4;
+
+    private final ExecutorService myExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Smali index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final SmaliFlexLexer myLexer = new SmaliFlexLexer(null, SmaliFileSymbols.API_LEVEL);
+    private final Map<String, SmaliFileSymbols> myChangedFiles = new HashMap<>();
+    private SmaliSymbolBatch myChanges;
+    private String myRootPath;
+    private File myFile;
+    private SmaliIndexFile myIndexFile;
+    // whether the versions of all project files were checked since the index was opened
+    private boolean myChecked;
+    // changes when the index is closed, a check started before drops its result
+    private int myGeneration;
+    private SmaliFileSymbols myLastFile;
+
+    SmaliIndex() {
+        myLexer.setSuppressErrors(true);
+    }
+
+    synchronized void configure(@NonNull String rootPath, @NonNull String buildPath) {
+        if (rootPath.equals(myRootPath)) {
+            return;
+        }
+        close();
+        myRootPath = rootPath;
+        myFile = new File(buildPath, INDEX_FILE_NAME);
+        myIndexFile = SmaliIndexFile.open(myFile);
+        myChecked = false;
+    }
+
+    /**
+     * Writes the changes to the index file.
+     */
+    synchronized void close() {
+        try {
+            save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        myRootPath = null;
+        myFile = null;
+        myIndexFile = null;
+        myChangedFiles.clear();
+        myChanges = null;
+        myLastFile = null;
+        myGeneration++;
+    }
+
+    /**
+     * Brings the index up to date with the given file, the first call after configuring starts checking all
+     * project files on the index executor.
+     *
+     * @return symbols of the given file
+     */
+    @NonNull
+    synchronized SmaliFileSymbols update(@NonNull FileStoreCallback callback, @NonNull String filePath)
+            throws IOException {
+        if (myRootPath != null && !myChecked) {
+            myChecked = true;
+            int generation = myGeneration;
+            String rootPath = myRootPath;
+            File indexFile = myFile;
+            myExecutor.execute(() -> {
+                try {
+                    check(callback, generation, rootPath, indexFile);
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    synchronized (this) {
+                        if (generation == myGeneration) {
+                            // checked again on the next update
+                            myChecked = false;
+                        }
+                    }
+                }
+            });
+        }
+
+        long version = callback.getFileVersion(filePath);
+        SmaliFileSymbols changed = myChangedFiles.get(filePath);
+        if (changed != null && changed.myVersion == version) {
+            return changed;
+        }
+        if (myLastFile != null && myLastFile.myFilePath.equals(filePath) && myLastFile.myVersion == version) {
+            return myLastFile;
+        }
+
+        SmaliFileSymbols symbols = parseFile(callback, filePath, myLexer);
+        myLastFile = symbols;
+        if (isProjectFile(filePath) && getIndexedVersion(filePath) != symbols.myVersion) {
+            putChangedFile(symbols);
+            if (myChangedFiles.size() > MAX_CHANGED_FILES) {
+                save();
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Reports the sites of the symbol in all files.
+     */
+    synchronized void findSites(@NonNull String symbol, @NonNull SiteConsumer consumer) {
+        if (myIndexFile != null) {
+            findSites(myIndexFile, myIndexFile.findSymbol(symbol), consumer);
+        }
+        SmaliSymbolBatch changes = getChanges();
+        findSites(changes, changes.findSymbol(symbol), consumer);
+    }
+
+    private static void findSites(SmaliSymbolSource source, int symbol, SiteConsumer consumer) {
+        if (symbol < 0) {
+            return;
+        }
+        int kind = source.getSymbolKind(symbol);
+        for (int site = source.getSiteStart(symbol), end = source.getSiteEnd(symbol); site < end; site++) {
+            int file = source.getSiteFile(site);
+            if (!source.isFileStale(file)) {
+                int length = source.getSiteLength(site);
+                consumer.accept(source.getFilePath(file), kind, source.getSiteLine(site), source.getSiteColumn(site),
+                        length & ~SmaliSymbolSource.DECLARATION, (length & SmaliSymbolSource.DECLARATION) != 0);
+            }
+        }
+    }
+
+    /**
+     * Finds the symbols starting with the prefix that still have a site.
+     *
+     * @param classes whether to find classes only
+     * @return symbols in descriptor order mapped to their kind, at most the given number of them
+     */
+    @NonNull
+    synchronized Map<String, Integer> findSymbols(@NonNull String prefix, boolean classes, int limit) {
+        TreeMap<String, Integer> symbols = new TreeMap<>();
+        if (myIndexFile != null) {
+            findSymbols(myIndexFile, prefix, classes, limit, symbols);
+        }
+        findSymbols(getChanges(), prefix, classes, limit, symbols);
+        while (symbols.size() > limit) {
+            symbols.pollLastEntry();
+        }
+        return symbols;
+    }
+
+    private static void findSymbols(SmaliSymbolSource source, String prefix, boolean classes, int limit,
+                                    Map<String, Integer> symbols) {
+        int count = 0;
+        int symbol = source.findSymbolFrom(prefix);
+        while (symbol < source.getSymbolCount() && count < limit && source.symbolStartsWith(symbol, prefix)) {
+            String name = source.getSymbol(symbol);
+            int arrow = classes ? name.indexOf("->") : -1;
+            if (arrow >= 0) {
+                // the members of a class follow it up to the next descriptor that doesn't start with "Lclass;-"
+                symbol = source.findSymbolFrom(name.substring(0, arrow) + '.');
+                continue;
+            }
+            if (hasSite(source, symbol)) {
+                symbols.put(name, source.getSymbolKind(symbol));
+                count++;
+            }
+            symbol++;
+        }
+    }
+
+    private static boolean hasSite(SmaliSymbolSource source, int symbol) {
+        for (int site = source.getSiteStart(symbol), end = source.getSiteEnd(symbol); site < end; site++) {
+            if (!source.isFileStale(source.getSiteFile(site))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SmaliSymbolBatch getChanges() {
+        if (myChanges == null) {
+            myChanges = new SmaliSymbolBatch(myChangedFiles.values());
+        }
+        return myChanges;
+    }
+
+    private boolean isProjectFile(String filePath) {
+        return myRootPath != null && filePath.endsWith(".smali")
+                && filePath.startsWith(myRootPath + File.separator + "smali");
+    }
+
+    /**
+     * @return version of the file the index has, {@link Long#MIN_VALUE} if it hasn't the file
+     */
+    private long getIndexedVersion(String filePath) {
+        SmaliFileSymbols changed = myChangedFiles.get(filePath);
+        if (changed != null) {
+            return changed.myVersion;
+        }
+        int file = myIndexFile != null ? myIndexFile.findFile(filePath) : -1;
+        if (file >= 0 && !myIndexFile.isFileStale(file)) {
+            return myIndexFile.getFileVersion(file);
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private void putChangedFile(SmaliFileSymbols symbols) {
+        myChangedFiles.put(symbols.myFilePath, symbols);
+        myChanges = null;
+        if (myIndexFile != null) {
+            int file = myIndexFile.findFile(symbols.myFilePath);
+            if (file >= 0) {
+                myIndexFile.setFileStale(file);
+            }
+        }
+    }
+
+    private void save() throws IOException {
+        if (myFile == null || myChangedFiles.isEmpty()) {
+            return;
+        }
+        List<SmaliSymbolSource> sources = new ArrayList<>();
+        if (myIndexFile != null) {
+            sources.add(myIndexFile);
+        }
+        sources.add(getChanges());
+        SmaliIndexFile.write(myFile, sources);
+        myIndexFile = SmaliIndexFile.open(myFile);
+        myChangedFiles.clear();
+        myChanges = null;
+    }
+
+    /**
+     * Parses the project files whose version isn't the one in the index and drops deleted files. The files
+     * are listed and parsed without the lock, their symbols are taken unless the file was parsed again in
+     * its current version meanwhile. Many changed files, like on the first build, go to runs of
+     * {@link #BATCH_SIZE} files merged into a new index file at the end, so only one batch of parsed files
+     * is in memory at a time.
+     */
+    private void check(FileStoreCallback callback, int generation, String rootPath, File indexFile)
+            throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String child : callback.getFileChildren(rootPath)) {
+            if (callback.getFileName(child).startsWith("smali") && callback.isDirectory(child)) {
+                collectFiles(callback, child, files);
+            }
+        }
+
+        Set<String> present = new HashSet<>(files);
+        List<String> outdated = new ArrayList<>();
+        synchronized (this) {
+            if (generation != myGeneration) {
+                return;
+            }
+            for (String file : files) {
+                if (getIndexedVersion(file) != callback.getFileVersion(file)) {
+                    outdated.add(file);
+                }
+            }
+            if (myIndexFile != null) {
+                for (int file = 0; file < myIndexFile.getFileCount(); file++) {
+                    String path = myIndexFile.getFilePath(file);
+                    if (!myIndexFile.isFileStale(file) && !present.contains(path)) {
+                        putChangedFile(SmaliFileSymbols.removed(path));
+                    }
+                }
+            }
+            for (String path : new ArrayList<>(myChangedFiles.keySet())) {
+                if (!present.contains(path)) {
+                    putChangedFile(SmaliFileSymbols.removed(path));
+                }
+            }
+        }
+
+        if (outdated.size() <= MAX_CHANGED_FILES) {
+            List<SmaliFileSymbols> parsed = parseFiles(callback, outdated);
+            synchronized (this) {
+                if (generation != myGeneration) {
+                    return;
+                }
+                for (SmaliFileSymbols symbols : parsed) {
+                    if (getIndexedVersion(symbols.myFilePath) != callback.getFileVersion(symbols.myFilePath)) {
+                        putChangedFile(symbols);
+                    }
+                }
+            }
+            return;
+        }
+
+        List<File> runFiles = new ArrayList<>();
+        try {
+            List<SmaliIndexFile> runs = new ArrayList<>();
+            for (int start = 0; start < outdated.size(); start += BATCH_SIZE) {
+                List<String> batch = outdated.subList(start, Math.min(start + BATCH_SIZE, outdated.size()));
+                List<SmaliFileSymbols> symbols = parseFiles(callback, batch);
+                File runFile = new File(indexFile.getPath() + ".run" + runFiles.size());
+                runFiles.add(runFile);
+                SmaliIndexFile.write(runFile, Collections.singletonList(new SmaliSymbolBatch(symbols)));
+                SmaliIndexFile run = SmaliIndexFile.open(runFile);
+                if (run == null) {
+                    throw new IOException("Can't read " + runFile);
+                }
+                runs.add(run);
+            }
+
+            synchronized (this) {
+                if (generation != myGeneration) {
+                    return;
+                }
+                for (SmaliIndexFile run : runs) {
+                    for (int file = 0; file < run.getFileCount(); file++) {
+                        String path = run.getFilePath(file);
+                        SmaliFileSymbols changed = myChangedFiles.get(path);
+                        if (changed != null && changed.myVersion == callback.getFileVersion(path)) {
+                            // parsed again meanwhile
+                            run.setFileStale(file);
+                            continue;
+                        }
+                        // the run has the file now
+                        myChangedFiles.remove(path);
+                        int indexed = myIndexFile != null ? myIndexFile.findFile(path) : -1;
+                        if (indexed >= 0) {
+                            myIndexFile.setFileStale(indexed);
+                        }
+                    }
+                }
+                List<SmaliSymbolSource> sources = new ArrayList<>();
+                if (myIndexFile != null) {
+                    sources.add(myIndexFile);
+                }
+                sources.addAll(runs);
+                myChanges = null;
+                sources.add(getChanges());
+                SmaliIndexFile.write(myFile, sources);
+                myIndexFile = SmaliIndexFile.open(myFile);
+                myChangedFiles.clear();
+                myChanges = null;
+            }
+        } finally {
+            for (File runFile : runFiles) {
+                runFile.delete();
+            }
+        }
+    }
+
+    private static void collectFiles(FileStoreCallback callback, String directory, List<String> files) {
+        for (String child : callback.getFileChildren(directory)) {
+            if (callback.isDirectory(child)) {
+                collectFiles(callback, child, files);
+            } else if (child.endsWith(".smali")) {
+                files.add(child);
+            }
+        }
+    }
+
+    /**
+     * Parses the files on a few threads, each with a lexer of its own.
+     */
+    private static List<SmaliFileSymbols> parseFiles(FileStoreCallback callback, List<String> files)
+            throws IOException {
+        SmaliFileSymbols[] symbols = new SmaliFileSymbols[files.size()];
+        int threads = Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS),
+                files.size() / 16 + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger next = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    SmaliFlexLexer lexer = new SmaliFlexLexer(null, SmaliFileSymbols.API_LEVEL);
+                    lexer.setSuppressErrors(true);
+                    int index;
+                    while ((index = next.getAndIncrement()) < symbols.length) {
+                        symbols[index] = parseFile(callback, files.get(index), lexer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return Arrays.asList(symbols);
+    }
+
+    /**
+     * @return symbols of the file, a removed file if it can't be read
+     */
+    private static SmaliFileSymbols parseFile(FileStoreCallback callback, String filePath, SmaliFlexLexer lexer) {
+        // read before the text, a change in between leaves the file with an older version to parse again
+        long version = callback.getFileVersion(filePath);
+        try (Reader reader = callback.getFileReader(filePath)) {
+            return SmaliFileSymbols.parse(filePath, version, reader, lexer);
+        } catch (IOException e) {
+            return SmaliFileSymbols.removed(filePath);
+        }
+    }
+
+    interface SiteConsumer {
+        void accept(@NonNull String filePath, int kind, int line, int column, int length, boolean declaration);
+    }
+}
@@ -0,0 +1,409 @@
+package com.apkide.language.smali;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Symbol index file, mapped into memory instead of read. After a header of six ints, the magic, the format,
+ * the file, symbol and site counts and the char count, it has four sections:
+ * <ul>
+ * <li>files, a long version and an int offset and length of the path in the chars</li>
+ * <li>symbols sorted by descriptor, the int offset and length of the descriptor in the chars, the first
+ * site and the symbol kind</li>
+ * <li>sites, the int file, line, column and length, grouped by symbol</li>
+ * <li>chars of the paths and descriptors</li>
+ * </ul>
+ * Lookups binary search the symbols in place, only the file paths are read when opening the file.
+ */
+final class SmaliIndexFile extends SmaliSymbolSource {
+    private static final int MAGIC = 0x534d4958;
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 6 * 4;
+    private static final int RECORD_SIZE = 16;
+
+    private final MappedByteBuffer myBuffer;
+    private final int mySymbolCount;
+    private final int mySiteCount;
+    private final int mySymbolsOffset;
+    private final int mySitesOffset;
+    private final int myCharsOffset;
+    private final String[] myFilePaths;
+    private final long[] myFileVersions;
+    private final Map<String, Integer> myFiles;
+    private final BitSet myStaleFiles = new BitSet();
+
+    private SmaliIndexFile(MappedByteBuffer buffer, int fileCount, int symbolCount, int siteCount) {
+        myBuffer = buffer;
+        mySymbolCount = symbolCount;
+        mySiteCount = siteCount;
+        mySymbolsOffset = HEADER_SIZE + fileCount * RECORD_SIZE;
+        mySitesOffset = mySymbolsOffset + symbolCount * RECORD_SIZE;
+        myCharsOffset = mySitesOffset + siteCount * RECORD_SIZE;
+
+        myFilePaths = new String[fileCount];
+        myFileVersions = new long[fileCount];
+        myFiles = new HashMap<>(fileCount * 2);
+        for (int file = 0; file < fileCount; file++) {
+            int record = HEADER_SIZE + file * RECORD_SIZE;
+            myFileVersions[file] = buffer.getLong(record);
+            myFilePaths[file] = readChars(buffer.getInt(record + 8), buffer.getInt(record + 12));
+            myFiles.put(myFilePaths[file], file);
+        }
+    }
+
+    /**
+     * @return the index in the file, null if there is none or it isn't a valid index file
+     */
+    @Nullable
+    static SmaliIndexFile open(@NonNull File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                return null;
+            }
+            int fileCount = buffer.getInt(8);
+            int symbolCount = buffer.getInt(12);
+            int siteCount = buffer.getInt(16);
+            int charCount = buffer.getInt(20);
+            long expected = HEADER_SIZE + (long) (fileCount + symbolCount + siteCount) * RECORD_SIZE
+                    + charCount * 2L;
+            if (fileCount < 0 || symbolCount < 0 || siteCount < 0 || charCount < 0 || expected != size) {
+                return null;
+            }
+            return new SmaliIndexFile(buffer, fileCount, symbolCount, siteCount);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return index of the file, -1 if the index doesn't have it
+     */
+    int findFile(@NonNull String filePath) {
+        Integer file = myFiles.get(filePath);
+        return file != null ? file : -1;
+    }
+
+    void setFileStale(int file) {
+        myStaleFiles.set(file);
+    }
+
+    /**
+     * @return index of the symbol, -1 if the index doesn't have it
+     */
+    int findSymbol(@NonNull String symbol) {
+        int index = findSymbolFrom(symbol);
+        return index < mySymbolCount && compareSymbol(index, symbol) == 0 ? index : -1;
+    }
+
+    @Override
+    int findSymbolFrom(@NonNull String symbol) {
+        int low = 0;
+        int high = mySymbolCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareSymbol(mid, symbol) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    boolean symbolStartsWith(int symbol, @NonNull String prefix) {
+        int record = mySymbolsOffset + symbol * RECORD_SIZE;
+        int offset = myCharsOffset + myBuffer.getInt(record) * 2;
+        int length = myBuffer.getInt(record + 4);
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (myBuffer.getChar(offset + i * 2) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int compareSymbol(int symbol, String key) {
+        int record = mySymbolsOffset + symbol * RECORD_SIZE;
+        int offset = myCharsOffset + myBuffer.getInt(record) * 2;
+        int length = myBuffer.getInt(record + 4);
+        int count = Math.min(length, key.length());
+        for (int i = 0; i < count; i++) {
+            char c = myBuffer.getChar(offset + i * 2);
+            if (c != key.charAt(i)) {
+                return c - key.charAt(i);
+            }
+        }
+        return length - key.length();
+    }
+
+    private String readChars(int offset, int length) {
+        char[] chars = new char[length];
+        int position = myCharsOffset + offset * 2;
+        for (int i = 0; i < length; i++) {
+            chars[i] = myBuffer.getChar(position + i * 2);
+        }
+        return new String(chars);
+    }
+
+    @Override
+    int getFileCount() {
+        return myFilePaths.length;
+    }
+
+    @NonNull
+    @Override
+    String getFilePath(int file) {
+        return myFilePaths[file];
+    }
+
+    @Override
+    long getFileVersion(int file) {
+        return myFileVersions[file];
+    }
+
+    @Override
+    boolean isFileStale(int file) {
+        return myStaleFiles.get(file);
+    }
+
+    @Override
+    int getSymbolCount() {
+        return mySymbolCount;
+    }
+
+    @NonNull
+    @Override
+    String getSymbol(int symbol) {
+        int record = mySymbolsOffset + symbol * RECORD_SIZE;
+        return readChars(myBuffer.getInt(record), myBuffer.getInt(record + 4));
+    }
+
+    @Override
+    int getSymbolKind(int symbol) {
+        return myBuffer.getInt(mySymbolsOffset + symbol * RECORD_SIZE + 12);
+    }
+
+    @Override
+    int getSiteStart(int symbol) {
+        return myBuffer.getInt(mySymbolsOffset + symbol * RECORD_SIZE + 8);
+    }
+
+    @Override
+    int getSiteEnd(int symbol) {
+        return symbol + 1 < mySymbolCount ? getSiteStart(symbol + 1) : mySiteCount;
+    }
+
+    @Override
+    int getSiteFile(int site) {
+        return myBuffer.getInt(mySitesOffset + site * RECORD_SIZE);
+    }
+
+    @Override
+    int getSiteLine(int site) {
+        return myBuffer.getInt(mySitesOffset + site * RECORD_SIZE + 4);
+    }
+
+    @Override
+    int getSiteColumn(int site) {
+        return myBuffer.getInt(mySitesOffset + site * RECORD_SIZE + 8);
+    }
+
+    @Override
+    int getSiteLength(int site) {
+        return myBuffer.getInt(mySitesOffset + site * RECORD_SIZE + 12);
+    }
+
+    /**
+     * Writes the symbols of the sources into a new index file, leaving out the sites of stale files and
+     * symbols without sites. A file should be in one source only, where it isn't stale.
+     */
+    static void write(@NonNull File file, @NonNull List<? extends SmaliSymbolSource> sources) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        File symbolsFile = File.createTempFile("symbols", null, directory);
+        File sitesFile = File.createTempFile("sites", null, directory);
+        File charsFile = File.createTempFile("chars", null, directory);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try {
+            writeFile(file, temporaryFile, sources, symbolsFile, sitesFile, charsFile);
+        } finally {
+            symbolsFile.delete();
+            sitesFile.delete();
+            charsFile.delete();
+            temporaryFile.delete();
+        }
+    }
+
+    private static void writeFile(File file, File temporaryFile, List<? extends SmaliSymbolSource> sources,
+                                  File symbolsFile, File sitesFile, File charsFile) throws IOException {
+        int charCount = 0;
+        int symbolCount = 0;
+        int siteCount = 0;
+        List<String> filePaths = new ArrayList<>();
+        List<Long> fileVersions = new ArrayList<>();
+        int[][] fileIds = new int[sources.size()][];
+        try (DataOutputStream symbols = openOutput(symbolsFile);
+             DataOutputStream sites = openOutput(sitesFile);
+             DataOutputStream chars = openOutput(charsFile)) {
+            for (int i = 0; i < sources.size(); i++) {
+                SmaliSymbolSource source = sources.get(i);
+                fileIds[i] = new int[source.getFileCount()];
+                for (int sourceFile = 0; sourceFile < fileIds[i].length; sourceFile++) {
+                    if (source.isFileStale(sourceFile)) {
+                        fileIds[i][sourceFile] = -1;
+                        continue;
+                    }
+                    fileIds[i][sourceFile] = filePaths.size();
+                    filePaths.add(source.getFilePath(sourceFile));
+                    fileVersions.add(source.getFileVersion(sourceFile));
+                }
+            }
+
+            PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+            for (int i = 0; i < sources.size(); i++) {
+                if (sources.get(i).getSymbolCount() > 0) {
+                    cursors.add(new Cursor(sources.get(i), i));
+                }
+            }
+            while (!cursors.isEmpty()) {
+                String symbol = cursors.peek().mySymbol;
+                int kind = cursors.peek().mySource.getSymbolKind(cursors.peek().myIndex);
+                int start = siteCount;
+                while (!cursors.isEmpty() && cursors.peek().mySymbol.equals(symbol)) {
+                    Cursor cursor = cursors.poll();
+                    SmaliSymbolSource source = cursor.mySource;
+                    int[] ids = fileIds[cursor.mySourceIndex];
+                    for (int site = source.getSiteStart(cursor.myIndex), end = source.getSiteEnd(cursor.myIndex);
+                         site < end; site++) {
+                        int fileId = ids[source.getSiteFile(site)];
+                        if (fileId < 0) {
+                            continue;
+                        }
+                        sites.writeInt(fileId);
+                        sites.writeInt(source.getSiteLine(site));
+                        sites.writeInt(source.getSiteColumn(site));
+                        sites.writeInt(source.getSiteLength(site));
+                        siteCount++;
+                    }
+                    if (cursor.next()) {
+                        cursors.add(cursor);
+                    }
+                }
+                if (siteCount > start) {
+                    symbols.writeInt(charCount);
+                    symbols.writeInt(symbol.length());
+                    symbols.writeInt(start);
+                    symbols.writeInt(kind);
+                    chars.writeChars(symbol);
+                    charCount += symbol.length();
+                    symbolCount++;
+                }
+            }
+
+            for (int i = 0; i < filePaths.size(); i++) {
+                chars.writeChars(filePaths.get(i));
+            }
+        }
+
+        try (DataOutputStream output = openOutput(temporaryFile)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(filePaths.size());
+            output.writeInt(symbolCount);
+            output.writeInt(siteCount);
+            int pathOffset = charCount;
+            for (String path : filePaths) {
+                charCount += path.length();
+            }
+            output.writeInt(charCount);
+            for (int i = 0; i < filePaths.size(); i++) {
+                output.writeLong(fileVersions.get(i));
+                output.writeInt(pathOffset);
+                output.writeInt(filePaths.get(i).length());
+                pathOffset += filePaths.get(i).length();
+            }
+            copy(symbolsFile, output);
+            copy(sitesFile, output);
+            copy(charsFile, output);
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    private static void copy(File file, OutputStream output) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(file)) {
+            int count;
+            while ((count = input.read(buffer)) > 0) {
+                output.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        final SmaliSymbolSource mySource;
+        final int mySourceIndex;
+        int myIndex;
+        String mySymbol;
+
+        Cursor(SmaliSymbolSource source, int sourceIndex) {
+            mySource = source;
+            mySourceIndex = sourceIndex;
+            mySymbol = source.getSymbol(0);
+        }
+
+        boolean next() {
+            myIndex++;
+            if (myIndex == mySource.getSymbolCount()) {
+                return false;
+            }
+            mySymbol = mySource.getSymbol(myIndex);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int result = mySymbol.compareTo(o.mySymbol);
+            return result != 0 ? result : Integer.compare(mySourceIndex, o.mySourceIndex);
+        }
+    }
+}
@@ -13,6 +13,23 @@ import com.apkide.language.api.CodeRefactor;
 import com.apkide.language.api.Language;
 
 public class SmaliLanguage implements Language {
+    private final SmaliCodeFormatter myFormatter;
+    private final SmaliCodeHighlighter myHighlighter;
+    private final SmaliCodeAnalyzer myAnalyzer;
+    private final SmaliCodeCompleter myCompleter;
+    private final SmaliCodeNavigation myNavigation;
+    private final SmaliCodeRefactor myRefactor;
+    private final SmaliIndex myIndex = new SmaliIndex();
+    
+    public SmaliLanguage() {
+        myFormatter = new SmaliCodeFormatter(this);
+        myHighlighter = new SmaliCodeHighlighter(this);
+        myAnalyzer = new SmaliCodeAnalyzer(this);
+        myCompleter = new SmaliCodeCompleter(this);
+        myNavigation = new SmaliCodeNavigation(this);
+        myRefactor = new SmaliCodeRefactor(this);
+    }
+    
     @Override
     public void initialize() {
     
@@ -20,12 +37,17 @@ public class SmaliLanguage implements Language {
     
     @Override
     public void configureAssembly(@NonNull Assembly assembly) {
-    
+        myIndex.configure(assembly.getRootPath(), assembly.getBuildPath());
     }
     
     @Override
     public void shutdown() {
+        myIndex.close();
+    }
     
+    @NonNull
+    SmaliIndex getIndex() {
+        return myIndex;
     }
     
     @NonNull
@@ -43,36 +65,36 @@ public class SmaliLanguage implements Language {
     @Nullable
     @Override
     public CodeFormatter getFormatter() {
-        return null;
+        return myFormatter;
     }
     
     @Nullable
     @Override
     public CodeHighlighter getHighlighter() {
-        return null;
+        return myHighlighter;
     }
     
     @Nullable
     @Override
     public CodeAnalyzer getAnalyzer() {
-        return null;
+        return myAnalyzer;
     }
     
     @Nullable
     @Override
     public CodeCompleter getCompleter() {
-        return null;
+        return myCompleter;
     }
     
     @Nullable
     @Override
     public CodeNavigation getNavigation() {
-        return null;
+        return myNavigation;
     }
     
     @Nullable
     @Override
     public CodeRefactor getRefactor() {
-        return null;
+        return myRefactor;
     }
 }
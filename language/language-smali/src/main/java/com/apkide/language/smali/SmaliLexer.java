@@ -0,0 +1,112 @@
+package com.apkide.language.smali;
+
+import static com.apkide.language.api.StyleKind.*;
+import static com.apkide.smali.smali.SmaliParser.*;
+
+import com.apkide.language.api.RestartableLexer;
+import com.apkide.smali.smali.SmaliFlexLexer;
+import com.apkide.smali.smali.SmaliParser;
+
+import org.antlr.runtime.Token;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Runs {@link SmaliFlexLexer} for highlighting. Its tokens are reported with their smali parser type,
+ * the lexical state between two tokens is all it needs to restart.
+ */
+public class SmaliLexer implements RestartableLexer {
+    // accept what any api level accepts, highlighting doesn't know the target of the file
+    private static final int API_LEVEL = Integer.MAX_VALUE;
+    private static final int[] STYLES = new int[SmaliParser.tokenNames.length];
+
+    static {
+        for (int type = 0; type < STYLES.length; type++) {
+            String name = SmaliParser.tokenNames[type];
+            if (name.startsWith("INSTRUCTION_FORMAT")) {
+                STYLES[type] = KeywordStyle;
+            } else if (name.endsWith("_DIRECTIVE")) {
+                STYLES[type] = MetadataStyle;
+            }
+        }
+        int[] keywords = {ACCESS_SPEC, ANNOTATION_VISIBILITY, HIDDENAPI_RESTRICTION, VERIFICATION_ERROR_TYPE,
+                METHOD_HANDLE_TYPE_FIELD, METHOD_HANDLE_TYPE_METHOD, BOOL_LITERAL, NULL_LITERAL};
+        for (int type : keywords) {
+            STYLES[type] = KeywordStyle;
+        }
+        int[] numbers = {POSITIVE_INTEGER_LITERAL, NEGATIVE_INTEGER_LITERAL, LONG_LITERAL, SHORT_LITERAL,
+                BYTE_LITERAL, FLOAT_LITERAL, FLOAT_LITERAL_OR_ID, DOUBLE_LITERAL, DOUBLE_LITERAL_OR_ID,
+                FIELD_OFFSET, INLINE_INDEX, VTABLE_INDEX};
+        for (int type : numbers) {
+            STYLES[type] = NumberStyle;
+        }
+        int[] types = {CLASS_DESCRIPTOR, PRIMITIVE_TYPE, VOID_TYPE, ARRAY_TYPE_PREFIX,
+                PARAM_LIST_OR_ID_PRIMITIVE_TYPE};
+        for (int type : types) {
+            STYLES[type] = TypeStyle;
+        }
+        int[] separators = {COLON, COMMA, OPEN_BRACE, CLOSE_BRACE, OPEN_PAREN, CLOSE_PAREN, AT};
+        for (int type : separators) {
+            STYLES[type] = SeparatorStyle;
+        }
+        STYLES[ARROW] = OperatorStyle;
+        STYLES[EQUAL] = OperatorStyle;
+        STYLES[DOTDOT] = OperatorStyle;
+        STYLES[STRING_LITERAL] = StringStyle;
+        STYLES[CHAR_LITERAL] = StringStyle;
+        STYLES[LINE_COMMENT] = CommentStyle;
+        STYLES[REGISTER] = VariableStyle;
+        STYLES[SIMPLE_NAME] = IdentifierStyle;
+        STYLES[MEMBER_NAME] = IdentifierStyle;
+    }
+
+    private final SmaliFlexLexer myLexer = new SmaliFlexLexer(null, API_LEVEL);
+    private Token myToken;
+
+    public SmaliLexer() {
+        myLexer.setSuppressErrors(true);
+    }
+
+    @Override
+    public void yyreset(Reader reader) {
+        myLexer.yyreset(reader);
+        myToken = null;
+    }
+
+    @Override
+    public int yylex() throws IOException {
+        myToken = myLexer.yylex();
+        int type = myToken.getType();
+        if (type == Token.EOF) {
+            return -1;
+        }
+        return type >= 0 && type < STYLES.length ? STYLES[type] : PlainStyle;
+    }
+
+    @Override
+    public int getLine() {
+        return myToken.getLine() - 1;
+    }
+
+    @Override
+    public int getColumn() {
+        return myToken.getCharPositionInLine();
+    }
+
+    @Override
+    public int getTokenType() {
+        return myToken.getType();
+    }
+
+    @Override
+    public long getRestartState() {
+        // string and class descriptor states only last within a token, between tokens the state is all
+        return myLexer.yystate();
+    }
+
+    @Override
+    public void restoreState(long state) {
+        myLexer.yybegin((int) state);
+    }
+}
@@ -0,0 +1,67 @@
+package com.apkide.language.smali;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTree;
+
+import java.util.Arrays;
+
+/**
+ * Tokens, tree and errors of one version of a smali file, as {@link SmaliFileParser} left them.
+ */
+final class SmaliParse {
+    static final String LEXER_ERROR = "smali.lexer";
+    static final String SYNTAX_ERROR = "smali.syntax";
+    static final String SEMANTIC_ERROR = "smali.semantic";
+
+    final String myFilePath;
+    final long myVersion;
+    CommonTokenStream myTokens;
+    // null if the parser couldn't build one
+    @Nullable
+    CommonTree myTree;
+    String[] myCodes = new String[4];
+    String[] myMessages = new String[4];
+    int[] myLines = new int[4];
+    int[] myColumns = new int[4];
+    int[] myLengths = new int[4];
+    int myErrorCount;
+
+    SmaliParse(@NonNull String filePath, long version) {
+        myFilePath = filePath;
+        myVersion = version;
+    }
+
+    /**
+     * Adds an error at the position the lexer gave, lines counting from 1, the length is the token's if it
+     * starts there.
+     */
+    void addError(@NonNull String code, @NonNull String message, int line, int column, @Nullable Token token) {
+        int length = 1;
+        if (token instanceof CommonToken && token.getType() != Token.EOF
+                && token.getLine() == line && token.getCharPositionInLine() == column) {
+            CommonToken common = (CommonToken) token;
+            length = Math.max(1, common.getStopIndex() - common.getStartIndex() + 1);
+        }
+
+        if (myErrorCount == myCodes.length) {
+            int capacity = myErrorCount * 2;
+            myCodes = Arrays.copyOf(myCodes, capacity);
+            myMessages = Arrays.copyOf(myMessages, capacity);
+            myLines = Arrays.copyOf(myLines, capacity);
+            myColumns = Arrays.copyOf(myColumns, capacity);
+            myLengths = Arrays.copyOf(myLengths, capacity);
+        }
+        myCodes[myErrorCount] = code;
+        myMessages[myErrorCount] = message;
+        // positions unknown to the tree walker come as line 0
+        myLines[myErrorCount] = Math.max(0, line - 1);
+        myColumns[myErrorCount] = Math.max(0, column);
+        myLengths[myErrorCount] = length;
+        myErrorCount++;
+    }
+}
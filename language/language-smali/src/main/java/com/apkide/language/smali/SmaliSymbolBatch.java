@@ -0,0 +1,157 @@
+package com.apkide.language.smali;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Symbols of a set of parsed files kept in memory, the files indexed together in one go or the files that
+ * changed since the index file was written.
+ */
+final class SmaliSymbolBatch extends SmaliSymbolSource {
+    private final SmaliFileSymbols[] myFiles;
+    private final String[] mySymbols;
+    private final int[] myKinds;
+    private final int[] mySiteStarts;
+    // file, line, column and length of each site
+    private final int[] mySites;
+
+    SmaliSymbolBatch(@NonNull Collection<SmaliFileSymbols> files) {
+        myFiles = files.toArray(new SmaliFileSymbols[0]);
+
+        Map<String, int[]> symbols = new TreeMap<>();
+        int siteCount = 0;
+        for (int file = 0; file < myFiles.length; file++) {
+            SmaliFileSymbols fileSymbols = myFiles[file];
+            for (int i = 0; i < fileSymbols.myCount; i++) {
+                // kind, site count, then the file and index of each site
+                int[] sites = symbols.get(fileSymbols.mySymbols[i]);
+                if (sites == null) {
+                    sites = new int[8];
+                    sites[0] = fileSymbols.myKinds[i];
+                    symbols.put(fileSymbols.mySymbols[i], sites);
+                } else if (2 + sites[1] * 2 + 2 > sites.length) {
+                    sites = Arrays.copyOf(sites, sites.length * 2);
+                    symbols.put(fileSymbols.mySymbols[i], sites);
+                }
+                sites[2 + sites[1] * 2] = file;
+                sites[3 + sites[1] * 2] = i;
+                sites[1]++;
+                siteCount++;
+            }
+        }
+
+        mySymbols = symbols.keySet().toArray(new String[0]);
+        myKinds = new int[mySymbols.length];
+        mySiteStarts = new int[mySymbols.length + 1];
+        mySites = new int[siteCount * 4];
+        int symbol = 0;
+        int site = 0;
+        for (int[] sites : symbols.values()) {
+            myKinds[symbol] = sites[0];
+            mySiteStarts[symbol] = site;
+            for (int i = 0; i < sites[1]; i++) {
+                int file = sites[2 + i * 2];
+                int index = sites[3 + i * 2];
+                SmaliFileSymbols fileSymbols = myFiles[file];
+                mySites[site * 4] = file;
+                mySites[site * 4 + 1] = fileSymbols.myLines[index];
+                mySites[site * 4 + 2] = fileSymbols.myColumns[index];
+                mySites[site * 4 + 3] = fileSymbols.myLengths[index]
+                        | (fileSymbols.myDeclarations[index] ? DECLARATION : 0);
+                site++;
+            }
+            symbol++;
+        }
+        mySiteStarts[symbol] = site;
+    }
+
+    /**
+     * @return index of the symbol, -1 if no file of the batch has it
+     */
+    int findSymbol(@NonNull String symbol) {
+        int index = Arrays.binarySearch(mySymbols, symbol);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    int findSymbolFrom(@NonNull String symbol) {
+        int index = Arrays.binarySearch(mySymbols, symbol);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    boolean symbolStartsWith(int symbol, @NonNull String prefix) {
+        return mySymbols[symbol].startsWith(prefix);
+    }
+
+    @Override
+    int getFileCount() {
+        return myFiles.length;
+    }
+
+    @NonNull
+    @Override
+    String getFilePath(int file) {
+        return myFiles[file].myFilePath;
+    }
+
+    @Override
+    long getFileVersion(int file) {
+        return myFiles[file].myVersion;
+    }
+
+    @Override
+    boolean isFileStale(int file) {
+        return myFiles[file].isRemoved();
+    }
+
+    @Override
+    int getSymbolCount() {
+        return mySymbols.length;
+    }
+
+    @NonNull
+    @Override
+    String getSymbol(int symbol) {
+        return mySymbols[symbol];
+    }
+
+    @Override
+    int getSymbolKind(int symbol) {
+        return myKinds[symbol];
+    }
+
+    @Override
+    int getSiteStart(int symbol) {
+        return mySiteStarts[symbol];
+    }
+
+    @Override
+    int getSiteEnd(int symbol) {
+        return mySiteStarts[symbol + 1];
+    }
+
+    @Override
+    int getSiteFile(int site) {
+        return mySites[site * 4];
+    }
+
+    @Override
+    int getSiteLine(int site) {
+        return mySites[site * 4 + 1];
+    }
+
+    @Override
+    int getSiteColumn(int site) {
+        return mySites[site * 4 + 2];
+    }
+
+    @Override
+    int getSiteLength(int site) {
+        return mySites[site * 4 + 3];
+    }
+}
@@ -0,0 +1,52 @@
+package com.apkide.language.smali;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Symbols in descriptor order, each with the sites of its declarations and references in the files of
+ * the source. {@link SmaliIndexFile#write} merges sources into a new index file.
+ */
+abstract class SmaliSymbolSource {
+    static final int DECLARATION = 1 << 31;
+
+    abstract int getFileCount();
+
+    @NonNull
+    abstract String getFilePath(int file);
+
+    abstract long getFileVersion(int file);
+
+    /**
+     * @return whether the sites of the file are out of date, a later source has the file if it still exists
+     */
+    abstract boolean isFileStale(int file);
+
+    abstract int getSymbolCount();
+
+    @NonNull
+    abstract String getSymbol(int symbol);
+
+    abstract int getSymbolKind(int symbol);
+
+    /**
+     * @return index of the first symbol not before the given one
+     */
+    abstract int findSymbolFrom(@NonNull String symbol);
+
+    abstract boolean symbolStartsWith(int symbol, @NonNull String prefix);
+
+    abstract int getSiteStart(int symbol);
+
+    abstract int getSiteEnd(int symbol);
+
+    abstract int getSiteFile(int site);
+
+    abstract int getSiteLine(int site);
+
+    abstract int getSiteColumn(int site);
+
+    /**
+     * @return length of the name at the site, with {@link #DECLARATION} set for declarations
+     */
+    abstract int getSiteLength(int site);
+}
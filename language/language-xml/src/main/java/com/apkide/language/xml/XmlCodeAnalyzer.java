@@ -1,19 +1,118 @@
 package com.apkide.language.xml;
 
+import static org.xmlpull.v1.XmlPullParser.END_DOCUMENT;
+import static org.xmlpull.v1.XmlPullParser.START_TAG;
+import static org.xmlpull.v1.XmlPullParser.TEXT;
+
 import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeAnalyzer;
 import com.apkide.language.api.CodeAnalyzerCallback;
 
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.Reader;
+
 public class XmlCodeAnalyzer implements CodeAnalyzer {
+    private static final String SYNTAX_ERROR = "xml.syntax";
+    private static final String UNRESOLVED_RESOURCE = "xml.unresolved";
+    
     private final XmlLanguage myLanguage;
+    private final ThreadLocal<XmlResourceParser> myParsers = ThreadLocal.withInitial(XmlResourceParser::new);
     
     public XmlCodeAnalyzer(XmlLanguage language) {
         myLanguage = language;
     }
     
+    /**
+     * Reports where the file isn't well formed and, in an android project, the references to resources
+     * the resource index doesn't have.
+     */
     @Override
     public void analyze(@NonNull String filePath, @NonNull CodeAnalyzerCallback callback) {
+        XmlResourceIndex index = myLanguage.getIndex();
+        try {
+            index.update(callback, filePath);
+        } catch (IOException e) {
+            return;
+        }
+        boolean references = index.isProjectFile(filePath) && index.hasResources();
+        
+        XmlResourceParser parser = myParsers.get();
+        try (Reader reader = callback.getFileReader(filePath)) {
+            parser.setInput(reader);
+            int event;
+            while ((event = parser.next()) != END_DOCUMENT) {
+                if (!references) {
+                    continue;
+                }
+                if (event == START_TAG) {
+                    for (int i = 0; i < parser.getAttributeCount(); i++) {
+                        checkReference(filePath, parser.getAttributeValue(i), parser.getAttributeValueLine(i),
+                                parser.getAttributeValueColumn(i), callback);
+                    }
+                } else if (event == TEXT) {
+                    checkText(filePath, parser, callback);
+                }
+            }
+        } catch (XmlPullParserException e) {
+            String message = e.getMessage();
+            int position = message != null ? message.indexOf("(position:") : -1;
+            if (position >= 0) {
+                message = message.substring(0, position).trim();
+            }
+            int line = Math.max(0, e.getLineNumber() - 1);
+            int column = Math.max(0, e.getColumnNumber() - (line == 0 ? 1 : 2));
+            callback.errorFound(filePath, message != null ? message : "", SYNTAX_ERROR, line, column, line,
+                    column + 1);
+        } catch (IOException e) {
+            // the file went away
+        }
+    }
+    
+    /**
+     * Checks a text that is a reference, only {@code @} ones, a {@code ?} starts many a string.
+     */
+    private void checkText(String filePath, XmlResourceParser parser, CodeAnalyzerCallback callback) {
+        String text = parser.getText();
+        int offset = 0;
+        while (offset < text.length() && Character.isWhitespace(text.charAt(offset))) {
+            offset++;
+        }
+        if (offset == text.length() || text.charAt(offset) != '@') {
+            return;
+        }
+        
+        // the text ends at the '<' of the next tag, the parser read the char after it last
+        int lineBreaks = 0;
+        for (int i = offset; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineBreaks++;
+            }
+        }
+        int line = parser.getLastLine() - lineBreaks;
+        int column;
+        if (lineBreaks == 0) {
+            column = parser.getLastColumn() - 1 - (text.length() - offset);
+        } else {
+            int lineStart = text.lastIndexOf('\n', offset);
+            if (lineStart < 0) {
+                return;
+            }
+            column = offset - lineStart - 1;
+        }
+        checkReference(filePath, text.trim(), line, Math.max(0, column), callback);
+    }
     
+    private void checkReference(String filePath, String value, int line, int column,
+                                CodeAnalyzerCallback callback) {
+        String resource = XmlResourceIndex.getReferencedResource(value);
+        // an @+id declares the id
+        if (resource == null || value.startsWith("@+") || myLanguage.getIndex().hasResource(resource)) {
+            return;
+        }
+        callback.warningFound(filePath, "Cannot resolve resource " + value, UNRESOLVED_RESOURCE, line, column,
+                line, column + value.length());
     }
 }
@@ -4,17 +4,77 @@ import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeCompleter;
 import com.apkide.language.api.CodeCompleterCallback;
+import com.apkide.language.api.FileLines;
+import com.apkide.language.api.SymbolKind;
+
+import java.io.IOException;
 
 public class XmlCodeCompleter implements CodeCompleter {
+    private static final int MAX_COMPLETIONS = 200;
+    
     private final XmlLanguage myLanguage;
     
     public XmlCodeCompleter(XmlLanguage language) {
         myLanguage = language;
     }
     
+    /**
+     * Completes the type and then the name of a resource reference, {@code @string/} or {@code ?attr/},
+     * from the resource index.
+     */
     @Override
     public void completion(@NonNull String filePath, int line, int column, boolean allowTypes,
                            @NonNull CodeCompleterCallback callback) {
-    
+        XmlResourceIndex index = myLanguage.getIndex();
+        String text;
+        try {
+            index.update(callback, filePath);
+            text = FileLines.readLine(callback, filePath, line);
+        } catch (IOException e) {
+            return;
+        }
+        if (text == null) {
+            return;
+        }
+        text = text.substring(0, Math.min(column, text.length()));
+        
+        String word = text.substring(FileLines.getWordStart(text, text.length(), XmlCodeNavigation.DELIMITERS));
+        if (word.isEmpty() || (word.charAt(0) != '@' && word.charAt(0) != '?')) {
+            return;
+        }
+        boolean attr = word.charAt(0) == '?';
+        String prefix = word.substring(0, !attr && word.startsWith("@+") ? 2 : 1);
+        String reference = word.substring(prefix.length());
+        // the index has no framework or library resources
+        if (reference.indexOf(':') >= 0 || reference.startsWith("*")) {
+            return;
+        }
+        
+        int slash = reference.indexOf('/');
+        if (slash < 0) {
+            for (String type : index.getTypes()) {
+                if (type.startsWith(reference) && (!attr || type.equals("attr"))) {
+                    callback.completionFound(SymbolKind.Namespace, type, null, null, false, false, null,
+                            prefix + type + "/", false);
+                }
+            }
+            if (attr) {
+                // ?name is short for ?attr/name
+                for (String resource : index.findResources("attr/" + reference, MAX_COMPLETIONS)) {
+                    String name = resource.substring(5);
+                    callback.completionFound(SymbolKind.Property, name, null, null, false, false, null,
+                            prefix + name, false);
+                }
+            }
+            return;
+        }
+        
+        int kind = XmlResourceIndex.getKind(reference.substring(0, slash));
+        for (String resource : index.findResources(reference, MAX_COMPLETIONS)) {
+            Integer id = index.getId(resource);
+            callback.completionFound(kind, resource.substring(slash + 1),
+                    id != null ? String.format("0x%08x", id) : null, null, false, false, null,
+                    prefix + resource, false);
+        }
     }
 }
@@ -4,13 +4,13 @@ import androidx.annotation.NonNull;
 
 import com.apkide.language.api.CodeHighlighter;
 import com.apkide.language.api.CodeHighlighterCallback;
+import com.apkide.language.api.IncrementalHighlighter;
 
 import java.io.IOException;
-import java.io.Reader;
 
 public class XmlCodeHighlighter implements CodeHighlighter {
     private final XmlLanguage myLanguage;
-    private final XmlLexer myLexer=new XmlLexer();
+    private final IncrementalHighlighter myHighlighter = new IncrementalHighlighter(new XmlLexer());
     public XmlCodeHighlighter(XmlLanguage language) {
         myLanguage = language;
     }
@@ -19,24 +19,7 @@ public class XmlCodeHighlighter implements CodeHighlighter {
     public void highlighting(@NonNull String filePath,
                              @NonNull CodeHighlighterCallback callback) {
         try {
-            Reader reader = callback.getFileReader(filePath);
-            myLexer.yyreset(reader);
-            myLexer.yybegin(myLexer.getDefaultState());
-            int style = myLexer.yylex();
-            int startLine = myLexer.getLine();
-            int startColumn = myLexer.getColumn();
-        
-            while (true) {
-                int nextStyle = myLexer.yylex();
-                int line = myLexer.getLine();
-                int column = myLexer.getColumn();
-                callback.tokenFound(style, startLine,
-                        startColumn, line, column);
-                style = nextStyle;
-                startLine = line;
-                startColumn = column;
-                if (nextStyle == -1) break;
-            }
+            myHighlighter.highlighting(filePath, callback);
         } catch (IOException ignored) {
         
         }
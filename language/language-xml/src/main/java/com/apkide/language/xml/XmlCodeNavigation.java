@@ -1,11 +1,18 @@
 package com.apkide.language.xml;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.apkide.language.api.CodeNavigation;
 import com.apkide.language.api.CodeNavigationCallback;
+import com.apkide.language.api.FileLines;
+
+import java.io.IOException;
 
 public class XmlCodeNavigation implements CodeNavigation {
+    // the chars besides white space a resource reference in xml ends at
+    static final String DELIMITERS = "\"'<>=";
+    
     private final XmlLanguage myLanguage;
     
     public XmlCodeNavigation(XmlLanguage language) {
@@ -18,10 +25,60 @@ public class XmlCodeNavigation implements CodeNavigation {
     
     }
     
+    /**
+     * Reports the declarations of the resource a reference or a public.xml id at the position names, or of
+     * the resource declared there in every config, without the declaration at the position itself unless it
+     * is asked for.
+     */
     @Override
     public void searchSymbol(@NonNull String filePath, int line, int column,
                              boolean includeDeclaration,
                              @NonNull CodeNavigationCallback callback) {
+        String resource = findResource(filePath, line, column, callback);
+        if (resource == null) {
+            return;
+        }
+        int slash = resource.indexOf('/');
+        int kind = XmlResourceIndex.getKind(resource.substring(0, slash));
+        String name = resource.substring(slash + 1);
+        myLanguage.getIndex().findDeclarations(resource, (path, qualifier, declarationLine, declarationColumn,
+                                                          length) -> {
+            if (!includeDeclaration && path.equals(filePath) && declarationLine == line
+                    && declarationColumn <= column && column <= declarationColumn + length) {
+                return;
+            }
+            callback.symbolFound(kind, name, false, path, declarationLine, declarationColumn, declarationLine,
+                    declarationColumn + length);
+        });
+    }
     
+    @Nullable
+    private String findResource(String filePath, int line, int column, CodeNavigationCallback callback) {
+        XmlResourceIndex index = myLanguage.getIndex();
+        String text;
+        try {
+            index.update(callback, filePath);
+            text = FileLines.readLine(callback, filePath, line);
+        } catch (IOException e) {
+            return null;
+        }
+        if (text == null) {
+            return null;
+        }
+        String resource = index.findResource(filePath, line, column);
+        if (resource != null) {
+            return resource;
+        }
+        
+        String word = text.substring(FileLines.getWordStart(text, column, DELIMITERS),
+                FileLines.getWordEnd(text, column, DELIMITERS));
+        if (word.startsWith("0x")) {
+            try {
+                return index.getResource((int) Long.parseLong(word.substring(2), 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return XmlResourceIndex.getReferencedResource(word);
     }
 }
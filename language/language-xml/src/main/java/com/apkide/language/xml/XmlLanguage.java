@@ -19,6 +19,7 @@ public class XmlLanguage implements Language {
     private final XmlCodeCompleter myCompleter;
     private final XmlCodeNavigation myNavigation;
     private final XmlCodeRefactor myRefactor;
+    private final XmlResourceIndex myIndex = new XmlResourceIndex();
     
     public XmlLanguage() {
         myFormatter = new XmlCodeFormatter(this);
@@ -36,12 +37,17 @@ public class XmlLanguage implements Language {
     
     @Override
     public void configureAssembly(@NonNull Assembly assembly) {
-    
+        myIndex.configure(assembly.getRootPath(), assembly.getBuildPath());
     }
     
     @Override
     public void shutdown() {
+        myIndex.close();
+    }
     
+    @NonNull
+    XmlResourceIndex getIndex() {
+        return myIndex;
     }
     
     @NonNull
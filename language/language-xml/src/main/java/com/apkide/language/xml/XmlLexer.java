@@ -4,13 +4,14 @@
 
 package com.apkide.language.xml;
 import static com.apkide.language.api.StyleKind.*;
+import com.apkide.language.api.RestartableLexer;
 import java.io.Reader;
 import java.io.IOException;
 
 
 
 @SuppressWarnings("fallthrough")
-public class XmlLexer {
+public class XmlLexer implements RestartableLexer {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -674,6 +675,17 @@ public class XmlLexer {
       return yycolumn;
   }
 
+  @Override
+  public long getRestartState(){
+      return yystate() | (long) myPrevState << 16;
+  }
+
+  @Override
+  public void restoreState(long state){
+      yybegin((int) (state & 0xffff));
+      myPrevState = (int) (state >>> 16);
+  }
+
 
 
   /**
@@ -0,0 +1,249 @@
+package com.apkide.language.xml;
+
+import static org.xmlpull.v1.XmlPullParser.END_DOCUMENT;
+import static org.xmlpull.v1.XmlPullParser.START_TAG;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Resources a file under res declares, named {@code type/name}: the values of a file in a values dir, or
+ * the file itself and the ids its {@code @+id/} attributes add in the other dirs. The public.xml of a values
+ * dir also gives the ids of resources.
+ */
+final class XmlResourceFile {
+    final String myFilePath;
+    final long myVersion;
+    // the config qualifier of the dir, empty for the default one
+    final String myQualifier;
+    String[] myResources = new String[8];
+    int[] myLines = new int[8];
+    int[] myColumns = new int[8];
+    int[] myLengths = new int[8];
+    int myCount;
+    String[] myIdResources = new String[0];
+    int[] myIds = new int[0];
+    int myIdCount;
+
+    XmlResourceFile(@NonNull String filePath, long version) {
+        myFilePath = filePath;
+        myVersion = version;
+        String directoryName = new File(filePath).getParentFile().getName();
+        int dash = directoryName.indexOf('-');
+        myQualifier = dash >= 0 ? directoryName.substring(dash + 1) : "";
+    }
+
+    /**
+     * @return index of the declaration whose name contains the position, -1 if there is none
+     */
+    int findResource(int line, int column) {
+        for (int i = 0; i < myCount; i++) {
+            if (myLines[i] == line && myColumns[i] <= column && column <= myColumns[i] + myLengths[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the resources of a file, the reader is null for a file that isn't xml.
+     */
+    @NonNull
+    static XmlResourceFile parse(@NonNull String filePath, long version, @Nullable Reader reader,
+                                 @NonNull XmlResourceParser parser) throws IOException {
+        XmlResourceFile file = new XmlResourceFile(filePath, version);
+        File path = new File(filePath);
+        String directoryName = path.getParentFile().getName();
+        int dash = directoryName.indexOf('-');
+        String directoryType = dash >= 0 ? directoryName.substring(0, dash) : directoryName;
+        boolean values = directoryType.equals("values");
+        if (!values) {
+            String fileName = path.getName();
+            int dot = fileName.indexOf('.');
+            file.add(directoryType + "/" + (dot >= 0 ? fileName.substring(0, dot) : fileName), 0, 0, 0);
+        }
+        if (reader == null) {
+            return file;
+        }
+
+        try {
+            parser.setInput(reader);
+            if (values) {
+                file.readValues(parser);
+            } else {
+                file.readIds(parser);
+            }
+        } catch (XmlPullParserException e) {
+            // a broken file keeps the resources before the error
+        }
+        return file;
+    }
+
+    private void readValues(XmlResourceParser parser) throws XmlPullParserException, IOException {
+        boolean styleable = false;
+        int event;
+        while ((event = parser.next()) != END_DOCUMENT) {
+            if (event != START_TAG) {
+                continue;
+            }
+            String tag = parser.getName();
+            if (parser.getDepth() == 2) {
+                styleable = tag.equals("declare-styleable");
+                if (tag.equals("public")) {
+                    readPublic(parser);
+                    continue;
+                }
+                String type = getValueType(tag, parser);
+                if (type != null) {
+                    addNamed(type, parser);
+                }
+            } else if (parser.getDepth() == 3 && styleable && tag.equals("attr")) {
+                addNamed("attr", parser);
+            }
+        }
+    }
+
+    @Nullable
+    private static String getValueType(String tag, XmlResourceParser parser) {
+        switch (tag) {
+            case "item":
+                return parser.getAttributeValue(null, "type");
+            case "string-array":
+            case "integer-array":
+                return "array";
+            case "declare-styleable":
+                return "styleable";
+            case "attr":
+            case "bool":
+            case "color":
+            case "dimen":
+            case "drawable":
+            case "fraction":
+            case "id":
+            case "integer":
+            case "array":
+            case "plurals":
+            case "string":
+            case "style":
+                return tag;
+            default:
+                return null;
+        }
+    }
+
+    private void addNamed(String type, XmlResourceParser parser) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (parser.getAttributeName(i).equals("name")) {
+                String name = parser.getAttributeValue(i);
+                // an attr named android:... in a styleable uses the framework attr
+                if (!name.isEmpty() && name.indexOf(':') < 0) {
+                    add(type + "/" + name, parser.getAttributeValueLine(i), parser.getAttributeValueColumn(i),
+                            name.length());
+                }
+                return;
+            }
+        }
+    }
+
+    private void readPublic(XmlResourceParser parser) {
+        String type = parser.getAttributeValue(null, "type");
+        String name = parser.getAttributeValue(null, "name");
+        String id = parser.getAttributeValue(null, "id");
+        if (type == null || name == null || id == null || !id.startsWith("0x")) {
+            return;
+        }
+        try {
+            addId(type + "/" + name, (int) Long.parseLong(id.substring(2), 16));
+        } catch (NumberFormatException e) {
+            // not an id
+        }
+    }
+
+    private void readIds(XmlResourceParser parser) throws XmlPullParserException, IOException {
+        int event;
+        while ((event = parser.next()) != END_DOCUMENT) {
+            if (event != START_TAG) {
+                continue;
+            }
+            for (int i = 0; i < parser.getAttributeCount(); i++) {
+                String value = parser.getAttributeValue(i);
+                if (value.startsWith("@+id/") && value.length() > 5) {
+                    add("id/" + value.substring(5), parser.getAttributeValueLine(i),
+                            parser.getAttributeValueColumn(i) + 5, value.length() - 5);
+                }
+            }
+        }
+    }
+
+    private void add(String resource, int line, int column, int length) {
+        if (myCount == myResources.length) {
+            int capacity = myCount * 2;
+            myResources = Arrays.copyOf(myResources, capacity);
+            myLines = Arrays.copyOf(myLines, capacity);
+            myColumns = Arrays.copyOf(myColumns, capacity);
+            myLengths = Arrays.copyOf(myLengths, capacity);
+        }
+        myResources[myCount] = resource;
+        myLines[myCount] = line;
+        myColumns[myCount] = column;
+        myLengths[myCount] = length;
+        myCount++;
+    }
+
+    private void addId(String resource, int id) {
+        if (myIdCount == myIds.length) {
+            int capacity = Math.max(64, myIdCount * 2);
+            myIdResources = Arrays.copyOf(myIdResources, capacity);
+            myIds = Arrays.copyOf(myIds, capacity);
+        }
+        myIdResources[myIdCount] = resource;
+        myIds[myIdCount] = id;
+        myIdCount++;
+    }
+
+    void write(@NonNull DataOutputStream output) throws IOException {
+        output.writeUTF(myFilePath);
+        output.writeLong(myVersion);
+        output.writeInt(myCount);
+        for (int i = 0; i < myCount; i++) {
+            output.writeUTF(myResources[i]);
+            output.writeInt(myLines[i]);
+            output.writeInt(myColumns[i]);
+            output.writeInt(myLengths[i]);
+        }
+        output.writeInt(myIdCount);
+        for (int i = 0; i < myIdCount; i++) {
+            output.writeUTF(myIdResources[i]);
+            output.writeInt(myIds[i]);
+        }
+    }
+
+    @NonNull
+    static XmlResourceFile read(@NonNull DataInputStream input) throws IOException {
+        XmlResourceFile file = new XmlResourceFile(input.readUTF(), input.readLong());
+        int count = input.readInt();
+        if (count < 0) {
+            throw new IOException("Bad resource count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            file.add(input.readUTF(), input.readInt(), input.readInt(), input.readInt());
+        }
+        int idCount = input.readInt();
+        if (idCount < 0) {
+            throw new IOException("Bad id count " + idCount);
+        }
+        for (int i = 0; i < idCount; i++) {
+            file.addId(input.readUTF(), input.readInt());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,448 @@
+package com.apkide.language.xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.apkide.language.api.FileStoreCallback;
+import com.apkide.language.api.SymbolKind;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the resources the files under the res dir of the assembly root declare, keyed by
+ * {@code type/name}, and of the ids public.xml gives them. It is kept in a file in the build dir and read
+ * back when the assembly is configured again, only the files whose {@link FileStoreCallback#getFileVersion}
+ * changed since are parsed again.
+ */
+final class XmlResourceIndex {
+    private static final String INDEX_FILE_NAME = "resources.index";
+    private static final int MAGIC = 0x52455358;
+    private static final int FORMAT = 1;
+    private static final int MAX_THREADS = 4;
+
+    private final XmlResourceParser myParser = new XmlResourceParser();
+    private final Map<String, XmlResourceFile> myFiles = new HashMap<>();
+    // the files declaring each resource
+    private final TreeMap<String, List<XmlResourceFile>> myResources = new TreeMap<>();
+    private final Map<String, Integer> myIds = new HashMap<>();
+    private final Map<Integer, String> myIdResources = new HashMap<>();
+    private String myRootPath;
+    private String myResPath;
+    private File myFile;
+    // whether the versions of all resource files were checked since the index was read
+    private boolean myChecked;
+    // whether the index changed since it was read or written
+    private boolean myChanged;
+
+    synchronized void configure(@NonNull String rootPath, @NonNull String buildPath) {
+        if (rootPath.equals(myRootPath)) {
+            return;
+        }
+        close();
+        myRootPath = rootPath;
+        myResPath = rootPath + File.separator + "res";
+        myFile = new File(buildPath, INDEX_FILE_NAME);
+        try {
+            read();
+        } catch (IOException e) {
+            // start over
+            clear();
+        }
+        myChecked = false;
+        myChanged = false;
+    }
+
+    /**
+     * Writes the changes to the index file.
+     */
+    synchronized void close() {
+        try {
+            write();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        myRootPath = null;
+        myResPath = null;
+        myFile = null;
+        clear();
+    }
+
+    private void clear() {
+        myFiles.clear();
+        myResources.clear();
+        myIds.clear();
+        myIdResources.clear();
+    }
+
+    /**
+     * Brings the index up to date with the resource files, the first call after configuring checks all of
+     * them, later calls only the given file.
+     */
+    synchronized void update(@NonNull FileStoreCallback callback, @NonNull String filePath) throws IOException {
+        if (myResPath == null) {
+            return;
+        }
+        if (!myChecked) {
+            check(callback);
+            myChecked = true;
+        }
+
+        if (isResourceFile(filePath)) {
+            long version = callback.getFileVersion(filePath);
+            XmlResourceFile file = myFiles.get(filePath);
+            if (file == null || file.myVersion != version) {
+                putFile(parseFile(callback, filePath, myParser));
+            }
+        }
+    }
+
+    /**
+     * @return whether the index has resources, a project without any isn't an android one
+     */
+    synchronized boolean hasResources() {
+        return !myResources.isEmpty();
+    }
+
+    /**
+     * @return whether the file is under the assembly root
+     */
+    synchronized boolean isProjectFile(@NonNull String filePath) {
+        return myRootPath != null && filePath.startsWith(myRootPath + File.separator);
+    }
+
+    synchronized boolean hasResource(@NonNull String resource) {
+        return myResources.containsKey(resource);
+    }
+
+    /**
+     * Reports the declarations of the resource in all files.
+     */
+    synchronized void findDeclarations(@NonNull String resource, @NonNull DeclarationConsumer consumer) {
+        List<XmlResourceFile> files = myResources.get(resource);
+        if (files == null) {
+            return;
+        }
+        for (XmlResourceFile file : files) {
+            for (int i = 0; i < file.myCount; i++) {
+                if (file.myResources[i].equals(resource)) {
+                    consumer.accept(file.myFilePath, file.myQualifier, file.myLines[i], file.myColumns[i],
+                            file.myLengths[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the resource declared at the position of the file, null if there is none
+     */
+    @Nullable
+    synchronized String findResource(@NonNull String filePath, int line, int column) {
+        XmlResourceFile file = myFiles.get(filePath);
+        int index = file != null ? file.findResource(line, column) : -1;
+        return index >= 0 ? file.myResources[index] : null;
+    }
+
+    /**
+     * @return resources starting with the prefix in name order, at most the given number of them
+     */
+    @NonNull
+    synchronized List<String> findResources(@NonNull String prefix, int limit) {
+        List<String> resources = new ArrayList<>();
+        for (String resource : myResources.tailMap(prefix).keySet()) {
+            if (resources.size() == limit || !resource.startsWith(prefix)) {
+                break;
+            }
+            resources.add(resource);
+        }
+        return resources;
+    }
+
+    /**
+     * @return the types of the resources, in name order
+     */
+    @NonNull
+    synchronized Set<String> getTypes() {
+        Set<String> types = new TreeSet<>();
+        String resource = myResources.isEmpty() ? null : myResources.firstKey();
+        while (resource != null) {
+            String type = resource.substring(0, resource.indexOf('/'));
+            types.add(type);
+            // '0' comes right after '/', the first resource of the next type
+            resource = myResources.ceilingKey(type + '0');
+        }
+        return types;
+    }
+
+    /**
+     * @return id public.xml gives the resource, null if it gives none
+     */
+    @Nullable
+    synchronized Integer getId(@NonNull String resource) {
+        return myIds.get(resource);
+    }
+
+    /**
+     * @return resource public.xml gives the id to, null if it gives it to none
+     */
+    @Nullable
+    synchronized String getResource(int id) {
+        return myIdResources.get(id);
+    }
+
+    /**
+     * @return the resource a reference like {@code @string/name}, {@code @+id/name} or {@code ?attr/name}
+     * names, null if it isn't one or it names a resource of another package
+     */
+    @Nullable
+    static String getReferencedResource(@NonNull String reference) {
+        if (reference.length() < 2 || (reference.charAt(0) != '@' && reference.charAt(0) != '?')) {
+            return null;
+        }
+        boolean attr = reference.charAt(0) == '?';
+        String resource = reference.substring(!attr && reference.charAt(1) == '+' ? 2 : 1);
+        if (resource.indexOf(':') >= 0 || resource.startsWith("*")) {
+            return null;
+        }
+        int slash = resource.indexOf('/');
+        if (attr && slash < 0) {
+            return "attr/" + resource;
+        }
+        return slash > 0 && slash < resource.length() - 1 ? resource : null;
+    }
+
+    static int getKind(@NonNull String type) {
+        switch (type) {
+            case "string":
+                return SymbolKind.String;
+            case "bool":
+                return SymbolKind.Boolean;
+            case "dimen":
+            case "fraction":
+            case "integer":
+                return SymbolKind.Number;
+            case "array":
+            case "plurals":
+                return SymbolKind.Array;
+            case "attr":
+                return SymbolKind.Property;
+            case "style":
+                return SymbolKind.Class;
+            case "styleable":
+                return SymbolKind.Struct;
+            case "id":
+            case "color":
+                return SymbolKind.Constant;
+            default:
+                return SymbolKind.File;
+        }
+    }
+
+    private boolean isResourceFile(String filePath) {
+        return myResPath != null && filePath.startsWith(myResPath + File.separator)
+                && filePath.indexOf(File.separatorChar, myResPath.length() + 1) >= 0;
+    }
+
+    private void putFile(XmlResourceFile file) {
+        removeFile(file.myFilePath);
+        myFiles.put(file.myFilePath, file);
+        for (int i = 0; i < file.myCount; i++) {
+            List<XmlResourceFile> files = myResources.get(file.myResources[i]);
+            if (files == null) {
+                files = new ArrayList<>(1);
+                myResources.put(file.myResources[i], files);
+            }
+            if (!files.contains(file)) {
+                files.add(file);
+            }
+        }
+        for (int i = 0; i < file.myIdCount; i++) {
+            myIds.put(file.myIdResources[i], file.myIds[i]);
+            myIdResources.put(file.myIds[i], file.myIdResources[i]);
+        }
+        myChanged = true;
+    }
+
+    private void removeFile(String filePath) {
+        XmlResourceFile file = myFiles.remove(filePath);
+        if (file == null) {
+            return;
+        }
+        for (int i = 0; i < file.myCount; i++) {
+            List<XmlResourceFile> files = myResources.get(file.myResources[i]);
+            if (files != null && files.remove(file) && files.isEmpty()) {
+                myResources.remove(file.myResources[i]);
+            }
+        }
+        for (int i = 0; i < file.myIdCount; i++) {
+            Integer id = myIds.get(file.myIdResources[i]);
+            if (id != null && id == file.myIds[i]) {
+                myIds.remove(file.myIdResources[i]);
+                myIdResources.remove(id);
+            }
+        }
+        myChanged = true;
+    }
+
+    /**
+     * Parses the resource files whose version isn't the one in the index and drops deleted files.
+     */
+    private void check(FileStoreCallback callback) throws IOException {
+        List<String> files = new ArrayList<>();
+        if (callback.isDirectory(myResPath)) {
+            for (String directory : callback.getFileChildren(myResPath)) {
+                if (callback.isDirectory(directory)) {
+                    for (String child : callback.getFileChildren(directory)) {
+                        if (callback.isFile(child)) {
+                            files.add(child);
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<String> present = new HashSet<>(files);
+        for (String path : new ArrayList<>(myFiles.keySet())) {
+            if (!present.contains(path)) {
+                removeFile(path);
+            }
+        }
+        List<String> outdated = new ArrayList<>();
+        for (String path : files) {
+            XmlResourceFile file = myFiles.get(path);
+            if (file == null || file.myVersion != callback.getFileVersion(path)) {
+                outdated.add(path);
+            }
+        }
+        for (XmlResourceFile file : parseFiles(callback, outdated)) {
+            putFile(file);
+        }
+
+        if (myChanged) {
+            write();
+        }
+    }
+
+    /**
+     * Parses the files on a few threads, each with a parser of its own.
+     */
+    private static List<XmlResourceFile> parseFiles(FileStoreCallback callback, List<String> files)
+            throws IOException {
+        XmlResourceFile[] parsed = new XmlResourceFile[files.size()];
+        int threads = Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS),
+                files.size() / 64 + 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger next = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    XmlResourceParser parser = new XmlResourceParser();
+                    int index;
+                    while ((index = next.getAndIncrement()) < parsed.length) {
+                        parsed[index] = parseFile(callback, files.get(index), parser);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return Arrays.asList(parsed);
+    }
+
+    private static XmlResourceFile parseFile(FileStoreCallback callback, String filePath,
+                                             XmlResourceParser parser) {
+        // read before the text, a change in between leaves the file with an older version to parse again
+        long version = callback.getFileVersion(filePath);
+        if (!filePath.endsWith(".xml")) {
+            try {
+                return XmlResourceFile.parse(filePath, version, null, parser);
+            } catch (IOException e) {
+                return new XmlResourceFile(filePath, version);
+            }
+        }
+        try (Reader reader = callback.getFileReader(filePath)) {
+            return XmlResourceFile.parse(filePath, version, reader, parser);
+        } catch (IOException e) {
+            return new XmlResourceFile(filePath, version);
+        }
+    }
+
+    private void read() throws IOException {
+        if (!myFile.isFile()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(myFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT) {
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                putFile(XmlResourceFile.read(input));
+            }
+        }
+    }
+
+    private void write() throws IOException {
+        if (myFile == null || !myChanged) {
+            return;
+        }
+        File parent = myFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+        File temporaryFile = new File(myFile.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(myFiles.size());
+            for (XmlResourceFile file : myFiles.values()) {
+                file.write(output);
+            }
+        }
+        if (!temporaryFile.renameTo(myFile)) {
+            temporaryFile.delete();
+            throw new IOException("Can't write " + myFile);
+        }
+        myChanged = false;
+    }
+
+    interface DeclarationConsumer {
+        void accept(@NonNull String filePath, @NonNull String qualifier, int line, int column, int length);
+    }
+}
@@ -0,0 +1,56 @@
+package com.apkide.language.xml;
+
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pull parser that also keeps where the value of each attribute of the current start tag starts, lines and
+ * columns counting from 0.
+ */
+final class XmlResourceParser extends MXParser {
+    private int[] myValueLines = new int[8];
+    private int[] myValueColumns = new int[8];
+
+    @Override
+    protected char parseAttribute() throws XmlPullParserException, IOException {
+        int index = attributeCount;
+        char ch = super.parseAttribute();
+        // namespace declarations don't count as attributes
+        if (attributeCount > index) {
+            if (index == myValueLines.length) {
+                myValueLines = Arrays.copyOf(myValueLines, index * 2);
+                myValueColumns = Arrays.copyOf(myValueColumns, index * 2);
+            }
+            // the closing quote was read last, a value with references or line breaks comes out shifted
+            myValueLines[index] = getLastLine();
+            myValueColumns[index] = Math.max(0, getLastColumn() - attributeValue[index].length());
+        }
+        return ch;
+    }
+
+    int getAttributeValueLine(int index) {
+        return myValueLines[index];
+    }
+
+    int getAttributeValueColumn(int index) {
+        return myValueColumns[index];
+    }
+
+    /**
+     * @return line of the char read last
+     */
+    int getLastLine() {
+        return lineNumber - 1;
+    }
+
+    /**
+     * @return column of the char read last, MXParser counts the columns of the first line from 1 and of the
+     * others from 2
+     */
+    int getLastColumn() {
+        return columnNumber - (lineNumber == 1 ? 1 : 2);
+    }
+}
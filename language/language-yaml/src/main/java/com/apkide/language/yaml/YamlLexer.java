@@ -13,9 +13,11 @@ import static com.apkide.language.api.StyleKind.SeparatorStyle;
 import static com.apkide.language.api.StyleKind.StringStyle;
 import static com.apkide.language.api.StyleKind.TypeStyle;
 
+import com.apkide.language.api.RestartableLexer;
+
 
 @SuppressWarnings("fallthrough")
-public class YamlLexer {
+public class YamlLexer implements RestartableLexer {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -633,6 +635,34 @@ public class YamlLexer {
       return yycolumn;
   }
 
+  @Override
+  public long getRestartState(){
+      if (myBraceCount > 0xffff || myPrevElementIndent > 0xfffff || myBlockScalarType + 1 > 0x1f) {
+          return -1;
+      }
+      return yystate()
+              | (long) myReturnState << 8
+              | (long) myBraceCount << 16
+              | (long) myPrevElementIndent << 32
+              | (long) (myBlockScalarType + 1) << 52
+              | (myPossiblePlainTextScalarContinue ? 1L << 57 : 0);
+  }
+
+  @Override
+  public void restoreState(long state){
+      yybegin((int) (state & 0xff));
+      myReturnState = (int) (state >>> 8 & 0xff);
+      myBraceCount = (int) (state >>> 16 & 0xffff);
+      myPrevElementIndent = (int) (state >>> 32 & 0xfffff);
+      myBlockScalarType = (int) (state >>> 52 & 0x1f) - 1;
+      myPossiblePlainTextScalarContinue = (state & 1L << 57) != 0;
+  }
+
+  @Override
+  public boolean isLineStartRestartOnly(){
+      return true;
+  }
+
   public boolean isCleanState() {
       return yystate() == YYINITIAL
                && myBraceCount == 0
@@ -18,323 +18,517 @@ import com.apkide.language.service.IFileEditor;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
 
 public final class CodeEngine {
     
+    private static final int PRIORITY_COMPLETION = 0;
+    private static final int PRIORITY_HIGHLIGHT = 1;
+    private static final int PRIORITY_EDIT = 2;
+    private static final int PRIORITY_ANALYZE = 3;
+    private static final int PRIORITY_SEARCH = 4;
+    
+    private static final int MAX_HIGHLIGHTED_FILES = 8;
+    
     private enum Operation {
-        None,
-        Format,
-        Indent,
-        Highlight,
-        Analyze,
-        Completion,
-        SearchUsages,
-        SearchSymbol,
-        OptimizeImports,
-        Comment,
-        RemoveComment,
-        PrepareRename,
-        Rename,
-        PrepareInline,
-        Inline,
-        SafeDelete,
-        SurroundWith
+        Format(PRIORITY_EDIT, false),
+        Indent(PRIORITY_EDIT, false),
+        Highlight(PRIORITY_HIGHLIGHT, true),
+        Analyze(PRIORITY_ANALYZE, true),
+        Completion(PRIORITY_COMPLETION, true),
+        SearchUsages(PRIORITY_SEARCH, true),
+        SearchSymbol(PRIORITY_SEARCH, true),
+        OptimizeImports(PRIORITY_EDIT, false),
+        Comment(PRIORITY_EDIT, false),
+        RemoveComment(PRIORITY_EDIT, false),
+        PrepareRename(PRIORITY_EDIT, true),
+        Rename(PRIORITY_EDIT, false),
+        PrepareInline(PRIORITY_EDIT, true),
+        Inline(PRIORITY_EDIT, false),
+        SafeDelete(PRIORITY_EDIT, false),
+        SurroundWith(PRIORITY_EDIT, false);
+        
+        final int myPriority;
+        // whether a newer request for the same file makes a pending or running one useless
+        final boolean myCoalesce;
+        
+        Operation(int priority, boolean coalesce) {
+            myPriority = priority;
+            myCoalesce = coalesce;
+        }
     }
     
     private final Object myLock = new Object();
     private boolean myDestroy;
     private boolean myShutdown;
+    private boolean myLanguagesShutdown;
     private final Language[] myLanguages;
-    private final LanguageCallback myCallback = new LanguageCallback();
     
-    private AnalyzingListener myAnalyzingListener;
-    private HighlightingListener myHighlightingListener;
-    private CompletionListener myCompletionListener;
-    private NavigationListener myNavigationListener;
-    private RefactoringListener myRefactoringListener;
+    // guarded by myLock
+    private final List<Request> myPendingRequests = new ArrayList<>();
+    private final List<Request> myRunningRequests = new ArrayList<>();
+    private long myRequestCount;
     
-    private Operation myOperation = Operation.None;
-    private String myFilePath;
-    private int myStartLine, myStartColumn, myEndLine, myEndColumn;
-    private int myLine, myColumn;
-    private String myNewName;
-    private boolean myIncludeDeclaration;
-    private boolean myAllowTypes;
+    // highlighting of the last versions of the files, highlighters only report the tokens that changed
+    private final Map<String, Highlights> myFileHighlights = Collections.synchronizedMap(
+            new LinkedHashMap<String, Highlights>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Highlights> eldest) {
+                    return size() > MAX_HIGHLIGHTED_FILES;
+                }
+            });
     
-    private IFileEditor myEditor;
+    private volatile AnalyzingListener myAnalyzingListener;
+    private volatile HighlightingListener myHighlightingListener;
+    private volatile CompletionListener myCompletionListener;
+    private volatile NavigationListener myNavigationListener;
+    private volatile RefactoringListener myRefactoringListener;
     
     public CodeEngine() {
         myLanguages = LanguageProvider.get().createLanguages();
-        Thread thread = new Thread(null, () -> {
-            try {
+        
+        // language components keep per-call state, so the requests of one language run one at a time
+        // and the workers only help with files of different languages
+        int workerCount = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+        for (int i = 0; i < workerCount; i++) {
+            Thread thread = new Thread(null, this::runWorker, "CodeEngine-" + i, 2000000L);
+            thread.setPriority(Thread.MIN_PRIORITY + 2);
+            thread.start();
+        }
+        
+        for (Language language : myLanguages) {
+            language.initialize();
+        }
+    }
+    
+    private void runWorker() {
+        LanguageCallback callback = new LanguageCallback(myFileHighlights);
+        try {
+            while (true) {
+                Request request;
                 synchronized (myLock) {
-                    while (!myDestroy) {
+                    while (true) {
+                        if (myDestroy) {
+                            return;
+                        }
                         if (!myShutdown) {
-                            if (myFilePath != null && myOperation != Operation.None) {
-                                Language language = null;
-                                for (Language lang : myLanguages) {
-                                    if (language == null && lang != null) {
-                                        for (String filePattern : lang.getFilePatterns()) {
-                                            if (FileStore.get().matchFilePatterns(myFilePath, filePattern)) {
-                                                language = lang;
-                                                break;
-                                            }
-                                        }
-                                    }
-                                }
-                                if (language != null) {
-                                    switch (myOperation) {
-                                        case Format:
-                                            if (language.getFormatter() != null) {
-                                                language.getFormatter().formatLines(
-                                                        myFilePath, myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn, myCallback
-                                                );
-                                            }
-                                            break;
-                                        case Indent:
-                                            if (language.getFormatter() != null) {
-                                                language.getFormatter().indentLines(
-                                                        myFilePath, myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn, myCallback
-                                                );
-                                            }
-                                            break;
-                                        case Highlight:
-                                            myCallback.myHighlights.clear();
-                                            if (language.getHighlighter() != null) {
-                                                language.getHighlighter()
-                                                        .highlighting(myFilePath, myCallback);
-                                                
-                                            }
-                                            
-                                            if (myHighlightingListener != null) {
-                                                myHighlightingListener.highlighting(
-                                                        myFilePath,
-                                                        myCallback.myHighlights.styles,
-                                                        myCallback.myHighlights.startLines,
-                                                        myCallback.myHighlights.startColumns,
-                                                        myCallback.myHighlights.endLines,
-                                                        myCallback.myHighlights.endColumns,
-                                                        myCallback.myHighlights.length
-                                                );
-                                            }
-                                            
-                                            myCallback.myHighlights.clear();
-                                            if (language.getHighlighter() != null) {
-                                                language.getHighlighter().
-                                                        semanticHighlighting(
-                                                                myFilePath, myCallback);
-                                            }
-                                            
-                                            if (myHighlightingListener != null) {
-                                                myHighlightingListener.semanticHighlighting(
-                                                        myFilePath,
-                                                        myCallback.myHighlights.styles,
-                                                        myCallback.myHighlights.startLines,
-                                                        myCallback.myHighlights.startColumns,
-                                                        myCallback.myHighlights.endLines,
-                                                        myCallback.myHighlights.endColumns,
-                                                        myCallback.myHighlights.length
-                                                );
-                                            }
-                                        case Analyze:
-                                            myCallback.myProblemList.clear();
-                                            if (language.getAnalyzer() != null) {
-                                                language.getAnalyzer().analyze(
-                                                        myFilePath, myCallback);
-                                            }
-                                            
-                                            if (myAnalyzingListener != null) {
-                                                myAnalyzingListener.analyzeDone(myFilePath,
-                                                        myCallback.myProblemList);
-                                            }
-                                            break;
-                                        case Completion:
-                                            myCallback.myCompletionList.clear();
-                                            if (language.getCompleter() != null) {
-                                                
-                                                language.getCompleter().completion(
-                                                        myFilePath,
-                                                        myLine, myColumn,
-                                                        myAllowTypes, myCallback);
-                                            }
-                                            if (myCompletionListener != null) {
-                                                myCompletionListener.completionList(
-                                                        myFilePath,
-                                                        myLine, myColumn, myAllowTypes,
-                                                        myCallback.myCompletionList);
-                                            }
-                                            break;
-                                        case SearchUsages:
-                                            myCallback.myFileSpanList.clear();
-                                            if (language.getNavigation() != null) {
-                                                language.getNavigation().searchUsages(
-                                                        myFilePath,
-                                                        myLine, myColumn,
-                                                        myCallback);
-                                            }
-                                            if (myNavigationListener != null) {
-                                                myNavigationListener.usagesList(myFilePath,
-                                                        myLine, myColumn,
-                                                        myCallback.myFileSpanList);
-                                            }
-                                            break;
-                                        case SearchSymbol:
-                                            myCallback.mySymbolList.clear();
-                                            if (language.getNavigation() != null) {
-                                                language.getNavigation().searchSymbol(
-                                                        myFilePath,
-                                                        myLine, myColumn, myIncludeDeclaration,
-                                                        myCallback);
-                                            }
-                                            if (myNavigationListener != null) {
-                                                myNavigationListener.symbolList(myFilePath,
-                                                        myLine, myColumn, myIncludeDeclaration,
-                                                        myCallback.mySymbolList);
-                                            }
-                                            break;
-                                        case OptimizeImports:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().optimizeImports(
-                                                        myFilePath,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.optimizeImports(myFilePath,
-                                                        myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case Comment:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().commentLines(
-                                                        myFilePath, myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.comment(myFilePath,
-                                                        myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn,
-                                                        myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case RemoveComment:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().removeCommentLines(
-                                                        myFilePath, myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.removeComment(myFilePath,
-                                                        myStartLine, myStartColumn,
-                                                        myEndLine, myEndColumn,
-                                                        myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case PrepareRename:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().prepareRename(
-                                                        myFilePath, myLine, myColumn,
-                                                        myNewName,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.prepareRename(myFilePath,
-                                                        myLine, myColumn, myNewName,
-                                                        myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case Rename:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().rename(
-                                                        myFilePath, myLine, myColumn,
-                                                        myNewName,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.rename(myFilePath,
-                                                        myLine, myColumn, myNewName,
-                                                        myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case PrepareInline:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().prepareInline(
-                                                        myFilePath, myLine, myColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.prepareInline(myFilePath,
-                                                        myLine, myColumn, myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case Inline:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().inline(
-                                                        myFilePath, myLine, myColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.inline(myFilePath,
-                                                        myLine, myColumn, myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case SafeDelete:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().safeDelete(
-                                                        myFilePath, myLine, myColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.safeDelete(myFilePath,
-                                                        myLine, myColumn, myCallback.myModificationList);
-                                            }
-                                            break;
-                                        case SurroundWith:
-                                            myCallback.myModificationList.clear();
-                                            if (language.getRefactor() != null) {
-                                                language.getRefactor().surroundWith(
-                                                        myFilePath, myLine, myColumn,
-                                                        myCallback);
-                                            }
-                                            if (myRefactoringListener != null) {
-                                                myRefactoringListener.surroundWith(myFilePath,
-                                                        myLine, myColumn, myCallback.myModificationList);
-                                            }
-                                            break;
-                                        default:
-                                            break;
-                                    }
-                                }
+                            request = takeRequest();
+                            if (request != null) {
+                                break;
                             }
-                            myLock.wait();
-                        } else {
+                        } else if (!myLanguagesShutdown && myRunningRequests.isEmpty()) {
+                            myLanguagesShutdown = true;
                             for (Language language : myLanguages) {
-                                language.shutdown();
+                                if (language != null)
+                                    language.shutdown();
                             }
                         }
+                        myLock.wait();
+                    }
+                    myRunningRequests.add(request);
+                }
+                
+                callback.myRequest = request;
+                try {
+                    request.checkCancelled();
+                    process(request, callback);
+                } catch (CancellationException ignored) {
+                    // superseded by a newer request
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    callback.myRequest = null;
+                    synchronized (myLock) {
+                        myRunningRequests.remove(request);
+                        myLock.notifyAll();
                     }
                 }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
-        }, "CodeEngine", 2000000L);
-        thread.setPriority(Thread.MIN_PRIORITY + 2);
-        thread.start();
-        
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Takes the most urgent pending request whose language is not busy, requests of equal priority
+     * in the order they came in.
+     */
+    private Request takeRequest() {
+        Request best = null;
+        for (Request request : myPendingRequests) {
+            if (best != null && (request.myOperation.myPriority > best.myOperation.myPriority
+                    || request.myOperation.myPriority == best.myOperation.myPriority
+                    && request.mySequence > best.mySequence)) {
+                continue;
+            }
+            boolean busy = false;
+            for (Request running : myRunningRequests) {
+                if (running.myLanguage == request.myLanguage) {
+                    busy = true;
+                    break;
+                }
+            }
+            if (!busy) {
+                best = request;
+            }
+        }
+        if (best != null) {
+            myPendingRequests.remove(best);
+        }
+        return best;
+    }
+    
+    private void submit(Request request) {
+        if (request.myLanguage == null) {
+            return;
+        }
+        synchronized (myLock) {
+            if (myDestroy || myShutdown) {
+                return;
+            }
+            request.mySequence = myRequestCount++;
+            
+            if (request.myOperation.myCoalesce) {
+                for (Iterator<Request> iterator = myPendingRequests.iterator(); iterator.hasNext(); ) {
+                    Request pending = iterator.next();
+                    if (pending.isSupersededBy(request)) {
+                        pending.myCancelled = true;
+                        iterator.remove();
+                    }
+                }
+                for (Request running : myRunningRequests) {
+                    if (running.isSupersededBy(request)) {
+                        if (running.myFileVersion == request.myFileVersion
+                                && running.myOperation == request.myOperation
+                                && running.hasSameArguments(request)) {
+                            // the running request computes the same result
+                            return;
+                        }
+                        running.myCancelled = true;
+                    }
+                }
+            }
+            
+            myPendingRequests.add(request);
+            myLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Merges the tokens the highlighter reported into the highlighting of the file.
+     *
+     * @return the highlighting of the file, null if the highlighter reported a changed range but the
+     * highlighting it applies to is gone
+     */
+    @Nullable
+    private Highlights mergeHighlights(String filePath, LanguageCallback callback) {
+        synchronized (myFileHighlights) {
+            Highlights highlights = myFileHighlights.get(filePath);
+            if (callback.myRangeReported) {
+                if (highlights == null) {
+                    return null;
+                }
+                highlights.replace(callback.myRangeStartLine, callback.myRangeStartColumn,
+                        callback.myRangeOldEndLine, callback.myRangeOldEndColumn,
+                        callback.myRangeNewEndLine, callback.myRangeNewEndColumn,
+                        callback.myHighlights);
+            } else {
+                if (highlights == null) {
+                    highlights = new Highlights();
+                    myFileHighlights.put(filePath, highlights);
+                }
+                highlights.set(callback.myHighlights);
+            }
+            return highlights;
+        }
+    }
+    
+    private Request createRequest(Operation operation, String filePath) {
+        return new Request(operation, filePath, findLanguage(filePath),
+                FileStore.get().getFileVersion(filePath));
+    }
+    
+    @Nullable
+    private Language findLanguage(String filePath) {
         for (Language language : myLanguages) {
-            language.initialize();
+            if (language != null) {
+                for (String filePattern : language.getFilePatterns()) {
+                    if (FileStore.get().matchFilePatterns(filePath, filePattern)) {
+                        return language;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    
+    private void process(Request request, LanguageCallback callback) {
+        Language language = request.myLanguage;
+        switch (request.myOperation) {
+            case Format:
+                if (language.getFormatter() != null) {
+                    language.getFormatter().formatLines(
+                            request.myFilePath, request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn, callback
+                    );
+                }
+                break;
+            case Indent:
+                if (language.getFormatter() != null) {
+                    language.getFormatter().indentLines(
+                            request.myFilePath, request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn, callback
+                    );
+                }
+                break;
+            case Highlight:
+                callback.resetHighlighting();
+                if (language.getHighlighter() != null) {
+                    language.getHighlighter()
+                            .highlighting(request.myFilePath, callback);
+                
+                }
+            
+                // merged even if cancelled, the highlighter already moved on to this version
+                Highlights highlights = mergeHighlights(request.myFilePath, callback);
+                if (highlights == null) {
+                    submit(new Request(Operation.Highlight, request.myFilePath, request.myLanguage,
+                            request.myFileVersion));
+                    break;
+                }
+                
+                request.checkCancelled();
+                if (myHighlightingListener != null) {
+                    myHighlightingListener.highlighting(
+                            request.myFilePath,
+                            highlights.styles,
+                            highlights.startLines,
+                            highlights.startColumns,
+                            highlights.endLines,
+                            highlights.endColumns,
+                            highlights.length
+                    );
+                }
+            
+                callback.myHighlights.clear();
+                if (language.getHighlighter() != null) {
+                    language.getHighlighter().
+                            semanticHighlighting(
+                                    request.myFilePath, callback);
+                }
+            
+                request.checkCancelled();
+                if (myHighlightingListener != null) {
+                    myHighlightingListener.semanticHighlighting(
+                            request.myFilePath,
+                            callback.myHighlights.styles,
+                            callback.myHighlights.startLines,
+                            callback.myHighlights.startColumns,
+                            callback.myHighlights.endLines,
+                            callback.myHighlights.endColumns,
+                            callback.myHighlights.length
+                    );
+                }
+            
+                // problems of the highlighted version follow at a lower priority
+                submit(new Request(Operation.Analyze, request.myFilePath, request.myLanguage,
+                        request.myFileVersion));
+                break;
+            case Analyze:
+                callback.myProblemList.clear();
+                if (language.getAnalyzer() != null) {
+                    language.getAnalyzer().analyze(
+                            request.myFilePath, callback);
+                }
+            
+                request.checkCancelled();
+                if (myAnalyzingListener != null) {
+                    myAnalyzingListener.analyzeDone(request.myFilePath,
+                            callback.myProblemList);
+                }
+                break;
+            case Completion:
+                callback.myCompletionList.clear();
+                if (language.getCompleter() != null) {
+                
+                    language.getCompleter().completion(
+                            request.myFilePath,
+                            request.myLine, request.myColumn,
+                            request.myAllowTypes, callback);
+                }
+                request.checkCancelled();
+                if (myCompletionListener != null) {
+                    myCompletionListener.completionList(
+                            request.myFilePath,
+                            request.myLine, request.myColumn, request.myAllowTypes,
+                            callback.myCompletionList);
+                }
+                break;
+            case SearchUsages:
+                callback.myFileSpanList.clear();
+                if (language.getNavigation() != null) {
+                    language.getNavigation().searchUsages(
+                            request.myFilePath,
+                            request.myLine, request.myColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myNavigationListener != null) {
+                    myNavigationListener.usagesList(request.myFilePath,
+                            request.myLine, request.myColumn,
+                            callback.myFileSpanList);
+                }
+                break;
+            case SearchSymbol:
+                callback.mySymbolList.clear();
+                if (language.getNavigation() != null) {
+                    language.getNavigation().searchSymbol(
+                            request.myFilePath,
+                            request.myLine, request.myColumn, request.myIncludeDeclaration,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myNavigationListener != null) {
+                    myNavigationListener.symbolList(request.myFilePath,
+                            request.myLine, request.myColumn, request.myIncludeDeclaration,
+                            callback.mySymbolList);
+                }
+                break;
+            case OptimizeImports:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().optimizeImports(
+                            request.myFilePath,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.optimizeImports(request.myFilePath,
+                            callback.myModificationList);
+                }
+                break;
+            case Comment:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().commentLines(
+                            request.myFilePath, request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.comment(request.myFilePath,
+                            request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn,
+                            callback.myModificationList);
+                }
+                break;
+            case RemoveComment:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().removeCommentLines(
+                            request.myFilePath, request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.removeComment(request.myFilePath,
+                            request.myStartLine, request.myStartColumn,
+                            request.myEndLine, request.myEndColumn,
+                            callback.myModificationList);
+                }
+                break;
+            case PrepareRename:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().prepareRename(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            request.myNewName,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.prepareRename(request.myFilePath,
+                            request.myLine, request.myColumn, request.myNewName,
+                            callback.myModificationList);
+                }
+                break;
+            case Rename:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().rename(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            request.myNewName,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.rename(request.myFilePath,
+                            request.myLine, request.myColumn, request.myNewName,
+                            callback.myModificationList);
+                }
+                break;
+            case PrepareInline:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().prepareInline(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.prepareInline(request.myFilePath,
+                            request.myLine, request.myColumn, callback.myModificationList);
+                }
+                break;
+            case Inline:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().inline(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.inline(request.myFilePath,
+                            request.myLine, request.myColumn, callback.myModificationList);
+                }
+                break;
+            case SafeDelete:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().safeDelete(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.safeDelete(request.myFilePath,
+                            request.myLine, request.myColumn, callback.myModificationList);
+                }
+                break;
+            case SurroundWith:
+                callback.myModificationList.clear();
+                if (language.getRefactor() != null) {
+                    language.getRefactor().surroundWith(
+                            request.myFilePath, request.myLine, request.myColumn,
+                            callback);
+                }
+                request.checkCancelled();
+                if (myRefactoringListener != null) {
+                    myRefactoringListener.surroundWith(request.myFilePath,
+                            request.myLine, request.myColumn, callback.myModificationList);
+                }
+                break;
+            default:
+                break;
         }
     }
     
@@ -348,39 +542,29 @@ public final class CodeEngine {
     
     public void format(String filePath, int startLine, int startColumn,
                        int endLine, int endColumn, IFileEditor editor) {
-        synchronized (myLock) {
-            myOperation = Operation.Format;
-            myFilePath = filePath;
-            myStartLine = startLine;
-            myStartColumn = startColumn;
-            myEndLine = endLine;
-            myEndColumn = endColumn;
-            myEditor = editor;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Format, filePath);
+        request.myStartLine = startLine;
+        request.myStartColumn = startColumn;
+        request.myEndLine = endLine;
+        request.myEndColumn = endColumn;
+        request.myEditor = editor;
+        submit(request);
     }
     
     
     public void indent(String filePath, int startLine, int startColumn,
                        int endLine, int endColumn, IFileEditor editor) {
-        synchronized (myLock) {
-            myOperation = Operation.Indent;
-            myFilePath = filePath;
-            myStartLine = startLine;
-            myStartColumn = startColumn;
-            myEndLine = endLine;
-            myEndColumn = endColumn;
-            myEditor = editor;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Indent, filePath);
+        request.myStartLine = startLine;
+        request.myStartColumn = startColumn;
+        request.myEndLine = endLine;
+        request.myEndColumn = endColumn;
+        request.myEditor = editor;
+        submit(request);
     }
     
     public void analyze(String filePath) {
-        synchronized (myLock) {
-            myOperation = Operation.Analyze;
-            myFilePath = filePath;
-            myLock.notify();
-        }
+        submit(createRequest(Operation.Analyze, filePath));
     }
     
     public void setAnalyzingListener(AnalyzingListener analyzingListener) {
@@ -388,11 +572,7 @@ public final class CodeEngine {
     }
     
     public void highlight(String filePath) {
-        synchronized (myLock) {
-            myOperation = Operation.Highlight;
-            myFilePath = filePath;
-            myLock.notify();
-        }
+        submit(createRequest(Operation.Highlight, filePath));
     }
     
     public void setHighlightingListener(HighlightingListener highlightingListener) {
@@ -400,14 +580,11 @@ public final class CodeEngine {
     }
     
     public void completion(String filePath, int line, int column, boolean allowTypes) {
-        synchronized (myLock) {
-            myOperation = Operation.Completion;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myAllowTypes = allowTypes;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Completion, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        request.myAllowTypes = allowTypes;
+        submit(request);
     }
     
     public void setCompletionListener(CompletionListener completionListener) {
@@ -415,24 +592,18 @@ public final class CodeEngine {
     }
     
     public void searchUsages(String filePath, int line, int column) {
-        synchronized (myLock) {
-            myOperation = Operation.SearchUsages;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.SearchUsages, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        submit(request);
     }
     
     public void searchSymbol(String filePath, int line, int column, boolean includeDeclaration) {
-        synchronized (myLock) {
-            myOperation = Operation.SearchSymbol;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myIncludeDeclaration = includeDeclaration;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.SearchSymbol, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        request.myIncludeDeclaration = includeDeclaration;
+        submit(request);
     }
     
     
@@ -442,97 +613,69 @@ public final class CodeEngine {
     
     
     public void optimizeImports(String filePath) {
-        synchronized (myLock) {
-            myOperation = Operation.OptimizeImports;
-            myFilePath = filePath;
-            myLock.notify();
-        }
+        submit(createRequest(Operation.OptimizeImports, filePath));
     }
     
     public void prepareRename(String filePath, int line, int column, String newName) {
-        synchronized (myLock) {
-            myOperation = Operation.PrepareRename;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myNewName = newName;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.PrepareRename, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        request.myNewName = newName;
+        submit(request);
     }
     
     public void rename(String filePath, int line, int column, String newName) {
-        synchronized (myLock) {
-            myOperation = Operation.Rename;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myNewName = newName;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Rename, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        request.myNewName = newName;
+        submit(request);
     }
     
     public void prepareInline(String filePath, int line, int column) {
-        synchronized (myLock) {
-            myOperation = Operation.PrepareInline;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.PrepareInline, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        submit(request);
     }
     
     public void inline(String filePath, int line, int column) {
-        synchronized (myLock) {
-            myOperation = Operation.Inline;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Inline, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        submit(request);
     }
     
     public void comment(String filePath, int startLine, int startColumn, int endLine, int endColumn) {
-        synchronized (myLock) {
-            myOperation = Operation.Comment;
-            myFilePath = filePath;
-            myStartLine = startLine;
-            myStartColumn = startColumn;
-            myEndLine = endLine;
-            myEndColumn = endColumn;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.Comment, filePath);
+        request.myStartLine = startLine;
+        request.myStartColumn = startColumn;
+        request.myEndLine = endLine;
+        request.myEndColumn = endColumn;
+        submit(request);
     }
     
     public void removeComment(String filePath, int startLine, int startColumn, int endLine, int endColumn) {
-        synchronized (myLock) {
-            myOperation = Operation.RemoveComment;
-            myFilePath = filePath;
-            myStartLine = startLine;
-            myStartColumn = startColumn;
-            myEndLine = endLine;
-            myEndColumn = endColumn;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.RemoveComment, filePath);
+        request.myStartLine = startLine;
+        request.myStartColumn = startColumn;
+        request.myEndLine = endLine;
+        request.myEndColumn = endColumn;
+        submit(request);
     }
     
     public void safeDelete(String filePath, int line, int column) {
-        synchronized (myLock) {
-            myOperation = Operation.SafeDelete;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.SafeDelete, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        submit(request);
     }
     
     public void surroundWith(String filePath, int line, int column) {
-        synchronized (myLock) {
-            myOperation = Operation.SurroundWith;
-            myFilePath = filePath;
-            myLine = line;
-            myColumn = column;
-            myLock.notify();
-        }
+        Request request = createRequest(Operation.SurroundWith, filePath);
+        request.myLine = line;
+        request.myColumn = column;
+        submit(request);
     }
     
     public void setRefactoringListener(RefactoringListener refactoringListener) {
@@ -542,12 +685,16 @@ public final class CodeEngine {
     public void restart() {
         synchronized (myLock) {
             myShutdown = false;
+            myLanguagesShutdown = false;
+            myLock.notifyAll();
         }
     }
     
     public void shutdown() {
         synchronized (myLock) {
             myShutdown = true;
+            cancelRequests();
+            myLock.notifyAll();
         }
     }
     
@@ -560,6 +707,68 @@ public final class CodeEngine {
     public void destroy() {
         synchronized (myLock) {
             myDestroy = true;
+            cancelRequests();
+            myLock.notifyAll();
+        }
+    }
+    
+    private void cancelRequests() {
+        for (Request request : myPendingRequests) {
+            request.myCancelled = true;
+        }
+        myPendingRequests.clear();
+        for (Request request : myRunningRequests) {
+            request.myCancelled = true;
+        }
+    }
+    
+    private static class Request {
+        final Operation myOperation;
+        final String myFilePath;
+        final Language myLanguage;
+        final long myFileVersion;
+        long mySequence;
+        int myStartLine, myStartColumn, myEndLine, myEndColumn;
+        int myLine, myColumn;
+        String myNewName;
+        boolean myIncludeDeclaration;
+        boolean myAllowTypes;
+        IFileEditor myEditor;
+        volatile boolean myCancelled;
+        
+        Request(Operation operation, String filePath, Language language, long fileVersion) {
+            myOperation = operation;
+            myFilePath = filePath;
+            myLanguage = language;
+            myFileVersion = fileVersion;
+        }
+        
+        boolean isSupersededBy(Request request) {
+            if (!myFilePath.equals(request.myFilePath)) {
+                return false;
+            }
+            // highlighting is followed by analyzing the same version
+            return myOperation == request.myOperation
+                    || myOperation == Operation.Analyze && request.myOperation == Operation.Highlight;
+        }
+        
+        boolean hasSameArguments(Request request) {
+            return myStartLine == request.myStartLine && myStartColumn == request.myStartColumn
+                    && myEndLine == request.myEndLine && myEndColumn == request.myEndColumn
+                    && myLine == request.myLine && myColumn == request.myColumn
+                    && Objects.equals(myNewName, request.myNewName)
+                    && myIncludeDeclaration == request.myIncludeDeclaration
+                    && myAllowTypes == request.myAllowTypes
+                    && myEditor == request.myEditor;
+        }
+        
+        /**
+         * Cancellation point, the language callbacks call it so that superseded requests stop early.
+         */
+        void checkCancelled() {
+            if (myCancelled) {
+                throw new CancellationException();
+            }
         }
     }
     
@@ -609,7 +818,7 @@ public final class CodeEngine {
     }
     
     
-    private class LanguageCallback extends FileStoreCallbackImpl implements
+    private static class LanguageCallback extends FileStoreCallbackImpl implements
             CodeFormatterCallback,
             CodeHighlighterCallback,
             CodeAnalyzerCallback,
@@ -625,9 +834,35 @@ public final class CodeEngine {
         
         public final List<Modification> myModificationList = new ArrayList<>();
         
+        // the request the worker owning this callback is processing
+        public Request myRequest;
+        
+        private final Map<String, Highlights> myFileHighlights;
+        public boolean myRangeReported;
+        public int myRangeStartLine, myRangeStartColumn;
+        public int myRangeOldEndLine, myRangeOldEndColumn;
+        public int myRangeNewEndLine, myRangeNewEndColumn;
+        
+        LanguageCallback(Map<String, Highlights> fileHighlights) {
+            myFileHighlights = fileHighlights;
+        }
+        
+        public void resetHighlighting() {
+            myHighlights.clear();
+            myRangeReported = false;
+        }
+        
+        @NonNull
+        @Override
+        public Reader getFileReader(@NonNull String filePath) throws IOException {
+            myRequest.checkCancelled();
+            return super.getFileReader(filePath);
+        }
+        
         @Override
         public void errorFound(@NonNull String source, @NonNull String message,
                                @NonNull String code) {
+            myRequest.checkCancelled();
             myProblemList.add(new Problem(source, Problem.Level.Error, message, code));
         }
         
@@ -635,6 +870,7 @@ public final class CodeEngine {
         public void errorFound(@NonNull String filePath, @NonNull String message,
                                @NonNull String code, int startLine, int startColumn,
                                int endLine, int endColumn) {
+            myRequest.checkCancelled();
             myProblemList.add(new Problem(filePath, Problem.Level.Error, message, code,
                     startLine, startColumn, endLine, endColumn));
         }
@@ -642,6 +878,7 @@ public final class CodeEngine {
         @Override
         public void warningFound(@NonNull String source, @NonNull String message,
                                  @NonNull String code) {
+            myRequest.checkCancelled();
             myProblemList.add(new Problem(source, Problem.Level.Warning, message, code));
         }
         
@@ -649,6 +886,7 @@ public final class CodeEngine {
         public void warningFound(@NonNull String filePath, @NonNull String message,
                                  @NonNull String code, int startLine, int startColumn,
                                  int endLine, int endColumn) {
+            myRequest.checkCancelled();
             myProblemList.add(new Problem(filePath, Problem.Level.Warning, message, code,
                     startLine, startColumn, endLine, endColumn));
         }
@@ -658,6 +896,7 @@ public final class CodeEngine {
                                     @Nullable String documentation, boolean deprecated,
                                     boolean preselect, @Nullable String sortText,
                                     @NonNull String insertText, boolean snippet) {
+            myRequest.checkCancelled();
             myCompletionList.add(new Completion(kind, label, details,
                     documentation, deprecated, preselect, sortText,
                     insertText, snippet));
@@ -666,7 +905,7 @@ public final class CodeEngine {
         @Override
         public int getLineIndentation(int line) {
             try {
-                return myEditor.getLineIndentation(line);
+                return myRequest.myEditor.getLineIndentation(line);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -675,7 +914,7 @@ public final class CodeEngine {
         @Override
         public void indentationLine(int line, int indentationSize) {
             try {
-                myEditor.indentationLine(line, indentationSize);
+                myRequest.myEditor.indentationLine(line, indentationSize);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -684,7 +923,7 @@ public final class CodeEngine {
         @Override
         public int getIndentationSize() {
             try {
-                return myEditor.getIndentationSize();
+                return myRequest.myEditor.getIndentationSize();
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -693,7 +932,7 @@ public final class CodeEngine {
         @Override
         public int getTabSize() {
             try {
-                return myEditor.getTabSize();
+                return myRequest.myEditor.getTabSize();
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -702,7 +941,7 @@ public final class CodeEngine {
         @Override
         public int getLineCount() {
             try {
-                return myEditor.getLineCount();
+                return myRequest.myEditor.getLineCount();
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -711,7 +950,7 @@ public final class CodeEngine {
         @Override
         public int getLineLength(int line) {
             try {
-                return myEditor.getLineLength(line);
+                return myRequest.myEditor.getLineLength(line);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -720,7 +959,7 @@ public final class CodeEngine {
         @Override
         public char getChar(int line, int column) {
             try {
-                return myEditor.getChar(line, column);
+                return myRequest.myEditor.getChar(line, column);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -729,7 +968,7 @@ public final class CodeEngine {
         @Override
         public int getStyle(int line, int column) {
             try {
-                return myEditor.getStyle(line, column);
+                return myRequest.myEditor.getStyle(line, column);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -738,7 +977,7 @@ public final class CodeEngine {
         @Override
         public void insertLineBreak(int line, int column) {
             try {
-                myEditor.insertLineBreak(line, column);
+                myRequest.myEditor.insertLineBreak(line, column);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -747,7 +986,7 @@ public final class CodeEngine {
         @Override
         public void removeLineBreak(int line) {
             try {
-                myEditor.removeLineBreak(line);
+                myRequest.myEditor.removeLineBreak(line);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -756,7 +995,7 @@ public final class CodeEngine {
         @Override
         public void insertText(int line, int column, @NonNull String text) {
             try {
-                myEditor.insertText(line, column, text);
+                myRequest.myEditor.insertText(line, column, text);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
@@ -765,27 +1004,48 @@ public final class CodeEngine {
         @Override
         public void removeText(int startLine, int startColumn, int endLine, int endColumn) {
             try {
-                myEditor.removeText(startLine, startColumn, endLine, endColumn);
+                myRequest.myEditor.removeText(startLine, startColumn, endLine, endColumn);
             } catch (RemoteException e) {
                 throw new RuntimeException(e);
             }
         }
         
+        @Override
+        public boolean hasPreviousHighlighting(@NonNull String filePath) {
+            return myFileHighlights.containsKey(filePath);
+        }
+        
+        @Override
+        public void tokensReplaced(int startLine, int startColumn, int oldEndLine, int oldEndColumn,
+                                   int newEndLine, int newEndColumn) {
+            myRequest.checkCancelled();
+            myRangeReported = true;
+            myRangeStartLine = startLine;
+            myRangeStartColumn = startColumn;
+            myRangeOldEndLine = oldEndLine;
+            myRangeOldEndColumn = oldEndColumn;
+            myRangeNewEndLine = newEndLine;
+            myRangeNewEndColumn = newEndColumn;
+        }
+        
         @Override
         public void tokenFound(int styleKind, int startLine, int startColumn,
                                int endLine, int endColumn) {
+            myRequest.checkCancelled();
             myHighlights.token(styleKind, startLine, startColumn, endLine, endColumn);
         }
         
         @Override
         public void semanticTokenFound(int styleKind, int startLine, int startColumn,
                                        int endLine, int endColumn) {
+            myRequest.checkCancelled();
             myHighlights.token(styleKind, startLine, startColumn, endLine, endColumn);
         }
         
         @Override
         public void usageFound(@NonNull String filePath, int startLine, int startColumn,
                                int endLine, int endColumn) {
+            myRequest.checkCancelled();
             myFileSpanList.add(new FileSpan(filePath, startLine, startColumn, endLine, endColumn));
         }
         
@@ -793,6 +1053,7 @@ public final class CodeEngine {
         public void symbolFound(int kind, @NonNull String name, boolean deprecated,
                                 @NonNull String filePath, int startLine, int startColumn,
                                 int endLine, int endColumn) {
+            myRequest.checkCancelled();
             mySymbolList.add(new Symbol(kind, name, deprecated,
                     filePath, startLine, startColumn, endLine, endColumn));
         }
@@ -883,7 +1144,7 @@ public final class CodeEngine {
         
         @Override
         public long getFileVersion(@NonNull String filePath) {
-            return FileStore.get().getFileSize(filePath);
+            return FileStore.get().getFileVersion(filePath);
         }
         
         @NonNull
@@ -27,9 +27,80 @@ class Highlights {
         length++;
     }
     
+    public void set(Highlights highlights) {
+        length = 0;
+        ensureCapacity(highlights.length);
+        System.arraycopy(highlights.styles, 0, styles, 0, highlights.length);
+        System.arraycopy(highlights.startLines, 0, startLines, 0, highlights.length);
+        System.arraycopy(highlights.startColumns, 0, startColumns, 0, highlights.length);
+        System.arraycopy(highlights.endLines, 0, endLines, 0, highlights.length);
+        System.arraycopy(highlights.endColumns, 0, endColumns, 0, highlights.length);
+        length = highlights.length;
+    }
+    
+    /**
+     * Replaces the tokens starting in the old range with the given tokens, the tokens after the range
+     * move to the new end of the range.
+     */
+    public void replace(int startLine, int startColumn, int oldEndLine, int oldEndColumn,
+                        int newEndLine, int newEndColumn, Highlights highlights) {
+        int start = indexOf(startLine, startColumn);
+        int oldEnd = Math.max(start, indexOf(oldEndLine, oldEndColumn));
+        int tail = length - oldEnd;
+        int newEnd = start + highlights.length;
+        ensureCapacity(newEnd + tail);
+        
+        System.arraycopy(styles, oldEnd, styles, newEnd, tail);
+        System.arraycopy(startLines, oldEnd, startLines, newEnd, tail);
+        System.arraycopy(startColumns, oldEnd, startColumns, newEnd, tail);
+        System.arraycopy(endLines, oldEnd, endLines, newEnd, tail);
+        System.arraycopy(endColumns, oldEnd, endColumns, newEnd, tail);
+        
+        int lineDelta = newEndLine - oldEndLine;
+        int columnDelta = newEndColumn - oldEndColumn;
+        for (int i = newEnd; i < newEnd + tail; i++) {
+            if (startLines[i] == oldEndLine) {
+                startColumns[i] += columnDelta;
+            }
+            startLines[i] += lineDelta;
+            if (endLines[i] == oldEndLine) {
+                endColumns[i] += columnDelta;
+            }
+            endLines[i] += lineDelta;
+        }
+        
+        System.arraycopy(highlights.styles, 0, styles, start, highlights.length);
+        System.arraycopy(highlights.startLines, 0, startLines, start, highlights.length);
+        System.arraycopy(highlights.startColumns, 0, startColumns, start, highlights.length);
+        System.arraycopy(highlights.endLines, 0, endLines, start, highlights.length);
+        System.arraycopy(highlights.endColumns, 0, endColumns, start, highlights.length);
+        length = newEnd + tail;
+    }
+    
+    /**
+     * @return index of the first token starting at or after the position
+     */
+    private int indexOf(int line, int column) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startLines[mid] < line || startLines[mid] == line && startColumns[mid] < column) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
     private void resize() {
-        if (styles.length <= length) {
-            int newSize = (length * 5) / 4;
+        ensureCapacity(length + 1);
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (styles.length < capacity) {
+            int newSize = Math.max(capacity, (styles.length * 5) / 4);
             int[] newStyles = new int[newSize];
             int[] newStartLines = new int[newSize];
             int[] newStartColumns = new int[newSize];
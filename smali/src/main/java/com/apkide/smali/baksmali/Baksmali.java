@@ -138,6 +138,16 @@ public class Baksmali {
             return false;
         }
 
+        return disassembleClass(classDef, smaliFile, options);
+    }
+
+    /**
+     * Disassembles a single class to the given file. The file name is not checked against other
+     * classes, so callers have to resolve name collisions themselves (see ClassFileNameHandler).
+     */
+    public static boolean disassembleClass(ClassDef classDef, File smaliFile, BaksmaliOptions options) {
+        String classDescriptor = classDef.getType();
+
         //create and initialize the top level string template
         ClassDefinition classDefinition = new ClassDefinition(options, classDef);
 